@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ProduceDestination;
+import com.adaptris.core.ProduceException;
+import com.adaptris.core.ProduceOnlyProducerImp;
+
+/**
+ * In-memory producer that just counts the messages it receives.
+ * <p>
+ * Unlike {@code MockMessageProducer} it doesn't keep the messages, so it does not skew allocation figures and is safe to use
+ * concurrently from a {@link com.adaptris.core.PoolingWorkflow}.
+ * </p>
+ */
+public class CountingProducer extends ProduceOnlyProducerImp {
+
+  private transient AtomicLong count = new AtomicLong();
+
+  @Override
+  public void produce(AdaptrisMessage msg, ProduceDestination destination) throws ProduceException {
+    count.incrementAndGet();
+  }
+
+  public long count() {
+    return count.get();
+  }
+
+  /**
+   * Wait until at least {@code target} messages have been produced.
+   *
+   */
+  public void await(long target) {
+    while (count.get() < target) {
+      Thread.yield();
+    }
+  }
+
+  @Override
+  public void prepare() throws CoreException {
+  }
+
+  @Override
+  public void init() throws CoreException {
+  }
+
+  @Override
+  public void start() throws CoreException {
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  @Override
+  public void close() {
+  }
+}
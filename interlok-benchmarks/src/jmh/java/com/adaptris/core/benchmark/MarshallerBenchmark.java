@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import com.adaptris.core.Adapter;
+import com.adaptris.core.Channel;
+import com.adaptris.core.NullConnection;
+import com.adaptris.core.NullMessageConsumer;
+import com.adaptris.core.NullMessageProducer;
+import com.adaptris.core.ServiceList;
+import com.adaptris.core.StandardWorkflow;
+import com.adaptris.core.XStreamMarshaller;
+import com.adaptris.core.services.metadata.AddMetadataService;
+
+/**
+ * {@link XStreamMarshaller} round trips for an adapter configuration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MarshallerBenchmark {
+
+  @Param({"1", "10"})
+  public int channels;
+
+  private static final int WORKFLOWS_PER_CHANNEL = 2;
+  private static final int SERVICES_PER_WORKFLOW = 5;
+
+  private XStreamMarshaller marshaller;
+  private Adapter adapter;
+  private String xml;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    marshaller = new XStreamMarshaller();
+    adapter = createAdapter();
+    xml = marshaller.marshal(adapter);
+  }
+
+  @Benchmark
+  public String marshal() throws Exception {
+    return marshaller.marshal(adapter);
+  }
+
+  @Benchmark
+  public Object unmarshal() throws Exception {
+    return marshaller.unmarshal(xml);
+  }
+
+  @Benchmark
+  public Object roundTrip() throws Exception {
+    return marshaller.unmarshal(marshaller.marshal(adapter));
+  }
+
+  private Adapter createAdapter() {
+    Adapter result = new Adapter();
+    result.setUniqueId("benchmark-adapter");
+    for (int c = 0; c < channels; c++) {
+      Channel channel = new Channel("channel-" + c);
+      channel.setConsumeConnection(new NullConnection());
+      channel.setProduceConnection(new NullConnection());
+      for (int w = 0; w < WORKFLOWS_PER_CHANNEL; w++) {
+        StandardWorkflow workflow = new StandardWorkflow();
+        workflow.setUniqueId("workflow-" + w);
+        workflow.setConsumer(new NullMessageConsumer());
+        workflow.setProducer(new NullMessageProducer());
+        ServiceList services = new ServiceList();
+        for (int s = 0; s < SERVICES_PER_WORKFLOW; s++) {
+          AddMetadataService service = new AddMetadataService();
+          service.setUniqueId("service-" + s);
+          service.addMetadataElement("key" + s, "value" + s);
+          services.add(service);
+        }
+        workflow.setServiceCollection(services);
+        channel.getWorkflowList().add(workflow);
+      }
+      result.getChannelList().add(channel);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.NullService;
+import com.adaptris.core.lms.SpillingMessageFactory;
+
+/**
+ * Payload and metadata access on {@link com.adaptris.core.DefaultAdaptrisMessageImp} (and the in-memory path of
+ * {@link SpillingMessageFactory}),
+ * {@link com.adaptris.core.AdaptrisMessageImp#resolve(String)} and recording message lifecycle events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageBenchmark {
+
+  private static final String EXPRESSION = "%message{key5}/%message{key10}/%message{%uniqueId}";
+  // Roughly a 40 service chain.
+  private static final int EVENT_COUNT = 40;
+
+  @Param({"1024", "65536"})
+  public int payloadSize;
+
+  @Param({"16"})
+  public int metadataCount;
+
+  @Param({"default", "spilling"})
+  public String messageFactory;
+
+  private AdaptrisMessageFactory factory;
+  private AdaptrisMessage message;
+  private byte[] payload;
+  private String content;
+  private byte[] buffer = new byte[8192];
+  private int counter;
+  private NullService service;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    factory = "spilling".equals(messageFactory) ? new SpillingMessageFactory() : AdaptrisMessageFactory.getDefaultInstance();
+    payload = new byte[payloadSize];
+    Arrays.fill(payload, (byte) 'A');
+    content = new String(payload);
+    service = new NullService();
+    service.setUniqueId("null-service");
+    message = factory.newMessage(payload);
+    for (int i = 0; i < metadataCount; i++) {
+      message.addMetadata("key" + i, "value" + i);
+    }
+  }
+
+  @Benchmark
+  public AdaptrisMessage newMessage() {
+    return factory.newMessage(payload);
+  }
+
+  @Benchmark
+  public byte[] getPayload() {
+    return message.getPayload();
+  }
+
+  @Benchmark
+  public void setPayload() {
+    message.setPayload(payload);
+  }
+
+  @Benchmark
+  public String getContent() {
+    return message.getContent();
+  }
+
+  @Benchmark
+  public void setContent() {
+    message.setContent(content, null);
+  }
+
+  @Benchmark
+  public long readInputStream() throws IOException {
+    long total = 0;
+    try (InputStream in = message.getInputStream()) {
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        total += read;
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public void writeOutputStream() throws IOException {
+    try (OutputStream out = message.getOutputStream()) {
+      out.write(payload);
+    }
+  }
+
+  @Benchmark
+  public String getMetadataValue() {
+    return message.getMetadataValue("key" + (counter++ % metadataCount));
+  }
+
+  @Benchmark
+  public boolean headersContainsKey() {
+    return message.headersContainsKey("key" + (counter++ % metadataCount));
+  }
+
+  @Benchmark
+  public void addMetadata() {
+    message.addMetadata("key" + (counter++ % metadataCount), "replaced");
+  }
+
+  @Benchmark
+  public void getMessageHeaders(Blackhole bh) {
+    bh.consume(message.getMessageHeaders());
+  }
+
+  @Benchmark
+  public String resolve() {
+    return message.resolve(EXPRESSION);
+  }
+
+  @Benchmark
+  public AdaptrisMessage addEvents() {
+    AdaptrisMessage msg = factory.newMessage(payload);
+    for (int i = 0; i < EVENT_COUNT; i++) {
+      msg.addEvent(service, true);
+    }
+    return msg;
+  }
+}
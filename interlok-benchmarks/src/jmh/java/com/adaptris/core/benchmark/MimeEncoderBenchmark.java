@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageEncoder;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.BinaryMessageEncoder;
+import com.adaptris.core.MimeEncoder;
+import com.adaptris.core.StreamingMimeEncoder;
+
+/**
+ * {@link MimeEncoder}, {@link StreamingMimeEncoder} and {@link BinaryMessageEncoder} encode and decode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MimeEncoderBenchmark {
+
+  @Param({"1024", "65536", "1048576"})
+  public int payloadSize;
+
+  @Param({"16"})
+  public int metadataCount;
+
+  @Param({"mime", "streaming", "binary"})
+  public String encoderType;
+
+  private AdaptrisMessageEncoder encoder;
+  private AdaptrisMessage message;
+  private byte[] encoded;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    encoder = createEncoder();
+    encoder.registerMessageFactory(AdaptrisMessageFactory.getDefaultInstance());
+    byte[] payload = new byte[payloadSize];
+    Arrays.fill(payload, (byte) 'A');
+    message = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload);
+    for (int i = 0; i < metadataCount; i++) {
+      message.addMetadata("key" + i, "value" + i);
+    }
+    encoded = encode();
+  }
+
+  private AdaptrisMessageEncoder createEncoder() {
+    switch (encoderType) {
+    case "streaming":
+      return new StreamingMimeEncoder(true, null, null);
+    case "binary":
+      return new BinaryMessageEncoder(true, false);
+    default:
+      return new MimeEncoder(true, null, null);
+    }
+  }
+
+  @Benchmark
+  public byte[] encode() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    encoder.writeMessage(message, out);
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public AdaptrisMessage decode() throws Exception {
+    return encoder.readMessage(new ByteArrayInputStream(encoded));
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ServiceList;
+import com.adaptris.core.services.metadata.AddMetadataService;
+import com.adaptris.core.util.LifecycleHelper;
+
+/**
+ * Executing a {@link ServiceList} of lightweight services, so that the overhead is mostly the service list itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceListBenchmark {
+
+  @Param({"1", "10"})
+  public int services;
+
+  private AdaptrisMessageFactory factory;
+  private ServiceList serviceList;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    factory = AdaptrisMessageFactory.getDefaultInstance();
+    serviceList = new ServiceList();
+    for (int i = 0; i < services; i++) {
+      AddMetadataService s = new AddMetadataService();
+      s.addMetadataElement("key" + i, "value" + i);
+      serviceList.add(s);
+    }
+    LifecycleHelper.initAndStart(serviceList, false);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    LifecycleHelper.stopAndClose(serviceList, false);
+  }
+
+  @Benchmark
+  public AdaptrisMessage doService() throws Exception {
+    AdaptrisMessage msg = factory.newMessage("hello world");
+    serviceList.doService(msg);
+    return msg;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.Channel;
+import com.adaptris.core.NullConnection;
+import com.adaptris.core.NullMessageConsumer;
+import com.adaptris.core.PoolingWorkflow;
+import com.adaptris.core.ServiceList;
+import com.adaptris.core.StandardWorkflow;
+import com.adaptris.core.WorkflowImp;
+import com.adaptris.core.services.metadata.AddMetadataService;
+import com.adaptris.core.util.LifecycleHelper;
+
+/**
+ * {@link StandardWorkflow} and {@link PoolingWorkflow} end to end, from {@code onAdaptrisMessage()} to the producer.
+ * <p>
+ * Messages are submitted in batches, and each invocation waits until the whole batch has been produced, so that the figures for
+ * {@link PoolingWorkflow} include the hand-off to (and the work done by) the worker threads.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WorkflowBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  @Param({"standard-workflow", "pooling-workflow"})
+  public String workflowType;
+
+  @Param({"3"})
+  public int services;
+
+  private AdaptrisMessageFactory factory;
+  private Channel channel;
+  private WorkflowImp workflow;
+  private CountingProducer producer;
+  private long expected;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    factory = AdaptrisMessageFactory.getDefaultInstance();
+    producer = new CountingProducer();
+    workflow = createWorkflow();
+    workflow.setUniqueId(workflowType);
+    workflow.setConsumer(new NullMessageConsumer());
+    workflow.setProducer(producer);
+    ServiceList serviceList = new ServiceList();
+    for (int i = 0; i < services; i++) {
+      AddMetadataService s = new AddMetadataService();
+      s.addMetadataElement("key" + i, "value" + i);
+      serviceList.add(s);
+    }
+    workflow.setServiceCollection(serviceList);
+    channel = new Channel("benchmark");
+    channel.setConsumeConnection(new NullConnection());
+    channel.setProduceConnection(new NullConnection());
+    channel.getWorkflowList().add(workflow);
+    LifecycleHelper.initAndStart(channel, false);
+    expected = 0;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    LifecycleHelper.stopAndClose(channel, false);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void onAdaptrisMessage() {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      workflow.onAdaptrisMessage(factory.newMessage("hello world"));
+    }
+    expected += BATCH_SIZE;
+    producer.await(expected);
+  }
+
+  private WorkflowImp createWorkflow() {
+    if ("pooling-workflow".equals(workflowType)) {
+      PoolingWorkflow wf = new PoolingWorkflow();
+      // The counting producer is thread-safe.
+      wf.setProduceMode(PoolingWorkflow.ProduceMode.SHARED);
+      return wf;
+    }
+    return new StandardWorkflow();
+  }
+}
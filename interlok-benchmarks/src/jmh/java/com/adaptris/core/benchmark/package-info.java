@@ -0,0 +1,5 @@
+/**
+ * JMH benchmarks for the message and workflow hot paths.
+ *
+ */
+package com.adaptris.core.benchmark;
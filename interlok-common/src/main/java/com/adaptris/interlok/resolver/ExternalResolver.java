@@ -17,11 +17,15 @@ package com.adaptris.interlok.resolver;
 
 import com.adaptris.interlok.types.InterlokMessage;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.ServiceLoader;
 
 public class ExternalResolver {
 
-  private ServiceLoader<Resolver> resolvers = null;
+  // ServiceLoader isn't thread-safe, so load all the resolvers once.
+  private volatile List<Resolver> resolvers = null;
 
   private static final ExternalResolver IMPL = new ExternalResolver();
 
@@ -43,29 +47,56 @@ public class ExternalResolver {
     return IMPL.tryResolve(value, target);
   }
 
-  private String tryResolve(String lookupValue) {
-    String result = lookupValue;
-    if (resolvers == null) {
-      resolvers = ServiceLoader.load(Resolver.class);
-    }
-    for (Resolver impl : resolvers) {
-      if (impl.canHandle(lookupValue)) {
-        result = impl.resolve(lookupValue);
-        break;
-      }
+  /**
+   * Whether any of the available resolvers can handle this value.
+   * <p>
+   * If the value is static, then this allows the caller to check once, rather than attempting to resolve it every time.
+   * </p>
+   *
+   * @param value the value
+   * @return true if {@link #resolve(String)} or {@link #resolve(String, InterlokMessage)} might change the value.
+   * @since 3.10.2
+   */
+  public static boolean canHandle(String value) {
+    if (value == null) {
+      return false;
     }
-    return result;
+    return IMPL.findResolver(value) != null;
+  }
+
+  private String tryResolve(String lookupValue) {
+    Resolver impl = findResolver(lookupValue);
+    return impl != null ? impl.resolve(lookupValue) : lookupValue;
   }
 
   private String tryResolve(String value, InterlokMessage target) {
-    if (resolvers == null) {
-      resolvers = ServiceLoader.load(Resolver.class);
+    Resolver impl = findResolver(value);
+    return impl != null ? impl.resolve(value, target) : value;
+  }
+
+  private Resolver findResolver(String value) {
+    for (Resolver impl : resolvers()) {
+      if (impl.canHandle(value)) {
+        return impl;
+      }
     }
-    for (Resolver resolver : resolvers) {
-      if (resolver.canHandle(value)) {
-        return resolver.resolve(value, target);
+    return null;
+  }
+
+  private List<Resolver> resolvers() {
+    List<Resolver> result = resolvers;
+    if (result == null) {
+      synchronized (this) {
+        if (resolvers == null) {
+          List<Resolver> loaded = new ArrayList<>();
+          for (Resolver impl : ServiceLoader.load(Resolver.class)) {
+            loaded.add(impl);
+          }
+          resolvers = Collections.unmodifiableList(loaded);
+        }
+        result = resolvers;
       }
     }
-    return value;
+    return result;
   }
 }
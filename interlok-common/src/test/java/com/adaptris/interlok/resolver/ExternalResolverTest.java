@@ -16,6 +16,7 @@
 package com.adaptris.interlok.resolver;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -46,6 +47,15 @@ public class ExternalResolverTest {
     assertEquals("NOT_A_ENVVAR", ExternalResolver.resolve("%env{NOT_A_ENVVAR}"));
   }
 
+  @Test
+  public void testCanHandle() {
+    assertFalse(ExternalResolver.canHandle(null));
+    assertFalse(ExternalResolver.canHandle("hello"));
+    assertFalse(ExternalResolver.canHandle("%message{hello}"));
+    assertTrue(ExternalResolver.canHandle("%env{PATH}"));
+    assertTrue(ExternalResolver.canHandle("%sysprop{java.version}"));
+  }
+
   @Test
   public void testResolveWithNullPayload() {
     assertEquals("%payload{NOT_FOUND}", ExternalResolver.resolve("%payload{NOT_FOUND}", null));
@@ -16,6 +16,7 @@
 
 package com.adaptris.core;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,6 +49,21 @@ public interface AdaptrisMessage extends InterlokMessage {
    */
   byte[] getPayload();
 
+  /**
+   * Returns a read-only view of this message's payload.
+   * <p>
+   * Use this in preference to {@link #getPayload()} if you only need to read the payload; implementations that hold the payload
+   * in memory will return a view of it without copying it.
+   * </p>
+   *
+   * @implNote the default implementation just wraps {@link #getPayload()}.
+   * @return a read-only {@link ByteBuffer} whose position is 0 and limit is the size of the payload.
+   * @since 3.10.2
+   */
+  default ByteBuffer getPayloadBuffer() {
+    return ByteBuffer.wrap(getPayload()).asReadOnlyBuffer();
+  }
+
   /**
    * Return the size of the payload.
    *
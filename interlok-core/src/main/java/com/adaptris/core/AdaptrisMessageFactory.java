@@ -16,12 +16,17 @@
 
 package com.adaptris.core;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Collection;
 import java.util.Set;
 
 import javax.validation.Valid;
 
+import org.apache.commons.io.IOUtils;
+
 import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.util.GuidGenerator;
 import com.adaptris.util.IdGenerator;
@@ -165,6 +170,31 @@ public abstract class AdaptrisMessageFactory {
   public abstract AdaptrisMessage newMessage(AdaptrisMessage source, Collection<String> metadataKeysToPreserve)
       throws CloneNotSupportedException;
 
+  /**
+   * Returns a new <code>AdaptrisMessage</code> (with a new unique-id) that starts as a copy of the payload, content encoding and
+   * metadata of the parent.
+   * <p>
+   * Unlike {@link #newMessage(AdaptrisMessage, Collection)} nothing else (e.g. object metadata or the
+   * {@link MessageLifecycleEvent}) is carried over. Implementations that can do so will share the payload and metadata with the
+   * parent rather than copying them, so that creating a large number of branches from a large message is cheap; they are only
+   * copied if they are subsequently changed. The default implementation simply copies them.
+   * </p>
+   *
+   * @param parent the parent message
+   * @return a new {@code AdaptrisMessage}
+   * @throws IOException if the payload could not be copied.
+   * @since 3.10.2
+   */
+  public AdaptrisMessage newBranch(AdaptrisMessage parent) throws IOException {
+    AdaptrisMessage result = newMessage();
+    result.setContentEncoding(parent.getContentEncoding());
+    try (InputStream in = parent.getInputStream(); OutputStream out = result.getOutputStream()) {
+      IOUtils.copy(in, out);
+    }
+    result.setMetadata(parent.getMetadata());
+    return result;
+  }
+
   /**
    * Return the default character encoding for the message.
    *
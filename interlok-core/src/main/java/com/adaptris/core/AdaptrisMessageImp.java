@@ -17,7 +17,7 @@
 package com.adaptris.core;
 
 import com.adaptris.core.util.Args;
-import com.adaptris.interlok.resolver.ExternalResolver;
+import com.adaptris.core.util.MessageTemplate;
 import com.adaptris.util.IdGenerator;
 import com.adaptris.util.stream.StreamUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -36,11 +36,8 @@ import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static com.adaptris.core.metadata.MetadataResolver.resolveKey;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
@@ -67,63 +64,44 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
  */
 public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
 
-  // If we have %message{key1}%message{key2} group(1) is key2
-  // Which is then replaced so it all works out int the end.
-  private static final String RESOLVE_REGEXP = "^.*%message\\{([\\w!\\$\"#&%'\\*\\+,\\-\\.:=]+)\\}.*$";
+  // Sequence numbers are stored as metadata, no need to create the same strings over and over again.
+  private static final String[] SEQUENCE_STRINGS = new String[256];
+
+  static {
+    for (int i = 0; i < SEQUENCE_STRINGS.length; i++) {
+      SEQUENCE_STRINGS[i] = String.valueOf(i);
+    }
+  }
+
+  private static final ClassValue<Boolean> USES_RECORDER = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      try {
+        return type.getMethod("getMessageLifecycleEvent").getDeclaringClass() == AdaptrisMessageImp.class;
+      }
+      catch (NoSuchMethodException e) {
+        return false;
+      }
+    }
+  };
 
   private transient Logger log = LoggerFactory.getLogger(AdaptrisMessage.class);
-  private transient Pattern normalResolver = Pattern.compile(RESOLVE_REGEXP);
-  private transient Pattern dotAllResolver = Pattern.compile(RESOLVE_REGEXP, Pattern.DOTALL);
 
   private IdGenerator guidGenerator;
   // persistent fields
   private String uniqueId;
-  private Set<MetadataElement> metadata;
+  private MetadataMap metadata;
   private String contentEncoding;
 
   // in memory only e.g. lost on send or persist
-  private MessageLifecycleEvent messageLifeCycle;
+  private MessageLifecycleRecorder lifecycle;
+  // The last sequence number we wrote to metadata; saves parsing it again, unless it has been changed.
+  private long mleSequence;
+  private String mleSequenceValue;
   private Map<Object, Object> objectMetadata;
   private String nextServiceId;
   private AdaptrisMessageFactory factory;
 
-  private enum Resolvers {
-    UniqueId {
-      @Override
-      String resolve(String key, AdaptrisMessage msg) {
-        if ("%uniqueId".equalsIgnoreCase(key)) {
-          return msg.getUniqueId();
-        }
-        return null;
-      }
-    },
-    Size {
-      @Override
-      String resolve(String key, AdaptrisMessage msg) {
-        if ("%size".equalsIgnoreCase(key)) {
-          return String.valueOf(msg.getSize());
-        }
-        return null;
-      }
-    },
-    Payload {
-      @Override
-      String resolve(String key, AdaptrisMessage msg) {
-        if ("%payload".equalsIgnoreCase(key)) {
-          return msg.getContent();
-        }
-        return null;
-      }
-    },
-    Metadata {
-      @Override
-      String resolve(String key, AdaptrisMessage msg) {
-        return msg.getMetadataValue(key);
-      }
-    };
-    abstract String resolve(String key, AdaptrisMessage msg);
-  }
-
   private AdaptrisMessageImp() {
 
   }
@@ -138,12 +116,10 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
   protected AdaptrisMessageImp(IdGenerator guid, AdaptrisMessageFactory fac) {
     this();
     factory = fac;
-    metadata = new HashSet<MetadataElement>();
+    metadata = new MetadataMap();
     objectMetadata = new HashMap<>();
     guidGenerator = guid;
-    messageLifeCycle = new MessageLifecycleEvent();
-    messageLifeCycle.setCreationTime(System.currentTimeMillis());
-    messageLifeCycle.setUniqueId(guidGenerator.create(messageLifeCycle));
+    lifecycle = new MessageLifecycleRecorder(guidGenerator);
     setUniqueId(guidGenerator.create(this));
     // setPayload(new byte[0]);
     nextServiceId = "";
@@ -169,7 +145,7 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
   /** @see AdaptrisMessage#headersContainsKey(String) */
   @Override
   public boolean headersContainsKey(String key) {
-    return metadata.contains(new MetadataElement(resolveKey(this, key), ""));
+    return metadata.containsKey(resolveKey(this, key));
   }
 
   @Override
@@ -186,23 +162,20 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
   @Override
   public synchronized void addMetadata(MetadataElement e) {
     e.setKey(resolveKey(this, e.getKey()));
-    if (metadata.contains(e)) {
-      removeMetadata(e);
-    }
-    metadata.add(e);
+    metadata.put(e.getKey(), e.getValue());
   }
 
   /** @see AdaptrisMessage#removeMetadata(MetadataElement) */
   @Override
-  public void removeMetadata(MetadataElement element) {
+  public synchronized void removeMetadata(MetadataElement element) {
     element.setKey(resolveKey(this, element.getKey()));
-    metadata.remove(element);
+    metadata.remove(element.getKey());
   }
 
   /** @see AdaptrisMessage#removeMessageHeader(String) */
   @Override
-  public void removeMessageHeader(String key) {
-    metadata.remove(new MetadataElement(resolveKey(this, key), ""));
+  public synchronized void removeMessageHeader(String key) {
+    metadata.remove(resolveKey(this, key));
   }
 
   @Override
@@ -221,10 +194,25 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
     }
   }
 
+  /**
+   * Share the metadata and content encoding of another message; the metadata is copied-on-write, so it is only copied when one
+   * of the messages changes it.
+   */
+  void shareMetadata(AdaptrisMessageImp other) {
+    MetadataMap shared;
+    synchronized (other) {
+      shared = other.metadata.copy();
+    }
+    synchronized (this) {
+      metadata = shared;
+    }
+    setContentEncoding(other.getContentEncoding());
+  }
+
   /** @see AdaptrisMessage#clearMetadata() */
   @Override
   public synchronized void clearMetadata() {
-    metadata = new HashSet<MetadataElement>();
+    metadata = new MetadataMap();
   }
 
   /** @see AdaptrisMessage#getMetadataValue(String) */
@@ -239,26 +227,38 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
   /** @see AdaptrisMessage#getMetadata(String) */
   @Override
   public MetadataElement getMetadata(String key) { // lgtm [java/unsynchronized-getter]
-    String resolved = resolveKey(this, key);
-
-    if (key != null && headersContainsKey(resolved)) {
-      return new MetadataElement(resolved, getValue(resolved));
+    if (key != null) {
+      String resolved = resolveKey(this, key);
+      String value = getValue(resolved);
+      if (value != null) {
+        return new MetadataElement(resolved, value);
+      }
     }
     return null;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * This is a snapshot of the metadata; modifying it does not change this message. The underlying storage is copy-on-write so
+   * creating it does not copy the metadata.
+   * </p>
+   */
   @Override
-  public Map<String, String> getMessageHeaders() {
-    Map<String, String> newSet = new HashMap<String, String>();
-    for (MetadataElement kp : metadata) {
-      newSet.put(kp.getKey(), kp.getValue());
-    }
-    return newSet;
+  public synchronized Map<String, String> getMessageHeaders() {
+    return metadata.asMap();
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The underlying storage is copy-on-write so creating the clone does not copy the metadata; modifying the returned set does not
+   * change this message.
+   * </p>
+   */
   @Override
-  public Set<MetadataElement> getMetadata() { // lgtm [java/unsynchronized-getter]
-    return new HashSet<MetadataElement>(metadata);
+  public synchronized Set<MetadataElement> getMetadata() {
+    return metadata.asSet();
   }
 
   @Override
@@ -269,7 +269,7 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
   @Override
   public void setUniqueId(String s) {
     uniqueId = s;
-    messageLifeCycle.setMessageUniqueId(getUniqueId());
+    lifecycle.setMessageUniqueId(getUniqueId());
   }
 
   @Override
@@ -293,36 +293,56 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
 
   @Override
   public void addEvent(MessageEventGenerator meg, boolean wasSuccessful) {
-    if (meg == null) {
-      messageLifeCycle.addMleMarker(getNextMleMarker(new MessageEventGenerator() {
-        @Override
-        public String createName() {
-          return "Unknown Event";
-        }
+    long seq = nextSequenceNumber();
+    mleSequence = seq;
+    mleSequenceValue = sequenceAsString(seq);
+    addMetadata(CoreConstants.MLE_SEQUENCE_KEY, mleSequenceValue);
+    lifecycle.record(meg, wasSuccessful, seq);
+  }
 
-        @Override
-        public String createQualifier() {
-          return "";
-        }
+  /**
+   * Returns this object's <code>MessageLifecycleEvent</code>.
+   * <p>
+   * The markers are recorded without creating the event, so the event (and its markers) is only built the first time this is
+   * called; prefer {@link #setLifecycleLocation(String, String)} if you only need to set the channel and workflow.
+   * </p>
+   *
+   * @see AdaptrisMessage#getMessageLifecycleEvent()
+   */
+  @Override
+  public MessageLifecycleEvent getMessageLifecycleEvent() {
+    return lifecycle.event();
+  }
 
-        @Override
-        public boolean isTrackingEndpoint() {
-          return false;
-        }
+  /**
+   * Set the channel and workflow on this message's {@link MessageLifecycleEvent} without building it.
+   *
+   * @param channelId the channel id.
+   * @param workflowId the workflow id.
+   * @since 3.10.2
+   */
+  public void setLifecycleLocation(String channelId, String workflowId) {
+    lifecycle.setLocation(channelId, workflowId);
+  }
 
-      }, wasSuccessful));
+  /**
+   * Copy (clones of) the {@link MleMarker}s from one message to another.
+   *
+   * @param src the source message.
+   * @param dest the destination message.
+   * @since 3.10.2
+   */
+  public static void copyMleMarkers(AdaptrisMessage src, AdaptrisMessage dest) throws CloneNotSupportedException {
+    if (usesRecorder(src) && usesRecorder(dest)) {
+      ((AdaptrisMessageImp) dest).lifecycle.appendAll(((AdaptrisMessageImp) src).lifecycle);
+      return;
     }
-    else {
-      messageLifeCycle.addMleMarker(getNextMleMarker(meg, wasSuccessful));
+    MessageLifecycleEvent mle = dest.getMessageLifecycleEvent();
+    for (MleMarker marker : src.getMessageLifecycleEvent().getMleMarkers()) {
+      mle.addMleMarker((MleMarker) marker.clone());
     }
   }
 
-  /** @see AdaptrisMessage#getMessageLifecycleEvent() */
-  @Override
-  public MessageLifecycleEvent getMessageLifecycleEvent() {
-    return messageLifeCycle;
-  }
-
   /** @see AdaptrisMessage#encode(AdaptrisMessageEncoder) */
   @Override
   public byte[] encode(AdaptrisMessageEncoder encoder) throws CoreException {
@@ -362,9 +382,9 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
   @Override
   public String toString(boolean includePayload, boolean includeEvents) {
     ToStringBuilder builder = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("uniqueId", getUniqueId())
-        .append("metadata", metadata);
+        .append("metadata", getMetadata());
     if (includeEvents) {
-      builder.append("message events", messageLifeCycle);
+      builder.append("message events", getMessageLifecycleEvent());
     }
     if (includePayload) {
       builder.append("payload", getPayloadForLogging());
@@ -394,57 +414,35 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
     if (s == null) {
       return null;
     }
-    // see if there are any external resolvers before processing any %message{...}'s
-    s = ExternalResolver.resolve(s, this);
-    return resolve(s, dotAll ? dotAllResolver : normalResolver);
-  }
-
-  private String resolve(String s, Pattern pattern) {
-    String result = s;
-    Matcher m = pattern.matcher(s);
-    while (m.matches()) {
-      String key = m.group(1);
-      String metadataValue = internalResolve(key);
-      // Optional<String> metadataValue = (Optional<String>) Optional.ofNullable(internalResolve(key));
-      if (metadataValue == null) {
-        throw new UnresolvedMetadataException("Could not resolve [" + key + "] as metadata/uniqueId/size/payload");
-      }
-      String toReplace = "%message{" + key + "}";
-      result = result.replace(toReplace, metadataValue);
-      // result = result.replace(toReplace, metadataValue
-      // .orElseThrow(() -> new UnresolvedMetadataException("Could not resolve [" + key + "] as metadata/uniqueId/size")));
-      m = pattern.matcher(result);
-    }
-    return result;
+    // any external resolvers are applied before processing any %message{...}'s
+    return MessageTemplate.compile(s, dotAll).render(this);
   }
 
-  private String internalResolve(String key) {
-    String value = null;
-    for (Resolvers r : Resolvers.values()) {
-      value = r.resolve(key, this);
-      if (value != null) {
-        break;
-      }
-    }
-    return value;
+  // Subclasses that override getMessageLifecycleEvent() don't necessarily use the recorder.
+  private static boolean usesRecorder(AdaptrisMessage msg) {
+    return msg instanceof AdaptrisMessageImp && USES_RECORDER.get(msg.getClass());
   }
 
-  private MleMarker getNextMleMarker(MessageEventGenerator meg, boolean successful) {
-    long seq = nextSequenceNumber();
-    this.addMetadata(CoreConstants.MLE_SEQUENCE_KEY, String.valueOf(seq));
-    MleMarker mleMarker = new MleMarker(meg, successful, seq, guidGenerator.create(meg));
-    return mleMarker;
+  private static String sequenceAsString(long seq) {
+    return seq >= 0 && seq < SEQUENCE_STRINGS.length ? SEQUENCE_STRINGS[(int) seq] : String.valueOf(seq);
   }
 
   private long nextSequenceNumber() {
-    int result = 0;
-    if (headersContainsKey(CoreConstants.MLE_SEQUENCE_KEY)) {
-      try {
-        result = Integer.parseInt(getMetadataValue(CoreConstants.MLE_SEQUENCE_KEY));
+    long result = 0;
+    String value = getMetadataValue(CoreConstants.MLE_SEQUENCE_KEY);
+    if (value != null) {
+      if (value == mleSequenceValue) {
+        // Still the value that we wrote.
+        result = mleSequence;
       }
-      catch (Exception e) {
-        log.warn("Failed to assign next lifecycle marker number, resetting");
-        result = 0;
+      else {
+        try {
+          result = Integer.parseInt(value);
+        }
+        catch (Exception e) {
+          log.warn("Failed to assign next lifecycle marker number, resetting");
+          result = 0;
+        }
       }
       result++;
     }
@@ -456,7 +454,7 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
     // This means that the message, at the time it is produced, is always 1
     // step out of sync, use the firstMleMarker to fix this state of affairs
     // when we read the message back.
-    if (messageLifeCycle.getMleMarkers().size() == 0) {
+    if (lifecycle.markerCount() == 0) {
       result++;
     }
     return result;
@@ -470,7 +468,7 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
     String result = getMetadataValue(key);
     if (result == null) {
       String resolvedKey = resolveKey(this, key);
-      for (MetadataElement e : metadata) {
+      for (Map.Entry<String, String> e : getMessageHeaders().entrySet()) {
         if (e.getKey().equalsIgnoreCase(resolvedKey)) {
           result = e.getValue();
           break;
@@ -484,12 +482,12 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
   @Override
   public Object clone() throws CloneNotSupportedException {
     AdaptrisMessage result = (AdaptrisMessage) super.clone();
+    // copy-on-write, so this is cheap until one of the messages changes its metadata.
+    synchronized (this) {
+      ((AdaptrisMessageImp) result).metadata = metadata.copy();
+    }
 
-    result.clearMetadata();
-    result.setMetadata(cloneMetadata());
-
-    MessageLifecycleEvent copy = getMessageLifecycleEvent().clone();
-    ((AdaptrisMessageImp) result).messageLifeCycle = copy;
+    ((AdaptrisMessageImp) result).lifecycle = lifecycle.copy();
 
     Map objMdCopy = new HashMap();
     objMdCopy.putAll(getObjectHeaders());
@@ -498,15 +496,6 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
     return result;
   }
 
-  private Set<MetadataElement> cloneMetadata() throws CloneNotSupportedException {
-    Set<MetadataElement> metadata = getMetadata();
-    Set<MetadataElement> result = new HashSet<MetadataElement>();
-    for (MetadataElement m : metadata) {
-      result.add((MetadataElement) m.clone());
-    }
-    return result;
-  }
-
   /**
    * Copy the payload from one AdaptrisMessage to another.
    *
@@ -524,12 +513,7 @@ public abstract class AdaptrisMessageImp implements AdaptrisMessage, Cloneable {
   }
 
   private String getValue(String key) {
-    for (MetadataElement e : metadata) {
-      if (e.getKey().equals(key)) {
-        return e.getValue();
-      }
-    }
-    return null;
+    return metadata.get(key);
   }
 
   private class ContentEncodingOnClose extends OutputStreamWriter {
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang3.BooleanUtils;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.util.ExceptionHelper;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * <p>
+ * Implementation of <code>AdaptrisMessageEncoder</code> that writes the <code>AdaptrisMessage</code> in a compact, length
+ * prefixed binary format.
+ * </p>
+ * <p>
+ * Unlike {@link MimeEncoder} there is nothing to parse; each field is preceded by its length. The encoded message consists of
+ * <ul>
+ * <li>A fixed preamble: a 4 byte magic number, a 1 byte format version, and the 4 byte length of the header block.</li>
+ * <li>The header block, containing the unique id, the content encoding, the metadata and (optionally) the
+ * {@link MleMarker}s. Strings are written once per message; if the same string occurs again (e.g. as both a metadata key and a
+ * value, or in a number of markers) then only a reference to the first occurrence is written.</li>
+ * <li>The 8 byte length of the payload, followed by the payload itself.</li>
+ * </ul>
+ * The payload is copied directly from {@link AdaptrisMessage#getInputStream()} when encoding and to
+ * {@link AdaptrisMessage#getOutputStream()} when decoding, so it is never buffered by the encoder. Since every section is
+ * length-prefixed, nothing beyond the end of the message is read from the source stream; several messages may be written to the
+ * same stream one after the other.
+ * </p>
+ * <p>
+ * Fields added to the header block in future are appended to the end of it, and ignored by older versions; the format version is
+ * only changed for incompatible changes, and versions that are not understood are rejected.
+ * </p>
+ * 
+ * @config binary-message-encoder
+ * @since 3.10.2
+ */
+@XStreamAlias("binary-message-encoder")
+@DisplayOrder(order = {"retainUniqueId", "includeMleMarkers"})
+public class BinaryMessageEncoder extends AdaptrisMessageEncoderImp {
+
+  static final int MAGIC = 0x41444D42; // ADMB
+  static final int VERSION = 1;
+  // magic + version + header size
+  private static final int PREAMBLE_SIZE = 9;
+  // Defensive limit; the header block is always held in memory.
+  private static final int MAX_HEADER_SIZE = 64 * 1024 * 1024;
+
+  private static final int FLAG_SUCCESS = 1;
+  private static final int FLAG_TRACKING_ENDPOINT = 1 << 1;
+  private static final int FLAG_CONFIRMATION = 1 << 2;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean retainUniqueId;
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean includeMleMarkers;
+
+  public BinaryMessageEncoder() {
+    super();
+  }
+
+  public BinaryMessageEncoder(Boolean retainUniqueId, Boolean includeMleMarkers) {
+    this();
+    setRetainUniqueId(retainUniqueId);
+    setIncludeMleMarkers(includeMleMarkers);
+  }
+
+  @Override
+  public void writeMessage(AdaptrisMessage msg, Object target) throws CoreException {
+    try {
+      if (!(target instanceof OutputStream)) {
+        throw new IllegalArgumentException("BinaryMessageEncoder can only encode to an OutputStream");
+      }
+      OutputStream out = (OutputStream) target;
+      HeaderWriter header = new HeaderWriter();
+      header.writeString(msg.getUniqueId());
+      header.writeString(msg.getContentEncoding());
+      Set<MetadataElement> metadata = msg.getMetadata();
+      header.writeVarInt(metadata.size());
+      for (MetadataElement e : metadata) {
+        header.writeString(e.getKey());
+        header.writeString(e.getValue());
+      }
+      List<MleMarker> markers = includeMleMarkers() ? msg.getMessageLifecycleEvent().getMleMarkers() : new ArrayList<>();
+      header.writeVarInt(markers.size());
+      for (MleMarker m : markers) {
+        header.writeString(m.getUniqueId());
+        header.writeString(m.getName());
+        header.writeString(m.getQualifier());
+        header.writeString(m.getConfirmationId());
+        header.write((m.getWasSuccessful() ? FLAG_SUCCESS : 0) | (m.getIsTrackingEndpoint() ? FLAG_TRACKING_ENDPOINT : 0)
+            | (m.getIsConfirmation() ? FLAG_CONFIRMATION : 0));
+        header.writeLong(m.getSequenceNumber());
+        header.writeLong(m.getCreationTime());
+      }
+      header.flush();
+
+      long size = msg.getSize();
+      out.write(ByteBuffer.allocate(PREAMBLE_SIZE).putInt(MAGIC).put((byte) VERSION).putInt(header.size()).array());
+      header.writeTo(out);
+      out.write(ByteBuffer.allocate(Long.BYTES).putLong(size).array());
+      try (InputStream in = msg.getInputStream()) {
+        long copied = IOUtils.copyLarge(in, out);
+        if (copied != size) {
+          throw new IOException("Payload size changed while encoding; expected " + size + " bytes, got " + copied);
+        }
+      }
+      out.flush();
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  @Override
+  public AdaptrisMessage readMessage(Object source) throws CoreException {
+    AdaptrisMessage msg = null;
+    try {
+      if (!(source instanceof InputStream)) {
+        throw new IllegalArgumentException("BinaryMessageEncoder can only decode from an InputStream");
+      }
+      DataInputStream in = new DataInputStream((InputStream) source);
+      ByteBuffer preamble = readFully(in, PREAMBLE_SIZE);
+      if (preamble.getInt() != MAGIC) {
+        throw new IOException("Not a binary encoded message");
+      }
+      int version = preamble.get() & 0xFF;
+      if (version != VERSION) {
+        throw new IOException("Unsupported binary message version " + version);
+      }
+      int headerSize = preamble.getInt();
+      if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+        throw new IOException("Invalid header size " + headerSize);
+      }
+      msg = currentMessageFactory().newMessage();
+      readHeader(new HeaderReader(readFully(in, headerSize)), msg);
+      long size = readFully(in, Long.BYTES).getLong();
+      if (size < 0) {
+        throw new IOException("Invalid payload size " + size);
+      }
+      BoundedInputStream payload = new BoundedInputStream(in, size);
+      try (OutputStream out = msg.getOutputStream()) {
+        if (IOUtils.copyLarge(payload, out) != size) {
+          throw new EOFException("Payload truncated; expected " + size + " bytes");
+        }
+      }
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+    return msg;
+  }
+
+  // Read in one go, so that an unbuffered source isn't read a byte at a time.
+  private static ByteBuffer readFully(DataInputStream in, int size) throws IOException {
+    byte[] bytes = new byte[size];
+    in.readFully(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private void readHeader(HeaderReader header, AdaptrisMessage msg) throws IOException {
+    try {
+      String uniqueId = header.readString();
+      if (retainUniqueId()) {
+        msg.setUniqueId(uniqueId);
+      }
+      msg.setContentEncoding(header.readString());
+      int count = header.readVarInt();
+      Set<MetadataElement> metadata = new LinkedHashSet<>();
+      for (int i = 0; i < count; i++) {
+        metadata.add(new MetadataElement(header.readString(), header.readString()));
+      }
+      msg.setMetadata(metadata);
+      count = header.readVarInt();
+      for (int i = 0; i < count; i++) {
+        MleMarker m = new MleMarker();
+        m.setUniqueId(header.readString());
+        m.setName(header.readString());
+        m.setQualifier(header.readString());
+        m.setConfirmationId(header.readString());
+        int flags = header.readByte();
+        m.setWasSuccessful((flags & FLAG_SUCCESS) != 0);
+        m.setIsTrackingEndpoint((flags & FLAG_TRACKING_ENDPOINT) != 0);
+        m.setIsConfirmation((flags & FLAG_CONFIRMATION) != 0);
+        m.setSequenceNumber(header.readLong());
+        m.setCreationTime(header.readLong());
+        msg.getMessageLifecycleEvent().addMleMarker(m);
+      }
+      // Anything left over was added by a later version, and can be ignored.
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("Header is corrupt", e);
+    }
+  }
+
+  public Boolean getRetainUniqueId() {
+    return retainUniqueId;
+  }
+
+  /**
+   * Whether or not to retain the unique id of the message when decoding.
+   * 
+   * @param b true to retain the unique id, default is false.
+   */
+  public void setRetainUniqueId(Boolean b) {
+    retainUniqueId = b;
+  }
+
+  boolean retainUniqueId() {
+    return BooleanUtils.toBooleanDefaultIfNull(getRetainUniqueId(), false);
+  }
+
+  public Boolean getIncludeMleMarkers() {
+    return includeMleMarkers;
+  }
+
+  /**
+   * Whether or not to include the {@link MleMarker}s from the message's {@link MessageLifecycleEvent} when encoding.
+   * <p>
+   * Any markers that are present are always added to the message when decoding.
+   * </p>
+   * 
+   * @param b true to include the markers, default is false.
+   */
+  public void setIncludeMleMarkers(Boolean b) {
+    includeMleMarkers = b;
+  }
+
+  boolean includeMleMarkers() {
+    return BooleanUtils.toBooleanDefaultIfNull(getIncludeMleMarkers(), false);
+  }
+
+  // Strings are written as a varint, which is either (index << 1 | 1) of a string already written, or (length + 1) << 1 for a
+  // new string followed by its UTF-8 bytes; 0 is null.
+  private static class HeaderWriter extends DataOutputStream {
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    HeaderWriter() {
+      super(new ByteArrayOutputStream(1024));
+    }
+
+    void writeString(String s) throws IOException {
+      if (s == null) {
+        writeVarInt(0);
+        return;
+      }
+      Integer ref = strings.get(s);
+      if (ref != null) {
+        writeVarInt(ref << 1 | 1);
+        return;
+      }
+      strings.put(s, strings.size());
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeVarInt((bytes.length + 1) << 1);
+      write(bytes);
+    }
+
+    void writeVarInt(int value) throws IOException {
+      while ((value & ~0x7F) != 0) {
+        write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      write(value);
+    }
+
+    void writeTo(OutputStream target) throws IOException {
+      ((ByteArrayOutputStream) out).writeTo(target);
+    }
+  }
+
+  private static class HeaderReader {
+    private final ByteBuffer buffer;
+    private final List<String> strings = new ArrayList<>();
+
+    HeaderReader(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    String readString() {
+      int value = readVarInt();
+      if (value == 0) {
+        return null;
+      }
+      if ((value & 1) != 0) {
+        return strings.get(value >>> 1);
+      }
+      int length = (value >>> 1) - 1;
+      if (length > buffer.remaining()) {
+        throw new BufferUnderflowException();
+      }
+      String s = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+      strings.add(s);
+      return s;
+    }
+
+    int readVarInt() {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int b = buffer.get();
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint");
+    }
+
+    int readByte() {
+      return buffer.get() & 0xFF;
+    }
+
+    long readLong() {
+      return buffer.getLong();
+    }
+  }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import org.apache.commons.lang3.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.NumberUtils;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Bounds the number of messages that a {@link PoolingWorkflow} will accept but not yet have processed.
+ * <p>
+ * Without a bounded work queue, the consumer thread in a {@link PoolingWorkflow} will wait for a worker to become available before
+ * handing over the message. When configured, up to {@link #getCapacity()} messages can be waiting for a worker; once that
+ * capacity is exhausted then the configured {@link OverflowPolicy} is applied.
+ * </p>
+ * <ul>
+ * <li>{@link OverflowPolicy#BLOCK} - the consumer thread blocks until there is space in the queue (or {@link #getMaxWaitTime()}
+ * expires in which case the message is rejected).</li>
+ * <li>{@link OverflowPolicy#REJECT} - the message is immediately handed to the configured {@link ProcessingExceptionHandler}.
+ * </li>
+ * <li>{@link OverflowPolicy#SPILL} - the message is written to {@link #getSpillDirectory()} using the configured
+ * {@link #getSpillEncoder()} and read back when there is space in the queue. Object metadata remains in memory, but the payload and
+ * metadata do not. If a spilled message cannot be read back, then it is renamed with a {@code .failed} suffix and left on
+ * disk.</li>
+ * </ul>
+ * <p>
+ * When the workflow is stopped, messages that are still queued or spilled are passed to the
+ * {@link ProcessingExceptionHandler}. Spill files are not reloaded when the workflow is restarted; if the JVM terminates
+ * without the workflow being stopped, then any spill files are left in the spill directory and those messages are lost (the
+ * source has already been acknowledged). Configure a dedicated {@link #setSpillDirectory(String)} if you need to recover them
+ * manually.
+ * </p>
+ * <p>
+ * Queue depth, wait times, and the number of rejected/spilled messages are available via JMX as a child of the
+ * {@link com.adaptris.core.runtime.WorkflowManager}.
+ * </p>
+ *
+ * @config pooling-workflow-bounded-work-queue
+ * @see PoolingWorkflow#setBoundedWorkQueue(BoundedWorkQueue)
+ * @since 3.10.2
+ */
+@XStreamAlias("pooling-workflow-bounded-work-queue")
+@DisplayOrder(order = {"capacity", "overflowPolicy", "maxWaitTime", "spillDirectory", "spillEncoder"})
+public class BoundedWorkQueue {
+
+  /**
+   * What to do when the queue is full.
+   *
+   */
+  public enum OverflowPolicy {
+    /**
+     * Block the consumer thread until there is space.
+     */
+    BLOCK,
+    /**
+     * Reject the message, passing it to the configured {@link ProcessingExceptionHandler}.
+     */
+    REJECT,
+    /**
+     * Write the message to disk, and process it when there is space.
+     */
+    SPILL;
+  }
+
+  /**
+   * The default capacity of the queue.
+   */
+  public static final int DEFAULT_CAPACITY = 100;
+
+  private static final String SPILL_FILE_SUFFIX = ".spill";
+  private static final String FAILED_FILE_SUFFIX = ".failed";
+
+  private transient Logger log = LoggerFactory.getLogger(this.getClass());
+
+  @InputFieldDefault(value = "100")
+  @Min(0)
+  private Integer capacity;
+  @InputFieldDefault(value = "BLOCK")
+  private OverflowPolicy overflowPolicy;
+  @AdvancedConfig
+  @Valid
+  @InputFieldDefault(value = "forever")
+  private TimeInterval maxWaitTime;
+  @AdvancedConfig
+  @InputFieldDefault(value = "System.getProperty(java.io.tmpdir)")
+  private String spillDirectory;
+  @AdvancedConfig
+  @Valid
+  @InputFieldDefault(value = "mime-encoder, retaining the unique-id")
+  private AdaptrisMessageEncoder spillEncoder;
+
+  private transient Semaphore permits;
+  private transient Queue<SpilledMessage> spilled = new ConcurrentLinkedQueue<>();
+  private transient AtomicLong rejectedCount = new AtomicLong(0);
+  private transient AtomicLong spilledCount = new AtomicLong(0);
+  private transient AtomicLong waitCount = new AtomicLong(0);
+  private transient AtomicLong totalWaitNanos = new AtomicLong(0);
+  private transient AtomicLong maxWaitNanos = new AtomicLong(0);
+
+  public BoundedWorkQueue() {
+  }
+
+  public BoundedWorkQueue(Integer capacity, OverflowPolicy policy) {
+    this();
+    setCapacity(capacity);
+    setOverflowPolicy(policy);
+  }
+
+  /**
+   * Initialise the queue.
+   *
+   * @param workers the number of workers that will be servicing the queue; each worker also holds a permit.
+   */
+  void init(int workers) {
+    permits = new Semaphore(workers + capacity(), true);
+    spilled = new ConcurrentLinkedQueue<>();
+    rejectedCount = new AtomicLong(0);
+    spilledCount = new AtomicLong(0);
+    waitCount = new AtomicLong(0);
+    totalWaitNanos = new AtomicLong(0);
+    maxWaitNanos = new AtomicLong(0);
+  }
+
+  /**
+   * Admit a message to the queue, applying the overflow policy if required.
+   *
+   * @param msg the message.
+   * @return true if the message was admitted and should be submitted for processing, false if it was spilled to disk.
+   * @throws CoreException if the message was rejected.
+   */
+  boolean admit(AdaptrisMessage msg) throws CoreException {
+    switch (overflowPolicy()) {
+      case REJECT:
+        if (!permits.tryAcquire()) {
+          throw reject(msg);
+        }
+        return true;
+      case SPILL:
+        // If we have already spilled messages, then this one goes after them.
+        if (spilled.isEmpty() && permits.tryAcquire()) {
+          return true;
+        }
+        spill(msg);
+        return false;
+      case BLOCK:
+      default:
+        return block(msg);
+    }
+  }
+
+  /**
+   * Release the permit held by a message that has finished processing.
+   */
+  void release() {
+    permits.release();
+  }
+
+  /**
+   * Read back the oldest spilled message if there is space in the queue.
+   * <p>
+   * If a message is returned, then it already holds a permit and should be submitted for processing.
+   * </p>
+   *
+   * @return a message, or null if there were no spilled messages or the queue is full.
+   */
+  AdaptrisMessage unspill() {
+    while (!spilled.isEmpty() && permits.tryAcquire()) {
+      SpilledMessage s = spilled.poll();
+      if (s == null) {
+        permits.release();
+        break;
+      }
+      try {
+        return s.restore();
+      } catch (Exception e) {
+        permits.release();
+        s.failed(e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read back a spilled message regardless of whether there is space in the queue.
+   *
+   * @return a message, or null if there are no more spilled messages.
+   */
+  AdaptrisMessage drain() {
+    SpilledMessage s = null;
+    while ((s = spilled.poll()) != null) {
+      try {
+        return s.restore();
+      } catch (Exception e) {
+        s.failed(e);
+      }
+    }
+    return null;
+  }
+
+  private boolean block(AdaptrisMessage msg) throws CoreException {
+    long start = System.nanoTime();
+    boolean acquired = false;
+    try {
+      if (getMaxWaitTime() == null) {
+        permits.acquire();
+        acquired = true;
+      } else {
+        acquired = permits.tryAcquire(getMaxWaitTime().toMilliseconds(), TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw ExceptionHelper.wrapCoreException(e);
+    } finally {
+      recordWait(System.nanoTime() - start);
+    }
+    if (!acquired) {
+      throw reject(msg);
+    }
+    return true;
+  }
+
+  private void recordWait(long nanos) {
+    waitCount.incrementAndGet();
+    totalWaitNanos.addAndGet(nanos);
+    maxWaitNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  private CoreException reject(AdaptrisMessage msg) {
+    rejectedCount.incrementAndGet();
+    return new CoreException("Work queue full (capacity=" + capacity() + "), rejecting " + msg.getUniqueId());
+  }
+
+  private void spill(AdaptrisMessage msg) throws CoreException {
+    try {
+      File dir = spillDirectory();
+      dir.mkdirs();
+      File f = File.createTempFile(msg.getUniqueId() + "-", SPILL_FILE_SUFFIX, dir);
+      try (OutputStream out = Files.newOutputStream(f.toPath())) {
+        spillEncoder().writeMessage(msg, out);
+      }
+      spilled.add(new SpilledMessage(f, msg));
+      spilledCount.incrementAndGet();
+      log.trace("[{}] spilled to [{}]", msg.getUniqueId(), f);
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  /**
+   * @return the number of messages currently spilled to disk.
+   */
+  public int currentSpilledCount() {
+    return spilled.size();
+  }
+
+  /**
+   * @return the total number of messages that have been rejected since the queue was initialised.
+   */
+  public long totalRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * @return the total number of messages that have been spilled since the queue was initialised.
+   */
+  public long totalSpilledCount() {
+    return spilledCount.get();
+  }
+
+  /**
+   * @return the average time in milliseconds that a consumer waited for space in the queue.
+   */
+  public long averageWaitTimeMs() {
+    long count = waitCount.get();
+    return count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count) : 0;
+  }
+
+  /**
+   * @return the longest time in milliseconds that a consumer waited for space in the queue.
+   */
+  public long maxWaitTimeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+  }
+
+  public Integer getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Set the number of messages that can be waiting for a worker.
+   *
+   * @param i the capacity, default is 100 if not specified.
+   */
+  public void setCapacity(Integer i) {
+    this.capacity = i;
+  }
+
+  public int capacity() {
+    return NumberUtils.toIntDefaultIfNull(getCapacity(), DEFAULT_CAPACITY);
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Set what happens when the queue is full.
+   *
+   * @param p the policy, default is {@link OverflowPolicy#BLOCK} if not specified.
+   */
+  public void setOverflowPolicy(OverflowPolicy p) {
+    this.overflowPolicy = p;
+  }
+
+  public OverflowPolicy overflowPolicy() {
+    return ObjectUtils.defaultIfNull(getOverflowPolicy(), OverflowPolicy.BLOCK);
+  }
+
+  public TimeInterval getMaxWaitTime() {
+    return maxWaitTime;
+  }
+
+  /**
+   * Set the maximum amount of time to wait for space when the policy is {@link OverflowPolicy#BLOCK}.
+   *
+   * @param t the max wait time, if not specified then wait forever; if the wait time is exceeded the message is rejected.
+   */
+  public void setMaxWaitTime(TimeInterval t) {
+    this.maxWaitTime = t;
+  }
+
+  public String getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  /**
+   * Set the directory where messages are written when the policy is {@link OverflowPolicy#SPILL}.
+   *
+   * @param s the directory, defaults to {@code java.io.tmpdir} if not specified.
+   */
+  public void setSpillDirectory(String s) {
+    this.spillDirectory = s;
+  }
+
+  File spillDirectory() {
+    return new File(ObjectUtils.defaultIfNull(getSpillDirectory(), System.getProperty("java.io.tmpdir")));
+  }
+
+  public AdaptrisMessageEncoder getSpillEncoder() {
+    return spillEncoder;
+  }
+
+  /**
+   * Set the encoder used to write messages to disk when the policy is {@link OverflowPolicy#SPILL}.
+   *
+   * @param e the encoder, defaults to a {@link MimeEncoder} that retains the unique-id.
+   */
+  public void setSpillEncoder(AdaptrisMessageEncoder e) {
+    this.spillEncoder = e;
+  }
+
+  AdaptrisMessageEncoder spillEncoder() {
+    return ObjectUtils.defaultIfNull(getSpillEncoder(), new MimeEncoder(true, null, null));
+  }
+
+  private class SpilledMessage {
+    private File file;
+    private AdaptrisMessageFactory factory;
+    private Map<Object, Object> objectHeaders;
+
+    SpilledMessage(File f, AdaptrisMessage msg) {
+      file = f;
+      factory = msg.getFactory();
+      objectHeaders = new HashMap<>(msg.getObjectHeaders());
+    }
+
+    AdaptrisMessage restore() throws Exception {
+      AdaptrisMessageEncoder encoder = spillEncoder();
+      AdaptrisMessage msg = null;
+      // A configured encoder is shared, so the factory must not change between registering it and reading.
+      synchronized (encoder) {
+        encoder.registerMessageFactory(factory);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+          msg = encoder.readMessage(in);
+        }
+      }
+      for (Map.Entry<Object, Object> e : objectHeaders.entrySet()) {
+        msg.addObjectHeader(e.getKey(), e.getValue());
+      }
+      Files.deleteIfExists(file.toPath());
+      return msg;
+    }
+
+    // Rename the file so that it isn't mistaken for a message that is still waiting to be processed.
+    void failed(Exception e) {
+      File failed = new File(file.getParentFile(), file.getName() + FAILED_FILE_SUFFIX);
+      if (file.renameTo(failed)) {
+        log.error("Failed to read spilled message from [{}], moved to [{}]", file, failed, e);
+      } else {
+        log.error("Failed to read spilled message from [{}], it remains on disk", file, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import static com.adaptris.core.runtime.AdapterComponentMBean.JMX_WORK_QUEUE_MONITOR_TYPE;
+
+import com.adaptris.core.runtime.ChildRuntimeInfoComponentImpl;
+import com.adaptris.core.runtime.ParentRuntimeInfoComponent;
+import com.adaptris.core.runtime.WorkflowManager;
+
+public class BoundedWorkQueueMonitor extends ChildRuntimeInfoComponentImpl implements BoundedWorkQueueMonitorMBean {
+
+  private transient WorkflowManager parent;
+  private transient PoolingWorkflow wrappedComponent;
+
+  private BoundedWorkQueueMonitor() {
+    super();
+  }
+
+  BoundedWorkQueueMonitor(WorkflowManager owner, PoolingWorkflow workflow) {
+    this();
+    parent = owner;
+    wrappedComponent = workflow;
+  }
+
+  @Override
+  protected String getType() {
+    return JMX_WORK_QUEUE_MONITOR_TYPE;
+  }
+
+  @Override
+  protected String uniqueId() {
+    return wrappedComponent.getUniqueId();
+  }
+
+  @Override
+  public ParentRuntimeInfoComponent getParentRuntimeInfoComponent() {
+    return parent;
+  }
+
+  @Override
+  public int getCapacity() {
+    return queue().capacity();
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return wrappedComponent.currentQueueDepth();
+  }
+
+  @Override
+  public int getSpilledCount() {
+    return queue().currentSpilledCount();
+  }
+
+  @Override
+  public long getTotalSpilledCount() {
+    return queue().totalSpilledCount();
+  }
+
+  @Override
+  public long getTotalRejectedCount() {
+    return queue().totalRejectedCount();
+  }
+
+  @Override
+  public long getAverageWaitTimeMs() {
+    return queue().averageWaitTimeMs();
+  }
+
+  @Override
+  public long getMaxWaitTimeMs() {
+    return queue().maxWaitTimeMs();
+  }
+
+  private BoundedWorkQueue queue() {
+    return wrappedComponent.getBoundedWorkQueue();
+  }
+}
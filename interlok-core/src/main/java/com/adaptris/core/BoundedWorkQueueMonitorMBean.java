@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import com.adaptris.core.runtime.ChildRuntimeInfoComponentMBean;
+
+/**
+ * Management bean interface for the {@link BoundedWorkQueue} associated with a {@link PoolingWorkflow}.
+ *
+ * @since 3.10.2
+ */
+public interface BoundedWorkQueueMonitorMBean extends ChildRuntimeInfoComponentMBean {
+
+  /**
+   * Get the configured capacity of the queue.
+   *
+   */
+  int getCapacity();
+
+  /**
+   * Get the number of messages waiting for a worker.
+   *
+   * @see PoolingWorkflow#currentQueueDepth()
+   */
+  int getQueueDepth();
+
+  /**
+   * Get the number of messages currently spilled to disk.
+   *
+   */
+  int getSpilledCount();
+
+  /**
+   * Get the total number of messages spilled to disk since the workflow was last started.
+   *
+   */
+  long getTotalSpilledCount();
+
+  /**
+   * Get the total number of messages rejected since the workflow was last started.
+   *
+   */
+  long getTotalRejectedCount();
+
+  /**
+   * Get the average time (in milliseconds) the consumer has waited for space in the queue.
+   *
+   */
+  long getAverageWaitTimeMs();
+
+  /**
+   * Get the longest time (in milliseconds) the consumer has waited for space in the queue.
+   *
+   */
+  long getMaxWaitTimeMs();
+}
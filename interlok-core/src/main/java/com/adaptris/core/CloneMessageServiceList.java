@@ -51,6 +51,10 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * If there are services configured after this {@linkplain ServiceCollection} implementation then they will process the message in
  * its original form.
  * </p>
+ * <p>
+ * Creating each clone is cheap for messages created by {@link DefaultMessageFactory}; the clone shares the payload and metadata of
+ * the original message, and they are only copied if the service modifies them.
+ * </p>
  * 
  * @config clone-message-service-list
  * 
@@ -19,11 +19,10 @@ package com.adaptris.core;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -33,13 +32,24 @@ import com.adaptris.util.IdGenerator;
 
 /**
  * {@link com.adaptris.core.AdaptrisMessage} implementation created by {@link DefaultMessageFactory}
+ * <p>
+ * The payload is held as a {@code byte[]} which is never modified in place; it is replaced by {@link #setPayload(byte[])},
+ * {@link #setContent(String, String)} or by closing the stream returned by {@link #getOutputStream()}. This means that a message
+ * and its clones share the same payload until one of them is changed, and that {@link #getPayloadBuffer()},
+ * {@link #getInputStream()} and {@link #getContent()} do not need to copy it. {@link #getPayload()} still returns a copy, since
+ * the caller may change it.
+ * </p>
  *
  * @author lchan
  * @author $Author: lchan $
  */
 public class DefaultAdaptrisMessageImp extends AdaptrisMessageImp {
 
+  private static final byte[] EMPTY = new byte[0];
+
+  // payload may be larger than payloadLength if it was handed over from a PayloadOutputStream.
   private byte[] payload;
+  private int payloadLength;
 
   protected DefaultAdaptrisMessageImp(IdGenerator guid, AdaptrisMessageFactory fac) throws RuntimeException {
     super(guid, fac);
@@ -54,7 +64,7 @@ public class DefaultAdaptrisMessageImp extends AdaptrisMessageImp {
     boolean result = false;
 
     if (StringUtils.equals(getUniqueId(), other.getUniqueId())) {
-      if (Arrays.equals(getPayload(), other.getPayload())) {
+      if (getPayloadBuffer().equals(other.getPayloadBuffer())) {
         if (StringUtils.equals(getContentEncoding(), other.getContentEncoding())) {
           if (this.getMetadata().equals(other.getMetadata())) {
             result = true;
@@ -68,25 +78,28 @@ public class DefaultAdaptrisMessageImp extends AdaptrisMessageImp {
   /** @see AdaptrisMessage#setPayload(byte[]) */
   @Override
   public void setPayload(byte[] bytes) {
-    if (bytes == null) {
-      payload = new byte[0];
-    }
-    else {
-      payload = bytes;
-    }
+    setPayload(bytes != null ? bytes : EMPTY, bytes != null ? bytes.length : 0);
+  }
+
+  private void setPayload(byte[] bytes, int length) {
+    payload = bytes;
+    payloadLength = length;
   }
 
   /** @see AdaptrisMessage#getPayload() */
   @Override
   public byte[] getPayload() {
-    byte[] result = null;
-
-    if (payload != null) {
-      result = new byte[payload.length];
-      System.arraycopy(payload, 0, result, 0, payload.length);
-    }
+    return Arrays.copyOf(payload, payloadLength);
+  }
 
-    return result;
+  /**
+   * Returns a read-only view of the payload without copying it.
+   *
+   * @see AdaptrisMessage#getPayloadBuffer()
+   */
+  @Override
+  public ByteBuffer getPayloadBuffer() {
+    return ByteBuffer.wrap(payload, 0, payloadLength).slice().asReadOnlyBuffer();
   }
 
   /**
@@ -95,7 +108,7 @@ public class DefaultAdaptrisMessageImp extends AdaptrisMessageImp {
    */
   @Override
   public long getSize() {
-    return payload != null ? payload.length : 0;
+    return payloadLength;
   }
 
   /** @see AdaptrisMessage#setContent(String, String) */
@@ -104,11 +117,11 @@ public class DefaultAdaptrisMessageImp extends AdaptrisMessageImp {
     if (payloadString != null) {
         Charset charset =
             Charset.forName(StringUtils.defaultIfBlank(charEnc, Charset.defaultCharset().name()));
-        payload = payloadString.getBytes(charset);
+        setPayload(payloadString.getBytes(charset));
         setContentEncoding(charEnc);
     }
     else {
-      payload = new byte[0];
+      setPayload(EMPTY);
       setContentEncoding(charEnc);
     }
   }
@@ -116,31 +129,31 @@ public class DefaultAdaptrisMessageImp extends AdaptrisMessageImp {
   /** @see AdaptrisMessage#getContent() */
   @Override
   public String getContent() {
-    if (payload != null) {
-      if (isEmpty(getContentEncoding())) {
-        return new String(payload);
-      }
-      else {
-        return new String(payload, Charset.forName(getContentEncoding()));
-      }
+    if (isEmpty(getContentEncoding())) {
+      return new String(payload, 0, payloadLength, Charset.defaultCharset());
     }
-    return null;
+    return new String(payload, 0, payloadLength, Charset.forName(getContentEncoding()));
   }
 
   /** @see Object#clone() */
   @Override
   public Object clone() throws CloneNotSupportedException {
-    DefaultAdaptrisMessageImp result = (DefaultAdaptrisMessageImp) super.clone();
-    // clone the payload.
-    try {
-      byte[] newPayload = new byte[payload.length];
-      System.arraycopy(payload, 0, newPayload, 0, payload.length);
-      result.setPayload(newPayload);
-    }
-    catch (Exception e) {
-      throw new RuntimeException(e);
-    }
-    return result;
+    // The payload is never modified in place, so the clone can share it.
+    return super.clone();
+  }
+
+  /**
+   * Make this message a branch of the parent.
+   * <p>
+   * The payload is never modified in place, and the metadata is copy-on-write, so they are shared with the parent until either
+   * of them is modified.
+   * </p>
+   *
+   * @see DefaultMessageFactory#newBranch(AdaptrisMessage)
+   */
+  void branchFrom(DefaultAdaptrisMessageImp parent) {
+    shareMetadata(parent);
+    setPayload(parent.payload, parent.payloadLength);
   }
 
   /**
@@ -149,7 +162,7 @@ public class DefaultAdaptrisMessageImp extends AdaptrisMessageImp {
    */
   @Override
   public InputStream getInputStream() throws IOException {
-    return payload != null ? new ByteArrayInputStream(payload) : new ByteArrayInputStream(new byte[0]);
+    return new ByteArrayInputStream(payload, 0, payloadLength);
   }
 
   /**
@@ -158,18 +171,55 @@ public class DefaultAdaptrisMessageImp extends AdaptrisMessageImp {
    */
   @Override
   public OutputStream getOutputStream() throws IOException {
-    return new ByteFilterStream(new ByteArrayOutputStream());
+    return new PayloadOutputStream();
   }
 
-  private class ByteFilterStream extends FilterOutputStream {
-    ByteFilterStream(OutputStream out) {
-      super(out);
+  /**
+   * Growable output stream that hands its buffer to the message when it is closed, rather than copying it.
+   * <p>
+   * If there are any more writes after it has been closed, then the buffer is copied first so that the message payload is not
+   * affected (until it is closed again).
+   * </p>
+   */
+  private class PayloadOutputStream extends OutputStream {
+    private static final int INITIAL_SIZE = 256;
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int count;
+    private boolean handedOver;
+
+    @Override
+    public void write(int b) {
+      ensureCapacity(count + 1);
+      buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new IndexOutOfBoundsException();
+      }
+      ensureCapacity(count + len);
+      System.arraycopy(b, off, buf, count, len);
+      count += len;
     }
 
     @Override
     public void close() throws IOException {
-      super.close();
-      payload = ((ByteArrayOutputStream) super.out).toByteArray();
+      handedOver = true;
+      setPayload(buf, count);
+    }
+
+    private void ensureCapacity(int required) {
+      if (required < 0) {
+        throw new OutOfMemoryError();
+      }
+      if (required > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(required, (int) Math.min(Integer.MAX_VALUE - 8, buf.length * 2L)));
+      }
+      else if (handedOver) {
+        buf = buf.clone();
+      }
+      handedOver = false;
     }
   }
 
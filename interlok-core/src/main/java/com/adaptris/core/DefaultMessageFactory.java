@@ -18,10 +18,10 @@ package com.adaptris.core;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Set;
 
 import com.adaptris.annotation.DisplayOrder;
@@ -110,13 +110,7 @@ public class DefaultMessageFactory extends AdaptrisMessageFactory {
         }
       }
     }
-    MessageLifecycleEvent mle = result.getMessageLifecycleEvent();
-    List<MleMarker> markers = source.getMessageLifecycleEvent().getMleMarkers();
-
-    for (int i = 0; i < markers.size(); i++) {
-      MleMarker marker = (MleMarker) ((MleMarker) markers.get(i)).clone();
-      mle.addMleMarker(marker);
-    }
+    AdaptrisMessageImp.copyMleMarkers(source, result);
     result.getObjectHeaders().putAll(source.getObjectHeaders());
     return result;
   }
@@ -130,6 +124,24 @@ public class DefaultMessageFactory extends AdaptrisMessageFactory {
     return m;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If both the parent and the new message are plain {@link DefaultAdaptrisMessageImp} instances then the branch shares the payload
+   * and metadata of the parent until either of them is modified; subclasses may override how the payload is accessed, so they
+   * are always copied.
+   * </p>
+   */
+  @Override
+  public AdaptrisMessage newBranch(AdaptrisMessage parent) throws IOException {
+    AdaptrisMessage result = newMessage();
+    if (parent.getClass() == DefaultAdaptrisMessageImp.class && result.getClass() == DefaultAdaptrisMessageImp.class) {
+      ((DefaultAdaptrisMessageImp) result).branchFrom((DefaultAdaptrisMessageImp) parent);
+      return result;
+    }
+    return super.newBranch(parent);
+  }
+
   /**
    * @return the defaultCharEncoding
    */
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.adaptris.core.util.Args;
+import com.adaptris.util.IdGenerator;
+
+/**
+ * Records the {@link MleMarker}s for a message without creating them.
+ * <p>
+ * Each call to {@link AdaptrisMessage#addEvent(MessageEventGenerator, boolean)} only appends the unique-id, name, qualifier,
+ * flags, sequence number and timestamp of the event to a set of parallel arrays. The {@link MessageLifecycleEvent} (along with
+ * its {@link MleMarker}s) is only built when something actually asks for it, which is typically when an {@link EventHandler}
+ * sends it; after that the event becomes the record, and any further markers are added to it directly.
+ * </p>
+ * <p>
+ * Copies made when a message is cloned share the identity (unique-id and creation time) of the lifecycle event, and the
+ * unique-ids of the markers recorded so far, as they did when the event itself was cloned.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+final class MessageLifecycleRecorder {
+
+  private static final int INITIAL_CAPACITY = 8;
+  private static final String UNKNOWN_EVENT = "Unknown Event";
+  private static final byte SUCCESS = 1;
+  private static final byte TRACKING_ENDPOINT = 1 << 1;
+
+  private final IdGenerator idGenerator;
+  private final Identity identity;
+  private String messageUniqueId;
+  private String channelId;
+  private String workflowId;
+
+  // The markers recorded so far, unless the event has been built.
+  private int count;
+  private String[] markerIds;
+  private String[] names;
+  private String[] qualifiers;
+  private byte[] flags;
+  private long[] sequenceNumbers;
+  private long[] creationTimes;
+
+  private MessageLifecycleEvent event;
+
+  MessageLifecycleRecorder(IdGenerator idGenerator) {
+    this(idGenerator, new Identity(System.currentTimeMillis()));
+  }
+
+  private MessageLifecycleRecorder(IdGenerator idGenerator, Identity identity) {
+    this.idGenerator = idGenerator;
+    this.identity = identity;
+  }
+
+  /**
+   * Record a marker.
+   *
+   * @param meg the generator, if null then the marker is recorded as an "Unknown Event".
+   */
+  void record(MessageEventGenerator meg, boolean successful, long sequenceNumber) {
+    String name = meg != null ? meg.createName() : UNKNOWN_EVENT;
+    String qualifier = meg != null ? meg.createQualifier() : "";
+    boolean tracking = meg != null && meg.isTrackingEndpoint();
+    long now = System.currentTimeMillis();
+    // Generated now rather than when the event is built, so that copies of this recorder have the same ids.
+    String id = idGenerator.create(this);
+    if (event != null) {
+      event.addMleMarker(createMarker(id, name, qualifier, successful, tracking, sequenceNumber, now));
+      return;
+    }
+    ensureCapacity(count + 1);
+    markerIds[count] = id;
+    names[count] = name;
+    qualifiers[count] = qualifier;
+    flags[count] = (byte) ((successful ? SUCCESS : 0) | (tracking ? TRACKING_ENDPOINT : 0));
+    sequenceNumbers[count] = sequenceNumber;
+    creationTimes[count] = now;
+    count++;
+  }
+
+  /**
+   * @return the number of markers.
+   */
+  int markerCount() {
+    return event != null ? event.getMleMarkers().size() : count;
+  }
+
+  void setMessageUniqueId(String s) {
+    messageUniqueId = Args.notNull(s, "uniqueId");
+    if (event != null) {
+      event.setMessageUniqueId(s);
+    }
+  }
+
+  void setLocation(String channel, String workflow) {
+    channelId = channel;
+    workflowId = workflow;
+    if (event != null) {
+      event.setChannelId(channel);
+      event.setWorkflowId(workflow);
+    }
+  }
+
+  /**
+   * Get the event, building it if required.
+   */
+  MessageLifecycleEvent event() {
+    if (event == null) {
+      MessageLifecycleEvent result = new MessageLifecycleEvent();
+      result.setCreationTime(identity.creationTime);
+      result.setUniqueId(identity.uniqueId(idGenerator, result));
+      if (messageUniqueId != null) {
+        result.setMessageUniqueId(messageUniqueId);
+      }
+      result.setChannelId(channelId);
+      result.setWorkflowId(workflowId);
+      for (int i = 0; i < count; i++) {
+        result.addMleMarker(createMarker(markerIds[i], names[i], qualifiers[i], (flags[i] & SUCCESS) != 0, (flags[i] & TRACKING_ENDPOINT) != 0,
+            sequenceNumbers[i], creationTimes[i]));
+      }
+      event = result;
+      count = 0;
+      markerIds = names = qualifiers = null;
+      flags = null;
+      sequenceNumbers = creationTimes = null;
+    }
+    return event;
+  }
+
+  /**
+   * Copy this recorder (for a cloned message).
+   */
+  MessageLifecycleRecorder copy() throws CloneNotSupportedException {
+    MessageLifecycleRecorder copy = new MessageLifecycleRecorder(idGenerator, identity);
+    copy.messageUniqueId = messageUniqueId;
+    copy.channelId = channelId;
+    copy.workflowId = workflowId;
+    if (event != null) {
+      copy.event = event.clone();
+    } else if (count > 0) {
+      copy.markerIds = Arrays.copyOf(markerIds, count);
+      copy.names = Arrays.copyOf(names, count);
+      copy.qualifiers = Arrays.copyOf(qualifiers, count);
+      copy.flags = Arrays.copyOf(flags, count);
+      copy.sequenceNumbers = Arrays.copyOf(sequenceNumbers, count);
+      copy.creationTimes = Arrays.copyOf(creationTimes, count);
+      copy.count = count;
+    }
+    return copy;
+  }
+
+  /**
+   * Append copies of all the markers in another recorder.
+   */
+  void appendAll(MessageLifecycleRecorder other) throws CloneNotSupportedException {
+    if (other.event != null) {
+      appendAll(other.event.getMleMarkers());
+      return;
+    }
+    if (other.count == 0) {
+      return;
+    }
+    if (event != null) {
+      appendAll(other.event().getMleMarkers());
+      return;
+    }
+    ensureCapacity(count + other.count);
+    System.arraycopy(other.markerIds, 0, markerIds, count, other.count);
+    System.arraycopy(other.names, 0, names, count, other.count);
+    System.arraycopy(other.qualifiers, 0, qualifiers, count, other.count);
+    System.arraycopy(other.flags, 0, flags, count, other.count);
+    System.arraycopy(other.sequenceNumbers, 0, sequenceNumbers, count, other.count);
+    System.arraycopy(other.creationTimes, 0, creationTimes, count, other.count);
+    count += other.count;
+  }
+
+  private void appendAll(List<MleMarker> markers) throws CloneNotSupportedException {
+    MessageLifecycleEvent target = event();
+    for (MleMarker marker : markers) {
+      target.addMleMarker((MleMarker) marker.clone());
+    }
+  }
+
+  private static MleMarker createMarker(String id, String name, String qualifier, boolean successful, boolean tracking, long seq,
+      long time) {
+    MleMarker marker = new MleMarker();
+    marker.setName(name);
+    marker.setQualifier(qualifier);
+    marker.setWasSuccessful(successful);
+    marker.setIsTrackingEndpoint(tracking);
+    marker.setSequenceNumber(seq);
+    marker.setCreationTime(time);
+    marker.setUniqueId(id);
+    return marker;
+  }
+
+  private void ensureCapacity(int required) {
+    int capacity = names == null ? 0 : names.length;
+    if (required <= capacity) {
+      return;
+    }
+    int newCapacity = Math.max(required, Math.max(INITIAL_CAPACITY, capacity * 2));
+    markerIds = markerIds == null ? new String[newCapacity] : Arrays.copyOf(markerIds, newCapacity);
+    names = names == null ? new String[newCapacity] : Arrays.copyOf(names, newCapacity);
+    qualifiers = qualifiers == null ? new String[newCapacity] : Arrays.copyOf(qualifiers, newCapacity);
+    flags = flags == null ? new byte[newCapacity] : Arrays.copyOf(flags, newCapacity);
+    sequenceNumbers = sequenceNumbers == null ? new long[newCapacity] : Arrays.copyOf(sequenceNumbers, newCapacity);
+    creationTimes = creationTimes == null ? new long[newCapacity] : Arrays.copyOf(creationTimes, newCapacity);
+  }
+
+  // Shared between copies, so the unique-id is only generated once (if at all).
+  private static final class Identity {
+    private final long creationTime;
+    private String uniqueId;
+
+    Identity(long creationTime) {
+      this.creationTime = creationTime;
+    }
+
+    synchronized String uniqueId(IdGenerator generator, MessageLifecycleEvent event) {
+      if (uniqueId == null) {
+        uniqueId = generator.create(event);
+      }
+      return uniqueId;
+    }
+  }
+}
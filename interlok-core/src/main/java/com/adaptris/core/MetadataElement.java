@@ -68,7 +68,7 @@ public class MetadataElement implements NameValuePair, Cloneable {
 
 
   public MetadataElement(String key, String value) {
-    this();
+    // No need to generate a UUID for the key, since we're about to overwrite it.
     setKey(key);
     setValue(value);
   }
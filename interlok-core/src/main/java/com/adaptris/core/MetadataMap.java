@@ -0,0 +1,421 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Key indexed storage for message metadata.
+ * <p>
+ * This is an open addressed (linear probing) {@code String} to {@code String} map where keys and values are stored next to each
+ * other in a single array; so lookups are O(1) and there is no per-entry allocation (unlike a {@code HashSet<MetadataElement>}).
+ * Removals use backward shift deletion so there are no tombstones.
+ * </p>
+ * <p>
+ * The backing array is copy-on-write; {@link #copy()}, {@link #asMap()} and {@link #asSet()} are O(1) and share the array until
+ * either side is modified. {@code null} values are not supported, since {@link MetadataElement} does not allow them.
+ * </p>
+ * <p>
+ * This is not thread-safe, writes need to be synchronized externally (as they are in {@link AdaptrisMessageImp}).
+ * </p>
+ *
+ * @since 3.10.2
+ */
+final class MetadataMap {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  // key at 2n, value at 2n+1
+  private String[] table;
+  private int size;
+  // Whether table is shared with another instance; if so it must be copied before modification.
+  private boolean shared;
+
+  MetadataMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  MetadataMap(int expectedSize) {
+    table = new String[capacityFor(expectedSize) * 2];
+  }
+
+  private MetadataMap(MetadataMap other) {
+    other.shared = true;
+    table = other.table;
+    size = other.size;
+    shared = true;
+  }
+
+  String get(String key) {
+    String[] tab = table;
+    int index = indexOf(tab, key);
+    return index >= 0 ? tab[index + 1] : null;
+  }
+
+  boolean containsKey(String key) {
+    return indexOf(table, key) >= 0;
+  }
+
+  /**
+   * Add or replace a value.
+   *
+   * @return the previous value or null.
+   */
+  String put(String key, String value) {
+    if (key == null || value == null) {
+      throw new IllegalArgumentException("null keys/values are not supported");
+    }
+    ensureWritable();
+    int mask = (table.length >> 1) - 1;
+    for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+      int i = slot << 1;
+      String k = table[i];
+      if (k == null) {
+        table[i] = key;
+        table[i + 1] = value;
+        if (++size * 2 > mask + 1) {
+          resize((mask + 1) * 2);
+        }
+        return null;
+      }
+      if (k.equals(key)) {
+        String old = table[i + 1];
+        table[i + 1] = value;
+        return old;
+      }
+    }
+  }
+
+  /**
+   * Remove a value.
+   *
+   * @return the previous value or null.
+   */
+  String remove(String key) {
+    int index = indexOf(table, key);
+    if (index < 0) {
+      return null;
+    }
+    ensureWritable();
+    String old = table[index + 1];
+    int mask = (table.length >> 1) - 1;
+    int hole = index >> 1;
+    table[index] = null;
+    table[index + 1] = null;
+    // Shift back any entries that would no longer be reachable from their ideal slot.
+    for (int slot = (hole + 1) & mask; table[slot << 1] != null; slot = (slot + 1) & mask) {
+      int ideal = hash(table[slot << 1]) & mask;
+      boolean reachable = slot > hole ? ideal > hole && ideal <= slot : ideal > hole || ideal <= slot;
+      if (!reachable) {
+        table[hole << 1] = table[slot << 1];
+        table[(hole << 1) + 1] = table[(slot << 1) + 1];
+        table[slot << 1] = null;
+        table[(slot << 1) + 1] = null;
+        hole = slot;
+      }
+    }
+    size--;
+    return old;
+  }
+
+  void clear() {
+    table = new String[DEFAULT_CAPACITY * 2];
+    size = 0;
+    shared = false;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void forEach(BiConsumer<String, String> action) {
+    String[] tab = table;
+    for (int i = 0; i < tab.length; i += 2) {
+      if (tab[i] != null) {
+        action.accept(tab[i], tab[i + 1]);
+      }
+    }
+  }
+
+  /**
+   * Create a copy of this map; the backing storage is shared until one of them is modified.
+   *
+   */
+  MetadataMap copy() {
+    return new MetadataMap(this);
+  }
+
+  /**
+   * Return a snapshot of the current contents as a {@code Map}.
+   * <p>
+   * The map can be modified, but changes are not reflected in this map; i.e. it behaves like a copy of the metadata.
+   * </p>
+   */
+  Map<String, String> asMap() {
+    return new SnapshotMap(copy());
+  }
+
+  /**
+   * Return a snapshot of the current contents as a {@code Set<MetadataElement>}.
+   * <p>
+   * The set can be modified, but changes are not reflected in this map; i.e. it behaves like a shallow clone of the metadata.
+   * </p>
+   */
+  Set<MetadataElement> asSet() {
+    return new ElementSet(copy());
+  }
+
+  @Override
+  public String toString() {
+    return asSet().toString();
+  }
+
+  private void ensureWritable() {
+    if (shared) {
+      table = table.clone();
+      shared = false;
+    }
+  }
+
+  private void resize(int newCapacity) {
+    String[] old = table;
+    String[] tab = new String[newCapacity * 2];
+    int mask = newCapacity - 1;
+    for (int i = 0; i < old.length; i += 2) {
+      if (old[i] != null) {
+        int slot = hash(old[i]) & mask;
+        while (tab[slot << 1] != null) {
+          slot = (slot + 1) & mask;
+        }
+        tab[slot << 1] = old[i];
+        tab[(slot << 1) + 1] = old[i + 1];
+      }
+    }
+    table = tab;
+  }
+
+  private static int indexOf(String[] tab, String key) {
+    if (key == null) {
+      return -1;
+    }
+    int mask = (tab.length >> 1) - 1;
+    for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+      String k = tab[slot << 1];
+      if (k == null) {
+        return -1;
+      }
+      if (k.equals(key)) {
+        return slot << 1;
+      }
+    }
+  }
+
+  private static int hash(String key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = DEFAULT_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Iterates over a fixed snapshot of the table, so modifying the map during iteration is safe.
+   */
+  private static abstract class SnapshotIterator<E> implements Iterator<E> {
+    private final String[] tab;
+    private int next;
+    protected int current = -1;
+
+    SnapshotIterator(MetadataMap map) {
+      map.shared = true;
+      tab = map.table;
+      next = advance(0);
+    }
+
+    private int advance(int from) {
+      int i = from;
+      while (i < tab.length && tab[i] == null) {
+        i += 2;
+      }
+      return i;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < tab.length;
+    }
+
+    @Override
+    public E next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      current = next;
+      next = advance(next + 2);
+      return create(tab[current], tab[current + 1]);
+    }
+
+    protected String currentKey() {
+      if (current < 0) {
+        throw new IllegalStateException();
+      }
+      return tab[current];
+    }
+
+    protected abstract E create(String key, String value);
+  }
+
+  private static class SnapshotMap extends AbstractMap<String, String> {
+    private final MetadataMap map;
+
+    SnapshotMap(MetadataMap m) {
+      map = m;
+    }
+
+    @Override
+    public String put(String key, String value) {
+      return map.put(key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+      return key instanceof String ? map.remove((String) key) : null;
+    }
+
+    @Override
+    public void clear() {
+      map.clear();
+    }
+
+    @Override
+    public String get(Object key) {
+      return key instanceof String ? map.get((String) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key instanceof String && map.containsKey((String) key);
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      return new AbstractSet<Map.Entry<String, String>>() {
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+          return new SnapshotIterator<Map.Entry<String, String>>(map) {
+            @Override
+            protected Map.Entry<String, String> create(String key, String value) {
+              return new SimpleEntry<String, String>(key, value) {
+                private static final long serialVersionUID = 2020092801L;
+
+                @Override
+                public String setValue(String v) {
+                  map.put(key, v);
+                  return super.setValue(v);
+                }
+              };
+            }
+
+            @Override
+            public void remove() {
+              map.remove(currentKey());
+              current = -1;
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return map.size();
+        }
+      };
+    }
+  }
+
+  private static class ElementSet extends AbstractSet<MetadataElement> {
+    private final MetadataMap map;
+
+    ElementSet(MetadataMap m) {
+      map = m;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return o instanceof MetadataElement && map.containsKey(((MetadataElement) o).getKey());
+    }
+
+    // Same semantics as HashSet, an existing element is not replaced.
+    @Override
+    public boolean add(MetadataElement e) {
+      if (map.containsKey(e.getKey())) {
+        return false;
+      }
+      map.put(e.getKey(), e.getValue());
+      return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      return o instanceof MetadataElement && map.remove(((MetadataElement) o).getKey()) != null;
+    }
+
+    @Override
+    public void clear() {
+      map.clear();
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+
+    @Override
+    public Iterator<MetadataElement> iterator() {
+      return new SnapshotIterator<MetadataElement>(map) {
+        @Override
+        protected MetadataElement create(String key, String value) {
+          return new MetadataElement(key, value);
+        }
+
+        @Override
+        public void remove() {
+          map.remove(currentKey());
+          current = -1;
+        }
+      };
+    }
+  }
+}
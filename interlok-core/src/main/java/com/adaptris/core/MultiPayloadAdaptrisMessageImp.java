@@ -180,6 +180,7 @@ public class MultiPayloadAdaptrisMessageImp extends AdaptrisMessageImp implement
     if (payloads.containsKey(payloadId)) {
       payload = payloads.get(payloadId);
       payload.data = pb;
+      payload.stream = null;
     } else {
       payload = new Payload(pb);
     }
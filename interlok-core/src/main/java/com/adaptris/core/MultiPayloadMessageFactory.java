@@ -25,7 +25,6 @@ import org.slf4j.LoggerFactory;
 import javax.validation.constraints.NotNull;
 import java.nio.charset.Charset;
 import java.util.Collection;
-import java.util.List;
 import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
@@ -196,11 +195,7 @@ public class MultiPayloadMessageFactory extends AdaptrisMessageFactory {
         }
       }
     }
-    MessageLifecycleEvent mle = result.getMessageLifecycleEvent();
-    List<MleMarker> markers = source.getMessageLifecycleEvent().getMleMarkers();
-    for (MleMarker marker : markers) {
-      mle.addMleMarker((MleMarker) marker.clone());
-    }
+    AdaptrisMessageImp.copyMleMarkers(source, result);
     result.getObjectHeaders().putAll(source.getObjectHeaders());
     return result;
   }
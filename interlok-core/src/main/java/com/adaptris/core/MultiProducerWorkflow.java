@@ -95,8 +95,7 @@ public class MultiProducerWorkflow extends StandardWorkflow {
       long start = System.currentTimeMillis();
       log.debug("start processing msg [{}]", messageLogger().toString(msg));
       wip = (AdaptrisMessage) msg.clone();
-      wip.getMessageLifecycleEvent().setChannelId(obtainChannel().getUniqueId());
-      wip.getMessageLifecycleEvent().setWorkflowId(obtainWorkflowId());
+      setLifecycleLocation(wip);
       wip.addEvent(getConsumer(), true); // initial receive event
       getServiceCollection().doService(wip);
       doProduce(wip);
@@ -16,12 +16,15 @@
 
 package com.adaptris.core;
 
+import static org.apache.commons.lang3.StringUtils.isEmpty;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +32,8 @@ import java.util.function.Consumer;
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.Range;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
@@ -39,9 +44,15 @@ import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.annotation.DisplayOrder;
 import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.runtime.ParentRuntimeInfoComponent;
+import com.adaptris.core.runtime.RuntimeInfoComponent;
+import com.adaptris.core.runtime.RuntimeInfoComponentFactory;
+import com.adaptris.core.runtime.WorkflowManager;
 import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.core.util.LoggingHelper;
 import com.adaptris.core.util.ManagedThreadFactory;
+import com.adaptris.core.util.ThreadPerTaskExecutor;
+import com.adaptris.core.util.VirtualThreadFactory;
 import com.adaptris.util.FifoMutexLock;
 import com.adaptris.util.NumberUtils;
 import com.adaptris.util.TimeInterval;
@@ -70,6 +81,18 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * <code>AdaptrisMessageConsumer</code> is succesfully stopped will be treated as <b>bad</b> messages and sent directly to the
  * configured {@link com.adaptris.core.ProcessingExceptionHandler}.
  * </p>
+ * <p>
+ * By default all the workers share the configured producer and calls to {@link #doProduce(AdaptrisMessage)} are serialised, which
+ * is always safe, but means that the produce step is effectively single threaded. If your producer is thread-safe then you can
+ * change the {@link ProduceMode} to {@link ProduceMode#SHARED} so that workers produce concurrently; if it is not thread-safe but
+ * can be marshalled (i.e. it could have been configured in a {@link StandaloneProducer}) then {@link ProduceMode#PER_WORKER} gives
+ * each worker its own copy of the producer, created and destroyed along with the worker.
+ * </p>
+ * <p>
+ * If a {@link BoundedWorkQueue} is configured then messages are queued for the workers rather than the consumer waiting for a worker
+ * to become available; the queue is bounded and the configured {@link BoundedWorkQueue.OverflowPolicy} is applied if the queue is
+ * full.
+ * </p>
  * 
  * @config pooling-workflow
  * 
@@ -81,9 +104,44 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 @XStreamAlias("pooling-workflow")
 @AdapterComponent
 @ComponentProfile(summary = "Workflow with a thread pool handling the service chain", tag = "workflow,base")
-@DisplayOrder(order = {"poolSize", "minIdle", "maxIdle", "threadPriority", "disableDefaultMessageCount"})
+@DisplayOrder(order = {"poolSize", "minIdle", "maxIdle", "threadPriority", "produceMode", "boundedWorkQueue",
+    "virtualThreads", "disableDefaultMessageCount"})
 public class PoolingWorkflow extends WorkflowImp {
 
+  static {
+    RuntimeInfoComponentFactory.registerComponentFactory(new JmxFactory());
+  }
+
+  /**
+   * How workers in the pool make use of the configured producer.
+   *
+   */
+  public enum ProduceMode {
+    /**
+     * All workers share the configured producer, and access to it is serialised.
+     * <p>
+     * This is the default, and is safe for all producers.
+     * </p>
+     */
+    SERIALISED,
+    /**
+     * All workers share the configured producer without any synchronisation.
+     * <p>
+     * Only use this if the producer is thread-safe.
+     * </p>
+     */
+    SHARED,
+    /**
+     * Each worker has its own copy of the configured producer.
+     * <p>
+     * The producer is cloned (via marshalling) in the same way as the service collection, registered against the produce
+     * connection of the parent channel and started when the worker is created. The configured producer is still initialised and
+     * started, and used if the workflow is asked to produce a message outside of a worker.
+     * </p>
+     */
+    PER_WORKER;
+  }
+
   /**
    * The default maximum pool size.
    *
@@ -146,12 +204,25 @@ public class PoolingWorkflow extends WorkflowImp {
   @Max(Thread.MAX_PRIORITY)
   private Integer threadPriority;
 
+  @AdvancedConfig
+  @InputFieldDefault(value = "SERIALISED")
+  private ProduceMode produceMode;
+
+  @AdvancedConfig
+  @Valid
+  private BoundedWorkQueue boundedWorkQueue;
+
+  @AdvancedConfig(rare = true)
+  @InputFieldDefault(value = "false")
+  private Boolean virtualThreads;
+
   private transient ExecutorService threadPool;
   private transient GenericObjectPool<Worker> objectPool;
   private transient FifoMutexLock poolLock;
   private transient AdaptrisMarshaller serviceListMarshaller;
   private transient String currentThreadName;
   private transient ServiceCollection marshalledServiceCollection;
+  private transient String marshalledProducer;
 
   public PoolingWorkflow() {
     super();
@@ -253,6 +324,7 @@ public class PoolingWorkflow extends WorkflowImp {
     }
     marshalledServiceCollection = cloneServiceCollection(getServiceCollection());
     LifecycleHelper.prepare(marshalledServiceCollection);
+    marshalledProducer = produceMode() == ProduceMode.PER_WORKER ? serviceListMarshaller.marshal(getProducer()) : null;
     LifecycleHelper.init(getProducer());
     getConsumer().registerAdaptrisMessageListener(this);
     LifecycleHelper.init(getConsumer());
@@ -267,6 +339,9 @@ public class PoolingWorkflow extends WorkflowImp {
   protected void startWorkflow() throws CoreException {
     LifecycleHelper.start(getProducer());
     objectPool = createObjectPool();
+    if (getBoundedWorkQueue() != null) {
+      getBoundedWorkQueue().init(poolSize());
+    }
     threadPool = createExecutor();
     populatePool();
     LifecycleHelper.start(getConsumer());
@@ -333,7 +408,11 @@ public class PoolingWorkflow extends WorkflowImp {
       if (poolLock.permitAvailable()) {
         workflowStart(msg);
         // workflowCompletion.add(msg, threadPool.submit(new CallableWorker(msg)));
-        threadPool.submit(new CallableWorker(msg));
+        if (getBoundedWorkQueue() == null) {
+          threadPool.execute(new WorkerTask(new CallableWorker(msg)));
+        } else {
+          submitToQueue(msg);
+        }
       }
       else {
         log.warn("Attempt to process message during shutdown; failing it");
@@ -368,12 +447,22 @@ public class PoolingWorkflow extends WorkflowImp {
   }
 
   /**
+   * Produce the message using the configured producer.
+   * <p>
+   * Unless {@link #getProduceMode()} is {@link ProduceMode#SHARED} then this is serialised.
+   * </p>
    *
    * @see WorkflowImp#doProduce(com.adaptris.core.AdaptrisMessage)
    */
   @Override
-  public synchronized void doProduce(AdaptrisMessage msg) throws ServiceException, ProduceException {
-    super.doProduce(msg);
+  public void doProduce(AdaptrisMessage msg) throws ServiceException, ProduceException {
+    if (produceMode() == ProduceMode.SHARED) {
+      super.doProduce(msg);
+    } else {
+      synchronized (this) {
+        super.doProduce(msg);
+      }
+    }
   }
 
   /**
@@ -386,12 +475,22 @@ public class PoolingWorkflow extends WorkflowImp {
   }
 
   /**
+   * Send the message lifecycle event.
+   * <p>
+   * Event emission is asynchronous, so this is only serialised if {@link #getProduceMode()} is {@link ProduceMode#SERIALISED}.
+   * </p>
    *
    * @see WorkflowImp#sendMessageLifecycleEvent(AdaptrisMessage)
    */
   @Override
-  protected synchronized void sendMessageLifecycleEvent(AdaptrisMessage msg) {
-    super.sendMessageLifecycleEvent(msg);
+  protected void sendMessageLifecycleEvent(AdaptrisMessage msg) {
+    if (produceMode() == ProduceMode.SERIALISED) {
+      synchronized (this) {
+        super.sendMessageLifecycleEvent(msg);
+      }
+    } else {
+      super.sendMessageLifecycleEvent(msg);
+    }
   }
 
   private GenericObjectPool<Worker> createObjectPool() {
@@ -408,7 +507,46 @@ public class PoolingWorkflow extends WorkflowImp {
     return pool;
   }
 
+  private void submitToQueue(AdaptrisMessage msg) throws Exception {
+    if (getBoundedWorkQueue().admit(msg)) {
+      try {
+        threadPool.execute(new WorkerTask(new QueuedWorker(msg)));
+      } catch (RuntimeException e) {
+        getBoundedWorkQueue().release();
+        throw e;
+      }
+    }
+    submitSpilled();
+  }
+
+  private void submitSpilled() {
+    AdaptrisMessage spilled = null;
+    while ((spilled = getBoundedWorkQueue().unspill()) != null) {
+      try {
+        threadPool.execute(new WorkerTask(new QueuedWorker(spilled)));
+      } catch (Exception e) {
+        getBoundedWorkQueue().release();
+        spilled.addObjectHeader(CoreConstants.OBJ_METADATA_EXCEPTION, e);
+        handleBadMessage(spilled);
+      }
+    }
+  }
+
   private ExecutorService createExecutor() {
+    if (virtualThreads()) {
+      if (VirtualThreadFactory.isSupported()) {
+        // Concurrency is limited by the pool size; the thread per task executor doesn't queue.
+        return VirtualThreadFactory.newExecutor(PoolingWorkflow.class.getSimpleName(), poolSize());
+      }
+      log.warn("Virtual threads not supported by this runtime, using platform threads");
+    }
+    if (getBoundedWorkQueue() != null) {
+      // The queue itself is bounded by the BoundedWorkQueue, so there are only ever poolSize threads.
+      ThreadPoolExecutor tpe = new ThreadPoolExecutor(poolSize(), poolSize(), threadLifetimeMs(), TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+      tpe.allowCoreThreadTimeOut(true);
+      return tpe;
+    }
     ExecutorService es = Executors.newCachedThreadPool(new WorkerThreadFactory());
     if (es instanceof ThreadPoolExecutor) {
       ((ThreadPoolExecutor) es).setKeepAliveTime(threadLifetimeMs(), TimeUnit.MILLISECONDS);
@@ -455,8 +593,18 @@ public class PoolingWorkflow extends WorkflowImp {
       poolLock.acquire();
       List<Runnable> list = ManagedThreadFactory.shutdownQuietly(threadPool, shutdownWaitTimeMs());
       for (Runnable l : list) {
-        CallableWorker sd = (CallableWorker) l;
-        handleBadMessage(sd.getMessage());
+        if (l instanceof WorkerTask) {
+          AdaptrisMessage msg = ((WorkerTask) l).getMessage();
+          log.warn("[{}] not processed before shutdown; failing it", msg.getUniqueId());
+          handleBadMessage(msg);
+        }
+      }
+      if (getBoundedWorkQueue() != null) {
+        AdaptrisMessage spilled = null;
+        while ((spilled = getBoundedWorkQueue().drain()) != null) {
+          log.warn("[{}] still spilled during shutdown; failing it", spilled.getUniqueId());
+          handleBadMessage(spilled);
+        }
       }
       log.trace("All children terminated; existence pointless");
       objectPool.close();
@@ -569,6 +717,84 @@ public class PoolingWorkflow extends WorkflowImp {
     return TimeInterval.toMillisecondsDefaultIfNull(getInitWaitTime(), DEFAULT_INIT_WAIT);
   }
 
+  /**
+   * @return the produce mode.
+   */
+  public ProduceMode getProduceMode() {
+    return produceMode;
+  }
+
+  /**
+   * Set how the workers in the pool use the configured producer.
+   *
+   * @param m the produce mode, default if not specified is {@link ProduceMode#SERIALISED}.
+   */
+  public void setProduceMode(ProduceMode m) {
+    this.produceMode = m;
+  }
+
+  public ProduceMode produceMode() {
+    return ObjectUtils.defaultIfNull(getProduceMode(), ProduceMode.SERIALISED);
+  }
+
+  /**
+   * @return the bounded work queue.
+   */
+  public BoundedWorkQueue getBoundedWorkQueue() {
+    return boundedWorkQueue;
+  }
+
+  /**
+   * Set the bounded work queue.
+   *
+   * @param q the work queue, default is null which means the consumer waits for a worker to become available before handing
+   *          over each message.
+   */
+  public void setBoundedWorkQueue(BoundedWorkQueue q) {
+    this.boundedWorkQueue = q;
+  }
+
+  public Boolean getVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Specify if virtual threads should be used to process messages.
+   * <p>
+   * Virtual threads are only available on Java 21+; if the runtime does not support them then platform threads are used as
+   * normal. When virtual threads are used, each message is processed in its own thread, {@link #getThreadPriority()} is ignored
+   * and the number of messages processed concurrently is limited by {@link #getPoolSize()}.
+   * </p>
+   *
+   * @param b true or false (default false if not specified).
+   */
+  public void setVirtualThreads(Boolean b) {
+    this.virtualThreads = b;
+  }
+
+  public boolean virtualThreads() {
+    return BooleanUtils.toBooleanDefaultIfNull(getVirtualThreads(), false);
+  }
+
+  /**
+   * Return the number of messages that have been admitted to the {@link BoundedWorkQueue}, but are not yet being processed.
+   * <p>
+   * Messages that have been spilled to disk are not included in this count. If there is no {@link BoundedWorkQueue} configured
+   * then this always returns 0.
+   * </p>
+   *
+   * @return the number of messages waiting for a worker.
+   */
+  public int currentQueueDepth() {
+    if (getBoundedWorkQueue() != null && threadPool instanceof ThreadPoolExecutor) {
+      return ((ThreadPoolExecutor) threadPool).getQueue().size();
+    }
+    if (getBoundedWorkQueue() != null && threadPool instanceof ThreadPerTaskExecutor) {
+      return Math.max(0, ((ThreadPerTaskExecutor) threadPool).activeCount() - poolSize());
+    }
+    return 0;
+  }
+
   /**
    * Return the total number of objects in the pool. This includes active and idle objects.
    *
@@ -611,6 +837,9 @@ public class PoolingWorkflow extends WorkflowImp {
    * @return the number of threads in the threadpool.
    */
   public int currentThreadPoolCount() {
+    if (threadPool instanceof ThreadPerTaskExecutor) {
+      return ((ThreadPerTaskExecutor) threadPool).activeCount();
+    }
     return ((ThreadPoolExecutor) threadPool).getPoolSize();
   }
 
@@ -683,12 +912,16 @@ public class PoolingWorkflow extends WorkflowImp {
   }
 
   private class CallableWorker implements Callable<AdaptrisMessage> {
-    private AdaptrisMessage message;
-    private Worker worker;
+    protected AdaptrisMessage message;
+    protected Worker worker;
 
     CallableWorker(AdaptrisMessage msg) throws Exception {
+      this(msg, objectPool.borrowObject());
+    }
+
+    protected CallableWorker(AdaptrisMessage msg, Worker w) {
       message = msg;
-      worker = objectPool.borrowObject();
+      worker = w;
     }
 
     private AdaptrisMessage getMessage() {
@@ -724,13 +957,84 @@ public class PoolingWorkflow extends WorkflowImp {
   }
 
 
+  /**
+   * Wraps the worker so that it can be identified if it is still queued when the thread pool is shutdown.
+   */
+  private class WorkerTask extends FutureTask<AdaptrisMessage> {
+    private final CallableWorker worker;
+
+    WorkerTask(CallableWorker w) {
+      super(w);
+      worker = w;
+    }
+
+    private AdaptrisMessage getMessage() {
+      return worker.getMessage();
+    }
+  }
+
+  /**
+   * Used with a {@link BoundedWorkQueue}; borrows the worker when it actually runs rather than on the consumer thread.
+   */
+  private class QueuedWorker extends CallableWorker {
+
+    QueuedWorker(AdaptrisMessage msg) {
+      super(msg, null);
+    }
+
+    @Override
+    public AdaptrisMessage call() throws Exception {
+      try {
+        worker = objectPool.borrowObject();
+        return super.call();
+      } catch (Exception e) {
+        message.addObjectHeader(CoreConstants.OBJ_METADATA_EXCEPTION, e);
+        handleBadMessage(message);
+        return null;
+      } finally {
+        getBoundedWorkQueue().release();
+        // Don't resubmit spilled messages if we are shutting down, they will be failed.
+        if (poolLock.permitAvailable()) {
+          submitSpilled();
+        }
+      }
+    }
+  }
+
+  private static class JmxFactory extends RuntimeInfoComponentFactory {
+
+    @Override
+    protected boolean isSupported(AdaptrisComponent e) {
+      if (e != null && e instanceof PoolingWorkflow) {
+        return !isEmpty(((PoolingWorkflow) e).getUniqueId()) && ((PoolingWorkflow) e).getBoundedWorkQueue() != null;
+      }
+      return false;
+    }
+
+    @Override
+    protected RuntimeInfoComponent createComponent(ParentRuntimeInfoComponent parent, AdaptrisComponent e) {
+      return new BoundedWorkQueueMonitor((WorkflowManager) parent, (PoolingWorkflow) e);
+    }
+  }
+
+  private AdaptrisMessageProducer cloneProducer(String marshalled) throws CoreException {
+    AdaptrisMessageProducer result = (AdaptrisMessageProducer) serviceListMarshaller.unmarshal(marshalled);
+    result.registerConnection(obtainChannel().getProduceConnection());
+    LifecycleHelper.registerEventHandler(result, eventHandler);
+    return result;
+  }
+
   class Worker {
 
     private ServiceCollection sc;
+    private AdaptrisMessageProducer producer;
 
     Worker() throws CoreException {
       try {
         sc = cloneServiceCollection(marshalledServiceCollection);
+        if (marshalledProducer != null) {
+          producer = cloneProducer(marshalledProducer);
+        }
       }
       catch (Exception e) {
         throw new CoreException(e);
@@ -739,12 +1043,22 @@ public class PoolingWorkflow extends WorkflowImp {
 
     public void start() throws CoreException {
       LifecycleHelper.initAndStart(sc, false);
+      LifecycleHelper.initAndStart(producer, false);
     }
 
     public void stop() throws CoreException {
+      LifecycleHelper.stopAndClose(producer, false);
       LifecycleHelper.stopAndClose(sc, false);
     }
 
+    private void produce(AdaptrisMessage msg) throws ServiceException, ProduceException {
+      if (producer != null) {
+        doProduce(msg, producer);
+      } else {
+        doProduce(msg);
+      }
+    }
+
     public boolean isValid() {
       return true;
     }
@@ -756,11 +1070,10 @@ public class PoolingWorkflow extends WorkflowImp {
         log.debug("start processing msg [{}]", messageLogger().toString(msg));
         wip = (AdaptrisMessage) msg.clone();
         // Set the channel id and workflow id on the message lifecycle.
-        wip.getMessageLifecycleEvent().setChannelId(obtainChannel().getUniqueId());
-        wip.getMessageLifecycleEvent().setWorkflowId(obtainWorkflowId());
+        setLifecycleLocation(wip);
         wip.addEvent(getConsumer(), true);
         sc.doService(wip);
-        doProduce(wip);
+        produce(wip);
         // handle success callback here.
         // failure callback will be handled by the message-error-handler that's configured...
         ListenerCallbackHelper.handleSuccessCallback(wip);
@@ -34,7 +34,8 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * <p>
  * In the event that the {@link AdaptrisComponent} that owns this implementation is stopped or closed (using
  * {@link AdaptrisComponent#stop()} or {@link AdaptrisComponent#close()} then all messages are deemed to have failed, and treated as
- * a message that has failed.
+ * a message that has failed; unless a persistent {@link com.adaptris.core.retry.RetryStore} is configured (such as
+ * {@link com.adaptris.core.retry.FilesystemRetryStore}), in which case the messages are retried when it is next started.
  * </p>
  * <p>
  * Note that messages are not guaranteed to be in order (even if they were originally) once a message has entered retry mode. Also
@@ -49,7 +50,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 @AdapterComponent
 @ComponentProfile(summary = "An exception handler instance that supports automated retries defined by schedule",
     tag = "error-handling,base")
-@DisplayOrder(order = {"retryLimit"})
+@DisplayOrder(order = {"retryLimit", "retryInterval", "retryStore"})
 public class RetryMessageErrorHandler extends RetryMessageErrorHandlerImp {
 
   public RetryMessageErrorHandler() {
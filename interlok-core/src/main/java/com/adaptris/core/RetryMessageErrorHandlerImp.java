@@ -25,28 +25,42 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import javax.management.MalformedObjectNameException;
+import javax.validation.Valid;
+import org.apache.commons.lang3.ObjectUtils;
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.annotation.Removal;
+import com.adaptris.core.retry.InMemoryRetryStore;
+import com.adaptris.core.retry.RetryStore;
 import com.adaptris.core.runtime.ParentRuntimeInfoComponent;
 import com.adaptris.core.runtime.RuntimeInfoComponent;
 import com.adaptris.core.runtime.RuntimeInfoComponentFactory;
+import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.core.util.ManagedThreadFactory;
+import com.adaptris.core.util.TimeWheel;
 import com.adaptris.util.NumberUtils;
 import com.adaptris.util.TimeInterval;
 
 /**
  * Abstract MessageErrorHandler implementation that allows automatic retries for
  * a problem message.
+ * <p>
+ * Messages waiting to be retried are kept in the configured {@link RetryStore}, and the retries are scheduled using a
+ * {@link TimeWheel} that is advanced by a single timer task rather than having a separate timer per message.
+ * </p>
  */
 public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExceptionHandler {
 
   private static final TimeInterval DEFAULT_RETRY_INTERVAL = new TimeInterval(10L, TimeUnit.MINUTES);
   private static final TimeInterval DEFAULT_POOL_TIMEOUT = new TimeInterval(30L, TimeUnit.SECONDS);
+  private static final long MIN_TICK_MS = 10L;
+  private static final long MAX_TICK_MS = 1000L;
+  private static final int WHEEL_SIZE = 512;
 
   private static final int RETRY_LIMIT_DEFAULT = 10;
   protected static final String IS_RETRY_KEY = "autoRetryInProgress";
@@ -58,11 +72,23 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
   @InputFieldDefault(value = "10 minutes")
   private TimeInterval retryInterval;
 
+  @AdvancedConfig
+  @Valid
+  @InputFieldDefault(value = "in-memory-retry-store")
+  private RetryStore retryStore;
+
   protected transient ScheduledExecutorService executor;
+  /**
+   * @deprecated since 3.10.2 messages waiting to be retried are kept in the configured {@link RetryStore}; this only contains
+   *             messages that are scheduled using {@link RetryThread#RetryThread(AdaptrisMessage)}.
+   */
+  @Deprecated
+  @Removal(version = "3.12.0", message = "messages waiting to be retried are kept in the configured RetryStore")
   protected transient List<AdaptrisMessage> retryList;
   protected transient List<AdaptrisMessage> inProgress;
-  private transient Set<ScheduledFuture> retries = Collections.newSetFromMap(new WeakHashMap<ScheduledFuture, Boolean>());
-  private transient ScheduledFuture sweeper = null;
+  private transient RetryStore defaultStore;
+  private transient TimeWheel<String> timeWheel;
+  private transient ScheduledFuture ticker = null;
   private transient boolean failAll = false;
 
   static {
@@ -73,6 +99,7 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
     super();
     retryList = Collections.synchronizedList(new ArrayList<AdaptrisMessage>());
     inProgress = Collections.synchronizedList(new ArrayList<AdaptrisMessage>());
+    defaultStore = new InMemoryRetryStore();
   }
 
   @Override
@@ -103,30 +130,59 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
     return rl <= 0 ? false : count >= rl;
   }
 
+  @Override
+  public void prepare() throws CoreException {
+    LifecycleHelper.prepare(retryStore());
+    super.prepare();
+  }
+
+  @Override
+  public void init() throws CoreException {
+    LifecycleHelper.init(retryStore());
+    super.init();
+  }
 
   @Override
   public void start() throws CoreException {
+    LifecycleHelper.start(retryStore());
+    long tick = Math.min(Math.max(retryIntervalMs() / 10, MIN_TICK_MS), MAX_TICK_MS);
+    timeWheel = new TimeWheel<>(tick, WHEEL_SIZE, System.currentTimeMillis());
+    // Anything left over from a previous run (persistent stores only) gets rescheduled.
+    for (Map.Entry<String, Long> entry : retryStore().pending().entrySet()) {
+      timeWheel.schedule(entry.getKey(), entry.getValue());
+    }
     executor = Executors.newScheduledThreadPool(1, new ManagedThreadFactory(getClass().getSimpleName()));
-    sweeper = executor.scheduleWithFixedDelay(new CleanupTask(), 100L, retryIntervalMs(), TimeUnit.MILLISECONDS);
+    ticker = executor.scheduleAtFixedRate(new Ticker(), tick, tick, TimeUnit.MILLISECONDS);
     failAll = false;
     super.start();
   }
 
   @Override
   public void stop() {
-    failAllMessages();
+    if (!retryStore().isPersistent()) {
+      failAllMessages();
+    }
     shutdownExecutor();
+    LifecycleHelper.stop(retryStore());
     super.stop();
   }
 
+  @Override
+  public synchronized void close() {
+    LifecycleHelper.close(retryStore());
+    super.close();
+  }
+
   private void shutdownExecutor() {
-    sweeper.cancel(true);
-    for (ScheduledFuture f : retries) {
-      f.cancel(true);
+    if (ticker != null) {
+      ticker.cancel(true);
     }
-    retries.clear();
     ManagedThreadFactory.shutdownQuietly(executor, DEFAULT_POOL_TIMEOUT);
     executor = null;
+    ticker = null;
+    if (timeWheel != null) {
+      timeWheel.clear();
+    }
   }
 
   /**
@@ -169,7 +225,34 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
     retryInterval = interval;
   }
 
+  public RetryStore getRetryStore() {
+    return retryStore;
+  }
+
+  /**
+   * Set where messages waiting to be retried are kept.
+   * <p>
+   * If the store is not persistent (such as the default {@link InMemoryRetryStore}) then all the messages waiting to be retried
+   * are failed when this error handler is stopped. If it is persistent (such as
+   * {@link com.adaptris.core.retry.FilesystemRetryStore}) then they are left in the store, and rescheduled when this error
+   * handler is next started.
+   * </p>
+   *
+   * @param store the store, defaults to {@link InMemoryRetryStore}.
+   * @since 3.10.2
+   */
+  public void setRetryStore(RetryStore store) {
+    retryStore = store;
+  }
+
+  RetryStore retryStore() {
+    return ObjectUtils.defaultIfNull(getRetryStore(), defaultStore);
+  }
+
   protected void failAllMessages() {
+    for (String id : retryStore().pending().keySet()) {
+      failMessage(id);
+    }
     for (AdaptrisMessage msg : new ArrayList<AdaptrisMessage>(retryList)) {
       failMessage(msg);
     }
@@ -181,7 +264,7 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
   }
 
   protected Collection<String> waitingForRetry() {
-    Set<String> result = new HashSet<String>();
+    Set<String> result = new HashSet<String>(retryStore().pending().keySet());
     for (AdaptrisMessage msg : new ArrayList<AdaptrisMessage>(retryList)) {
       result.add(msg.getUniqueId());
     }
@@ -189,9 +272,16 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
   }
 
   protected void failMessage(String s) {
-    for (AdaptrisMessage msg : new ArrayList<AdaptrisMessage>(retryList)) {
-      if (msg.getUniqueId().equals(s)) {
-        failMessage(msg);
+    if (timeWheel != null) {
+      timeWheel.cancel(s);
+    }
+    AdaptrisMessage msg = removeFromStore(s);
+    if (msg != null) {
+      failMessage(msg);
+    }
+    for (AdaptrisMessage m : new ArrayList<AdaptrisMessage>(retryList)) {
+      if (m.getUniqueId().equals(s) && retryList.remove(m)) {
+        failMessage(m);
       }
     }
   }
@@ -208,8 +298,12 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
   protected void scheduleNextRun(AdaptrisMessage msg) {
     log.trace("Message [{}] should be retried", msg.getUniqueId());
     try {
-      ScheduledFuture f = executor.schedule(new RetryThread(msg), retryIntervalMs(), TimeUnit.MILLISECONDS);
-      retries.add(f);
+      if (executor == null || executor.isShutdown()) {
+        throw new CoreException("Retry timer is not running");
+      }
+      long dueTime = System.currentTimeMillis() + retryIntervalMs();
+      retryStore().store(msg, dueTime);
+      timeWheel.schedule(msg.getUniqueId(), dueTime);
     }
     catch (Exception e) {
       log.warn("Failed to reschedule retry, failing message");
@@ -217,6 +311,15 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
     }
   }
 
+  private AdaptrisMessage removeFromStore(String msgId) {
+    try {
+      return retryStore().remove(msgId);
+    }
+    catch (CoreException e) {
+      log.error("Failed to remove [{}] from the retry store", msgId, e);
+      return null;
+    }
+  }
 
   protected static Map<String, Workflow> filterStarted(Map<String, Workflow> workflows) {
     Map<String, Workflow> result = new HashMap<>(workflows.size());
@@ -232,11 +335,23 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
    *
    */
   protected class RetryThread implements Runnable {
-    private AdaptrisMessage msg;
+    private String msgId;
+    private AdaptrisMessage message;
+
+    RetryThread(String id) {
+      msgId = id;
+    }
 
+    /**
+     * @deprecated since 3.10.2 messages waiting to be retried are kept in the configured {@link RetryStore}, and retried using
+     *             their message id.
+     */
+    @Deprecated
+    @Removal(version = "3.12.0", message = "messages waiting to be retried are kept in the configured RetryStore")
     RetryThread(AdaptrisMessage m) {
-      msg = m;
-      retryList.add(msg);
+      this(m.getUniqueId());
+      message = m;
+      retryList.add(m);
     }
 
     @Override
@@ -244,7 +359,11 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
       String oldName = Thread.currentThread().getName();
       Thread.currentThread().setName(toString());
       try {
-        retryList.remove(msg);
+        AdaptrisMessage msg = message != null ? (retryList.remove(message) ? message : null) : removeFromStore(msgId);
+        if (msg == null) {
+          // Already failed via JMX or similar.
+          return;
+        }
         inProgress.add(msg);
         log.trace("Retrying message [{}]", msg.getUniqueId());
         Workflow workflow = filterStarted(registeredWorkflows()).get(msg.getMetadataValue(Workflow.WORKFLOW_ID_KEY));
@@ -271,23 +390,19 @@ public abstract class RetryMessageErrorHandlerImp extends StandardProcessingExce
 
   }
 
-  private class CleanupTask implements Runnable {
+  private class Ticker implements Runnable {
 
     @Override
     public void run() {
-      retries.removeAll(filter(new ArrayList<ScheduledFuture>(retries)));
-    }
-
-    private List<ScheduledFuture> filter(Collection<ScheduledFuture> workingSet) {
-      // surely time for a filter() lambda...
-      // return workingSet.stream().filter(future -> future.isDone()).collect(Collectors.toList());
-      List<ScheduledFuture> done = new ArrayList<>();
-      for (ScheduledFuture f : workingSet) {
-        if (f.isDone()) {
-          done.add(f);
+      try {
+        for (String id : timeWheel.advance(System.currentTimeMillis())) {
+          new RetryThread(id).run();
         }
       }
-      return done;
+      catch (Exception e) {
+        // Don't let an exception stop any future retries.
+        log.error("Exception attempting to retry messages", e);
+      }
     }
   }
 
@@ -99,8 +99,7 @@ public abstract class StandardWorkflowImpl extends WorkflowImp {
       if (clone) {
         wip = (AdaptrisMessage) msg.clone(); // retain orig. for error handling
       }
-      wip.getMessageLifecycleEvent().setChannelId(obtainChannel().getUniqueId());
-      wip.getMessageLifecycleEvent().setWorkflowId(obtainWorkflowId());
+      setLifecycleLocation(wip);
       wip.addEvent(getConsumer(), true); // initial receive event
       getServiceCollection().doService(wip);
       doProduce(wip);
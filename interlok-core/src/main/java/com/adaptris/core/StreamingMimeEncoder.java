@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeUtility;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.text.mime.MimeConstants;
+import com.adaptris.util.text.mime.MultipartStreamReader;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * <p>
+ * Implementation of <code>AdaptrisMessageEncoder</code> that stores <code>AdaptrisMessage</code> payload and metadata as a
+ * mime-encoded multipart message without buffering the message in memory.
+ * </p>
+ * <p>
+ * {@link MimeEncoder} builds the complete multipart in memory before writing it; this implementation writes the multipart headers,
+ * metadata part and payload part directly to the target stream, copying the payload from {@link AdaptrisMessage#getInputStream()}.
+ * When decoding, the parts are read directly from the stream (using {@link MultipartStreamReader}) and the payload copied to
+ * {@link AdaptrisMessage#getOutputStream()} of a message created by the configured {@link AdaptrisMessageFactory}; so if that is
+ * a {@link com.adaptris.core.lms.FileBackedMessageFactory} then the payload is never held in memory.
+ * </p>
+ * <p>
+ * The output is interchangeable with {@link MimeEncoder}, with the exception that no <code>Content-Length</code> header is
+ * written (since the length is not known in advance). The same caveats about metadata keys and values containing
+ * <code>=</code> apply.
+ * </p>
+ * 
+ * @config streaming-mime-encoder
+ * @since 3.10.2
+ */
+@XStreamAlias("streaming-mime-encoder")
+@DisplayOrder(order = {"payloadEncoding", "metadataEncoding", "retainUniqueId"})
+public class StreamingMimeEncoder extends MimeEncoderImpl {
+
+  private static final String CRLF = "\r\n";
+
+  public StreamingMimeEncoder() {
+    super();
+  }
+
+  public StreamingMimeEncoder(Boolean retainUniqueId, String metadataEncoding, String payloadEncoding) {
+    this();
+    setRetainUniqueId(retainUniqueId);
+    setMetadataEncoding(metadataEncoding);
+    setPayloadEncoding(payloadEncoding);
+  }
+
+  @Override
+  public void writeMessage(AdaptrisMessage msg, Object target) throws CoreException {
+    try {
+      if (!(target instanceof OutputStream)) {
+        throw new IllegalArgumentException("StreamingMimeEncoder can only encode to an OutputStream");
+      }
+      OutputStream out = (OutputStream) target;
+      String boundary = "----=_Part_" + UUID.randomUUID().toString();
+      write(out, MimeConstants.HEADER_MESSAGE_ID + ": " + msg.getUniqueId() + CRLF);
+      write(out, MimeConstants.HEADER_MIME_VERSION + ": 1.0" + CRLF);
+      write(out, MimeConstants.HEADER_CONTENT_TYPE + ": multipart/mixed; boundary=\"" + boundary + "\"" + CRLF + CRLF);
+
+      startPart(out, boundary, METADATA_CONTENT_ID, null, getMetadataEncoding());
+      try (OutputStream part = encode(out, getMetadataEncoding())) {
+        part.write(getMetadata(msg));
+      }
+      startPart(out, boundary, PAYLOAD_CONTENT_ID, "application/octet-stream", getPayloadEncoding());
+      try (InputStream in = msg.getInputStream(); OutputStream part = encode(out, getPayloadEncoding())) {
+        IOUtils.copy(in, part);
+      }
+      if (msg.getObjectHeaders().containsKey(CoreConstants.OBJ_METADATA_EXCEPTION)) {
+        startPart(out, boundary, EXCEPTION_CONTENT_ID, null, null);
+        try (PrintStream printer = new PrintStream(new CloseShieldOutputStream(out), true)) {
+          ((Exception) msg.getObjectHeaders().get(CoreConstants.OBJ_METADATA_EXCEPTION)).printStackTrace(printer);
+        }
+      }
+      write(out, CRLF + "--" + boundary + "--" + CRLF);
+      out.flush();
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  @Override
+  public AdaptrisMessage readMessage(Object source) throws CoreException {
+    AdaptrisMessage msg = null;
+    try {
+      if (!(source instanceof InputStream)) {
+        throw new IllegalArgumentException("StreamingMimeEncoder can only decode from an InputStream");
+      }
+      msg = currentMessageFactory().newMessage();
+      MultipartStreamReader reader = new MultipartStreamReader((InputStream) source);
+      boolean payload = false;
+      boolean metadata = false;
+      MultipartStreamReader.Part part;
+      while ((part = reader.next()) != null) {
+        String id = part.getContentID();
+        if (PAYLOAD_CONTENT_ID.equals(id)) {
+          try (InputStream in = part.getInputStream(); OutputStream out = msg.getOutputStream()) {
+            IOUtils.copy(in, out);
+          }
+          payload = true;
+        } else if (METADATA_CONTENT_ID.equals(id)) {
+          try (InputStream in = part.getInputStream()) {
+            msg.setMetadata(getMetadataSet(in));
+          }
+          metadata = true;
+        }
+      }
+      if (!payload || !metadata) {
+        throw new IllegalArgumentException("No " + (payload ? METADATA_CONTENT_ID : PAYLOAD_CONTENT_ID) + " part");
+      }
+      if (retainUniqueId()) {
+        msg.setUniqueId(reader.getMessageID());
+      }
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+    return msg;
+  }
+
+  private static void startPart(OutputStream out, String boundary, String contentId, String contentType, String encoding)
+      throws IOException {
+    // The line break before the boundary belongs to the boundary, not the preceding part
+    ByteArrayOutputStream hdrs = new ByteArrayOutputStream();
+    write(hdrs, CRLF + "--" + boundary + CRLF);
+    write(hdrs, MimeConstants.HEADER_CONTENT_ID + ": " + contentId + CRLF);
+    if (!isEmpty(contentType)) {
+      write(hdrs, MimeConstants.HEADER_CONTENT_TYPE + ": " + contentType + CRLF);
+    }
+    if (!isEmpty(encoding)) {
+      write(hdrs, MimeConstants.HEADER_CONTENT_ENCODING + ": " + encoding + CRLF);
+    }
+    write(hdrs, CRLF);
+    hdrs.writeTo(out);
+  }
+
+  // Closing the returned stream flushes any trailing encoded bytes, but leaves the underlying stream open.
+  private static OutputStream encode(OutputStream out, String encoding) throws MessagingException {
+    OutputStream shielded = new CloseShieldOutputStream(out);
+    return isEmpty(encoding) ? shielded : MimeUtility.encode(shielded, encoding);
+  }
+
+  private static void write(OutputStream out, String s) throws IOException {
+    out.write(s.getBytes(StandardCharsets.US_ASCII));
+  }
+}
@@ -384,9 +384,22 @@ public abstract class WorkflowImp implements Workflow {
    */
   @Override
   public void doProduce(AdaptrisMessage msg) throws ServiceException, ProduceException {
+    doProduce(msg, producer);
+  }
+
+  /**
+   * Produce the message using the specified producer, honouring {@link CoreConstants#KEY_WORKFLOW_SKIP_PRODUCER}.
+   *
+   * @param msg the message to produce
+   * @param p the producer to use.
+   * @throws ProduceException if any occur
+   * @throws ServiceException not thrown by this implementation
+   */
+  protected void doProduce(AdaptrisMessage msg, AdaptrisMessageProducer p)
+      throws ServiceException, ProduceException {
     if (!Boolean.valueOf(msg.getMetadataValue(KEY_WORKFLOW_SKIP_PRODUCER)).booleanValue()) {
-      producer.produce(msg);
-      msg.addEvent(producer, true);
+      p.produce(msg);
+      msg.addEvent(p, true);
     }
     else {
       log.debug("Skipping message producer, {} set to true", KEY_WORKFLOW_SKIP_PRODUCER);
@@ -427,6 +440,27 @@ public abstract class WorkflowImp implements Workflow {
     }
   }
 
+  /**
+   * Set the channel and workflow on the message's {@link MessageLifecycleEvent}.
+   * <p>
+   * For an {@link AdaptrisMessageImp} this doesn't build the event, which would otherwise be built for every message regardless of
+   * whether it is ever sent.
+   * </p>
+   *
+   * @since 3.10.2
+   */
+  protected void setLifecycleLocation(AdaptrisMessage wip) {
+    String channelId = obtainChannel().getUniqueId();
+    String workflowId = obtainWorkflowId();
+    if (wip instanceof AdaptrisMessageImp) {
+      ((AdaptrisMessageImp) wip).setLifecycleLocation(channelId, workflowId);
+    }
+    else {
+      wip.getMessageLifecycleEvent().setChannelId(channelId);
+      wip.getMessageLifecycleEvent().setWorkflowId(workflowId);
+    }
+  }
+
   @Override
   public String obtainWorkflowId() {
 
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.fs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * {@link ProcessedItemCache} implementation that persists changes to a binary journal.
+ * <p>
+ * {@link XStreamItemCache} marshals the entire cache to disk every time it is saved, and has to check every item in the cache
+ * when evicting; which becomes expensive when there are hundreds of thousands of files being tracked. This implementation
+ * instead appends a small binary record to the journal whenever a new or changed item is added to the cache, so the cost of each
+ * poll is proportional to the number of files that have changed, rather than the number of files in the cache.
+ * </p>
+ * <ul>
+ * <li>Items are held in the order that they were last processed, so eviction only visits items that have actually expired.</li>
+ * <li>An item that has not changed is only written to the journal again once its last processed time has moved on by more than
+ * a tenth of {@link #getAgeBeforeEviction()}; so after a restart, an item may be evicted slightly earlier than it would have
+ * been otherwise.</li>
+ * <li>Once the journal holds more than twice as many records as there are items in the cache (subject to
+ * {@link #getSnapshotThreshold()}), it is replaced with a snapshot of the current contents of the cache. A snapshot is also
+ * taken when the cache is initialised.</li>
+ * <li>Records are buffered in memory until {@link #save()} is called (which {@link NonDeletingFsConsumer} does after each
+ * poll).</li>
+ * </ul>
+ * <p>
+ * If multiple instances of this class point to the same persistent store then results are undefined.
+ * </p>
+ *
+ * @config fs-journalling-processed-item-cache
+ * @since 3.10.2
+ */
+@XStreamAlias("fs-journalling-processed-item-cache")
+@DisplayOrder(order = {"persistentStore", "ageBeforeEviction", "snapshotThreshold"})
+public class JournallingItemCache implements ProcessedItemCache {
+
+  private static final String DEF_CACHE_DIR = System.getProperty("user.dir") + File.separator;
+  private static final TimeInterval DEFAULT_AGE_BEFORE_EVICTION = new TimeInterval(12L, TimeUnit.HOURS);
+  private static final int DEFAULT_SNAPSHOT_THRESHOLD = 10000;
+
+  private static final int MAGIC = 0x50494A31; // PIJ1
+  private static final byte RECORD_UPDATE = 1;
+
+  private transient Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private String persistentStore;
+  @AdvancedConfig
+  private TimeInterval ageBeforeEviction;
+  @AdvancedConfig
+  @InputFieldDefault(value = "10000")
+  private Integer snapshotThreshold;
+
+  // Ordered by the time the item was last written to the cache.
+  private transient LinkedHashMap<String, Entry> cache = new LinkedHashMap<>();
+  private transient DataOutputStream journal;
+  private transient long journalRecords;
+
+  public JournallingItemCache() {
+    setPersistentStore(DEF_CACHE_DIR + UUID.randomUUID().toString().replaceAll("-", ""));
+  }
+
+  public JournallingItemCache(String store) {
+    this();
+    setPersistentStore(store);
+  }
+
+  @Override
+  public synchronized void init() throws CoreException {
+    try {
+      File store = new File(getPersistentStore());
+      if (store.isDirectory()) {
+        throw new IOException("[" + store.getAbsolutePath() + "] is a directory");
+      }
+      cache.clear();
+      if (store.exists() && store.length() > 0) {
+        replay(store);
+      }
+      snapshot();
+    }
+    catch (IOException e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  @Override
+  public void start() throws CoreException {
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  @Override
+  public synchronized void close() {
+    save();
+    IOUtils.closeQuietly(journal);
+    journal = null;
+  }
+
+  @Override
+  public synchronized boolean contains(String key) {
+    return cache.containsKey(key);
+  }
+
+  @Override
+  public synchronized ProcessedItem get(String key) {
+    Entry e = cache.get(key);
+    return e != null ? e.item : null;
+  }
+
+  @Override
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  @Override
+  public synchronized void update(ProcessedItem item) {
+    // Remove first, so that the item moves to the end of the iteration order.
+    Entry previous = cache.remove(item.getAbsolutePath());
+    Entry entry = new Entry(item, previous != null ? previous.journalled : 0);
+    cache.put(item.getAbsolutePath(), entry);
+    if (previous == null || hasChanged(previous.item, item)
+        || item.getLastProcessed() - previous.journalled > touchResolutionMs()) {
+      writeRecord(entry);
+    }
+  }
+
+  @Override
+  public synchronized void update(ProcessedItemList list) {
+    for (ProcessedItem item : list.getProcessedItems()) {
+      update(item);
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    cache.clear();
+    try {
+      snapshot();
+    }
+    catch (IOException e) {
+      log.warn("Failed to truncate journal [{}]", getPersistentStore(), e);
+    }
+  }
+
+  @Override
+  public synchronized void save() {
+    try {
+      if (journal != null) {
+        journal.flush();
+        if (journalRecords > Math.max(snapshotThreshold(), cache.size() * 2L)) {
+          snapshot();
+        }
+      }
+    }
+    catch (IOException e) {
+      log.warn("Failed to save journal [{}], recent changes may be lost upon restart", getPersistentStore(), e);
+    }
+  }
+
+  @Override
+  public synchronized void evict() {
+    long cutoff = System.currentTimeMillis() - ageBeforeEvictionMs();
+    for (Iterator<Entry> i = cache.values().iterator(); i.hasNext();) {
+      if (i.next().item.getLastProcessed() >= cutoff) {
+        break;
+      }
+      i.remove();
+    }
+  }
+
+  private void writeRecord(Entry entry) {
+    if (journal == null) {
+      return;
+    }
+    try {
+      write(journal, entry.item);
+      entry.journalled = entry.item.getLastProcessed();
+      journalRecords++;
+    }
+    catch (IOException e) {
+      log.warn("Failed to write to journal [{}]", getPersistentStore(), e);
+    }
+  }
+
+  private void replay(File store) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(store)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("[" + store.getAbsolutePath() + "] is not a processed item journal");
+      }
+      while (true) {
+        int type = in.read();
+        if (type < 0) {
+          break;
+        }
+        if (type != RECORD_UPDATE) {
+          throw new IOException("[" + store.getAbsolutePath() + "] is corrupt; unknown record type " + type);
+        }
+        ProcessedItem item = read(in);
+        Entry previous = cache.remove(item.getAbsolutePath());
+        if (previous == null || previous.item.getLastProcessed() <= item.getLastProcessed()) {
+          cache.put(item.getAbsolutePath(), new Entry(item, item.getLastProcessed()));
+        }
+        else {
+          cache.put(item.getAbsolutePath(), previous);
+        }
+      }
+    }
+    catch (EOFException e) {
+      // A partially written record; everything before it is good.
+      log.warn("[{}] ends with an incomplete record, ignoring it", store.getAbsolutePath());
+    }
+    log.trace("Replayed {} entries from [{}]", cache.size(), store.getAbsolutePath());
+  }
+
+  // Replace the journal with the current contents of the cache.
+  private void snapshot() throws IOException {
+    IOUtils.closeQuietly(journal);
+    journal = null;
+    File store = new File(getPersistentStore()).getAbsoluteFile();
+    File parent = store.getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    File tmp = File.createTempFile(store.getName(), ".tmp", parent);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        for (Entry entry : cache.values()) {
+          write(out, entry.item);
+          entry.journalled = entry.item.getLastProcessed();
+        }
+      }
+      try {
+        Files.move(tmp.toPath(), store.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), store.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+    journalRecords = cache.size();
+    journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(store, true)));
+    log.trace("Persisted {} entries to [{}]", cache.size(), store);
+  }
+
+  private static void write(DataOutputStream out, ProcessedItem item) throws IOException {
+    out.writeByte(RECORD_UPDATE);
+    out.writeUTF(item.getAbsolutePath());
+    out.writeLong(item.getLastModified());
+    out.writeLong(item.getFilesize());
+    out.writeLong(item.getLastProcessed());
+  }
+
+  private static ProcessedItem read(DataInputStream in) throws IOException {
+    ProcessedItem item = new ProcessedItem();
+    item.setAbsolutePath(in.readUTF());
+    item.setLastModified(in.readLong());
+    item.setFilesize(in.readLong());
+    item.setLastProcessed(in.readLong());
+    return item;
+  }
+
+  private static boolean hasChanged(ProcessedItem before, ProcessedItem after) {
+    return before.getFilesize() != after.getFilesize() || before.getLastModified() != after.getLastModified();
+  }
+
+  long ageBeforeEvictionMs() {
+    return TimeInterval.toMillisecondsDefaultIfNull(getAgeBeforeEviction(), DEFAULT_AGE_BEFORE_EVICTION);
+  }
+
+  long touchResolutionMs() {
+    return ageBeforeEvictionMs() / 10;
+  }
+
+  int snapshotThreshold() {
+    return snapshotThreshold != null ? snapshotThreshold.intValue() : DEFAULT_SNAPSHOT_THRESHOLD;
+  }
+
+  /**
+   * @return the filename
+   */
+  public String getPersistentStore() {
+    return persistentStore;
+  }
+
+  /**
+   * @param filename the file where to store cached items.
+   */
+  public void setPersistentStore(String filename) {
+    persistentStore = filename;
+  }
+
+  public TimeInterval getAgeBeforeEviction() {
+    return ageBeforeEviction;
+  }
+
+  /**
+   * Specify the age of an entry in the cache before it is evicted.
+   *
+   * @param interval the time before eviction to set, default 12 hours
+   */
+  public void setAgeBeforeEviction(TimeInterval interval) {
+    ageBeforeEviction = interval;
+  }
+
+  public Integer getSnapshotThreshold() {
+    return snapshotThreshold;
+  }
+
+  /**
+   * Set the minimum number of records in the journal before it is replaced with a snapshot.
+   * <p>
+   * The journal is replaced when it holds more than this number of records, and more than twice the number of items in the cache.
+   * </p>
+   *
+   * @param i the threshold, default 10000.
+   */
+  public void setSnapshotThreshold(Integer i) {
+    snapshotThreshold = i;
+  }
+
+  private static class Entry {
+    private final ProcessedItem item;
+    // The last processed time that was last written to the journal.
+    private long journalled;
+
+    Entry(ProcessedItem item, long journalled) {
+      this.item = item;
+      this.journalled = journalled;
+    }
+  }
+}
@@ -39,7 +39,8 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * This differs from the standard implementation of {@linkplain FsConsumer} in that it processes the file 'in-situ' and does not
  * delete the file after processing. To avoid constantly re-processing the same file over and over again, you can configure a
  * {@linkplain ProcessedItemCache} which stores the last modified timestamp of the file and only re-processes the file if it
- * changes.
+ * changes. If there are a large number of files in the directory, then consider using {@link JournallingItemCache} rather than
+ * {@link XStreamItemCache}.
  * </p>
  * <p>
  * The configured <code>Destination</code> may return a string in one of two formats
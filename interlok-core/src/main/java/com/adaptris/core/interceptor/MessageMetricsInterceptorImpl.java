@@ -16,29 +16,54 @@
 
 package com.adaptris.core.interceptor;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.adaptris.core.CoreException;
 import com.adaptris.core.ProduceException;
 import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.core.util.ManagedThreadFactory;
+import com.adaptris.util.TimeInterval;
 
 /**
  * Abstract WorkflowInterceptor implementation that exposes metrics via JMX.
- * 
+ * <p>
+ * Recording a message does not take any locks; each timeslice is a set of {@link LongAdder} counters held in a fixed size ring
+ * (of {@link #getTimesliceHistoryCount()} entries). When the current timeslice has expired, the next message swaps in a new
+ * timeslice with a single compare-and-set; expired timeslices are passed to the {@link StatisticManager} for producing by a
+ * background thread, so no I/O happens while a message is being processed. Each timeslice counts the threads that are recording
+ * into it; an expired timeslice is only produced once those threads have finished, so that it is complete.
+ * </p>
  */
 public abstract class MessageMetricsInterceptorImpl extends MetricsInterceptorImpl<MessageStatistic> {
-  
-  private transient Object chubb = new Object();
-  
+
+  private static final long PUBLISH_INTERVAL_MS = 1000L;
+  private static final TimeInterval SHUTDOWN_WAIT = new TimeInterval(10L, TimeUnit.SECONDS);
+
   private StatisticManager statisticManager;
 
+  private transient AtomicReference<TimeSlot> current = new AtomicReference<>();
+  private transient volatile AtomicReferenceArray<TimeSlot> history;
+  private transient Queue<TimeSlot> expired = new ConcurrentLinkedQueue<>();
+  private transient ScheduledExecutorService publisher;
+
   public MessageMetricsInterceptorImpl() {
     super();
+    history = new AtomicReferenceArray<>(DEFAULT_TIMESLICE_HISTORY_COUNT);
   }
   
   @Override
   public void init() throws CoreException {
+    resize(Math.max(1, timesliceHistoryCount()));
     this.statisticManager().setMaxHistoryCount(this.timesliceHistoryCount());
     LifecycleHelper.init(this.statisticManager());
   }
@@ -46,10 +71,15 @@ public abstract class MessageMetricsInterceptorImpl extends MetricsInterceptorIm
   @Override
   public void start() throws CoreException {
     LifecycleHelper.start(this.statisticManager());
+    publisher = Executors.newSingleThreadScheduledExecutor(new ManagedThreadFactory(getClass().getSimpleName()));
+    publisher.scheduleWithFixedDelay(() -> publishExpired(false), PUBLISH_INTERVAL_MS, PUBLISH_INTERVAL_MS, TimeUnit.MILLISECONDS);
   }
 
   @Override
   public void stop() {
+    ManagedThreadFactory.shutdownQuietly(publisher, SHUTDOWN_WAIT);
+    publisher = null;
+    publishExpired(true);
     LifecycleHelper.stop(this.statisticManager());
   }
 
@@ -59,46 +89,87 @@ public abstract class MessageMetricsInterceptorImpl extends MetricsInterceptorIm
   }
 
   protected void clearStatistics() {
-    synchronized (chubb) {
-      statisticManager().clear();
+    current.set(null);
+    for (int i = 0; i < history.length(); i++) {
+      history.set(i, null);
     }
+    expired.clear();
+    statisticManager().clear();
   }
 
-
-  protected void update(StatisticsDelta<MessageStatistic> d) {
-    synchronized (chubb) {
-      InterceptorStatistic stat = getCurrentTimeSlice();
-      updateCurrentTimeSlice(d.apply((MessageStatistic) stat));
+  /**
+   * Record some messages against the current timeslice.
+   *
+   * @param messages the number of messages.
+   * @param size the total size of the messages.
+   * @param errors the number of messages that had errors.
+   * @since 3.10.2
+   */
+  protected void record(int messages, long size, int errors) {
+    while (true) {
+      TimeSlot slot = currentSlot(System.currentTimeMillis());
+      slot.writers.incrementAndGet();
+      try {
+        // If it expired in the meantime, then it might already be on its way to being produced.
+        if (!slot.expired) {
+          slot.messageCount.add(messages);
+          slot.messageSize.add(size);
+          slot.errorCount.add(errors);
+          return;
+        }
+      } finally {
+        slot.writers.decrementAndGet();
+      }
     }
   }
 
-  private void updateCurrentTimeSlice(MessageStatistic currentTimeSlice) {
-    this.statisticManager().updateCurrent(currentTimeSlice);
+  /**
+   * Update the current timeslice.
+   *
+   * @deprecated since 3.10.2 the delta is applied to an empty {@link MessageStatistic} and the result added to the current
+   *             timeslice, so it must only ever add to the existing values; use {@link #record(int, long, int)} instead.
+   */
+  @Deprecated
+  protected void update(StatisticsDelta<MessageStatistic> d) {
+    MessageStatistic delta = d.apply(new MessageStatistic());
+    record(delta.getTotalMessageCount(), delta.getTotalMessageSize(), delta.getTotalMessageErrorCount());
   }
 
-  private InterceptorStatistic getCurrentTimeSlice() {
-    InterceptorStatistic timeSlice = null;
-    long timeInMillis = Calendar.getInstance().getTimeInMillis();
-
-    if (this.statisticManager().getStats().size() == 0) {
-      timeSlice = new MessageStatistic();
-      timeSlice.setEndMillis(timeInMillis + timesliceDurationMs());
-      this.statisticManager().getStats().add(timeSlice);
-    }
-    else {
-      timeSlice = this.statisticManager().getLatestStat();
-      if (timeSlice.getEndMillis() <= timeInMillis) {
-        try {
-          this.statisticManager().produce(timeSlice);
-        } catch (ProduceException e) {
-          log.error("Failed to produce timeslice.", e);
+  private TimeSlot currentSlot(long now) {
+    TimeSlot slot = current.get();
+    while (slot == null || slot.endMillis <= now) {
+      TimeSlot next = new TimeSlot(slot == null ? 0 : slot.sequence + 1, now, now + timesliceDurationMs());
+      if (current.compareAndSet(slot, next)) {
+        AtomicReferenceArray<TimeSlot> ring = history;
+        ring.set(index(ring, next.sequence), next);
+        if (slot != null) {
+          slot.expired = true;
+          expired.offer(slot);
         }
-        
-        timeSlice = new MessageStatistic(timeInMillis + timesliceDurationMs());
-        this.statisticManager().getStats().add(timeSlice);
+        return next;
+      }
+      slot = current.get();
+    }
+    return slot;
+  }
+
+  // Unless forced, stop at the first timeslice that still has threads recording into it; it is produced next time.
+  private void publishExpired(boolean force) {
+    TimeSlot slot;
+    while ((slot = expired.peek()) != null) {
+      if (!force && slot.writers.get() > 0) {
+        break;
+      }
+      expired.poll();
+      try {
+        this.statisticManager().produce(slot.toStatistic());
+      } catch (ProduceException e) {
+        log.error("Failed to produce timeslice.", e);
+      } catch (Exception e) {
+        // Don't let an exception stop any future timeslices being produced.
+        log.error("Exception producing timeslice.", e);
       }
     }
-    return timeSlice;
   }
   
   protected StatisticManager statisticManager() {
@@ -118,8 +189,70 @@ public abstract class MessageMetricsInterceptorImpl extends MetricsInterceptorIm
     this.statisticManager = statisticManager;
   }
 
+  /**
+   * Return a snapshot of the timeslices, oldest first.
+   *
+   */
   protected List<InterceptorStatistic> getStats() {
-    return this.statisticManager().getStats();
+    List<InterceptorStatistic> result = new ArrayList<>();
+    TimeSlot latest = current.get();
+    if (latest == null) {
+      return result;
+    }
+    AtomicReferenceArray<TimeSlot> ring = history;
+    for (long seq = Math.max(0, latest.sequence - ring.length() + 1); seq <= latest.sequence; seq++) {
+      TimeSlot slot = ring.get(index(ring, seq));
+      // It may have been overwritten (or not yet written) by a concurrent roll-over.
+      if (slot != null && slot.sequence == seq) {
+        result.add(slot.toStatistic());
+      }
+    }
+    return result;
   }
 
+  private void resize(int size) {
+    if (history.length() != size) {
+      AtomicReferenceArray<TimeSlot> ring = new AtomicReferenceArray<>(size);
+      for (int i = 0; i < history.length(); i++) {
+        TimeSlot slot = history.get(i);
+        if (slot != null) {
+          TimeSlot existing = ring.get(index(ring, slot.sequence));
+          if (existing == null || existing.sequence < slot.sequence) {
+            ring.set(index(ring, slot.sequence), slot);
+          }
+        }
+      }
+      history = ring;
+    }
+  }
+
+  private static int index(AtomicReferenceArray<TimeSlot> ring, long sequence) {
+    return (int) (sequence % ring.length());
+  }
+
+  private static class TimeSlot {
+    private final long sequence;
+    private final long startMillis;
+    private final long endMillis;
+    private final LongAdder messageCount = new LongAdder();
+    private final LongAdder messageSize = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final AtomicInteger writers = new AtomicInteger();
+    private volatile boolean expired;
+
+    TimeSlot(long sequence, long start, long end) {
+      this.sequence = sequence;
+      this.startMillis = start;
+      this.endMillis = end;
+    }
+
+    MessageStatistic toStatistic() {
+      MessageStatistic stat = new MessageStatistic(endMillis);
+      stat.setStartMillis(startMillis);
+      stat.setTotalMessageCount(messageCount.intValue());
+      stat.setTotalMessageSize(messageSize.sum());
+      stat.setTotalMessageErrorCount(errorCount.intValue());
+      return stat;
+    }
+  }
 }
@@ -70,11 +70,12 @@ public class MessageMetricsStatistics extends ChildRuntimeInfoComponentImpl
   public String getTotalStringStats() {
     long timeinMillis = Calendar.getInstance().getTimeInMillis();
     StringBuffer buffer = new StringBuffer();
-    buffer.append(wrappedComponent.getStats().size());
+    List<InterceptorStatistic> stats = wrappedComponent.getStats();
+    buffer.append(stats.size());
     buffer.append(" time slice(s) have been recorded.\n");
 
-    if (wrappedComponent.getStats().size() > 0) {
-      MessageStatistic timeSlice = (MessageStatistic) wrappedComponent.getStats().get(wrappedComponent.getStats().size() - 1);
+    if (stats.size() > 0) {
+      MessageStatistic timeSlice = (MessageStatistic) stats.get(stats.size() - 1);
       buffer.append("Current time slice statistics; \n");
       buffer.append("    Time Slice ends in  - " + (timeSlice.getEndMillis() - timeinMillis) / 1000 + " seconds.\n");
       buffer.append("    Message count - " + timeSlice.getTotalMessageCount() + "\n");
@@ -91,14 +92,21 @@ public class MessageMetricsStatistics extends ChildRuntimeInfoComponentImpl
 
   @Override
   public List<MessageStatistic> getStatistics() throws CoreException {
-    return getStatistics(0, wrappedComponent.getStats().size());
+    List<InterceptorStatistic> stats = wrappedComponent.getStats();
+    return getStatistics(stats, 0, stats.size());
   }
 
   @Override
   public List<MessageStatistic> getStatistics(int fromIndex, int toIndex) throws CoreException {
+    return getStatistics(wrappedComponent.getStats(), fromIndex, toIndex);
+  }
+
+  // getStats() is a new snapshot each time, so only use it once.
+  private static List<MessageStatistic> getStatistics(List<InterceptorStatistic> stats, int fromIndex, int toIndex)
+      throws CoreException {
     List<MessageStatistic> result = new ArrayList<MessageStatistic>();
     try {
-      List<InterceptorStatistic> sublist = wrappedComponent.getStats().subList(fromIndex, toIndex);
+      List<InterceptorStatistic> sublist = stats.subList(fromIndex, toIndex);
       for (InterceptorStatistic ms : sublist) {
         result.add(((MessageStatistic) ms).clone());
       }
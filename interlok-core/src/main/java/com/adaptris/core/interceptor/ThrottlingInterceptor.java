@@ -27,13 +27,17 @@ import java.util.concurrent.TimeoutException;
 import javax.validation.Valid;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import org.apache.commons.lang3.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.AutoPopulated;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.CoreException;
+import com.adaptris.core.util.ExceptionHelper;
 import com.adaptris.core.util.ManagedThreadFactory;
 import com.adaptris.util.TimeInterval;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
@@ -72,6 +76,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * {@link TimeSliceDefaultCacheProvider}</li>
  * <li>cache-name - This allows you to set the cache name that the time slice statistics will be created/used from;<strong>this must
  * be specified</strong></li>
+ * <li>throttle-mode - How the throttle is applied, see {@link ThrottleMode}. The default is {@link ThrottleMode#TIME_SLICE}</li>
  * </ul>
  * 
  * @config throttling-interceptor
@@ -81,9 +86,32 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 @XStreamAlias("throttling-interceptor")
 @ComponentProfile(summary = "Throttles message flow based on some message count criteria",
     tag = "interceptor,jmx")
-@DisplayOrder(order = {"maximumMessages", "timeSliceInterval"})
+@DisplayOrder(order = {"maximumMessages", "timeSliceInterval", "throttleMode"})
 public class ThrottlingInterceptor extends WorkflowInterceptorImpl {
 
+  /**
+   * How messages are throttled.
+   *
+   * @since 3.10.2
+   */
+  public enum ThrottleMode {
+    /**
+     * Count the messages in each time slice using the configured {@link TimeSliceCacheProvider}; once the maximum has been
+     * reached, then messages wait until the end of the time slice.
+     */
+    TIME_SLICE,
+    /**
+     * Use an in-memory token bucket that allows up to the maximum messages in a burst, and then issues permits at a steady rate
+     * of maximum-messages per time-slice-interval.
+     * <p>
+     * Permits are reserved without locking and waiting threads are parked rather than handed off to another thread. Workflows
+     * sharing the same cache name share the same bucket (and must have the same maximum-messages and time-slice-interval), and are
+     * issued permits in the order they asked for them. The {@link TimeSliceCacheProvider} is not used in this mode.
+     * </p>
+     */
+    TOKEN_BUCKET
+  }
+
   private transient Logger log = LoggerFactory.getLogger(this.getClass().getName());
 
   private static final int MAXIMUM_MESSAGES_DEFAULT = Integer.MAX_VALUE;
@@ -91,8 +119,12 @@ public class ThrottlingInterceptor extends WorkflowInterceptorImpl {
 
   private TimeInterval timeSliceInterval;
   private int maximumMessages;
+  @AdvancedConfig
+  @InputFieldDefault(value = "TIME_SLICE")
+  private ThrottleMode throttleMode;
 
   private transient ExecutorService executor;
+  private transient TokenBucket tokenBucket;
 
   @Valid
   @NotNull
@@ -116,29 +148,60 @@ public class ThrottlingInterceptor extends WorkflowInterceptorImpl {
       throw new CoreException("Cache Name not specified.");
     }
 
-    ((TimeSliceAbstractCacheProvider) cacheProvider).setTimeSliceDurationMilliseconds(getMillisecondDuration());
-    getCacheProvider().init();
-    executor = Executors.newSingleThreadExecutor(new ManagedThreadFactory(getClass().getSimpleName()));
+    if (throttleMode() == ThrottleMode.TOKEN_BUCKET) {
+      try {
+        tokenBucket =
+            TokenBucket.register(getCacheName(), this, getMaximumMessages(), getMillisecondDuration(), TimeUnit.MILLISECONDS);
+      }
+      catch (IllegalStateException e) {
+        throw ExceptionHelper.wrapCoreException(e);
+      }
+    }
+    else {
+      ((TimeSliceAbstractCacheProvider) cacheProvider).setTimeSliceDurationMilliseconds(getMillisecondDuration());
+      getCacheProvider().init();
+      executor = Executors.newSingleThreadExecutor(new ManagedThreadFactory(getClass().getSimpleName()));
+    }
   }
 
   @Override
   public void start() throws CoreException {
-    getCacheProvider().start();
+    if (tokenBucket == null) {
+      getCacheProvider().start();
+    }
   }
 
   @Override
   public void stop() {
-    getCacheProvider().stop();
+    if (tokenBucket == null) {
+      getCacheProvider().stop();
+    }
   }
 
   @Override
   public void close() {
+    if (tokenBucket != null) {
+      TokenBucket.release(getCacheName(), this);
+      tokenBucket = null;
+    }
     ManagedThreadFactory.shutdownQuietly(executor, new TimeInterval());
+    executor = null;
   }
 
-  //
   @Override
-  public synchronized void workflowStart(AdaptrisMessage inputMsg) {
+  public void workflowStart(AdaptrisMessage inputMsg) {
+    if (tokenBucket != null) {
+      long waited = tokenBucket.acquire();
+      if (waited > 0) {
+        log.trace("Throttled for {} ms", TimeUnit.NANOSECONDS.toMillis(waited));
+      }
+    }
+    else {
+      timeSliceStart(inputMsg);
+    }
+  }
+
+  private synchronized void timeSliceStart(AdaptrisMessage inputMsg) {
     // CacheProvider.get() will always return a timeslice - can never be null.
     TimeSlice currentTimeSlice = getCacheProvider().get(getCacheName());
 
@@ -149,7 +212,7 @@ public class ThrottlingInterceptor extends WorkflowInterceptorImpl {
 
       long delayFor = Math.abs(delayUntil - currentTime);
       log.debug("Delaying thread (Throttling) for {} ms", delayFor);
-      if (throttle(delayFor)) workflowStart(inputMsg);
+      if (throttle(delayFor)) timeSliceStart(inputMsg);
     }
     else {
       currentTimeSlice.setTotalMessageCount(currentTimeSlice.getTotalMessageCount() + 1);
@@ -209,6 +272,24 @@ public class ThrottlingInterceptor extends WorkflowInterceptorImpl {
     this.maximumMessages = maximumMessages;
   }
 
+  public ThrottleMode getThrottleMode() {
+    return throttleMode;
+  }
+
+  /**
+   * Set how messages are throttled.
+   *
+   * @param mode the mode; default is {@link ThrottleMode#TIME_SLICE} if not specified.
+   * @since 3.10.2
+   */
+  public void setThrottleMode(ThrottleMode mode) {
+    this.throttleMode = mode;
+  }
+
+  ThrottleMode throttleMode() {
+    return ObjectUtils.defaultIfNull(getThrottleMode(), ThrottleMode.TIME_SLICE);
+  }
+
   public TimeSliceCacheProvider getCacheProvider() {
     return cacheProvider;
   }
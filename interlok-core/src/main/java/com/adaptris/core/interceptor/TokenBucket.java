@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.interceptor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock-free token bucket used by {@link ThrottlingInterceptor}.
+ * <p>
+ * This is implemented as a generic cell rate algorithm; rather than counting tokens, it tracks the theoretical arrival time of the
+ * next permit. Each caller reserves the next permit with a single compare-and-set and then parks until its reservation is due,
+ * so permits are issued in the order that they were requested (regardless of which workflow requested them) and there is no
+ * monitor for blocked threads to contend on.
+ * </p>
+ * <p>
+ * Buckets are shared by name, so all the interceptors configured with the same cache name draw from the same bucket. A bucket
+ * only exists while there are interceptors using it; it is discarded once the last of them is closed.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+class TokenBucket {
+
+  private static final Logger log = LoggerFactory.getLogger(TokenBucket.class);
+  // guarded by synchronized (BUCKETS)
+  private static final Map<String, TokenBucket> BUCKETS = new HashMap<>();
+
+  private final int permits;
+  private final long periodNanos;
+  // The interval between each permit
+  private final long emissionNanos;
+  // How far ahead of the theoretical arrival time a permit may be issued (i.e. the burst size).
+  private final long toleranceNanos;
+  private final AtomicLong theoreticalArrival;
+  private final Set<Object> owners = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+  TokenBucket(int permits, long period, TimeUnit unit) {
+    this.permits = Math.max(1, permits);
+    this.periodNanos = Math.max(1, unit.toNanos(period));
+    this.emissionNanos = Math.max(1, periodNanos / this.permits);
+    this.toleranceNanos = emissionNanos * (this.permits - 1);
+    this.theoreticalArrival = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Get the shared bucket for the given name on behalf of the owner, creating it if required.
+   *
+   * @param name the name of the bucket.
+   * @param owner the component using the bucket, which should call {@link #release(String, Object)} when it no longer needs it.
+   * @throws IllegalStateException if the bucket is already in use with a different configuration.
+   */
+  static TokenBucket register(String name, Object owner, int permits, long period, TimeUnit unit) {
+    TokenBucket bucket = new TokenBucket(permits, period, unit);
+    synchronized (BUCKETS) {
+      TokenBucket existing = BUCKETS.get(name);
+      if (existing != null) {
+        if (existing.permits != bucket.permits || existing.periodNanos != bucket.periodNanos) {
+          throw new IllegalStateException("Token bucket [" + name + "] is already in use with a different configuration");
+        }
+        bucket = existing;
+      }
+      else {
+        BUCKETS.put(name, bucket);
+      }
+      bucket.owners.add(owner);
+    }
+    return bucket;
+  }
+
+  /**
+   * Release the owner's use of the named bucket, discarding the bucket if it is no longer used.
+   */
+  static void release(String name, Object owner) {
+    synchronized (BUCKETS) {
+      TokenBucket bucket = BUCKETS.get(name);
+      if (bucket != null && bucket.owners.remove(owner) && bucket.owners.isEmpty()) {
+        BUCKETS.remove(name);
+        log.trace("Discarded token bucket [{}]", name);
+      }
+    }
+  }
+
+  static boolean exists(String name) {
+    synchronized (BUCKETS) {
+      return BUCKETS.containsKey(name);
+    }
+  }
+
+  /**
+   * Reserve a permit, returning how long the caller should wait before using it.
+   *
+   * @return the wait time in nanoseconds, 0 if the permit is available immediately.
+   */
+  long reserve() {
+    while (true) {
+      long now = System.nanoTime();
+      long tat = theoreticalArrival.get();
+      long next = Math.max(tat, now) + emissionNanos;
+      if (theoreticalArrival.compareAndSet(tat, next)) {
+        return Math.max(0, tat - toleranceNanos - now);
+      }
+    }
+  }
+
+  /**
+   * Acquire a permit, parking the current thread until it is available.
+   * <p>
+   * If the thread is interrupted while waiting, then the permit is given back, and this returns early.
+   * </p>
+   *
+   * @return the time spent waiting in nanoseconds.
+   */
+  long acquire() {
+    long wait = reserve();
+    if (wait > 0) {
+      long start = System.nanoTime();
+      long deadline = start + wait;
+      long remaining = wait;
+      while (remaining > 0) {
+        LockSupport.parkNanos(this, remaining);
+        if (Thread.currentThread().isInterrupted()) {
+          log.trace("Interrupted while throttling");
+          unreserve();
+          return System.nanoTime() - start;
+        }
+        remaining = deadline - System.nanoTime();
+      }
+    }
+    return wait;
+  }
+
+  // Give back a permit that was reserved but not used.
+  private void unreserve() {
+    theoreticalArrival.addAndGet(-emissionNanos);
+  }
+
+  /**
+   * @return the number of permits that could be issued right now without waiting.
+   */
+  int availablePermits() {
+    long ahead = theoreticalArrival.get() - System.nanoTime();
+    if (ahead <= 0) {
+      return permits;
+    }
+    return (int) Math.max(0, permits - (ahead + emissionNanos - 1) / emissionNanos);
+  }
+
+  int permits() {
+    return permits;
+  }
+}
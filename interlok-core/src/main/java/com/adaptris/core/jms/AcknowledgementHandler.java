@@ -3,10 +3,26 @@ package com.adaptris.core.jms;
 import javax.jms.JMSException;
 import javax.jms.Message;
 
+/**
+ * Handles the acknowledgement (or rollback) of a message that has been consumed from a JMS provider.
+ */
 public interface AcknowledgementHandler {
 
+  /**
+   * Acknowledge (or commit) the message.
+   *
+   * @param actor the consumer that received the message.
+   * @param message the message.
+   * @throws JMSException if the message could not be acknowledged.
+   */
   void acknowledgeMessage(JmsActorConfig actor, Message message) throws JMSException;
-  
+
+  /**
+   * Roll back the message, so that it will be redelivered.
+   *
+   * @param actor the consumer that received the message.
+   * @param message the message.
+   */
   void rollbackMessage(JmsActorConfig actor, Message message);
-  
+
 }
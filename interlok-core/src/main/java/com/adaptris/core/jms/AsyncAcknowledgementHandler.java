@@ -1,31 +1,133 @@
 package com.adaptris.core.jms;
 
+import java.util.concurrent.TimeUnit;
 import javax.jms.CompletionListener;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import com.adaptris.core.util.Args;
 
+/**
+ * {@link AcknowledgementHandler} that defers acknowledgement until any asynchronous sends made while processing the message
+ * have completed.
+ * <p>
+ * An instance is created for each message that is received by a JMS consumer, and stored against the
+ * {@link com.adaptris.core.AdaptrisMessage} as object metadata (see {@link JmsConstants#OBJ_JMS_ACKNOWLEDGEMENT_HANDLER}).
+ * {@link JmsAsyncProducer} registers each send that it makes with this handler, and reports the outcome of each send via
+ * {@link CompletionListener}. When the consumer comes to acknowledge the message it waits for the registered sends to complete;
+ * if they were all successful, then the message is acknowledged using the wrapped handler, otherwise it is rolled back.
+ * </p>
+ * <p>
+ * Acknowledgement and rollback always happen on the consumer's thread, as a JMS session should not be used by multiple threads.
+ * Once the consumer has started to acknowledge (or roll back) the message, further sends cannot be registered; this will happen
+ * if the workflow hands the message to another thread (e.g. {@link com.adaptris.core.PoolingWorkflow}), in which case the message
+ * has already been acknowledged by the time it is produced.
+ * </p>
+ *
+ * @since 3.10.2
+ */
 public class AsyncAcknowledgementHandler implements AcknowledgementHandler, CompletionListener {
 
+  private final AcknowledgementHandler delegate;
+  private int outstanding;
+  private long deadline;
+  private Exception failure;
+  private boolean closed;
+
+  public AsyncAcknowledgementHandler() {
+    this(new NoOpAcknowledgementHandler());
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param delegate the handler that actually acknowledges (or rolls back) the message once the sends have completed.
+   */
+  public AsyncAcknowledgementHandler(AcknowledgementHandler delegate) {
+    this.delegate = Args.notNull(delegate, "delegate");
+  }
+
+  /**
+   * Register an asynchronous send against the message.
+   *
+   * @param timeoutMs how long the consumer should wait for the send to complete before rolling back the message.
+   * @return true if the send was registered, false if the message has already been acknowledged or rolled back.
+   */
+  public synchronized boolean register(long timeoutMs) {
+    if (closed) {
+      return false;
+    }
+    long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    deadline = outstanding == 0 ? due : Math.max(deadline, due);
+    outstanding++;
+    return true;
+  }
+
   @Override
-  public void acknowledgeMessage(JmsActorConfig actor, Message message) throws JMSException {
-    // do nothing
+  public synchronized void onCompletion(Message message) {
+    outstanding--;
+    notifyAll();
   }
 
   @Override
-  public void rollbackMessage(JmsActorConfig actor, Message message) {
-    // do nothing
+  public synchronized void onException(Message message, Exception exception) {
+    if (failure == null) {
+      failure = exception;
+    }
+    outstanding--;
+    notifyAll();
   }
 
+  /**
+   * Wait for the registered sends to complete, and then acknowledge the message.
+   * <p>
+   * If any of the sends failed (or did not complete in time) then the message is rolled back instead.
+   * </p>
+   */
   @Override
-  public void onCompletion(Message message) {
-    // TODO Auto-generated method stub
-    
+  public void acknowledgeMessage(JmsActorConfig actor, Message message) throws JMSException {
+    Exception e = awaitCompletion();
+    if (e != null) {
+      actor.currentLogger().warn("Asynchronous send failed, rolling back [{}] : {}", message.getJMSMessageID(), e.getMessage());
+      delegate.rollbackMessage(actor, message);
+    }
+    else {
+      delegate.acknowledgeMessage(actor, message);
+    }
   }
 
   @Override
-  public void onException(Message message, Exception exception) {
-    // TODO Auto-generated method stub
-    
+  public void rollbackMessage(JmsActorConfig actor, Message message) {
+    synchronized (this) {
+      closed = true;
+    }
+    delegate.rollbackMessage(actor, message);
   }
 
+  /**
+   * Wait for all the registered sends to complete; once called, no further sends may be registered.
+   *
+   * @return the first failure, or null if all the sends were successful.
+   */
+  synchronized Exception awaitCompletion() {
+    closed = true;
+    try {
+      while (outstanding > 0 && failure == null) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          failure = new JMSException("Timed out waiting for " + outstanding + " asynchronous send(s) to complete");
+          break;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = JmsUtils.wrapJMSException("Interrupted waiting for asynchronous send(s) to complete", e);
+    }
+    return failure;
+  }
+
+  synchronized int outstanding() {
+    return outstanding;
+  }
 }
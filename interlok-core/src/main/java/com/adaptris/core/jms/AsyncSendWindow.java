@@ -0,0 +1,268 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.jms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Tracks the asynchronous sends made by {@link JmsAsyncProducer} that have not yet completed.
+ * <p>
+ * The number of sends that may be in flight at any one time is limited; {@link #reserve(Message, Destination,
+ * AsyncAcknowledgementHandler, long)} blocks until a send completes if the window is full. Completions may be reported by the
+ * provider in any order, but they are retired in the order that the messages were sent to each destination. If a send fails then
+ * every send to the same destination that was made after it, and that has not yet been retired, is also deemed to have failed
+ * (even if the provider reports success), so that the source messages for all of them are redelivered and ordering is
+ * preserved.
+ * </p>
+ * <p>
+ * A send that has not completed within the timeout that it was reserved with is also deemed to have failed when
+ * {@link #expire()} is next called, and its place in the window is released; so a provider that never invokes the completion
+ * callback cannot permanently fill the window. If the provider does eventually report the outcome of an expired send, then it
+ * is ignored, since the send has already been treated as failed.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+class AsyncSendWindow {
+
+  private final Semaphore permits;
+  private final Map<Message, Send> inFlight = new IdentityHashMap<>();
+  private final Map<Destination, Deque<Send>> destinations = new HashMap<>();
+  // Weak, since the provider may never report the outcome of an expired send.
+  private final Set<Message> expired = Collections.newSetFromMap(new WeakHashMap<Message, Boolean>());
+
+  AsyncSendWindow(int size) {
+    permits = new Semaphore(Math.max(1, size), true);
+  }
+
+  /**
+   * Reserve a place in the window for a send, waiting if the window is full.
+   *
+   * @param message the message that is about to be sent.
+   * @param destination the destination.
+   * @param ack the acknowledgement handler for the source message, may be null.
+   * @param timeoutMs how long to wait for a place in the window, and how long to wait for the send to complete before it is
+   *          expired.
+   * @return the send.
+   * @throws JMSException if there is no room in the window before the timeout expires.
+   */
+  Send reserve(Message message, Destination destination, AsyncAcknowledgementHandler ack, long timeoutMs)
+      throws JMSException {
+    try {
+      if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+        throw new JMSException("Timed out waiting for an asynchronous send to complete; in-flight window is full");
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw JmsUtils.wrapJMSException("Interrupted waiting for room in the in-flight window", e);
+    }
+    Send send = new Send(message, destination, ack != null && ack.register(timeoutMs) ? ack : null,
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    synchronized (this) {
+      inFlight.put(message, send);
+      destinations.computeIfAbsent(destination, k -> new ArrayDeque<>()).addLast(send);
+    }
+    return send;
+  }
+
+  /**
+   * Remove a send that could not be made, releasing its place in the window.
+   *
+   * @param send the send.
+   * @param cause why it could not be made.
+   */
+  void abandon(Send send, Exception cause) {
+    synchronized (this) {
+      if (inFlight.remove(send.message) == null) {
+        return;
+      }
+      Deque<Send> queue = destinations.get(send.destination);
+      queue.remove(send);
+      if (queue.isEmpty()) {
+        destinations.remove(send.destination);
+      }
+      notifyAll();
+    }
+    permits.release();
+    if (send.ack != null) {
+      send.ack.onException(send.message, cause);
+    }
+  }
+
+  /**
+   * Record the outcome of a send.
+   *
+   * @param message the message that was sent.
+   * @param failure the failure, or null if the send was successful.
+   * @return the sends that can now be retired, in the order they were sent (empty if the send has already expired); or null if
+   *         the message is not being tracked.
+   */
+  List<Send> complete(Message message, Exception failure) {
+    List<Send> retired = new ArrayList<>();
+    synchronized (this) {
+      Send send = inFlight.remove(message);
+      if (send == null) {
+        return expired.remove(message) ? retired : null;
+      }
+      send.done = true;
+      if (send.failure == null) {
+        send.failure = failure;
+      }
+      Deque<Send> queue = destinations.get(send.destination);
+      retireCompleted(queue, retired);
+      if (queue.isEmpty()) {
+        destinations.remove(send.destination);
+      }
+      notifyAll();
+    }
+    permits.release();
+    return retired;
+  }
+
+  /**
+   * Fail the sends that have not completed within their timeout, releasing their places in the window.
+   *
+   * @return the sends that can now be retired, in the order they were sent.
+   */
+  List<Send> expire() {
+    List<Send> retired = new ArrayList<>();
+    int released = 0;
+    synchronized (this) {
+      long now = System.nanoTime();
+      for (Iterator<Deque<Send>> i = destinations.values().iterator(); i.hasNext();) {
+        Deque<Send> queue = i.next();
+        for (Send send : queue) {
+          if (send.done) {
+            continue;
+          }
+          // Sends are reserved with the same timeout, so nothing after this one has expired either.
+          if (now - send.deadline < 0) {
+            break;
+          }
+          inFlight.remove(send.message);
+          expired.add(send.message);
+          send.done = true;
+          if (send.failure == null) {
+            send.failure = new JMSException("Asynchronous send to " + send.destination + " did not complete in time");
+          }
+          released++;
+        }
+        retireCompleted(queue, retired);
+        if (queue.isEmpty()) {
+          i.remove();
+        }
+      }
+      if (released > 0) {
+        notifyAll();
+      }
+    }
+    permits.release(released);
+    return retired;
+  }
+
+  // Retire the sends at the head of the queue that are done; anything after a failure fails with it.
+  private static void retireCompleted(Deque<Send> queue, List<Send> retired) {
+    while (!queue.isEmpty() && queue.peekFirst().done) {
+      Send head = queue.removeFirst();
+      if (head.failure != null) {
+        queue.forEach(s -> s.poison(head));
+      }
+      retired.add(head);
+    }
+  }
+
+  /**
+   * Wait for all the sends to complete.
+   *
+   * @return true if there are no sends in flight.
+   */
+  synchronized boolean drain(long timeoutMs) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    try {
+      while (!inFlight.isEmpty()) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return true;
+  }
+
+  synchronized int inFlight() {
+    return inFlight.size();
+  }
+
+  /**
+   * An asynchronous send.
+   */
+  static class Send {
+    private final Message message;
+    private final Destination destination;
+    private final AsyncAcknowledgementHandler ack;
+    private final long deadline;
+    private boolean done;
+    private Exception failure;
+
+    private Send(Message message, Destination destination, AsyncAcknowledgementHandler ack, long deadline) {
+      this.message = message;
+      this.destination = destination;
+      this.ack = ack;
+      this.deadline = deadline;
+    }
+
+    // Only sends whose source can be redelivered need to fail along with an earlier send.
+    private void poison(Send earlier) {
+      if (ack != null && failure == null) {
+        failure = new JMSException("An earlier asynchronous send to " + destination + " failed");
+        failure.initCause(earlier.failure);
+      }
+    }
+
+    Message message() {
+      return message;
+    }
+
+    AsyncAcknowledgementHandler acknowledgementHandler() {
+      return ack;
+    }
+
+    Exception failure() {
+      return failure;
+    }
+  }
+}
@@ -65,6 +65,9 @@ public abstract class DefinedJmsProducer extends JmsProducerImpl {
       logLinkedException("Creating Destination", e);
       throw ExceptionHelper.wrapProduceException(e);
     }
+    finally {
+      releaseSession();
+    }
   }
 
   /*
@@ -111,10 +114,10 @@ public abstract class DefinedJmsProducer extends JmsProducerImpl {
     setupSession(msg);
     Message jmsMsg = translate(msg, replyTo);
     if (!perMessageProperties()) {
-      producerSession.getProducer().send(destination, jmsMsg);
+      currentProducerSession().send(destination, jmsMsg);
     }
     else {
-      producerSession.getProducer().send(destination, jmsMsg, calculateDeliveryMode(msg, getDeliveryMode()),
+      currentProducerSession().send(destination, jmsMsg, calculateDeliveryMode(msg, getDeliveryMode()),
           calculatePriority(msg, getPriority()), calculateTimeToLive(msg, timeToLive()));
     }
     if (captureOutgoingMessageDetails()) {
@@ -145,7 +148,7 @@ public abstract class DefinedJmsProducer extends JmsProducerImpl {
     MessageConsumer receiver = null;
     try {
       setupSession(msg);
-      getMessageTranslator().registerSession(producerSession.getSession());
+      configuredMessageTranslator().registerSession(currentSession());
       if (msg.headersContainsKey(JMS_ASYNC_STATIC_REPLY_TO)) {
         replyTo = createDestination(msg.getMetadataValue(JMS_ASYNC_STATIC_REPLY_TO));
       }
@@ -157,7 +160,7 @@ public abstract class DefinedJmsProducer extends JmsProducerImpl {
       Message jmsReply = receiver.receive(timeout);
 
       if (jmsReply != null) {
-        translatedReply = MessageTypeTranslatorImp.translate(getMessageTranslator(), jmsReply);
+        translatedReply = MessageTypeTranslatorImp.translate(configuredMessageTranslator(), jmsReply);
       }
       else {
         throw new JMSException("No Reply Received within " + timeout + "ms");
@@ -174,6 +177,7 @@ public abstract class DefinedJmsProducer extends JmsProducerImpl {
     finally {
       JmsUtils.closeQuietly(receiver);
       JmsUtils.deleteTemporaryDestination(replyTo);
+      releaseSession();
     }
     return translatedReply;
   }
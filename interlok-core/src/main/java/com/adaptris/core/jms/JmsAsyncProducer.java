@@ -1,18 +1,26 @@
 package com.adaptris.core.jms;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.jms.CompletionListener;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import com.adaptris.annotation.AdapterComponent;
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.CoreException;
 import com.adaptris.core.StandardProcessingExceptionHandler;
 import com.adaptris.core.util.Args;
 import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.NumberUtils;
+import com.adaptris.util.TimeInterval;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 
 /**
@@ -42,6 +50,23 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * Generally this may not be an issue, however if processing a message triggers a form of transaction committing or JMS acknowledging, 
  * then the commit or ack could be completed regardless if the sent JMS message eventually succeeds or fails.
  * </p>
+ * <p>
+ * The exception to this is when the message was consumed by one of the JMS consumers using a transacted session, or
+ * {@code CLIENT_ACKNOWLEDGE} mode; the consumer stores an
+ * {@link AsyncAcknowledgementHandler} against the message (see {@link JmsConstants#OBJ_JMS_ACKNOWLEDGEMENT_HANDLER}) and this
+ * producer reports the outcome of each send to it. The consumer then waits for the sends to complete before it acknowledges
+ * (or commits) the source message; if a send fails, or does not complete within {@link #setCompletionTimeout(TimeInterval)}, the
+ * source message is rolled back instead and will be redelivered by the broker, so the async-message-error-handler is not used for
+ * those messages. This preserves at-least-once delivery (e.g. with {@link JmsTransactedWorkflow}); use
+ * {@link JmsPollingConsumerImpl#setMaxBatchSize(Integer)} on the consumer so that the sends for a batch of messages overlap, rather
+ * than waiting for each message in turn.
+ * </p>
+ * <p>
+ * The number of sends that may be in flight at any one time is limited by {@link #setMaxInFlight(Integer)}; when the limit is
+ * reached, producing waits for an earlier send to complete. Completions are handled in the order that the messages were sent to
+ * each destination; if a send fails, then later sends to the same destination whose source messages are awaiting
+ * acknowledgement are also treated as failed, so that the source messages are redelivered in their original order.
+ * </p>
  * 
  * @config jms-async-producer
  * 
@@ -49,20 +74,62 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 @XStreamAlias("jms-async-producer")
 @AdapterComponent
 @ComponentProfile(summary = "Place message on a JMS queue or topic asynchronously", tag = "producer,jms", recommended = {JmsConnection.class})
-@DisplayOrder(order = {"destination", "asyncMessageErrorHandler", "messageTypeTranslator", "deliveryMode", "priority", "ttl", "acknowledgeMode"})
+@DisplayOrder(order = {"destination", "asyncMessageErrorHandler", "messageTypeTranslator", "deliveryMode", "priority", "ttl",
+    "acknowledgeMode", "maxInFlight", "completionTimeout"})
 public class JmsAsyncProducer extends JmsProducer implements CompletionListener {
-  
+
+  private static final int DEFAULT_MAX_IN_FLIGHT = 100;
+  private static final TimeInterval DEFAULT_COMPLETION_TIMEOUT = new TimeInterval(1L, TimeUnit.MINUTES);
+
   @NotNull
   private StandardProcessingExceptionHandler asyncMessageErrorHandler;
 
+  /**
+   * The maximum number of sends that may be waiting for completion.
+   * <p>
+   * The default is 100 if not explicitly specified.
+   * </p>
+   * 
+   * @since 3.10.2
+   */
+  @AdvancedConfig
+  @InputFieldDefault(value = "100")
+  @Min(1)
+  private Integer maxInFlight;
+
+  /**
+   * How long to wait for a send to complete.
+   * <p>
+   * This is how long a consumer waits for the sends to complete before rolling back the source message, and also how long
+   * producing waits for room in the in-flight window. A send that has not completed within this time is treated as having failed
+   * (and its place in the window released) the next time a message is produced. The default is 1 minute if not explicitly
+   * specified.
+   * </p>
+   * 
+   * @since 3.10.2
+   */
+  @AdvancedConfig
+  @Valid
+  private TimeInterval completionTimeout;
+
+  private transient AsyncSendWindow window;
+
+  public JmsAsyncProducer() {
+    super();
+    window = new AsyncSendWindow(DEFAULT_MAX_IN_FLIGHT);
+  }
+
   protected void produce(AdaptrisMessage msg, JmsDestination jmsDest) throws JMSException, CoreException {
+    AsyncSendWindow.Send send = null;
     try {
       setupSession(msg);
       Message jmsMsg = translate(msg, jmsDest.getReplyToDestination());
+      retire(window.expire());
+      send = window.reserve(jmsMsg, jmsDest.getDestination(), acknowledgementHandler(msg), completionTimeoutMs());
       if (!perMessageProperties()) {
-        producerSession.getProducer().send(jmsDest.getDestination(), jmsMsg, this);
+        currentProducerSession().send(jmsDest.getDestination(), jmsMsg, this);
       } else {
-        producerSession.getProducer().send(jmsDest.getDestination(), jmsMsg,
+        currentProducerSession().send(jmsDest.getDestination(), jmsMsg,
             calculateDeliveryMode(msg, jmsDest.deliveryMode()),
             calculatePriority(msg, jmsDest.priority()),
             calculateTimeToLive(msg, jmsDest.timeToLive()),
@@ -73,6 +140,9 @@ public class JmsAsyncProducer extends JmsProducer implements CompletionListener
       }
       log.info("msg produced to destination [{}]", jmsDest);
     } catch (Throwable ex) {
+      if (send != null) {
+        window.abandon(send, ex instanceof Exception ? (Exception) ex : new JMSException(ex.getMessage()));
+      }
       throw new CoreException("JMS runtime exception", ex);
     }
   }
@@ -82,12 +152,44 @@ public class JmsAsyncProducer extends JmsProducer implements CompletionListener
     try {
       log.trace("Async message succesfully received with id {}", message.getJMSMessageID());
     } catch (JMSException e) {}
+    retire(complete(message, null));
   }
 
   @Override
   public void onException(Message message, Exception exception) {
     log.error("Async Message failed.", exception);
-    
+    List<AsyncSendWindow.Send> retired = complete(message, exception);
+    // An empty list means the send has already expired, and has been failed.
+    if (retired == null) {
+      handleFailure(message);
+    } else {
+      retire(retired);
+    }
+  }
+
+  private List<AsyncSendWindow.Send> complete(Message message, Exception exception) {
+    return window != null ? window.complete(message, exception) : null;
+  }
+
+  private void retire(List<AsyncSendWindow.Send> sends) {
+    if (sends == null) {
+      return;
+    }
+    for (AsyncSendWindow.Send send : sends) {
+      AsyncAcknowledgementHandler ack = send.acknowledgementHandler();
+      if (ack == null) {
+        if (send.failure() != null) {
+          handleFailure(send.message());
+        }
+      } else if (send.failure() != null) {
+        ack.onException(send.message(), send.failure());
+      } else {
+        ack.onCompletion(send.message());
+      }
+    }
+  }
+
+  private void handleFailure(Message message) {
     try {
       this.getAsyncMessageErrorHandler().handleProcessingException(this.getMessageTranslator().translate(message));
     } catch (JMSException e) {
@@ -95,6 +197,11 @@ public class JmsAsyncProducer extends JmsProducer implements CompletionListener
     }
   }
 
+  private static AsyncAcknowledgementHandler acknowledgementHandler(AdaptrisMessage msg) {
+    Object o = msg.getObjectHeaders().get(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER);
+    return o instanceof AsyncAcknowledgementHandler ? (AsyncAcknowledgementHandler) o : null;
+  }
+
   public StandardProcessingExceptionHandler getAsyncMessageErrorHandler() {
     return asyncMessageErrorHandler;
   }
@@ -103,13 +210,62 @@ public class JmsAsyncProducer extends JmsProducer implements CompletionListener
     this.asyncMessageErrorHandler = asyncMessageErrorHandler;
   }
 
+  public Integer getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * Set the maximum number of sends that may be waiting for completion.
+   * 
+   * @param i the maximum number of sends; default is 100 if not specified.
+   * @since 3.10.2
+   */
+  public void setMaxInFlight(Integer i) {
+    maxInFlight = i;
+  }
+
+  int maxInFlight() {
+    return Math.max(1, NumberUtils.toIntDefaultIfNull(getMaxInFlight(), DEFAULT_MAX_IN_FLIGHT));
+  }
+
+  public TimeInterval getCompletionTimeout() {
+    return completionTimeout;
+  }
+
+  /**
+   * Set how long to wait for a send to complete.
+   * 
+   * @param t the timeout; default is 1 minute if not specified.
+   * @since 3.10.2
+   */
+  public void setCompletionTimeout(TimeInterval t) {
+    completionTimeout = t;
+  }
+
+  long completionTimeoutMs() {
+    return TimeInterval.toMillisecondsDefaultIfNull(getCompletionTimeout(), DEFAULT_COMPLETION_TIMEOUT);
+  }
+
+  int inFlight() {
+    return window != null ? window.inFlight() : 0;
+  }
+
   @Override
   public void init() throws CoreException {
     try {
       Args.notNull(getAsyncMessageErrorHandler(), "asyncMessageErrorHandler");
+      window = new AsyncSendWindow(maxInFlight());
       super.init();
     } catch (IllegalArgumentException e) {
       throw ExceptionHelper.wrapCoreException(e);
     }
   }
+
+  @Override
+  public void stop() {
+    if (window != null && !window.drain(completionTimeoutMs())) {
+      log.warn("{} asynchronous send(s) did not complete before stopping", window.inFlight());
+    }
+    super.stop();
+  }
 }
@@ -38,6 +38,13 @@ public final class JmsConstants {
    */
   public static final String OBJ_JMS_REPLY_TO_KEY = "jmsreplyto";
 
+  /**
+   * Key used to store the {@link AsyncAcknowledgementHandler} for a consumed message as AdaptrisMessage {@code Object} metadata.
+   *
+   * @since 3.10.2
+   */
+  public static final String OBJ_JMS_ACKNOWLEDGEMENT_HANDLER = "jmsAcknowledgementHandler";
+
   /**
    * Key used to store the JMSType header property.
    *
@@ -18,6 +18,8 @@ package com.adaptris.core.jms;
 
 import static com.adaptris.core.AdaptrisMessageFactory.defaultIfNull;
 import static com.adaptris.core.jms.NullCorrelationIdSource.defaultIfNull;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
@@ -41,6 +43,7 @@ import com.adaptris.core.CoreException;
 import com.adaptris.core.jms.jndi.StandardJndiImplementation;
 import com.adaptris.core.util.Args;
 import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.util.NumberUtils;
 import com.adaptris.util.TimeInterval;
 
 /**
@@ -58,10 +61,16 @@ import com.adaptris.util.TimeInterval;
  * <p>
  * If connection attempt fails, the poller sleeps for the configured interval then tries again.
  * </p>
+ * <p>
+ * If {@link #setMaxBatchSize(Integer)} is greater than 1, then messages are received in batches, and each batch is acknowledged
+ * (or committed) once after all the messages in it have been processed.
+ * </p>
  */
 public abstract class JmsPollingConsumerImpl extends AdaptrisPollingConsumer implements JmsActorConfig, JmsConnectionConfig {
 
   private static final TimeInterval DEFAULT_RECEIVE_WAIT = new TimeInterval(2L, TimeUnit.SECONDS);
+  private static final int DEFAULT_MAX_BATCH_SIZE = 1;
+  private static final TimeInterval DEFAULT_BATCH_WINDOW = new TimeInterval(100L, TimeUnit.MILLISECONDS);
 
   private String userName;
   @InputFieldHint(style = "PASSWORD", external = true)
@@ -89,6 +98,12 @@ public abstract class JmsPollingConsumerImpl extends AdaptrisPollingConsumer imp
   private Boolean additionalDebug;
   @Valid
   private TimeInterval receiveTimeout;
+  @AdvancedConfig
+  @InputFieldDefault(value = "1")
+  private Integer maxBatchSize;
+  @AdvancedConfig
+  @Valid
+  private TimeInterval batchWindow;
 
   private transient Boolean transacted;
   private transient boolean managedTransaction;
@@ -156,26 +171,30 @@ public abstract class JmsPollingConsumerImpl extends AdaptrisPollingConsumer imp
     try {
       initialiseConnection();
       try {
-        Message jmsMsg = null;
-
-        do { // always want to try to obtain a Message
-          try {
-            jmsMsg = messageConsumer.receive(receiveTimeout());
-          }
-          catch (IllegalStateException e) {
-            log.debug("Session closed upon attempt to process message");
-            break;
-          }
+        if (maxBatchSize() > 1) {
+          count = processBatches();
+        }
+        else {
+          Message jmsMsg = null;
 
-          if (jmsMsg != null) {
-            messageHandler.onMessage(jmsMsg); // no Exc. ever
-            if (!continueProcessingMessages(++count)) {
+          do { // always want to try to obtain a Message
+            try {
+              jmsMsg = messageConsumer.receive(receiveTimeout());
+            }
+            catch (IllegalStateException e) {
+              log.debug("Session closed upon attempt to process message");
               break;
             }
+
+            if (jmsMsg != null) {
+              messageHandler.onMessage(jmsMsg); // no Exc. ever
+              if (!continueProcessingMessages(++count)) {
+                break;
+              }
+            }
           }
+          while (jmsMsg != null);
         }
-        while (jmsMsg != null);
-
       }
       catch (Throwable e) {
         log.error("Unhandled Throwable processing message", e);
@@ -196,6 +215,53 @@ public abstract class JmsPollingConsumerImpl extends AdaptrisPollingConsumer imp
     return count;
   }
 
+  private int processBatches() throws JMSException {
+    int count = 0;
+    List<Message> batch;
+    do {
+      batch = receiveBatch();
+      if (!batch.isEmpty()) {
+        count += messageHandler.onMessages(batch);
+        if (!continueProcessingMessages(count)) {
+          break;
+        }
+      }
+    }
+    while (!batch.isEmpty());
+    return count;
+  }
+
+  // Wait up to receiveTimeout for the first message, and then up to batchWindow for the rest of the batch.
+  private List<Message> receiveBatch() throws JMSException {
+    int max = maxBatchSize();
+    List<Message> batch = new ArrayList<>(max);
+    try {
+      Message jmsMsg = messageConsumer.receive(receiveTimeout());
+      if (jmsMsg == null) {
+        return batch;
+      }
+      batch.add(jmsMsg);
+      long deadline = System.currentTimeMillis() + batchWindow();
+      while (batch.size() < max) {
+        long remaining = deadline - System.currentTimeMillis();
+        jmsMsg = remaining > 0 ? messageConsumer.receive(remaining) : messageConsumer.receiveNoWait();
+        if (jmsMsg == null) {
+          break;
+        }
+        batch.add(jmsMsg);
+      }
+    }
+    catch (IllegalStateException e) {
+      log.debug("Session closed upon attempt to process message");
+      // A transacted or CLIENT_ACKNOWLEDGE session will redeliver the messages, since we can no longer acknowledge them;
+      // otherwise they have already been acknowledged and must still be processed.
+      if (isTransacted() || configuredAcknowledgeMode() == Session.CLIENT_ACKNOWLEDGE) {
+        batch.clear();
+      }
+    }
+    return batch;
+  }
+
   private void closeConnection() {
     if (additionalDebug()) {
       log.trace("closing connection...");
@@ -323,6 +389,61 @@ public abstract class JmsPollingConsumerImpl extends AdaptrisPollingConsumer imp
     return period;
   }
 
+  /**
+   * @since 3.10.2
+   */
+  public Integer getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Set the maximum number of messages to receive before acknowledging (or committing) them as a single batch.
+   * <p>
+   * Each message is still handed to the workflow individually, but the acknowledge (or commit) happens once per batch rather
+   * than once per message, which reduces the number of round trips to the broker. If any message in the batch fails then the
+   * whole batch is rolled back if the session is transacted (e.g. when using {@link JmsTransactedWorkflow}), or recovered in
+   * {@code CLIENT_ACKNOWLEDGE} mode; in both cases the broker redelivers the whole batch, which means that messages that were
+   * successfully processed will be processed again. In {@code AUTO_ACKNOWLEDGE} or {@code DUPS_OK_ACKNOWLEDGE} mode the
+   * broker has already acknowledged each message as it was received, so a failure cannot cause the batch to be redelivered;
+   * batching only changes how messages are received. See {@link OnMessageHandler#onMessages(List)} for more details.
+   * </p>
+   *
+   * @param i the maximum batch size; defaults to 1 if not specified, which acknowledges each message individually.
+   * @since 3.10.2
+   */
+  public void setMaxBatchSize(Integer i) {
+    maxBatchSize = i;
+  }
+
+  /**
+   * @since 3.10.2
+   */
+  public TimeInterval getBatchWindow() {
+    return batchWindow;
+  }
+
+  /**
+   * Set how long to wait for a batch to fill up once its first message has been received.
+   * <p>
+   * Only relevant if {@link #getMaxBatchSize()} is greater than 1. Once the window has expired, any messages that are immediately
+   * available are still added to the batch.
+   * </p>
+   *
+   * @param t the batch window; defaults to 100 milliseconds if not specified.
+   * @since 3.10.2
+   */
+  public void setBatchWindow(TimeInterval t) {
+    batchWindow = t;
+  }
+
+  int maxBatchSize() {
+    return Math.max(1, NumberUtils.toIntDefaultIfNull(getMaxBatchSize(), DEFAULT_MAX_BATCH_SIZE));
+  }
+
+  long batchWindow() {
+    return TimeInterval.toMillisecondsDefaultIfNull(getBatchWindow(), DEFAULT_BATCH_WINDOW);
+  }
+
   public TimeInterval getReceiveTimeout() {
     return receiveTimeout;
   }
@@ -107,6 +107,8 @@ public class JmsProducer extends JmsProducerImpl {
     } catch (Exception e) {
       logLinkedException("", e);
       throw ExceptionHelper.wrapProduceException(e);
+    } finally {
+      releaseSession();
     }
   }
 
@@ -115,9 +117,9 @@ public class JmsProducer extends JmsProducerImpl {
     setupSession(msg);
     Message jmsMsg = translate(msg, jmsDest.getReplyToDestination());
     if (!perMessageProperties()) {
-      producerSession.getProducer().send(jmsDest.getDestination(), jmsMsg);
+      currentProducerSession().send(jmsDest.getDestination(), jmsMsg);
     } else {
-      producerSession.getProducer().send(jmsDest.getDestination(), jmsMsg,
+      currentProducerSession().send(jmsDest.getDestination(), jmsMsg,
           calculateDeliveryMode(msg, jmsDest.deliveryMode()),
           calculatePriority(msg, jmsDest.priority()),
           calculateTimeToLive(msg, jmsDest.timeToLive()));
@@ -148,7 +150,7 @@ public class JmsProducer extends JmsProducerImpl {
       Message jmsReply = receiver.receive(timeout);
 
       if (jmsReply != null) {
-        translatedReply = MessageTypeTranslatorImp.translate(getMessageTranslator(), jmsReply);
+        translatedReply = MessageTypeTranslatorImp.translate(configuredMessageTranslator(), jmsReply);
       } else {
         throw new JMSException("No Reply Received within " + timeout + "ms");
       }
@@ -162,6 +164,7 @@ public class JmsProducer extends JmsProducerImpl {
     } finally {
       JmsUtils.closeQuietly(receiver);
       JmsUtils.deleteTemporaryDestination(replyTo);
+      releaseSession();
     }
     return translatedReply;
   }
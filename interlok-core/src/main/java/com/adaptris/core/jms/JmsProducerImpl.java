@@ -106,6 +106,8 @@ public abstract class JmsProducerImpl extends RequestReplyProducerImp implements
   private ProducerSessionFactory sessionFactory;
 
   protected transient ProducerSession producerSession;
+  // Used instead of producerSession if the session factory allows concurrent produce.
+  private transient ThreadLocal<ThreadSession> threadSession;
 
   private transient Boolean transactedSession;
   private transient long rollbackTimeout = 30000;
@@ -167,6 +169,7 @@ public abstract class JmsProducerImpl extends RequestReplyProducerImp implements
 
   @Override
   public void init() throws CoreException {
+    threadSession = new ThreadLocal<>();
     messageTranslator.registerMessageFactory(defaultIfNull(getMessageFactory()));
     LifecycleHelper.init(messageTranslator);
     LifecycleHelper.init(getSessionFactory());
@@ -199,6 +202,9 @@ public abstract class JmsProducerImpl extends RequestReplyProducerImp implements
 
 
   protected ProducerSession setupSession(AdaptrisMessage msg) throws JMSException {
+    if (getSessionFactory().allowsConcurrentProduce()) {
+      return setupThreadSession(msg);
+    }
     if (!msg.getUniqueId().equals(CURRENT_MESSAGE_ID) || producerSession == null) {
       producerSession = getSessionFactory().createProducerSession(this, msg);
       configuredMessageTranslator().registerSession(producerSession.getSession());
@@ -207,6 +213,44 @@ public abstract class JmsProducerImpl extends RequestReplyProducerImp implements
     return producerSession;
   }
 
+  private ProducerSession setupThreadSession(AdaptrisMessage msg) throws JMSException {
+    ThreadSession current = threadSession.get();
+    if (current == null || !msg.getUniqueId().equals(current.messageId)) {
+      releaseSession();
+      current = new ThreadSession(msg.getUniqueId(), getSessionFactory().createProducerSession(this, msg));
+      threadSession.set(current);
+    }
+    return current.session;
+  }
+
+  /**
+   * Release the session used to produce the current message.
+   * <p>
+   * This should be called once the message has been produced (or the request completed); it only has an effect if the
+   * {@link ProducerSessionFactory} allows concurrent produce, in which case the session is handed back to the session factory.
+   * </p>
+   *
+   * @since 3.10.2
+   */
+  protected void releaseSession() {
+    ThreadSession current = threadSession != null ? threadSession.get() : null;
+    if (current != null) {
+      threadSession.remove();
+      getSessionFactory().releaseProducerSession(this, current.session);
+    }
+  }
+
+  /**
+   * Get the session that is being used to produce the current message.
+   *
+   * @return the session from the last call to {@link #setupSession(AdaptrisMessage)}.
+   * @since 3.10.2
+   */
+  protected ProducerSession currentProducerSession() {
+    ThreadSession current = threadSession != null ? threadSession.get() : null;
+    return current != null ? current.session : producerSession;
+  }
+
   protected void logLinkedException(String prefix, Exception e) {
     if (!(e instanceof JMSException))
       return;
@@ -504,7 +548,9 @@ public abstract class JmsProducerImpl extends RequestReplyProducerImp implements
 
   @Override
   public MessageTypeTranslator configuredMessageTranslator() {
-    return getMessageTranslator();
+    ProducerSession session = currentProducerSession();
+    MessageTypeTranslator translator = session != null ? session.messageTranslator() : null;
+    return translator != null ? translator : getMessageTranslator();
   }
 
   @Override
@@ -519,7 +565,7 @@ public abstract class JmsProducerImpl extends RequestReplyProducerImp implements
 
   @Override
   public Session currentSession() {
-    return producerSession.getSession();
+    return currentProducerSession().getSession();
   }
 
   @Override
@@ -626,4 +672,14 @@ public abstract class JmsProducerImpl extends RequestReplyProducerImp implements
   public void setSessionFactory(ProducerSessionFactory s) {
     this.sessionFactory = Args.notNull(s, "sessionFactory");
   }
+
+  private static class ThreadSession {
+    private final String messageId;
+    private final ProducerSession session;
+
+    private ThreadSession(String messageId, ProducerSession session) {
+      this.messageId = messageId;
+      this.session = session;
+    }
+  }
 }
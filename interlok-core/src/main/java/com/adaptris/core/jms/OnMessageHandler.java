@@ -16,6 +16,9 @@
 
 package com.adaptris.core.jms;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
@@ -43,6 +46,8 @@ public class OnMessageHandler {
 
   private transient JmsActorConfig onMsgConfig;
 
+  private transient AcknowledgementHandler sessionAcknowledgement;
+
   private enum AcknowledgeCommitOrRollBack {
 
     ManagedTransaction {
@@ -118,6 +123,7 @@ public class OnMessageHandler {
     this();
     onMsgConfig = Args.notNull(cfg, "onMsgConfig");
     logR = cfg.currentLogger() != null ? cfg.currentLogger() : LoggerFactory.getLogger(this.getClass());
+    sessionAcknowledgement = new SessionAcknowledgementHandler();
     verify(onMsgConfig);
   }
 
@@ -139,6 +145,12 @@ public class OnMessageHandler {
    * <code>listener</code>. Acknowledges <code>javax.jms.Message</code>.
    * </p>
    * <p>
+   * If the session is transacted, or in {@code CLIENT_ACKNOWLEDGE} mode, an {@link AsyncAcknowledgementHandler} is also added as
+   * transient 'Object' metadata; if the message is produced asynchronously (e.g. by {@link JmsAsyncProducer}) then
+   * acknowledgement waits until those sends have completed, and the message is rolled back if any of them fail. In any other mode
+   * the message cannot be rolled back, so it is not added.
+   * </p>
+   * <p>
    * NB if, as is almost always the case, <code>listener</code> is a
    * <code>StandardWorkflow</code>, <code>onAdaptrisMessage</code> will never
    * throw any <code>Throwable</code> and <code>acknowledge</code> will always
@@ -147,10 +159,8 @@ public class OnMessageHandler {
    */
   public void onMessage(Message msg) {
     AdaptrisMessage adaptrisMessage = null;
-    AdaptrisMessageListener msgListener = onMsgConfig.configuredMessageListener();
     try {
-      adaptrisMessage = MessageTypeTranslatorImp.translate(onMsgConfig.configuredMessageTranslator(), msg);
-      onMsgConfig.configuredCorrelationIdSource().processCorrelationId(msg, adaptrisMessage);
+      adaptrisMessage = translate(msg);
     }
     catch (JMSException e) {
       logR.error("Failed to translate message into AdaptrisMessage", e);
@@ -159,7 +169,87 @@ public class OnMessageHandler {
       }
       return;
     }
+    AsyncAcknowledgementHandler ack = deliver(msg, adaptrisMessage);
+    if (ack != null) {
+      acknowledgeOrRollback(ack, msg);
+    }
+  }
 
+  /**
+   * Process a batch of messages, acknowledging or committing the batch once.
+   * <p>
+   * Each message is translated and passed to the listener in turn; the batch is then acknowledged (or committed) using the last
+   * message that was processed. In {@code CLIENT_ACKNOWLEDGE} mode acknowledging any message acknowledges every message consumed
+   * by the session so far, so this acknowledges the whole batch.
+   * </p>
+   * <p>
+   * If any message in the batch fails (including failing to translate it), processing of the batch stops at that message. The
+   * rest of the batch has already been received, so:
+   * <ul>
+   * <li>If the session is transacted, then the whole batch is rolled back; this includes the messages that were processed
+   * successfully before the failure, which will be redelivered and processed again.</li>
+   * <li>In {@code CLIENT_ACKNOWLEDGE} mode, the session is recovered, so every message in the batch is redelivered (again including
+   * the messages that were processed successfully before the failure).</li>
+   * <li>Otherwise, the messages have already been acknowledged by the session, and nothing further is done.</li>
+   * </ul>
+   * </p>
+   * <p>
+   * Any asynchronous sends made while processing the batch are allowed to overlap; they are all waited for before the batch is
+   * acknowledged, and if any of them fail then the batch is rolled back (or, in {@code CLIENT_ACKNOWLEDGE} mode, the session is
+   * recovered).
+   * </p>
+   *
+   * @param msgs the messages.
+   * @return the number of messages that were passed to the listener.
+   * @since 3.10.2
+   */
+  public int onMessages(List<Message> msgs) {
+    List<AsyncAcknowledgementHandler> acks = new ArrayList<>(msgs.size());
+    Message last = null;
+    for (Message msg : msgs) {
+      AsyncAcknowledgementHandler ack = null;
+      try {
+        ack = deliver(msg, translate(msg));
+      }
+      catch (JMSException e) {
+        logR.error("Failed to translate message into AdaptrisMessage", e);
+      }
+      if (ack == null) {
+        // The rest of the batch has been received, so it needs to be redelivered along with this message.
+        sessionAcknowledgement.rollbackMessage(onMsgConfig, msg);
+        return acks.size();
+      }
+      acks.add(ack);
+      last = msg;
+      if (lastMessageFailed()) {
+        break;
+      }
+    }
+    if (last != null) {
+      AsyncAcknowledgementHandler lastAck = acks.get(acks.size() - 1);
+      // The last message's sends are waited for as part of acknowledging it.
+      for (AsyncAcknowledgementHandler ack : acks.subList(0, acks.size() - 1)) {
+        Exception e = ack.awaitCompletion();
+        if (e != null) {
+          logR.warn("Asynchronous send failed, rolling back batch : {}", e.getMessage());
+          lastAck.rollbackMessage(onMsgConfig, last);
+          return acks.size();
+        }
+      }
+      acknowledgeOrRollback(lastAck, last);
+    }
+    return acks.size();
+  }
+
+  private AdaptrisMessage translate(Message msg) throws JMSException {
+    AdaptrisMessage adaptrisMessage = MessageTypeTranslatorImp.translate(onMsgConfig.configuredMessageTranslator(), msg);
+    onMsgConfig.configuredCorrelationIdSource().processCorrelationId(msg, adaptrisMessage);
+    return adaptrisMessage;
+  }
+
+  // Returns the acknowledgement handler if the message was passed to the listener without it throwing an exception.
+  private AsyncAcknowledgementHandler deliver(Message msg, AdaptrisMessage adaptrisMessage) {
+    AdaptrisMessageListener msgListener = onMsgConfig.configuredMessageListener();
     try {
       // Adaptris message can't be null at this point.
       adaptrisMessage.addObjectHeader(JmsConstants.OBJ_JMS_REPLY_TO_KEY, msg.getJMSReplyTo()); // lgtm
@@ -167,16 +257,14 @@ public class OnMessageHandler {
     catch (JMSException ignored) {
       // this might throw an exception, if it does, we don't care.
     }
+    AsyncAcknowledgementHandler ack = new AsyncAcknowledgementHandler(sessionAcknowledgement);
+    if (canRollback()) {
+      adaptrisMessage.addObjectHeader(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER, ack);
+    }
 
     try {
       msgListener.onAdaptrisMessage(adaptrisMessage);
-      try {
-        acknowledge(msg);
-      }
-      catch (JMSException e) {
-        logR.error("Exception acknowledging/committing JMS message", e);
-        rollback(msg);
-      }
+      return ack;
     }
     catch (Throwable e) { // impossible if AML is StandardWorkflow
       logR.error("Unexpected Throwable from AdaptrisMessageListener", e);
@@ -184,7 +272,36 @@ public class OnMessageHandler {
           adaptrisMessage != null ? MessageLoggerImpl.LAST_RESORT_LOGGER.toString(adaptrisMessage)
               : "no data available");
     }
+    return null;
+  }
+
+  private void acknowledgeOrRollback(AcknowledgementHandler ack, Message msg) {
+    try {
+      ack.acknowledgeMessage(onMsgConfig, msg);
+    }
+    catch (JMSException e) {
+      logR.error("Exception acknowledging/committing JMS message", e);
+      ack.rollbackMessage(onMsgConfig, msg);
+    }
+    catch (RuntimeException e) {
+      logR.error("Unexpected exception acknowledging/committing JMS message", e);
+    }
+  }
+
+  // Only a transacted or CLIENT_ACKNOWLEDGE session can redeliver a message once it has been passed to the listener.
+  private boolean canRollback() {
+    try {
+      return !onMsgConfig.isManagedTransaction() && (onMsgConfig.currentSession().getTransacted()
+          || onMsgConfig.configuredAcknowledgeMode() == Session.CLIENT_ACKNOWLEDGE);
+    }
+    catch (JMSException e) {
+      return false;
+    }
+  }
 
+  private boolean lastMessageFailed() {
+    AdaptrisMessageListener aml = onMsgConfig.configuredMessageListener();
+    return aml instanceof JmsTransactedWorkflow && ((JmsTransactedWorkflow) aml).lastMessageFailed();
   }
 
   private void acknowledge(Message msg) throws JMSException {
@@ -210,4 +327,33 @@ public class OnMessageHandler {
     }
     return result;
   }
+
+  // Unacknowledged messages are redelivered after a recover; only relevant for CLIENT_ACKNOWLEDGE.
+  private void recover(Message msg) {
+    try {
+      if (!onMsgConfig.isManagedTransaction() && onMsgConfig.configuredAcknowledgeMode() == Session.CLIENT_ACKNOWLEDGE) {
+        logR.error("Exception processing message [{}], attempting recover", msg.getJMSMessageID());
+        onMsgConfig.currentSession().recover();
+      }
+    }
+    catch (JMSException f) {
+      logR.error("Exception recovering session", f);
+    }
+  }
+
+  // Acknowledges using the session configuration that this handler was created with.
+  private class SessionAcknowledgementHandler implements AcknowledgementHandler {
+
+    @Override
+    public void acknowledgeMessage(JmsActorConfig actor, Message message) throws JMSException {
+      acknowledge(message);
+    }
+
+    @Override
+    public void rollbackMessage(JmsActorConfig actor, Message message) {
+      if (!rollback(message)) {
+        recover(message);
+      }
+    }
+  }
 }
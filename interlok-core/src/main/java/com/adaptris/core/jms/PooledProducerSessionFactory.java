@@ -0,0 +1,382 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.adaptris.core.jms;
+
+import static com.adaptris.core.AdaptrisMessageFactory.defaultIfNull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import javax.jms.CompletionListener;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.DefaultMarshaller;
+import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.util.NumberUtils;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Implementation of {@link ProducerSessionFactory} that keeps a bounded pool of sessions, allowing concurrent produce.
+ *
+ * <p>
+ * Each message borrows a session from the pool for as long as it takes to produce it (or to complete the request), so a single
+ * producer can be used by multiple threads at the same time (e.g. a {@link com.adaptris.core.PoolingWorkflow} with a
+ * {@link com.adaptris.core.PoolingWorkflow.ProduceMode#SHARED} produce mode); each thread has its own session, all sharing the
+ * same {@link JmsConnection}. If all the sessions are in use, then the thread waits for one to become available.
+ * </p>
+ * <p>
+ * Each session caches a {@link MessageProducer} per destination (rather than sending everything via an anonymous producer),
+ * and has its own copy of the configured {@link MessageTypeTranslator}. Sessions are validated when they are borrowed from the
+ * pool; if the session has been closed, or the underlying connection has been replaced (e.g. after a connection error) then a
+ * new session is created.
+ * </p>
+ *
+ * @config jms-pooled-producer-session
+ * @since 3.10.2
+ */
+@XStreamAlias("jms-pooled-producer-session")
+@DisplayOrder(order = {"maxSessions", "maxWait", "producerCacheSize"})
+public class PooledProducerSessionFactory extends ProducerSessionFactoryImpl {
+
+  private static final int DEFAULT_MAX_SESSIONS = 10;
+  private static final TimeInterval DEFAULT_MAX_WAIT = new TimeInterval(1L, TimeUnit.MINUTES);
+  private static final int DEFAULT_PRODUCER_CACHE_SIZE = 16;
+
+  @Min(1)
+  @InputFieldDefault(value = "10")
+  private Integer maxSessions;
+  @Valid
+  @AdvancedConfig
+  private TimeInterval maxWait;
+  @Min(1)
+  @AdvancedConfig(rare = true)
+  @InputFieldDefault(value = "16")
+  private Integer producerCacheSize;
+
+  private transient GenericObjectPool<PooledSession> pool;
+  private transient volatile JmsProducerImpl owner;
+
+  public PooledProducerSessionFactory() {
+    super();
+  }
+
+  public PooledProducerSessionFactory(Integer maxSessions) {
+    this();
+    setMaxSessions(maxSessions);
+  }
+
+  @Override
+  public void init() throws CoreException {
+    super.init();
+    closeQuietly(pool);
+    pool = createPool();
+  }
+
+  @Override
+  public void stop() {
+    // The connection may well be restarted, so get rid of any idle sessions.
+    if (pool != null) {
+      pool.clear();
+    }
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    closeQuietly(pool);
+    pool = null;
+  }
+
+  @Override
+  public ProducerSession createProducerSession(JmsProducerImpl producer, AdaptrisMessage msg) throws JMSException {
+    owner = producer;
+    try {
+      return pool.borrowObject(maxWaitMs());
+    }
+    catch (NoSuchElementException e) {
+      throw JmsUtils.wrapJMSException("No session available within " + maxWaitMs() + "ms", e);
+    }
+    catch (Exception e) {
+      throw JmsUtils.wrapJMSException(e);
+    }
+  }
+
+  @Override
+  public boolean allowsConcurrentProduce() {
+    return true;
+  }
+
+  @Override
+  public void releaseProducerSession(JmsProducerImpl producer, ProducerSession session) {
+    if (!(session instanceof PooledSession)) {
+      return;
+    }
+    GenericObjectPool<PooledSession> current = pool;
+    if (current == null) {
+      ((PooledSession) session).close();
+      return;
+    }
+    try {
+      current.returnObject((PooledSession) session);
+    }
+    catch (IllegalStateException e) {
+      // Not from the current pool (we've been restarted)
+      ((PooledSession) session).close();
+    }
+  }
+
+  private GenericObjectPool<PooledSession> createPool() {
+    GenericObjectPool<PooledSession> result = new GenericObjectPool<>(new PooledSessionFactory());
+    result.setMaxTotal(maxSessions());
+    result.setMaxIdle(maxSessions());
+    result.setMinIdle(0);
+    result.setBlockWhenExhausted(true);
+    result.setMaxWaitMillis(maxWaitMs());
+    result.setTestOnBorrow(true);
+    return result;
+  }
+
+  private static void closeQuietly(GenericObjectPool<?> pool) {
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
+  int numActive() {
+    return pool != null ? pool.getNumActive() : 0;
+  }
+
+  int numIdle() {
+    return pool != null ? pool.getNumIdle() : 0;
+  }
+
+  public Integer getMaxSessions() {
+    return maxSessions;
+  }
+
+  /**
+   * Set the maximum number of sessions in the pool.
+   *
+   * @param i the max number of sessions; if not specified, defaults to 10.
+   */
+  public void setMaxSessions(Integer i) {
+    maxSessions = i;
+  }
+
+  int maxSessions() {
+    return NumberUtils.toIntDefaultIfNull(getMaxSessions(), DEFAULT_MAX_SESSIONS);
+  }
+
+  public TimeInterval getMaxWait() {
+    return maxWait;
+  }
+
+  /**
+   * Set how long to wait for a session to become available if all the sessions are in use.
+   *
+   * @param t the max wait; if not specified, defaults to 1 minute.
+   */
+  public void setMaxWait(TimeInterval t) {
+    maxWait = t;
+  }
+
+  long maxWaitMs() {
+    return TimeInterval.toMillisecondsDefaultIfNull(getMaxWait(), DEFAULT_MAX_WAIT);
+  }
+
+  public Integer getProducerCacheSize() {
+    return producerCacheSize;
+  }
+
+  /**
+   * Set the maximum number of {@link MessageProducer} instances cached by each session.
+   * <p>
+   * Each session keeps a producer for each destination that it has sent to; if a session sends to more destinations than this, then
+   * the least recently used producer is closed.
+   * </p>
+   *
+   * @param i the cache size; if not specified, defaults to 16.
+   */
+  public void setProducerCacheSize(Integer i) {
+    producerCacheSize = i;
+  }
+
+  int producerCacheSize() {
+    return NumberUtils.toIntDefaultIfNull(getProducerCacheSize(), DEFAULT_PRODUCER_CACHE_SIZE);
+  }
+
+  private class PooledSessionFactory extends BasePooledObjectFactory<PooledSession> {
+
+    @Override
+    public PooledSession create() throws Exception {
+      JmsProducerImpl producer = owner;
+      JmsConnection jmsConnection = producer.retrieveConnection(JmsConnection.class);
+      Connection conn = jmsConnection.currentConnection();
+      Session s = jmsConnection.configuredVendorImplementation().createSession(conn, producer.transactedSession(),
+          AcknowledgeMode.getMode(producer.getAcknowledgeMode()));
+      PooledSession result = new PooledSession(producer, conn, s);
+      try {
+        result.start();
+      }
+      catch (Exception e) {
+        result.close();
+        throw e;
+      }
+      log.trace("Created new pooled JMS Session");
+      return result;
+    }
+
+    @Override
+    public PooledObject<PooledSession> wrap(PooledSession obj) {
+      return new DefaultPooledObject<>(obj);
+    }
+
+    @Override
+    public boolean validateObject(PooledObject<PooledSession> p) {
+      return p.getObject().isValid(owner);
+    }
+
+    @Override
+    public void destroyObject(PooledObject<PooledSession> p) throws Exception {
+      p.getObject().close();
+    }
+  }
+
+  private class PooledSession extends ProducerSession {
+    private final JmsProducerImpl producer;
+    private final Connection connection;
+    private final Session session;
+    private final Map<Destination, MessageProducer> producers;
+    private MessageProducer anonymous;
+    private MessageTypeTranslator translator;
+
+    private PooledSession(JmsProducerImpl producer, Connection conn, Session session) {
+      this.producer = producer;
+      this.connection = conn;
+      this.session = session;
+      final int cacheSize = producerCacheSize();
+      this.producers = new LinkedHashMap<Destination, MessageProducer>(cacheSize, 0.75f, true) {
+        private static final long serialVersionUID = 2020102001L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Destination, MessageProducer> eldest) {
+          if (size() > cacheSize) {
+            JmsUtils.closeQuietly(eldest.getValue());
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    private void start() throws JMSException, CoreException {
+      anonymous = configureMessageProducer(producer, session.createProducer(null));
+      translator = DefaultMarshaller.roundTrip(producer.getMessageTranslator());
+      translator.registerMessageFactory(defaultIfNull(producer.getMessageFactory()));
+      translator.registerSession(session);
+      LifecycleHelper.initAndStart(translator);
+    }
+
+    @Override
+    public Session getSession() {
+      return session;
+    }
+
+    @Override
+    public MessageProducer getProducer() {
+      return anonymous;
+    }
+
+    @Override
+    public void send(Destination d, Message m) throws JMSException {
+      producerFor(d).send(m);
+    }
+
+    @Override
+    public void send(Destination d, Message m, int deliveryMode, int priority, long timeToLive) throws JMSException {
+      producerFor(d).send(m, deliveryMode, priority, timeToLive);
+    }
+
+    @Override
+    public void send(Destination d, Message m, CompletionListener listener) throws JMSException {
+      producerFor(d).send(m, listener);
+    }
+
+    @Override
+    public void send(Destination d, Message m, int deliveryMode, int priority, long timeToLive, CompletionListener listener)
+        throws JMSException {
+      producerFor(d).send(m, deliveryMode, priority, timeToLive, listener);
+    }
+
+    @Override
+    MessageTypeTranslator messageTranslator() {
+      return translator;
+    }
+
+    private MessageProducer producerFor(Destination d) throws JMSException {
+      MessageProducer result = producers.get(d);
+      if (result == null) {
+        result = configureMessageProducer(producer, session.createProducer(d));
+        producers.put(d, result);
+      }
+      return result;
+    }
+
+    private boolean isValid(JmsProducerImpl current) {
+      try {
+        if (current != producer || connection != current.retrieveConnection(JmsConnection.class).currentConnection()) {
+          return false;
+        }
+        // Throws an exception if the session is closed.
+        session.getTransacted();
+        return true;
+      }
+      catch (Exception e) {
+        return false;
+      }
+    }
+
+    private void close() {
+      if (translator != null) {
+        translator.registerSession(null);
+        LifecycleHelper.stopAndClose(translator);
+      }
+      for (MessageProducer p : producers.values()) {
+        JmsUtils.closeQuietly(p);
+      }
+      producers.clear();
+      JmsUtils.closeQuietly(anonymous);
+      JmsUtils.closeQuietly(session);
+    }
+  }
+}
@@ -16,6 +16,10 @@
 
 package com.adaptris.core.jms;
 
+import javax.jms.CompletionListener;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
 
@@ -32,4 +36,55 @@ public abstract class ProducerSession {
 
   public abstract MessageProducer getProducer();
 
+  /**
+   * Send a message to the destination.
+   * <p>
+   * The default implementation uses {@link #getProducer()}, which does not have a destination associated with it.
+   * </p>
+   *
+   * @since 3.10.2
+   */
+  public void send(Destination d, Message m) throws JMSException {
+    getProducer().send(d, m);
+  }
+
+  /**
+   * Send a message to the destination with the specified delivery mode, priority and time to live.
+   *
+   * @since 3.10.2
+   */
+  public void send(Destination d, Message m, int deliveryMode, int priority, long timeToLive) throws JMSException {
+    getProducer().send(d, m, deliveryMode, priority, timeToLive);
+  }
+
+  /**
+   * Send a message to the destination asynchronously.
+   * <p>
+   * The default implementation uses {@link #getProducer()}, which does not have a destination associated with it.
+   * </p>
+   *
+   * @since 3.10.2
+   */
+  public void send(Destination d, Message m, CompletionListener listener) throws JMSException {
+    getProducer().send(d, m, listener);
+  }
+
+  /**
+   * Send a message to the destination asynchronously with the specified delivery mode, priority and time to live.
+   *
+   * @since 3.10.2
+   */
+  public void send(Destination d, Message m, int deliveryMode, int priority, long timeToLive, CompletionListener listener)
+      throws JMSException {
+    getProducer().send(d, m, deliveryMode, priority, timeToLive, listener);
+  }
+
+  /**
+   * The translator that should be used with this session.
+   *
+   * @return null, which means that the producer's own translator should be used.
+   */
+  MessageTypeTranslator messageTranslator() {
+    return null;
+  }
 }
@@ -39,4 +39,31 @@ public interface ProducerSessionFactory extends ComponentLifecycle {
   ProducerSession createProducerSession(JmsProducerImpl conn, AdaptrisMessage msg)
       throws JMSException;
 
+  /**
+   * Whether or not the sessions are handed out per message, allowing the producer to be used concurrently.
+   * <p>
+   * If true, then the producer keeps the session for the current thread, and calls
+   * {@link #releaseProducerSession(JmsProducerImpl, ProducerSession)} once the message has been produced.
+   * </p>
+   *
+   * @return false by default.
+   * @since 3.10.2
+   */
+  default boolean allowsConcurrentProduce() {
+    return false;
+  }
+
+  /**
+   * Release a session once the message has been produced.
+   * <p>
+   * Only called if {@link #allowsConcurrentProduce()} is true; the default implementation does nothing.
+   * </p>
+   *
+   * @param conn the {@link JmsProducerImpl} instance
+   * @param session the session from {@link #createProducerSession(JmsProducerImpl, AdaptrisMessage)}.
+   * @since 3.10.2
+   */
+  default void releaseProducerSession(JmsProducerImpl conn, ProducerSession session) {
+  }
+
 }
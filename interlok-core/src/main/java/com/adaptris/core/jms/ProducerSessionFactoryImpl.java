@@ -67,7 +67,7 @@ public abstract class ProducerSessionFactoryImpl implements ProducerSessionFacto
     return ps;
   }
 
-  private MessageProducer configureMessageProducer(JmsProducerImpl jmsP, MessageProducer producer)
+  protected MessageProducer configureMessageProducer(JmsProducerImpl jmsP, MessageProducer producer)
       throws JMSException {
     if (!jmsP.perMessageProperties()) {
       producer.setDeliveryMode(com.adaptris.core.jms.DeliveryMode.getMode(jmsP.getDeliveryMode()));
@@ -80,6 +80,9 @@ public class FileBackedMessageFactory extends DefaultMessageFactory {
   @AdvancedConfig(rare = true)
   @InputFieldDefault(value = "false")
   private Boolean useNio;
+  @AdvancedConfig(rare = true)
+  @InputFieldDefault(value = "false")
+  private Boolean useHardLinks;
   
   private transient Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -245,6 +248,29 @@ public class FileBackedMessageFactory extends DefaultMessageFactory {
     return BooleanUtils.toBooleanDefaultIfNull(getUseNio(), false);
   }
 
+  public Boolean getUseHardLinks() {
+    return useHardLinks;
+  }
+
+  /**
+   * Whether or not cloned messages should be hard links to the original file rather than a copy of it.
+   * <p>
+   * Messages never write to their existing file (a new file is created every time the payload is written), so the original and the
+   * clone are independent, unless something modifies the file returned by {@link FileBackedMessage#currentSource()} in place.
+   * If the filesystem doesn't support hard links, then the file is copied.
+   * </p>
+   *
+   * @param b true to use hard links; default if not specified is false, which copies the file.
+   * @since 3.10.2
+   */
+  public void setUseHardLinks(Boolean b) {
+    useHardLinks = b;
+  }
+
+  protected boolean useHardLinks() {
+    return BooleanUtils.toBooleanDefaultIfNull(getUseHardLinks(), false);
+  }
+
   protected StreamWrapper newStreamWrapper() {
     return useNio() ? new NioStreamWrapper(extendedLogging()) : new StandardStreamWrapper(extendedLogging());
   }
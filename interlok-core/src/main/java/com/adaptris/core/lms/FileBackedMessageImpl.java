@@ -20,13 +20,11 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.nio.channels.FileLock;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import org.apache.commons.io.IOUtils;
@@ -43,11 +41,10 @@ class FileBackedMessageImpl extends AdaptrisMessageImp implements FileBackedMess
   protected File inputFile;
   private int bufferSize;
   private long maxSizeBeforeException;
+  private boolean useHardLinks;
   private transient StreamWrapper streamWrapper;
   protected transient Logger log = LoggerFactory.getLogger(FileBackedMessage.class);
   
-  private final int MEGABYTE = 1 << 10;
-
   FileBackedMessageImpl(IdGenerator guid, FileBackedMessageFactory fac) {
     super(guid, fac);
     wrappedTry(() -> {
@@ -55,6 +52,7 @@ class FileBackedMessageImpl extends AdaptrisMessageImp implements FileBackedMess
       inputFile = null;
       bufferSize = fac.defaultBufferSize();
       maxSizeBeforeException = fac.maxMemorySizeBytes();
+      useHardLinks = fac.useHardLinks();
       streamWrapper = fac.newStreamWrapper();
     });
   }
@@ -90,6 +88,28 @@ class FileBackedMessageImpl extends AdaptrisMessageImp implements FileBackedMess
     return out.toByteArray();
   }
 
+  /**
+   * Returns a read-only view of the payload file that is mapped into memory.
+   * <p>
+   * Since the payload is not read onto the heap, this is not limited by {@link FileBackedMessageFactory#getMaxMemorySizeBytes()};
+   * it will fail if the payload is larger than 2Gb.
+   * </p>
+   *
+   * @see AdaptrisMessage#getPayloadBuffer()
+   */
+  @Override
+  public ByteBuffer getPayloadBuffer() {
+    if (inputFile == null) {
+      return ByteBuffer.allocate(0).asReadOnlyBuffer();
+    }
+    try {
+      return FileTransfer.map(inputFile);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   /**
    *
    * @see com.adaptris.core.AdaptrisMessage#getSize()
@@ -189,14 +209,13 @@ class FileBackedMessageImpl extends AdaptrisMessageImp implements FileBackedMess
       // If we have an input file, copy our contents to the other message. If we don't,
       // the other message will create it's own file when written to and then closed.
       if (inputFile != null) {
-        // Should we make this use StreamWrapper? -> but what about the FileLock?
-        // probalby not a big deal because it only happens on CloneMessageServiceList...
+        // Each write creates a new file, so the clone can link to the same file.
         result.inputFile = createTempFile();
-        try (InputStream in = new FileInputStream(inputFile);
-            FileOutputStream out = new FileOutputStream(result.inputFile);
-            FileLock lock = out.getChannel().lock()) {
-          byte[] buffer = new byte[10 * MEGABYTE]; // 10MB buffer
-          IOUtils.copyLarge(in, out, buffer);
+        if (useHardLinks) {
+          FileTransfer.linkOrCopy(inputFile, result.inputFile);
+        }
+        else {
+          FileTransfer.copy(inputFile, result.inputFile);
         }
       }
 
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.lms;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link FileChannel} based helpers for moving the files behind {@link FileBackedMessage} instances.
+ * <p>
+ * Copies are done with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets the
+ * operating system copy the data without it passing through a java buffer.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+final class FileTransfer {
+
+  // Fallback buffer if transferTo() stops making progress (which has been seen on some NFS mounts).
+  private static final int FALLBACK_BUFSIZE = 1024 * 64;
+
+  private FileTransfer() {
+  }
+
+  /**
+   * Copy a file, replacing the destination if it exists.
+   *
+   * @return the number of bytes copied.
+   * @throws IOException if the copy failed, or the destination is not the same size as the source.
+   */
+  static long copy(File src, File dest) throws IOException {
+    try (FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(dest.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      long size = in.size();
+      long position = 0;
+      while (position < size) {
+        long count = in.transferTo(position, size - position, out);
+        if (count <= 0) {
+          break;
+        }
+        position += count;
+      }
+      if (position < size) {
+        position += copyBuffered(in, position, size, out);
+      }
+      if (out.size() != size) {
+        throw new IOException("Failed to copy full contents from [" + src + "] to [" + dest + "]");
+      }
+      return position;
+    }
+  }
+
+  /**
+   * Create {@code dest} as a hard link to {@code src}, if the filesystem supports it.
+   * <p>
+   * The destination must not exist.
+   * </p>
+   *
+   * @return true if the link was created; false if the filesystem (or the location of the files) doesn't support hard links.
+   */
+  static boolean link(File src, File dest) {
+    try {
+      Files.createLink(dest.toPath(), src.toPath());
+      return true;
+    }
+    catch (IOException | UnsupportedOperationException | SecurityException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Copy a file, as a hard link if possible; the destination is replaced if it exists.
+   */
+  static void linkOrCopy(File src, File dest) throws IOException {
+    Files.deleteIfExists(dest.toPath());
+    if (!link(src, dest)) {
+      copy(src, dest);
+    }
+  }
+
+  /**
+   * Map a file read-only into memory.
+   *
+   * @throws IOException if the file could not be mapped, or it is larger than {@link Integer#MAX_VALUE} bytes.
+   */
+  static ByteBuffer map(File f) throws IOException {
+    try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("[" + f + "] is too large to map into memory (" + size + " bytes)");
+      }
+      // The mapping remains valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+
+  private static long copyBuffered(FileChannel in, long position, long size, FileChannel out) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(FALLBACK_BUFSIZE);
+    long copied = 0;
+    out.position(position);
+    while (position + copied < size) {
+      int read = in.read(buf, position + copied);
+      if (read < 0) {
+        break;
+      }
+      buf.flip();
+      while (buf.hasRemaining()) {
+        out.write(buf);
+      }
+      buf.clear();
+      copied += read;
+    }
+    return copied;
+  }
+}
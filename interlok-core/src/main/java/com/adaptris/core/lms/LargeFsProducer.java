@@ -17,9 +17,7 @@
 package com.adaptris.core.lms;
 
 import java.io.File;
-import java.io.IOException;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.BooleanUtils;
 
 import com.adaptris.annotation.AdapterComponent;
@@ -72,12 +70,15 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 {
     "producedname", "fsProduceDir"
 })
-@DisplayOrder(order = {"createDirs", "filenameCreator", "tempDirectory", "useRenameTo", "fsWorker"})
+@DisplayOrder(order = {"createDirs", "filenameCreator", "tempDirectory", "useRenameTo", "useHardLinks", "fsWorker"})
 public class LargeFsProducer extends FsProducer {
 
   @AdvancedConfig
   @InputFieldDefault(value = "false")
   private Boolean useRenameTo;
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean useHardLinks;
 
   public LargeFsProducer() {
     super();
@@ -109,21 +110,11 @@ public class LargeFsProducer extends FsProducer {
       log.trace("Writing to temporary file {}", tmpFile.getCanonicalPath());
       fileToWriteTo = tmpFile;
     }
-    try {
-      FileUtils.copyFile(msg.currentSource(), fileToWriteTo);
+    if (useHardLinks()) {
+      FileTransfer.linkOrCopy(msg.currentSource(), fileToWriteTo);
     }
-    catch (IOException e) {
-      if (e.getMessage().contains("Failed to copy full contents")) {
-        // FileUtils.copyFile uses FileChannel.transferFrom(), which has been
-        // causing
-        // some problems with NFS mounts, so let's just try again.
-        // After all it's a "large file";
-        fileToWriteTo.delete();
-        FileUtils.copyFile(msg.currentSource(), fileToWriteTo);
-      }
-      else {
-        throw e;
-      }
+    else {
+      FileTransfer.copy(msg.currentSource(), fileToWriteTo);
     }
     if (getTempDirectory() != null) {
       log.trace("Renaming temporary file to " + t.getCanonicalPath());
@@ -166,4 +157,28 @@ public class LargeFsProducer extends FsProducer {
     return BooleanUtils.toBooleanDefaultIfNull(getUseRenameTo(), false);
   }
 
+  public Boolean getUseHardLinks() {
+    return useHardLinks;
+  }
+
+  /**
+   * Set to true to produce a {@link FileBackedMessage} by creating a hard link to its file rather than copying it.
+   * <p>
+   * Unlike {@link #setUseRenameTo(Boolean)} the message still has its payload afterwards; but the produced file and the message
+   * share the same data, so it should not be modified in place while the message is still being processed. If the filesystem
+   * doesn't support hard links (or the destination is on a different filesystem) then the file is copied. This is ignored if
+   * {@link #setUseRenameTo(Boolean)} is true and the rename succeeds.
+   * </p>
+   *
+   * @param b true to use hard links, default is false.
+   * @since 3.10.2
+   */
+  public void setUseHardLinks(Boolean b) {
+    useHardLinks = b;
+  }
+
+  boolean useHardLinks() {
+    return BooleanUtils.toBooleanDefaultIfNull(getUseHardLinks(), false);
+  }
+
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.lms;
+
+import java.io.Closeable;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.BooleanUtils;
+import com.adaptris.annotation.AdapterComponent;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.interceptor.WorkflowInterceptorImpl;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * WorkflowInterceptor implementation that releases the temporary files used by a message when the workflow has finished with it.
+ * <p>
+ * Messages created by {@link SpillingMessageFactory} delete their temporary file as soon as they are released, rather than
+ * waiting for garbage collection. By default, messages that failed are not released, since the
+ * {@link com.adaptris.core.ProcessingExceptionHandler} may still hold a reference to them (e.g. to retry them later).
+ * </p>
+ * <p>
+ * Don't use this interceptor if something else (such as an asynchronous producer) still refers to the message after the workflow
+ * has finished.
+ * </p>
+ *
+ * @config release-temp-file-interceptor
+ * @since 3.10.2
+ */
+@XStreamAlias("release-temp-file-interceptor")
+@AdapterComponent
+@ComponentProfile(summary = "Interceptor that releases any temporary files when a message has been processed",
+    tag = "interceptor,lms")
+public class ReleaseTempFileInterceptor extends WorkflowInterceptorImpl {
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean releaseFailedMessages;
+
+  public ReleaseTempFileInterceptor() {
+    super();
+  }
+
+  public ReleaseTempFileInterceptor(String uid) {
+    this();
+    setUniqueId(uid);
+  }
+
+  @Override
+  public void workflowStart(AdaptrisMessage inputMsg) {
+  }
+
+  @Override
+  public void workflowEnd(AdaptrisMessage inputMsg, AdaptrisMessage outputMsg) {
+    if (releaseFailedMessages() || wasSuccessful(inputMsg, outputMsg)) {
+      release(inputMsg);
+      release(outputMsg);
+    }
+  }
+
+  private void release(AdaptrisMessage msg) {
+    if (msg instanceof Closeable) {
+      IOUtils.closeQuietly((Closeable) msg, e -> log.trace("Failed to release [{}]", msg.getUniqueId(), e));
+    }
+  }
+
+  @Override
+  public void init() throws CoreException {
+  }
+
+  @Override
+  public void start() throws CoreException {
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  public Boolean getReleaseFailedMessages() {
+    return releaseFailedMessages;
+  }
+
+  /**
+   * Whether or not to release messages that failed.
+   *
+   * @param b true to release all messages; default is false, which leaves failed messages to be released when they are garbage
+   *          collected.
+   */
+  public void setReleaseFailedMessages(Boolean b) {
+    releaseFailedMessages = b;
+  }
+
+  boolean releaseFailedMessages() {
+    return BooleanUtils.toBooleanDefaultIfNull(getReleaseFailedMessages(), false);
+  }
+}
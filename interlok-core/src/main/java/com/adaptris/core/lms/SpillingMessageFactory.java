@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.lms;
+
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.DefaultMessageFactory;
+import com.adaptris.util.NumberUtils;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Message factory that keeps small payloads in memory, and only writes payloads to a temporary file once they grow beyond a
+ * threshold.
+ * <p>
+ * This is intended for when the majority of messages are small, but the occasional message is too large to hold in memory.
+ * Writes to the message are staged in a (pooled) buffer of {@link #getSpillThresholdBytes()} bytes; if the payload fits into
+ * the buffer then it is kept in memory, otherwise the buffer is written to a temporary file, and the rest of the payload follows
+ * it.
+ * </p>
+ * <p>
+ * Temporary files are shared between a message and its clones, and are deleted as soon as the last message that refers to them
+ * is closed or has its payload replaced; use {@link ReleaseTempFileInterceptor} to close messages when the workflow has finished
+ * with them. As with {@link FileBackedMessageFactory}, any files that are not released explicitly are deleted when the message is
+ * garbage collected.
+ * </p>
+ * <p>
+ * Messages created by this factory are {@link FileBackedMessage} instances; calling {@link FileBackedMessage#currentSource()} on a
+ * message that is held in memory will write it to a temporary file.
+ * </p>
+ *
+ * @config spilling-message-factory
+ * @see FileBackedMessageFactory
+ * @see DefaultMessageFactory
+ * @see AdaptrisMessageFactory
+ * @since 3.10.2
+ */
+@XStreamAlias("spilling-message-factory")
+@DisplayOrder(order = {"defaultCharEncoding", "spillThresholdBytes", "tempDirectory", "maxMemorySizeBytes",
+    "defaultBufferSize", "pooledBuffers"})
+public class SpillingMessageFactory extends FileBackedMessageFactory {
+
+  // the default threshold (64k) before writing to disk.
+  private static final int DEFAULT_SPILL_THRESHOLD = 1024 * 64;
+  private static final int DEFAULT_POOLED_BUFFERS = 32;
+
+  @InputFieldDefault(value = "64Kb")
+  private Integer spillThresholdBytes;
+  @AdvancedConfig(rare = true)
+  @InputFieldDefault(value = "32")
+  private Integer pooledBuffers;
+
+  private transient volatile BlockingQueue<byte[]> bufferPool;
+
+  public SpillingMessageFactory() {
+    super();
+  }
+
+  public SpillingMessageFactory(Integer spillThreshold) {
+    this();
+    setSpillThresholdBytes(spillThreshold);
+  }
+
+  @Override
+  public AdaptrisMessage newMessage() {
+    AdaptrisMessage m = new SpillingMessageImpl(uniqueIdGenerator(), this);
+    if (!isEmpty(getDefaultCharEncoding())) {
+      m.setContentEncoding(getDefaultCharEncoding());
+    }
+    return m;
+  }
+
+  /**
+   * @return the spillThresholdBytes
+   */
+  public Integer getSpillThresholdBytes() {
+    return spillThresholdBytes;
+  }
+
+  /**
+   * Set the size above which payloads are written to a temporary file.
+   *
+   * @param i the threshold, default is 64Kb if not specified.
+   */
+  public void setSpillThresholdBytes(Integer i) {
+    spillThresholdBytes = i;
+  }
+
+  int spillThresholdBytes() {
+    return Math.max(0, NumberUtils.toIntDefaultIfNull(getSpillThresholdBytes(), DEFAULT_SPILL_THRESHOLD));
+  }
+
+  /**
+   * @return the pooledBuffers
+   */
+  public Integer getPooledBuffers() {
+    return pooledBuffers;
+  }
+
+  /**
+   * Set the maximum number of idle staging buffers to keep for reuse.
+   * <p>
+   * Each buffer is {@link #getSpillThresholdBytes()} in size; when there are more concurrent writes than pooled buffers, then
+   * additional buffers are created, and discarded when they are finished with.
+   * </p>
+   *
+   * @param i the number of buffers, default is 32 if not specified.
+   */
+  public void setPooledBuffers(Integer i) {
+    pooledBuffers = i;
+  }
+
+  int pooledBuffers() {
+    return Math.max(0, NumberUtils.toIntDefaultIfNull(getPooledBuffers(), DEFAULT_POOLED_BUFFERS));
+  }
+
+  byte[] acquireBuffer() {
+    byte[] buf = pool().poll();
+    return buf != null && buf.length == spillThresholdBytes() ? buf : new byte[spillThresholdBytes()];
+  }
+
+  void releaseBuffer(byte[] buf) {
+    if (pooledBuffers() > 0 && buf.length == spillThresholdBytes()) {
+      pool().offer(buf);
+    }
+  }
+
+  private BlockingQueue<byte[]> pool() {
+    BlockingQueue<byte[]> result = bufferPool;
+    if (result == null) {
+      synchronized (this) {
+        if (bufferPool == null) {
+          bufferPool = new ArrayBlockingQueue<>(Math.max(1, pooledBuffers()));
+        }
+        result = bufferPool;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.lms;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageImp;
+import com.adaptris.util.IdGenerator;
+
+/**
+ * {@link FileBackedMessage} implementation that holds its payload in memory until it grows beyond a threshold.
+ * <p>
+ * The payload is never modified in place; each write creates a new payload (in memory or in a new temporary file) which replaces
+ * the old one when the stream is closed. This allows clones to share the payload, and the temporary file to be deleted as soon
+ * as the last message that refers to it has finished with it.
+ * </p>
+ *
+ * @see SpillingMessageFactory
+ * @since 3.10.2
+ */
+class SpillingMessageImpl extends AdaptrisMessageImp implements FileBackedMessage, Closeable {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private transient SpillingMessageFactory factory;
+  private transient StreamWrapper streamWrapper;
+  // If file is null, then the payload is in memory.
+  private byte[] data = EMPTY;
+  private File file;
+  // Only set if we created the file; it may be shared with clones.
+  private SpilledFile spilled;
+
+  SpillingMessageImpl(IdGenerator guid, SpillingMessageFactory fac) {
+    super(guid, fac);
+    factory = fac;
+  }
+
+  @Override
+  public String getPayloadForLogging() {
+    return file != null ? "file-location:" + file : getContent();
+  }
+
+  /** @see AdaptrisMessage#setPayload(byte[]) */
+  @Override
+  public void setPayload(byte[] bytes) {
+    byte[] payload = bytes != null ? bytes : EMPTY;
+    if (payload.length <= factory.spillThresholdBytes()) {
+      setData(payload);
+      return;
+    }
+    FileBackedMessageImpl.wrappedTry(() -> {
+      try (OutputStream out = getOutputStream()) {
+        out.write(payload);
+      }
+    });
+  }
+
+  /** @see AdaptrisMessage#getPayload() */
+  @Override
+  public byte[] getPayload() {
+    if (file == null) {
+      return data.clone();
+    }
+    return readFile().toByteArray();
+  }
+
+  /**
+   * Returns a read-only view of the payload; if the payload is in a file, then it is mapped into memory.
+   *
+   * @see AdaptrisMessage#getPayloadBuffer()
+   */
+  @Override
+  public ByteBuffer getPayloadBuffer() {
+    if (file == null) {
+      return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+    try {
+      return FileTransfer.map(file);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   *
+   * @see com.adaptris.core.AdaptrisMessage#getSize()
+   */
+  @Override
+  public long getSize() {
+    return file != null ? file.length() : data.length;
+  }
+
+  @Override
+  public void setContent(String content, String charEncoding) {
+    Charset charset = Charset.forName(StringUtils.defaultIfBlank(charEncoding, Charset.defaultCharset().name()));
+    setPayload(content != null ? content.getBytes(charset) : EMPTY);
+    setContentEncoding(charEncoding);
+  }
+
+  @Override
+  public String getContent() {
+    Charset charset = Charset.forName(StringUtils.defaultIfBlank(getContentEncoding(), Charset.defaultCharset().name()));
+    if (file == null) {
+      return new String(data, charset);
+    }
+    return new String(readFile().toByteArray(), charset);
+  }
+
+  private ByteArrayOutputStream readFile() {
+    long size = getSize();
+    if (size >= factory.maxMemorySizeBytes()) {
+      throw new RuntimeException("Payload is > " + factory.maxMemorySizeBytes() + " bytes, use getInputStream()");
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream((int) size);
+    FileBackedMessageImpl.wrappedTry(() -> {
+      try (InputStream in = getInputStream()) {
+        IOUtils.copyLarge(in, out, new byte[factory.defaultBufferSize()]);
+      }
+    });
+    return out;
+  }
+
+  /**
+   * @see com.adaptris.core.AdaptrisMessage#getInputStream()
+   */
+  @Override
+  public InputStream getInputStream() throws IOException {
+    if (file == null) {
+      return new ByteArrayInputStream(data);
+    }
+    return streamWrapper().openInputStream(file, () -> {
+    });
+  }
+
+  /**
+   * @see com.adaptris.core.AdaptrisMessage#getOutputStream()
+   */
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    return new SpillingOutputStream();
+  }
+
+  @Override
+  public void initialiseFrom(File sourceFile) throws IOException {
+    if (sourceFile.exists() && sourceFile.isFile() && sourceFile.canRead()) {
+      // We don't own the file, so it's never deleted.
+      setFile(sourceFile, null);
+    }
+    else {
+      throw new IOException(sourceFile.getCanonicalPath() + " is not accessible");
+    }
+  }
+
+  /**
+   * Returns the file that contains the payload, writing the payload to a temporary file if it is held in memory.
+   * <p>
+   * Since the caller may modify (or move) the file, a temporary file that is shared with a clone is copied first.
+   * </p>
+   *
+   * @see com.adaptris.core.lms.FileBackedMessage#currentSource()
+   */
+  @Override
+  public File currentSource() {
+    FileBackedMessageImpl.wrappedTry(() -> {
+      if (file == null) {
+        SpilledFile target = new SpilledFile(factory);
+        Files.write(target.file.toPath(), data);
+        setFile(target.file, target);
+      }
+      else if (spilled != null && spilled.isShared()) {
+        SpilledFile target = new SpilledFile(factory);
+        FileTransfer.copy(file, target.file);
+        setFile(target.file, target);
+      }
+    });
+    return file;
+  }
+
+  /**
+   * Discard the payload, deleting the temporary file if no other message refers to it.
+   */
+  @Override
+  public void close() {
+    setData(EMPTY);
+  }
+
+  /**
+   * @return true if the payload is held in a file rather than in memory.
+   */
+  boolean isSpilled() {
+    return file != null;
+  }
+
+  /**
+   * @see com.adaptris.core.AdaptrisMessage#equivalentForTracking (com.adaptris.core.AdaptrisMessage)
+   */
+  @Override
+  public boolean equivalentForTracking(AdaptrisMessage other) {
+    return StringUtils.equals(getUniqueId(), other.getUniqueId())
+        && StringUtils.equals(getContentEncoding(), other.getContentEncoding()) && getMetadata().equals(other.getMetadata());
+  }
+
+  /** @see Object#clone() */
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    // The payload is never modified in place, so the clone can share it.
+    SpillingMessageImpl result = (SpillingMessageImpl) super.clone();
+    if (spilled != null) {
+      spilled.retain();
+    }
+    return result;
+  }
+
+  // Only needed once we have a file, so it's created lazily.
+  private StreamWrapper streamWrapper() {
+    if (streamWrapper == null) {
+      streamWrapper = factory.newStreamWrapper();
+    }
+    return streamWrapper;
+  }
+
+  private void setData(byte[] bytes) {
+    releaseFile();
+    data = bytes;
+  }
+
+  private void setFile(File f, SpilledFile owner) {
+    releaseFile();
+    data = EMPTY;
+    file = f;
+    spilled = owner;
+  }
+
+  private void releaseFile() {
+    if (spilled != null) {
+      spilled.release();
+    }
+    file = null;
+    spilled = null;
+  }
+
+  /**
+   * A temporary file, which is deleted when the last message that refers to it releases it.
+   * <p>
+   * The file is also tracked against this object (rather than any single message), so that it is deleted when it is garbage
+   * collected if it was never released.
+   * </p>
+   */
+  private static class SpilledFile {
+    private final File file;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    SpilledFile(SpillingMessageFactory factory) throws IOException {
+      file = factory.createTempFile(this);
+    }
+
+    void retain() {
+      references.incrementAndGet();
+    }
+
+    boolean isShared() {
+      return references.get() > 1;
+    }
+
+    void release() {
+      if (references.decrementAndGet() == 0) {
+        // If it can't be deleted now (e.g. it's still open on Windows), then the FileCleaningTracker will get it later.
+        FileUtils.deleteQuietly(file);
+      }
+    }
+  }
+
+  /**
+   * Stages writes in a pooled buffer, switching to a temporary file if the buffer overflows.
+   */
+  private class SpillingOutputStream extends OutputStream {
+    private byte[] buf;
+    private int count;
+    private SpilledFile target;
+    private OutputStream out;
+    private boolean closed;
+
+    SpillingOutputStream() {
+      buf = factory.acquireBuffer();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      ensureOpen();
+      if (out == null && count == buf.length) {
+        spill();
+      }
+      if (out != null) {
+        out.write(b);
+      }
+      else {
+        buf[count++] = (byte) b;
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      ensureOpen();
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new IndexOutOfBoundsException();
+      }
+      if (out == null && len > buf.length - count) {
+        spill();
+      }
+      if (out != null) {
+        out.write(b, off, len);
+      }
+      else {
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (out != null) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (out != null) {
+        out.close();
+        setFile(target.file, target);
+      }
+      else {
+        byte[] payload = count == 0 ? EMPTY : Arrays.copyOf(buf, count);
+        factory.releaseBuffer(buf);
+        buf = null;
+        setData(payload);
+      }
+    }
+
+    private void spill() throws IOException {
+      target = new SpilledFile(factory);
+      out = new BufferedOutputStream(streamWrapper().openOutputStream(target.file), factory.defaultBufferSize());
+      out.write(buf, 0, count);
+      factory.releaseBuffer(buf);
+      buf = null;
+    }
+
+    private void ensureOpen() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+    }
+  }
+}
@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -80,6 +81,12 @@ class ZipFileBackedMessageImpl extends FileBackedMessageImpl {
   /**
    * Return the size of the uncompressed data
    */
+  // The file is (probably) compressed, so it can't be mapped directly.
+  @Override
+  public ByteBuffer getPayloadBuffer() {
+    return ByteBuffer.wrap(getPayload()).asReadOnlyBuffer();
+  }
+
   @Override
   public long getSize() {
     // If the file size is 0 or if we have no file, no need to try and read it
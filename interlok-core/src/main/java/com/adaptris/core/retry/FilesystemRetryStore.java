@@ -0,0 +1,490 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.retry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import javax.validation.constraints.NotBlank;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageEncoder;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.MimeEncoder;
+import com.adaptris.core.fs.FsHelper;
+import com.adaptris.core.util.Args;
+import com.adaptris.core.util.ExceptionHelper;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * {@link RetryStore} implementation that writes messages to an append-only file so that they survive a restart.
+ * <p>
+ * Each message is encoded using the configured {@link AdaptrisMessageEncoder} and appended to a single data file in the
+ * configured directory, along with its due time and any object metadata where both the key and value are strings (which
+ * includes the retry count maintained by {@link com.adaptris.core.RetryMessageErrorHandler}). Removing a message appends a
+ * delete record. When the store is initialised, the file is replayed to rebuild the index, any partially written record at the
+ * end of the file (e.g. after a crash) is discarded and the file is compacted. The file is also compacted at runtime when more
+ * than half of it is made up of removed messages.
+ * </p>
+ * <p>
+ * Only the index (and any object metadata that cannot be written to the file) is held in memory; messages are always read back
+ * from the file. Object metadata other than strings (such as the exception that caused the failure, or any callbacks) is kept in
+ * memory until the message is removed, so it does not survive a restart.
+ * </p>
+ *
+ * @config filesystem-retry-store
+ * @since 3.10.2
+ */
+@XStreamAlias("filesystem-retry-store")
+@ComponentProfile(summary = "Store messages waiting to be retried on the filesystem", tag = "error-handling,retry",
+    since = "3.10.2")
+@DisplayOrder(order = {"baseDirectoryUrl", "encoder", "syncOnWrite"})
+public class FilesystemRetryStore implements RetryStore {
+
+  static final String DATA_FILE = "retry-store.dat";
+  private static final String COMPACT_SUFFIX = ".compact";
+  // The length and checksum of the record body.
+  private static final int HEADER_SIZE = 16;
+  // Marks a record that is still being written.
+  private static final long INCOMPLETE = -1L;
+  private static final byte ADD = 1;
+  private static final byte DELETE = 2;
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  // Don't bother compacting until there's at least this much garbage.
+  private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+  private transient Logger log = LoggerFactory.getLogger(this.getClass());
+
+  @NotBlank
+  private String baseDirectoryUrl;
+  @AdvancedConfig
+  private AdaptrisMessageEncoder encoder;
+  @AdvancedConfig
+  @InputFieldDefault(value = "true")
+  private Boolean syncOnWrite;
+
+  private transient File dataFile;
+  private transient FileChannel channel;
+  private transient FileLock lock;
+  private transient Map<String, Record> index = new LinkedHashMap<>();
+  // Object metadata that can't be written to the file.
+  private transient Map<String, Map<Object, Object>> transientHeaders = new HashMap<>();
+  private transient long liveBytes;
+  private transient long deadBytes;
+
+  public FilesystemRetryStore() {
+  }
+
+  public FilesystemRetryStore(String url) {
+    this();
+    setBaseDirectoryUrl(url);
+  }
+
+  @Override
+  public synchronized void init() throws CoreException {
+    try {
+      Args.notBlank(getBaseDirectoryUrl(), "baseDirectoryUrl");
+      File dir = FsHelper.toFile(getBaseDirectoryUrl());
+      dir.mkdirs();
+      dataFile = new File(dir, DATA_FILE);
+      open();
+      load();
+      compact();
+    } catch (Exception e) {
+      closeQuietly();
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closeQuietly();
+    index.clear();
+    transientHeaders.clear();
+    liveBytes = 0;
+    deadBytes = 0;
+  }
+
+  @Override
+  public synchronized void store(AdaptrisMessage msg, long dueTime) throws CoreException {
+    try {
+      discard(index.get(msg.getUniqueId()));
+      Map<Object, Object> others = new HashMap<>(msg.getObjectHeaders());
+      long length = append(out -> {
+        out.writeByte(ADD);
+        writeString(out, msg.getUniqueId());
+        out.writeLong(dueTime);
+        Map<String, String> headers = stringHeaders(msg);
+        out.writeInt(headers.size());
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+          writeString(out, e.getKey());
+          writeString(out, e.getValue());
+          others.remove(e.getKey());
+        }
+        encoder().writeMessage(msg, out);
+      });
+      track(msg.getUniqueId(), new Record(channel.size() - length, length, dueTime));
+      if (others.isEmpty()) {
+        transientHeaders.remove(msg.getUniqueId());
+      } else {
+        transientHeaders.put(msg.getUniqueId(), others);
+      }
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  @Override
+  public synchronized AdaptrisMessage remove(String msgId) throws CoreException {
+    Record record = index.remove(msgId);
+    if (record == null) {
+      return null;
+    }
+    try {
+      AdaptrisMessage msg = read(record);
+      Map<Object, Object> others = transientHeaders.remove(msgId);
+      if (others != null) {
+        msg.getObjectHeaders().putAll(others);
+      }
+      long length = append(out -> {
+        out.writeByte(DELETE);
+        writeString(out, msgId);
+      });
+      discard(record);
+      deadBytes += length;
+      if (deadBytes > MIN_COMPACT_BYTES && deadBytes > liveBytes) {
+        compact();
+      }
+      return msg;
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  @Override
+  public synchronized Map<String, Long> pending() {
+    Map<String, Long> result = new HashMap<>();
+    for (Map.Entry<String, Record> e : index.entrySet()) {
+      result.put(e.getKey(), e.getValue().dueTime);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isPersistent() {
+    return true;
+  }
+
+  public String getBaseDirectoryUrl() {
+    return baseDirectoryUrl;
+  }
+
+  /**
+   * Set the directory where the store will be kept.
+   *
+   * @param url the directory as a URL or path; it will be created if it doesn't exist.
+   */
+  public void setBaseDirectoryUrl(String url) {
+    this.baseDirectoryUrl = url;
+  }
+
+  public AdaptrisMessageEncoder getEncoder() {
+    return encoder;
+  }
+
+  /**
+   * Set the encoder used to write messages into the store.
+   *
+   * @param e the encoder, defaults to a {@link MimeEncoder} that retains the unique-id.
+   */
+  public void setEncoder(AdaptrisMessageEncoder e) {
+    this.encoder = e;
+  }
+
+  AdaptrisMessageEncoder encoder() {
+    return ObjectUtils.defaultIfNull(getEncoder(), new MimeEncoder(true, null, null));
+  }
+
+  public Boolean getSyncOnWrite() {
+    return syncOnWrite;
+  }
+
+  /**
+   * Whether or not to force each write to the underlying storage device.
+   *
+   * @param b true to force each write to disk (the default); false is faster, but messages may be lost if the operating system
+   *          crashes.
+   */
+  public void setSyncOnWrite(Boolean b) {
+    this.syncOnWrite = b;
+  }
+
+  boolean syncOnWrite() {
+    return BooleanUtils.toBooleanDefaultIfNull(getSyncOnWrite(), true);
+  }
+
+  // visible for testing.
+  synchronized long fileSize() throws IOException {
+    return channel.size();
+  }
+
+  private void open() throws IOException, CoreException {
+    channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    lock = channel.tryLock();
+    if (lock == null) {
+      throw new CoreException(dataFile + " is locked by another process");
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      if (lock != null && lock.isValid()) {
+        lock.release();
+      }
+      if (channel != null) {
+        channel.close();
+      }
+    } catch (IOException e) {
+      log.trace("Ignoring exception closing {}", dataFile, e);
+    }
+    lock = null;
+    channel = null;
+  }
+
+  private void load() throws IOException {
+    index.clear();
+    transientHeaders.clear();
+    liveBytes = 0;
+    deadBytes = 0;
+    long position = 0;
+    long size = channel.size();
+    while (position < size) {
+      long length = readRecord(position, size);
+      if (length < 0) {
+        log.warn("Discarding {} bytes of incomplete data from the end of {}", size - position, dataFile);
+        channel.truncate(position);
+        break;
+      }
+      try (DataInputStream in = openBody(position, length)) {
+        byte type = in.readByte();
+        String id = readString(in);
+        if (type == ADD) {
+          discard(index.get(id));
+          track(id, new Record(position, length, in.readLong()));
+        } else {
+          discard(index.remove(id));
+          deadBytes += length;
+        }
+      }
+      position += length;
+    }
+    log.trace("Loaded {} message(s) from {}", index.size(), dataFile);
+  }
+
+  // Rewrite the file with only the live records.
+  private void compact() throws IOException, CoreException {
+    if (deadBytes == 0) {
+      return;
+    }
+    File compacted = new File(dataFile.getParentFile(), DATA_FILE + COMPACT_SUFFIX);
+    Map<String, Record> newIndex = new LinkedHashMap<>();
+    try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      long position = 0;
+      for (Map.Entry<String, Record> e : index.entrySet()) {
+        Record r = e.getValue();
+        channel.transferTo(r.position, r.length, out);
+        newIndex.put(e.getKey(), new Record(position, r.length, r.dueTime));
+        position += r.length;
+      }
+      out.force(true);
+    }
+    closeQuietly();
+    Files.move(compacted.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    open();
+    index = newIndex;
+    log.trace("Compacted {}, discarded {} bytes", dataFile, deadBytes);
+    deadBytes = 0;
+  }
+
+  // Streams the record body to the end of the file, and returns the length of the whole record.
+  private long append(RecordBody body) throws Exception {
+    long position = channel.size();
+    // If we crash before the header is complete then the record is discarded on the next load().
+    writeHeader(position, INCOMPLETE, 0L);
+    CRC32 crc = new CRC32();
+    CountingOutputStream counter = null;
+    try {
+      channel.position(position + HEADER_SIZE);
+      counter = new CountingOutputStream(new CheckedOutputStream(
+          new BufferedOutputStream(new CloseShieldOutputStream(Channels.newOutputStream(channel))), crc));
+      try (DataOutputStream out = new DataOutputStream(counter)) {
+        body.writeTo(out);
+      }
+      writeHeader(position, counter.getByteCount(), crc.getValue());
+    } catch (Exception e) {
+      channel.truncate(position);
+      throw e;
+    }
+    if (syncOnWrite()) {
+      channel.force(false);
+    }
+    return HEADER_SIZE + counter.getByteCount();
+  }
+
+  private void writeHeader(long position, long length, long checksum) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+    buffer.putLong(length).putLong(checksum).flip();
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      offset += channel.write(buffer, offset);
+    }
+  }
+
+  // Returns the length of the whole record, or -1 if the record is incomplete or corrupt.
+  private long readRecord(long position, long size) throws IOException {
+    if (size - position < HEADER_SIZE) {
+      return -1;
+    }
+    ByteBuffer header = readFully(position, ByteBuffer.allocate(HEADER_SIZE));
+    long length = header.getLong();
+    long checksum = header.getLong();
+    if (length < 0 || size - position - HEADER_SIZE < length) {
+      return -1;
+    }
+    CRC32 crc = new CRC32();
+    ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    for (long offset = 0; offset < length; offset += buffer.limit()) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), length - offset));
+      crc.update(readFully(position + HEADER_SIZE + offset, buffer));
+    }
+    return crc.getValue() == checksum ? HEADER_SIZE + length : -1;
+  }
+
+  private AdaptrisMessage read(Record record) throws IOException, CoreException {
+    try (DataInputStream in = openBody(record.position, record.length)) {
+      in.readByte();
+      readString(in);
+      in.readLong();
+      Map<String, String> headers = new HashMap<>();
+      for (int i = in.readInt(); i > 0; i--) {
+        headers.put(readString(in), readString(in));
+      }
+      AdaptrisMessage msg = encoder().readMessage(in);
+      msg.getObjectHeaders().putAll(headers);
+      return msg;
+    }
+  }
+
+  private DataInputStream openBody(long position, long length) throws IOException {
+    channel.position(position + HEADER_SIZE);
+    return new DataInputStream(new BufferedInputStream(
+        new BoundedInputStream(new CloseShieldInputStream(Channels.newInputStream(channel)), length - HEADER_SIZE)));
+  }
+
+  private ByteBuffer readFully(long position, ByteBuffer buffer) throws IOException {
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset);
+      if (read < 0) {
+        throw new IOException("Unexpected end of " + dataFile);
+      }
+      offset += read;
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private void discard(Record r) {
+    if (r != null) {
+      liveBytes -= r.length;
+      deadBytes += r.length;
+    }
+  }
+
+  private void track(String id, Record r) {
+    index.put(id, r);
+    liveBytes += r.length;
+  }
+
+  private static Map<String, String> stringHeaders(AdaptrisMessage msg) {
+    Map<String, String> result = new LinkedHashMap<>();
+    for (Map.Entry<Object, Object> e : msg.getObjectHeaders().entrySet()) {
+      if (e.getKey() instanceof String && e.getValue() instanceof String) {
+        result.put((String) e.getKey(), (String) e.getValue());
+      }
+    }
+    return result;
+  }
+
+  // Length prefixed, since writeUTF() is limited to 64k.
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @FunctionalInterface
+  private interface RecordBody {
+    void writeTo(DataOutputStream out) throws Exception;
+  }
+
+  private static class Record {
+    private final long position;
+    private final long length;
+    private final long dueTime;
+
+    Record(long position, long length, long dueTime) {
+      this.position = position;
+      this.length = length;
+      this.dueTime = dueTime;
+    }
+  }
+}
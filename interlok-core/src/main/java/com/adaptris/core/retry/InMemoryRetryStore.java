@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.retry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.core.AdaptrisMessage;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * {@link RetryStore} implementation that keeps messages in memory.
+ * <p>
+ * This is the default store, messages waiting to be retried are lost on restart, so they are failed when the owning error
+ * handler is stopped.
+ * </p>
+ *
+ * @config in-memory-retry-store
+ * @since 3.10.2
+ */
+@XStreamAlias("in-memory-retry-store")
+@ComponentProfile(summary = "Keep messages waiting to be retried in memory", tag = "error-handling,retry", since = "3.10.2")
+public class InMemoryRetryStore implements RetryStore {
+
+  private transient Map<String, StoredMessage> messages = new ConcurrentHashMap<>();
+
+  public InMemoryRetryStore() {
+  }
+
+  @Override
+  public void store(AdaptrisMessage msg, long dueTime) {
+    messages.put(msg.getUniqueId(), new StoredMessage(msg, dueTime));
+  }
+
+  @Override
+  public AdaptrisMessage remove(String msgId) {
+    StoredMessage stored = messages.remove(msgId);
+    return stored != null ? stored.msg : null;
+  }
+
+  @Override
+  public Map<String, Long> pending() {
+    Map<String, Long> result = new HashMap<>();
+    for (Map.Entry<String, StoredMessage> e : messages.entrySet()) {
+      result.put(e.getKey(), e.getValue().dueTime);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isPersistent() {
+    return false;
+  }
+
+  private static class StoredMessage {
+    private final AdaptrisMessage msg;
+    private final long dueTime;
+
+    StoredMessage(AdaptrisMessage msg, long dueTime) {
+      this.msg = msg;
+      this.dueTime = dueTime;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.retry;
+
+import java.util.Map;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ComponentLifecycle;
+import com.adaptris.core.ComponentLifecycleExtension;
+import com.adaptris.core.CoreException;
+
+/**
+ * Stores messages that are waiting to be retried by a {@link com.adaptris.core.RetryMessageErrorHandler}.
+ *
+ * @since 3.10.2
+ */
+public interface RetryStore extends ComponentLifecycle, ComponentLifecycleExtension {
+
+  /**
+   * Store a message that is waiting to be retried.
+   *
+   * @param msg the message; if a message with the same unique-id is already stored, then it is replaced.
+   * @param dueTime the time (in milliseconds since the epoch) when the message should be retried.
+   */
+  void store(AdaptrisMessage msg, long dueTime) throws CoreException;
+
+  /**
+   * Remove a message from the store.
+   *
+   * @param msgId the unique-id of the message.
+   * @return the message, or null if there is no message with that id.
+   */
+  AdaptrisMessage remove(String msgId) throws CoreException;
+
+  /**
+   * Return all the messages currently in the store.
+   *
+   * @return a snapshot of the unique-id and due time of each stored message.
+   */
+  Map<String, Long> pending();
+
+  /**
+   * Whether or not the store survives a restart.
+   * <p>
+   * If the store is not persistent, then all the messages in it are failed when the owning error handler is stopped, as they
+   * would otherwise be lost.
+   * </p>
+   */
+  boolean isPersistent();
+
+  @Override
+  default void prepare() throws CoreException {}
+
+  @Override
+  default void init() throws CoreException {}
+
+  @Override
+  default void start() throws CoreException {}
+
+  @Override
+  default void stop() {}
+
+  @Override
+  default void close() {}
+}
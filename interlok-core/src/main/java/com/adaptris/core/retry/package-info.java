@@ -0,0 +1,4 @@
+/**
+ * Implementations of {@link com.adaptris.core.retry.RetryStore} for {@link com.adaptris.core.RetryMessageErrorHandler}.
+ */
+package com.adaptris.core.retry;
@@ -145,6 +145,12 @@ public interface AdapterComponentMBean extends BaseComponentMBean {
    */
   String JMX_RETRY_MONITOR_TYPE = JMX_DOMAIN_NAME + ":type=RetryMessageHandlerMonitor";
 
+  /**
+   * The standard JMX Prefix for a given PoolingWorkflow bounded work queue monitor exposed via JMX which resolves to {@value}
+   *
+   */
+  String JMX_WORK_QUEUE_MONITOR_TYPE = JMX_DOMAIN_NAME + ":type=WorkQueueMonitor";
+
   /**
    * The standard JMX Prefix for an Interceptor which emits {@link javax.management.Notification} which resolves to {@value}
    *
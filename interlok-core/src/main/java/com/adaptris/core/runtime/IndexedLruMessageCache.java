@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.runtime;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * <p>
+ * A {@link MessageCache} implementation that indexes messages by their message id.
+ * </p>
+ * <p>
+ * Unlike {@link LruBoundedMessageCache}, which has to search its queue for a message id, adding, finding and removing a message
+ * are all constant time operations. Once the cache reaches its limit, the oldest message is removed to make room for the newer
+ * message.
+ * </p>
+ * <p>
+ * You can control the limit by configuring "max-messages"; optionally you can also limit the total size (as reported by
+ * {@link com.adaptris.core.AdaptrisMessage#getSize()}) of the messages held in the cache by configuring "max-size-bytes". The
+ * most recently added message is always kept, even if it is larger than "max-size-bytes" on its own (in which case every other
+ * message is removed); something may be waiting for it (e.g. a message submitted via JMX waiting for its reply).
+ * </p>
+ * 
+ * @config indexed-lru-message-cache
+ * @since 3.10.2
+ */
+@XStreamAlias("indexed-lru-message-cache")
+@DisplayOrder(order = {"maxMessages", "maxSizeBytes"})
+public class IndexedLruMessageCache implements MessageCache {
+
+  protected transient Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+  private static final int DEFAULT_MAX_MESSAGES = 100;
+
+  @InputFieldDefault(value = "100")
+  private Integer maxMessages;
+  @AdvancedConfig
+  private Long maxSizeBytes;
+
+  private transient LinkedHashMap<String, Entry> cache = new LinkedHashMap<>();
+  private transient long currentSizeBytes;
+
+  public IndexedLruMessageCache() {
+  }
+
+  @Override
+  public void put(CacheableAdaptrisMessageWrapper message) {
+    long size = message.getMessage() != null ? message.getMessage().getSize() : 0;
+    synchronized (this) {
+      discard(cache.remove(message.getMessageId()));
+      if (size > maxSizeBytes()) {
+        log.warn("Message '{}' is larger than {} bytes, removing all other messages", message.getMessageId(), maxSizeBytes());
+      }
+      Entry added = new Entry(message, size);
+      cache.put(message.getMessageId(), added);
+      currentSizeBytes += size;
+      for (Iterator<Entry> i = cache.values().iterator(); i.hasNext() && exceedsLimits();) {
+        Entry eldest = i.next();
+        if (eldest == added) {
+          break;
+        }
+        i.remove();
+        discard(eldest);
+      }
+    }
+    log.trace("Cached message: {}", message.getMessageId());
+  }
+
+  @Override
+  public synchronized CacheableAdaptrisMessageWrapper remove(String messageId) {
+    log.trace("Removing message: {}", messageId);
+    Entry entry = cache.remove(messageId);
+    discard(entry);
+    return entry != null ? entry.wrapper : null;
+  }
+
+  @Override
+  public synchronized boolean contains(String messageId) {
+    return cache.containsKey(messageId);
+  }
+
+  @Override
+  public void init() {
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public synchronized void stop() {
+    cache.clear();
+    currentSizeBytes = 0;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  synchronized int size() {
+    return cache.size();
+  }
+
+  synchronized long currentSizeBytes() {
+    return currentSizeBytes;
+  }
+
+  private boolean exceedsLimits() {
+    return cache.size() > maxMessages() || currentSizeBytes > maxSizeBytes();
+  }
+
+  private void discard(Entry entry) {
+    if (entry != null) {
+      currentSizeBytes -= entry.size;
+    }
+  }
+
+  public Integer getMaxMessages() {
+    return maxMessages;
+  }
+
+  /**
+   * Set the maximum number of messages to hold in the cache.
+   * 
+   * @param i the maximum number of messages, default 100.
+   */
+  public void setMaxMessages(Integer i) {
+    this.maxMessages = i;
+  }
+
+  int maxMessages() {
+    return maxMessages != null ? maxMessages.intValue() : DEFAULT_MAX_MESSAGES;
+  }
+
+  public Long getMaxSizeBytes() {
+    return maxSizeBytes;
+  }
+
+  /**
+   * Set the maximum total size of the messages held in the cache.
+   * 
+   * @param l the maximum size in bytes, default is unbounded (i.e. only {@link #getMaxMessages()} applies).
+   */
+  public void setMaxSizeBytes(Long l) {
+    this.maxSizeBytes = l;
+  }
+
+  long maxSizeBytes() {
+    return maxSizeBytes != null ? maxSizeBytes.longValue() : Long.MAX_VALUE;
+  }
+
+  private static class Entry {
+    private final CacheableAdaptrisMessageWrapper wrapper;
+    private final long size;
+
+    Entry(CacheableAdaptrisMessageWrapper wrapper, long size) {
+      this.wrapper = wrapper;
+      this.size = size;
+    }
+  }
+}
@@ -37,7 +37,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * </p>
  * <p>
  * This implementation uses a {@link MessageCache} which is defaulted to
- * {@link LruBoundedMessageCache}.
+ * {@link IndexedLruMessageCache}.
  * </p>
  * 
  * @config jmx-submit-message-interceptor
@@ -57,7 +57,7 @@ public class JmxSubmitMessageInterceptor implements WorkflowInterceptor {
   private MessageCache messageCache;
   
   public JmxSubmitMessageInterceptor() {
-    this.setMessageCache(new LruBoundedMessageCache());
+    this.setMessageCache(new IndexedLruMessageCache());
   }
   
   @Override
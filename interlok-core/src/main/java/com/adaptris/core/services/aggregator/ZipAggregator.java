@@ -17,6 +17,7 @@
 package com.adaptris.core.services.aggregator;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
 import java.util.Collection;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -65,7 +66,7 @@ public class ZipAggregator extends MessageAggregatorImpl {
       for (AdaptrisMessage message : filter(msgs)){
         if(message.getMessageHeaders().containsKey(filenameMetadata())) {
           zipOutputStream.putNextEntry(new ZipEntry(message.getMetadataValue(filenameMetadata())));
-          zipOutputStream.write(message.getPayload());
+          Channels.newChannel(zipOutputStream).write(message.getPayloadBuffer());
           zipOutputStream.closeEntry();
         }
       }
@@ -75,7 +75,7 @@ public class CheckMetadataValueService extends DuplicateMetadataValueService {
     try {
       loadPreviouslyReceivedValues();
       String value = Args.notBlank(msg.getMetadataValue(getMetadataKey()), "required-metadata");
-      if (previousValuesStore.contains(value)) {
+      if (valueStore().contains(value)) {
         log.warn("Value [{}] stored [{}] exists in list of previously stored values", value, getMetadataKey());
         msg.setNextServiceId(getNextServiceIdIfDuplicate());
       } else {
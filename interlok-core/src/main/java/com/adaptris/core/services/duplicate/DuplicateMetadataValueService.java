@@ -17,12 +17,10 @@
 package com.adaptris.core.services.duplicate;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import javax.validation.constraints.NotBlank;
-import org.apache.commons.lang3.ObjectUtils;
+import com.adaptris.annotation.Removal;
 import com.adaptris.core.CoreException;
 import com.adaptris.core.ServiceImp;
 import com.adaptris.core.fs.FsHelper;
@@ -42,8 +40,14 @@ public abstract class DuplicateMetadataValueService extends ServiceImp {
   private String storeFileUrl;
 
   // not marshalled
-  protected transient List<String> previousValuesStore;
+  /**
+   * @deprecated since 3.10.2 previous values are kept in a {@link MetadataValueStore}; this list is no longer populated.
+   */
+  @Deprecated
+  @Removal(version = "3.12.0", message = "previous values are kept in a MetadataValueStore")
+  protected transient List<String> previousValuesStore = new ArrayList<>();
   protected transient File store;
+  private transient MetadataValueStore valueStore;
 
   @Override
   protected void initService() throws CoreException {
@@ -52,8 +56,8 @@ public abstract class DuplicateMetadataValueService extends ServiceImp {
       Args.notNull(getStoreFileUrl(), "storeFileUrl");
       store = FsHelper.toFile(getStoreFileUrl());
       Args.notNull(store, "storeFile");
+      valueStore = new MetadataValueStore(store);
       loadPreviouslyReceivedValues();
-      previousValuesStore = ObjectUtils.defaultIfNull(previousValuesStore, new ArrayList<String>());
     }
     catch (Exception e) {
       throw ExceptionHelper.wrapCoreException(e);
@@ -61,20 +65,30 @@ public abstract class DuplicateMetadataValueService extends ServiceImp {
   }
 
   @Override
-  protected void closeService() {}
-
-
-  protected void loadPreviouslyReceivedValues() throws Exception {
-    if (store.exists()) {
-      try (FileInputStream in = new FileInputStream(store); ObjectInputStream o = new ObjectInputStream(in)) {
-        previousValuesStore = (ArrayList<String>) o.readObject();
+  protected void closeService() {
+    try {
+      if (valueStore != null) {
+        valueStore.close();
       }
     }
+    catch (Exception e) {
+      log.trace("Failed to close [{}], logging exception for informational purposes only", store, e);
+    }
   }
 
+  /**
+   * Read any values that have been stored since the last time this method was called.
+   */
+  protected void loadPreviouslyReceivedValues() throws Exception {
+    valueStore.refresh();
+  }
+
+  MetadataValueStore valueStore() {
+    return valueStore;
+  }
 
   int storeSize() {
-    return previousValuesStore.size();
+    return valueStore.size();
   }
 
   // properties...
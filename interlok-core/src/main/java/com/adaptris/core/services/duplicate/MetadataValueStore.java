@@ -0,0 +1,338 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.services.duplicate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Persistent store of previously received values used by the duplicate checking services.
+ * <p>
+ * Values are held in insertion order with a hashed index of how many times each value occurs, so checking for a value, adding a
+ * value and evicting the oldest value are all O(1). The store is persisted as an append-only log; each value that is added is
+ * appended to the end of the file rather than rewriting it. When the log holds more than twice the number of values that are
+ * retained it is compacted, by writing the retained values to a new file which then replaces the log.
+ * </p>
+ * <p>
+ * The log starts with a header that records a generation (which changes every time the log is compacted) and the number of
+ * values that are retained. A store that is only used for reading (via {@link #refresh()}) remembers how far into the log it
+ * has read, and only reads the values that have been appended since; it reads the whole log again if the log has been compacted
+ * in the meantime.
+ * </p>
+ * <p>
+ * Files written by previous versions (a serialized {@link java.util.List}) can still be read; they are converted to the log
+ * format when the store is next opened for writing.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+public class MetadataValueStore implements Closeable {
+
+  private static final int MAGIC = 0x4D565331; // MVS1
+  private static final int HEADER_SIZE = 16;
+  // The first 2 bytes of a java serialization stream
+  private static final int SERIALIZATION_MAGIC = 0xACED;
+  private static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+  private final File file;
+  private final ArrayDeque<String> values = new ArrayDeque<>();
+  private final Map<String, Integer> index = new HashMap<>();
+  private int capacity = Integer.MAX_VALUE;
+
+  // Where we are in the log.
+  private long generation;
+  private long position;
+  private long logged;
+  private FileChannel writer;
+
+  public MetadataValueStore(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Open the store for writing, loading any existing values.
+   * <p>
+   * If the existing file was written by a previous version, or with a different capacity, then it is rewritten.
+   * </p>
+   *
+   * @param capacity the maximum number of values to retain.
+   */
+  public synchronized void open(int capacity) throws IOException {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity is 0 or negative");
+    }
+    close();
+    boolean compatible = load();
+    int previous = this.capacity;
+    this.capacity = capacity;
+    evict();
+    if (!compatible || previous != capacity || logged > compactionThreshold()) {
+      compact();
+    }
+    else {
+      writer = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+      // Discard any partially written record (e.g. after a crash), otherwise the next value would be appended after it.
+      writer.truncate(position);
+      writer.position(position);
+    }
+  }
+
+  /**
+   * Read any values that have been added to the store since it was last read.
+   * <p>
+   * This is intended for stores that are only used for checking values, with another instance (typically in another
+   * workflow) adding the values.
+   * </p>
+   */
+  public synchronized void refresh() throws IOException {
+    if (!file.exists()) {
+      reset();
+      return;
+    }
+    try (FileInputStream in = new FileInputStream(file)) {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      Header header = Header.read(channel);
+      if (header == null || header.generation != generation || size < position) {
+        load();
+        return;
+      }
+      channel.position(position);
+      readValues(channel, size);
+    }
+  }
+
+  /**
+   * Add a value to the store, evicting the oldest value if the store is full.
+   *
+   * @param value the value
+   */
+  public synchronized void add(String value) throws IOException {
+    if (writer == null) {
+      throw new IOException("Store [" + file + "] is not open for writing");
+    }
+    append(value);
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+    record.putInt(bytes.length).put(bytes).flip();
+    while (record.hasRemaining()) {
+      writer.write(record);
+    }
+    position = writer.position();
+    logged++;
+    if (logged > compactionThreshold()) {
+      compact();
+    }
+  }
+
+  /**
+   * @return true if the value is in the store.
+   */
+  public synchronized boolean contains(String value) {
+    return index.containsKey(value);
+  }
+
+  /**
+   * @return the number of values in the store, including duplicates.
+   */
+  public synchronized int size() {
+    return values.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (writer != null) {
+      try {
+        writer.close();
+      }
+      finally {
+        writer = null;
+      }
+    }
+  }
+
+  // Load the whole file, returning false if it needs to be rewritten.
+  private boolean load() throws IOException {
+    reset();
+    if (!file.exists() || file.length() == 0) {
+      return false;
+    }
+    try (FileInputStream in = new FileInputStream(file)) {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      Header header = Header.read(channel);
+      if (header == null) {
+        channel.position(0);
+        loadLegacy(Channels.newInputStream(channel));
+        return false;
+      }
+      generation = header.generation;
+      capacity = header.capacity;
+      readValues(channel, size);
+      return true;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void loadLegacy(InputStream in) throws IOException {
+    BufferedInputStream buffered = new BufferedInputStream(in);
+    buffered.mark(2);
+    int magic = (buffered.read() << 8) | buffered.read();
+    if (magic != SERIALIZATION_MAGIC) {
+      throw new IOException("Store [" + file + "] is not a recognised format");
+    }
+    buffered.reset();
+    try (ObjectInputStream o = new ObjectInputStream(buffered)) {
+      for (Object value : (Collection<Object>) o.readObject()) {
+        append(String.valueOf(value));
+      }
+    }
+    catch (ClassNotFoundException | ClassCastException e) {
+      throw new IOException("Store [" + file + "] is not a recognised format", e);
+    }
+  }
+
+  // Only complete records are read; a partially written record will be picked up by the next read.
+  private void readValues(FileChannel channel, long size) throws IOException {
+    long pos = channel.position();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+    while (size - pos >= Integer.BYTES) {
+      int length = in.readInt();
+      if (length < 0) {
+        throw new IOException("Store [" + file + "] is corrupt at offset " + pos);
+      }
+      if (size - pos - Integer.BYTES < length) {
+        break;
+      }
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      append(new String(bytes, StandardCharsets.UTF_8));
+      pos += Integer.BYTES + length;
+      logged++;
+    }
+    position = pos;
+  }
+
+  private void append(String value) {
+    values.addLast(value);
+    index.merge(value, 1, Integer::sum);
+    evict();
+  }
+
+  private void evict() {
+    while (values.size() > capacity) {
+      index.computeIfPresent(values.removeFirst(), (k, count) -> count > 1 ? count - 1 : null);
+    }
+  }
+
+  private void compact() throws IOException {
+    close();
+    long newGeneration = ThreadLocalRandom.current().nextLong();
+    File parent = file.getAbsoluteFile().getParentFile();
+    parent.mkdirs();
+    File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        new Header(newGeneration, capacity).write(out);
+        for (String value : values) {
+          byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+      }
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+    generation = newGeneration;
+    logged = values.size();
+    writer = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+    position = writer.size();
+    writer.position(position);
+  }
+
+  private long compactionThreshold() {
+    return Math.max(MIN_COMPACTION_THRESHOLD, capacity * 2L);
+  }
+
+  private void reset() {
+    values.clear();
+    index.clear();
+    capacity = Integer.MAX_VALUE;
+    generation = 0;
+    position = 0;
+    logged = 0;
+  }
+
+  private static class Header {
+    private final long generation;
+    private final int capacity;
+
+    Header(long generation, int capacity) {
+      this.generation = generation;
+      this.capacity = capacity;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeLong(generation);
+      out.writeInt(capacity);
+    }
+
+    // returns null if the channel doesn't start with a header.
+    static Header read(FileChannel channel) throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+      while (buf.hasRemaining()) {
+        if (channel.read(buf) < 0) {
+          return null;
+        }
+      }
+      buf.flip();
+      if (buf.getInt() != MAGIC) {
+        return null;
+      }
+      return new Header(buf.getLong(), buf.getInt());
+    }
+  }
+}
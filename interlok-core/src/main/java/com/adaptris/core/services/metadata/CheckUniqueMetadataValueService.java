@@ -17,13 +17,7 @@
 package com.adaptris.core.services.metadata;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
 import javax.validation.constraints.NotBlank;
 import com.adaptris.annotation.AdapterComponent;
 import com.adaptris.annotation.ComponentProfile;
@@ -33,6 +27,7 @@ import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.BranchingServiceImp;
 import com.adaptris.core.CoreException;
 import com.adaptris.core.ServiceException;
+import com.adaptris.core.services.duplicate.MetadataValueStore;
 import com.adaptris.core.util.Args;
 import com.adaptris.core.util.ExceptionHelper;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
@@ -52,7 +47,8 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * </p>
  * <p>
  * The store of previous values has a configurable maximum size. After a new value is added, if the store exceeds the maximum size
- * the oldest value is removed. The store is then persisted to the configured store file.
+ * the oldest value is removed. The new value is then appended to the configured store file; see {@link MetadataValueStore} for
+ * details of how the store is persisted.
  * </p>
  * 
  * @config check-unique-metadata-value-service
@@ -96,7 +92,7 @@ public class CheckUniqueMetadataValueService extends BranchingServiceImp {
   private int numberOfPreviousValuesToStore;
 
   // not marshalled
-  private transient List<Object> previousValuesStore;
+  private transient MetadataValueStore previousValuesStore;
   private transient File store;
 
   /**
@@ -114,11 +110,8 @@ public class CheckUniqueMetadataValueService extends BranchingServiceImp {
       Args.notBlank(getMetadataKeyToCheck(), "metadataKeyToCheck");
       Args.notBlank(getStoreFileUrl(), "storeFileUrl");
       this.store = new File(new URL(getStoreFileUrl()).getFile());
-      this.loadPreviouslyReceivedValues();
-
-      if (previousValuesStore == null) {
-        previousValuesStore = new ArrayList<Object>();
-      }
+      previousValuesStore = new MetadataValueStore(store);
+      previousValuesStore.open(getNumberOfPreviousValuesToStore());
     } catch (Exception e) {
       throw ExceptionHelper.wrapCoreException(e);
     }
@@ -126,7 +119,13 @@ public class CheckUniqueMetadataValueService extends BranchingServiceImp {
 
   @Override
   protected void closeService() {
-
+    try {
+      if (previousValuesStore != null) {
+        previousValuesStore.close();
+      }
+    } catch (Exception e) {
+      log.trace("Failed to close [{}], logging exception for informational purposes only", store, e);
+    }
   }
 
   /**
@@ -170,26 +169,6 @@ public class CheckUniqueMetadataValueService extends BranchingServiceImp {
   private void handleNewValue(AdaptrisMessage msg, String value) throws Exception {
     msg.setNextServiceId(this.getNextServiceIdIfUnique());
     previousValuesStore.add(value);
-    while (previousValuesStore.size() > this.getNumberOfPreviousValuesToStore()) {
-      previousValuesStore.remove(0);
-    }
-    this.storePreviouslyReceivedValues();
-  }
-
-  private void storePreviouslyReceivedValues() throws Exception {
-    try (FileOutputStream out = new FileOutputStream(store);
-        ObjectOutputStream o = new ObjectOutputStream(out)) {
-      o.writeObject(previousValuesStore);
-    }
-  }
-
-  private void loadPreviouslyReceivedValues() throws Exception {
-    if (store.exists()) {
-      try (FileInputStream in = new FileInputStream(store);
-          ObjectInputStream o = new ObjectInputStream(in)) {
-        previousValuesStore = (ArrayList<Object>) o.readObject();
-      }
-    }
   }
 
   int storeSize() {
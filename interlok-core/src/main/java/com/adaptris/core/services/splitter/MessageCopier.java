@@ -20,13 +20,33 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 import java.io.IOException;
 
+import org.apache.commons.lang3.BooleanUtils;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreConstants;
 import com.adaptris.util.stream.StreamUtil;
 
+/**
+ * Base class for {@link MessageSplitter} implementations that create multiple copies of the same document.
+ * <p>
+ * By default each copy is created using {@link AdaptrisMessageFactory#newBranch(AdaptrisMessage)}, so with the default message
+ * factory the copies share the payload and metadata of the original message and they are only copied if a copy is modified. Set
+ * {@link #setShareContent(Boolean)} to false to always copy the payload and metadata up front.
+ * </p>
+ */
 public abstract class MessageCopier extends MessageSplitterImp {
 
+  @AdvancedConfig
+  @InputFieldDefault(value = "true")
+  private Boolean shareContent;
+
   protected AdaptrisMessage duplicateWithPayload(AdaptrisMessageFactory factory, AdaptrisMessage msg) throws IOException {
+    if (shareContent()) {
+      return branch(factory, msg);
+    }
     AdaptrisMessage result = factory.newMessage();
     result.setContentEncoding(msg.getContentEncoding());
     StreamUtil.copyAndClose(msg.getInputStream(), result.getOutputStream());
@@ -34,6 +54,37 @@ public abstract class MessageCopier extends MessageSplitterImp {
     return result;
   }
 
+  private AdaptrisMessage branch(AdaptrisMessageFactory factory, AdaptrisMessage msg) throws IOException {
+    AdaptrisMessage result = factory.newBranch(msg);
+    if (!copyMetadata()) {
+      result.clearMetadata();
+    }
+    result.addMetadata(CoreConstants.PARENT_UNIQUE_ID_KEY, msg.getUniqueId());
+    if (copyObjectMetadata()) {
+      result.getObjectHeaders().putAll(msg.getObjectHeaders());
+    }
+    return result;
+  }
+
+  public Boolean getShareContent() {
+    return shareContent;
+  }
+
+  /**
+   * Whether or not the copies should share the payload and metadata of the original message until they are modified.
+   *
+   * @param b true to share where the message factory supports it (default), false to always make a full copy of the payload
+   *          and metadata for each copy.
+   * @see AdaptrisMessageFactory#newBranch(AdaptrisMessage)
+   */
+  public void setShareContent(Boolean b) {
+    shareContent = b;
+  }
+
+  boolean shareContent() {
+    return BooleanUtils.toBooleanDefaultIfNull(getShareContent(), true);
+  }
+
   protected static int toInteger(String s) {
     if (isEmpty(s)) {
       return 0;
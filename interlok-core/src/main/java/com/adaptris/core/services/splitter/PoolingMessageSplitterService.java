@@ -54,7 +54,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 @ComponentProfile(summary = "Split a message and execute an arbitary number of services on the split message", tag = "service,splitter", since = "3.7.1")
 @DisplayOrder(order =
 {
-    "splitter", "service", "maxThreads", "warmStart", "ignoreSplitMessageFailures", "sendEvents"
+    "splitter", "service", "maxThreads", "warmStart", "virtualThreads", "ignoreSplitMessageFailures", "sendEvents"
 })
 public class PoolingMessageSplitterService extends AdvancedMessageSplitterService {
 
@@ -64,6 +64,9 @@ public class PoolingMessageSplitterService extends AdvancedMessageSplitterServic
   @AdvancedConfig
   @InputFieldDefault(value = "false")
   private Boolean warmStart;
+  @AdvancedConfig(rare = true)
+  @InputFieldDefault(value = "false")
+  private Boolean virtualThreads;
 
   private transient ExecutorService executor;
   private transient ServiceExceptionHandler exceptionHandler;
@@ -78,7 +81,7 @@ public class PoolingMessageSplitterService extends AdvancedMessageSplitterServic
   protected void initService() throws CoreException {
     workerFactory = new ServiceWorkerPool(getService(), eventHandler, maxThreads());
     objectPool = workerFactory.createCommonsObjectPool();
-    executor = workerFactory.createExecutor(this.getClass().getSimpleName());
+    executor = workerFactory.createExecutor(this.getClass().getSimpleName(), virtualThreads());
     exceptionHandler = new ServiceExceptionHandler();
     super.initService();
   }
@@ -136,6 +139,33 @@ public class PoolingMessageSplitterService extends AdvancedMessageSplitterServic
     setWarmStart(b);
     return this;
   }
+
+  boolean virtualThreads() {
+    return BooleanUtils.toBooleanDefaultIfNull(getVirtualThreads(), false);
+  }
+
+  public Boolean getVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Specify if virtual threads should be used to execute the service on each split message.
+   * <p>
+   * Virtual threads are only available on Java 21+; if the runtime does not support them then a fixed thread pool is used as
+   * normal. The number of split messages processed concurrently is still limited by {@link #getMaxThreads()}.
+   * </p>
+   *
+   * @param b true or false (default false if not specified).
+   */
+  public void setVirtualThreads(Boolean b) {
+    this.virtualThreads = b;
+  }
+
+  public PoolingMessageSplitterService withVirtualThreads(Boolean b) {
+    setVirtualThreads(b);
+    return this;
+  }
+
   private class ServiceExecutor implements Callable<AdaptrisMessage> {
     private ServiceExceptionHandler handler;
     private AdaptrisMessage msg;
@@ -56,7 +56,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 @ComponentProfile(summary = "Split a message and then execute the associated services on the split items, aggregating the split messages afterwards", tag = "service,splitjoin", since = "3.7.1")
 @DisplayOrder(order =
 {
-    "splitter", "service", "aggregator", "maxThreads", "timeout", "warmStart"
+    "splitter", "service", "aggregator", "maxThreads", "timeout", "warmStart", "virtualThreads"
 })
 public class PoolingSplitJoinService extends SplitJoinService {
 
@@ -68,6 +68,9 @@ public class PoolingSplitJoinService extends SplitJoinService {
   @AdvancedConfig
   @InputFieldDefault(value = "false")
   private Boolean warmStart;
+  @AdvancedConfig(rare = true)
+  @InputFieldDefault(value = "false")
+  private Boolean virtualThreads;
 
 
   private transient ServiceWorkerPool workerFactory;
@@ -119,7 +122,7 @@ public class PoolingSplitJoinService extends SplitJoinService {
 
   @Override
   protected ExecutorService createExecutor() {
-    return workerFactory.createExecutor(this.getClass().getSimpleName());
+    return workerFactory.createExecutor(this.getClass().getSimpleName(), virtualThreads());
   }
 
   public Integer getMaxThreads() {
@@ -166,6 +169,32 @@ public class PoolingSplitJoinService extends SplitJoinService {
     return this;
   }
 
+  boolean virtualThreads() {
+    return BooleanUtils.toBooleanDefaultIfNull(getVirtualThreads(), false);
+  }
+
+  public Boolean getVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Specify if virtual threads should be used to execute the service on each split message.
+   * <p>
+   * Virtual threads are only available on Java 21+; if the runtime does not support them then a fixed thread pool is used as
+   * normal. The number of split messages processed concurrently is still limited by {@link #getMaxThreads()}.
+   * </p>
+   *
+   * @param b true or false (default false if not specified).
+   */
+  public void setVirtualThreads(Boolean b) {
+    virtualThreads = b;
+  }
+
+  public PoolingSplitJoinService withVirtualThreads(Boolean b) {
+    setVirtualThreads(b);
+    return this;
+  }
+
   private class MyServiceExecutor implements Callable<AdaptrisMessage> {
 
     private ServiceExceptionHandler handler;
@@ -40,6 +40,7 @@ import com.adaptris.core.util.Args;
 import com.adaptris.core.util.ExceptionHelper;
 import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.core.util.ManagedThreadFactory;
+import com.adaptris.core.util.VirtualThreadFactory;
 import com.adaptris.util.TimeInterval;
 
 public class ServiceWorkerPool {
@@ -85,6 +86,28 @@ public class ServiceWorkerPool {
     return Executors.newFixedThreadPool(maxThreads, new ManagedThreadFactory(prefix));
   }
 
+  /**
+   * Create the executor, optionally using virtual threads.
+   * <p>
+   * If virtual threads are requested, and the runtime supports them, then each task gets its own virtual thread, and the number of
+   * tasks executing concurrently is limited to the number of max threads. Otherwise this is the same as
+   * {@link #createExecutor(String)}.
+   * </p>
+   *
+   * @param prefix the thread name prefix
+   * @param virtualThreads whether to use virtual threads
+   * @return an executor.
+   */
+  public ExecutorService createExecutor(String prefix, boolean virtualThreads) {
+    if (virtualThreads) {
+      if (VirtualThreadFactory.isSupported()) {
+        return VirtualThreadFactory.newExecutor(prefix, maxThreads);
+      }
+      log.warn("Virtual threads not supported by this runtime, using a fixed thread pool");
+    }
+    return createExecutor(prefix);
+  }
+
 
   public static void closeQuietly(ObjectPool<?> pool) {
     try {
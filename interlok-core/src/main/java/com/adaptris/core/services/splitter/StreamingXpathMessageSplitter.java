@@ -0,0 +1,324 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.services.splitter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.validation.constraints.NotBlank;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.apache.commons.lang3.StringUtils;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.core.util.XmlHelper;
+import com.adaptris.interlok.util.CloseableIterable;
+import com.adaptris.util.KeyValuePairSet;
+import com.adaptris.util.NumberUtils;
+import com.adaptris.util.text.xml.SimpleNamespaceContext;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Implementation of {@link MessageSplitter} which splits an XML document using a restricted XPath without building a DOM.
+ * <p>
+ * {@link XpathMessageSplitter} needs to build the entire document in memory before splitting it, this is not possible for very
+ * large documents. This implementation reads the document using StAX, and each matching element is written directly into a new
+ * message created by the message factory, so memory usage is constant regardless of the size of the document (if you use a
+ * {@link com.adaptris.core.lms.FileBackedMessageFactory}, then the split messages will also remain on disk).
+ * </p>
+ * <p>
+ * The XPath is restricted to a simple absolute location path such as {@code /envelope/document}; each step can be an element
+ * name, a prefixed element name (resolved via {@link #setNamespaceContext(KeyValuePairSet)}) or {@code *}. Predicates, axes and
+ * functions are not supported. Given the following input document:
+ *
+ * <pre>
+ * {@code
+ * <envelope>
+ *   <document>one</document>
+ *   <document>two</document>
+ *   <document>three</document>
+ * </envelope>
+ * }
+ * </pre> then {@code /envelope/document} will create 3 documents each of which will only contain the {@code <document>} element.
+ * Any namespaces declared on ancestor elements are redeclared on the root element of each split document.
+ * </p>
+ *
+ * @config streaming-xpath-message-splitter
+ * @since 3.10.2
+ */
+@XStreamAlias("streaming-xpath-message-splitter")
+@ComponentProfile(summary = "Split a large XML document using StAX and a simple XPath", tag = "splitter,xml,xpath", since = "3.10.2")
+@DisplayOrder(order = {"xpath", "encoding", "copyMetadata", "copyObjectMetadata", "namespaceContext", "bufferSize"})
+public class StreamingXpathMessageSplitter extends MessageSplitterImp {
+
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+  private static final String WILDCARD = "*";
+
+  @NotBlank
+  private String xpath;
+  @AdvancedConfig
+  private String encoding;
+  @AdvancedConfig(rare = true)
+  private KeyValuePairSet namespaceContext;
+  @AdvancedConfig(rare = true)
+  @InputFieldDefault(value = "8192")
+  private Integer bufferSize;
+
+  private transient XMLInputFactory inputFactory;
+  private transient XMLOutputFactory outputFactory;
+  private transient XMLEventFactory eventFactory;
+
+  public StreamingXpathMessageSplitter() {
+    inputFactory = XMLInputFactory.newFactory();
+    inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    outputFactory = XMLOutputFactory.newFactory();
+    eventFactory = XMLEventFactory.newFactory();
+  }
+
+  public StreamingXpathMessageSplitter(String xpath) {
+    this();
+    setXpath(xpath);
+  }
+
+  @Override
+  public CloseableIterable<AdaptrisMessage> splitMessage(AdaptrisMessage msg) throws CoreException {
+    try {
+      List<QName> path = parse(getXpath(), SimpleNamespaceContext.create(getNamespaceContext(), msg));
+      return new StaxSplitGenerator(msg, path);
+    } catch (Exception e) {
+      throw ExceptionHelper.wrapCoreException(e);
+    }
+  }
+
+  /**
+   * Set the XPath to use to extract the individual messages.
+   *
+   * @param xp the XPath, which must be a simple absolute location path such as {@code /envelope/document}.
+   */
+  public void setXpath(String xp) {
+    xpath = xp;
+  }
+
+  public String getXpath() {
+    return xpath;
+  }
+
+  /**
+   * Sets the encoding to use on the output XML docs.
+   *
+   * @param charSet the encoding, defaults to the message encoding, or UTF-8 if that is not set.
+   */
+  public void setEncoding(String charSet) {
+    encoding = charSet;
+  }
+
+  public String getEncoding() {
+    return encoding;
+  }
+
+  public KeyValuePairSet getNamespaceContext() {
+    return namespaceContext;
+  }
+
+  /**
+   * Set the namespace context for resolving prefixes in the XPath.
+   * <ul>
+   * <li>The key is the namespace prefix</li>
+   * <li>The value is the namespace uri</li>
+   * </ul>
+   * <p>
+   * If a step in the XPath has no prefix, then it matches any element with that local name, regardless of namespace.
+   * </p>
+   *
+   * @param kvps the namespace context
+   * @see SimpleNamespaceContext#create(KeyValuePairSet)
+   */
+  public void setNamespaceContext(KeyValuePairSet kvps) {
+    this.namespaceContext = kvps;
+  }
+
+  public Integer getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Set the buffer size used when reading the original message and writing the split messages.
+   *
+   * @param b the buffer size (default is 8192).
+   */
+  public void setBufferSize(Integer b) {
+    this.bufferSize = b;
+  }
+
+  int bufferSize() {
+    return NumberUtils.toIntDefaultIfNull(getBufferSize(), DEFAULT_BUFFER_SIZE);
+  }
+
+  static List<QName> parse(String xpath, NamespaceContext ctx) throws CoreException {
+    if (StringUtils.isBlank(xpath) || !xpath.startsWith("/") || xpath.startsWith("//")) {
+      throw new CoreException("[" + xpath + "] is not an absolute location path");
+    }
+    List<QName> result = new ArrayList<>();
+    for (String step : xpath.substring(1).split("/")) {
+      if (!step.matches("(?:[\\w.\\-]+:)?(?:[\\w.\\-]+|\\*)")) {
+        throw new CoreException("[" + step + "] in [" + xpath + "] is not supported, only simple element names are allowed");
+      }
+      String prefix = StringUtils.substringBefore(step, ":");
+      if (step.contains(":")) {
+        String uri = ctx != null ? ctx.getNamespaceURI(prefix) : null;
+        if (StringUtils.isEmpty(uri)) {
+          throw new CoreException("No namespace configured for prefix [" + prefix + "] in [" + xpath + "]");
+        }
+        result.add(new QName(uri, StringUtils.substringAfter(step, ":"), prefix));
+      } else {
+        result.add(new QName(null, step));
+      }
+    }
+    return result;
+  }
+
+  private static boolean matches(QName step, QName element) {
+    if (!WILDCARD.equals(step.getLocalPart()) && !step.getLocalPart().equals(element.getLocalPart())) {
+      return false;
+    }
+    // No namespace in the step matches any namespace.
+    return StringUtils.isEmpty(step.getNamespaceURI()) || step.getNamespaceURI().equals(element.getNamespaceURI());
+  }
+
+  private class StaxSplitGenerator extends SplitMessageIterator {
+    private final List<QName> path;
+    private final InputStream input;
+    private final XMLEventReader reader;
+    private final String outputEncoding;
+    // The namespaces declared by each open element, and whether it (and every ancestor) matched the path.
+    private final Deque<List<Namespace>> namespaces = new ArrayDeque<>();
+    private final Deque<Boolean> matched = new ArrayDeque<>();
+    private int numberOfMessages;
+
+    StaxSplitGenerator(AdaptrisMessage msg, List<QName> path) throws IOException, XMLStreamException {
+      super(msg, selectFactory(msg));
+      this.path = path;
+      outputEncoding = XmlHelper.getXmlEncoding(msg, getEncoding());
+      input = new BufferedInputStream(msg.getInputStream(), bufferSize());
+      reader = inputFactory.createXMLEventReader(input);
+    }
+
+    @Override
+    protected AdaptrisMessage constructAdaptrisMessage() throws Exception {
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        if (event.isStartElement()) {
+          StartElement start = event.asStartElement();
+          int depth = matched.size();
+          boolean match = (depth == 0 || matched.peek()) && depth < path.size() && matches(path.get(depth), start.getName());
+          if (match && depth == path.size() - 1) {
+            return split(start);
+          }
+          matched.push(match);
+          namespaces.push(toList(start.getNamespaces()));
+        } else if (event.isEndElement()) {
+          matched.pop();
+          namespaces.pop();
+        }
+      }
+      return null;
+    }
+
+    private AdaptrisMessage split(StartElement start) throws Exception {
+      AdaptrisMessage splitMsg = factory.newMessage();
+      splitMsg.setContentEncoding(outputEncoding);
+      try (OutputStream out = new BufferedOutputStream(splitMsg.getOutputStream(), bufferSize())) {
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, outputEncoding);
+        writer.add(eventFactory.createStartDocument(outputEncoding));
+        writer.add(eventFactory.createStartElement(start.getName(), start.getAttributes(), inScope(start).iterator()));
+        int depth = 1;
+        while (depth > 0) {
+          XMLEvent event = reader.nextEvent();
+          if (event.isStartElement()) {
+            depth++;
+          } else if (event.isEndElement()) {
+            depth--;
+          }
+          writer.add(event);
+        }
+        writer.add(eventFactory.createEndDocument());
+        writer.flush();
+        writer.close();
+      }
+      copyMetadata(msg, splitMsg);
+      numberOfMessages++;
+      return splitMsg;
+    }
+
+    // Redeclare any namespaces from ancestor elements, so the split document is well formed.
+    private List<Namespace> inScope(StartElement start) {
+      Map<String, Namespace> result = new LinkedHashMap<>();
+      Iterator<List<Namespace>> outerToInner = namespaces.descendingIterator();
+      while (outerToInner.hasNext()) {
+        for (Namespace ns : outerToInner.next()) {
+          result.put(ns.getPrefix(), ns);
+        }
+      }
+      for (Namespace ns : toList(start.getNamespaces())) {
+        result.put(ns.getPrefix(), ns);
+      }
+      return new ArrayList<>(result.values());
+    }
+
+    private List<Namespace> toList(Iterator<?> itr) {
+      List<Namespace> result = new ArrayList<>();
+      while (itr.hasNext()) {
+        result.add((Namespace) itr.next());
+      }
+      return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+      logR.trace("Split gave {} messages", numberOfMessages);
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        logR.trace("Ignoring exception closing XMLEventReader", e);
+      }
+      input.close();
+    }
+  }
+}
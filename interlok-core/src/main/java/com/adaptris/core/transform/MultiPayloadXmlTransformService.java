@@ -54,7 +54,7 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 @XStreamAlias("multi-payload-xml-transform-service")
 @AdapterComponent
 @ComponentProfile(summary = "Execute an XSLT transform", tag = "service,transform,xml,multi,payload,multi-payload")
-@DisplayOrder(order = { "sourcePayloadId", "targetPayloadId", "url", "outputMessageEncoding", "cacheTransforms", "allowOverride", "metadataKey", "transformParameter", "xmlTransformerFactory" })
+@DisplayOrder(order = { "sourcePayloadId", "targetPayloadId", "url", "outputMessageEncoding", "cacheTransforms", "maxCachedTransforms", "checkModifiedTransforms", "allowOverride", "metadataKey", "transformParameter", "xmlTransformerFactory" })
 public class MultiPayloadXmlTransformService extends XmlTransformService {
 
   @NotNull
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.transform;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adaptris.core.fs.FsHelper;
+import com.adaptris.util.text.xml.XmlTransformerFactory;
+
+/**
+ * Thread-safe cache of compiled {@link Templates} keyed by the URL of the transform.
+ * <p>
+ * A {@link Transformer} is not thread-safe, but {@link Templates} are; so this caches the compiled {@link Templates} and hands
+ * out a {@link Transformer} for each thread that uses it. The cache is bounded in size with the least recently used entry being
+ * evicted when it is full. If the URL refers to a local file, then the cache can optionally check the modification time of the
+ * file and recompile it when it has changed.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+public class TemplatesCache {
+
+  private static final Logger log = LoggerFactory.getLogger(TemplatesCache.class);
+
+  private final int maxEntries;
+  private final boolean checkModified;
+  private final Map<String, CachedTemplates> cache;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong compiles = new AtomicLong();
+  private final AtomicLong compileTimeNanos = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries the maximum number of compiled transforms to keep, &lt; 1 means unbounded.
+   * @param checkModified whether or not to recompile transforms if the underlying file has changed.
+   */
+  public TemplatesCache(int maxEntries, boolean checkModified) {
+    this.maxEntries = maxEntries;
+    this.checkModified = checkModified;
+    this.cache = new LinkedHashMap<String, CachedTemplates>(16, 0.75f, true) {
+      private static final long serialVersionUID = 2020061501L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedTemplates> eldest) {
+        boolean evict = TemplatesCache.this.maxEntries > 0 && size() > TemplatesCache.this.maxEntries;
+        if (evict) {
+          evictions.incrementAndGet();
+          log.trace("Evicting [{}] from cache", eldest.getKey());
+        }
+        return evict;
+      }
+    };
+  }
+
+  /**
+   * Get a {@link Transformer} for the current thread, compiling the transform if required.
+   *
+   * @param url the url of the transform.
+   * @param factory the factory used to compile the transform.
+   * @return a transformer that may only be used by the current thread.
+   */
+  public Transformer newTransformer(String url, XmlTransformerFactory factory) throws Exception {
+    CachedTemplates entry = lookup(url);
+    if (entry == null) {
+      misses.incrementAndGet();
+      entry = compile(url, factory);
+      synchronized (cache) {
+        cache.put(url, entry);
+      }
+    } else {
+      hits.incrementAndGet();
+    }
+    return entry.transformer();
+  }
+
+  /**
+   * Return the {@link Transformer} previously handed out to the current thread for this URL.
+   *
+   * @param url the url of the transform.
+   * @return the transformer, or null if the transform is not cached or has not been used by the current thread.
+   */
+  public Transformer get(String url) {
+    synchronized (cache) {
+      CachedTemplates entry = cache.get(url);
+      return entry != null ? entry.transformers.get() : null;
+    }
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  public long hitCount() {
+    return hits.get();
+  }
+
+  public long missCount() {
+    return misses.get();
+  }
+
+  public long evictionCount() {
+    return evictions.get();
+  }
+
+  public long compileCount() {
+    return compiles.get();
+  }
+
+  public long totalCompileTimeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(compileTimeNanos.get());
+  }
+
+  public long averageCompileTimeMs() {
+    long count = compiles.get();
+    return count == 0 ? 0 : totalCompileTimeMs() / count;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[size=%d, hits=%d, misses=%d, evictions=%d, compiles=%d, avgCompileTimeMs=%d]",
+        getClass().getSimpleName(), size(), hitCount(), missCount(), evictionCount(), compileCount(), averageCompileTimeMs());
+  }
+
+  private CachedTemplates lookup(String url) {
+    synchronized (cache) {
+      CachedTemplates entry = cache.get(url);
+      if (entry != null && checkModified && entry.isModified()) {
+        log.trace("[{}] has been modified, recompiling", url);
+        cache.remove(url);
+        entry = null;
+      }
+      return entry;
+    }
+  }
+
+  private CachedTemplates compile(String url, XmlTransformerFactory factory) throws Exception {
+    File file = checkModified ? toFile(url) : null;
+    long lastModified = file != null ? file.lastModified() : 0;
+    long start = System.nanoTime();
+    Templates templates = factory.createTemplates(url);
+    compileTimeNanos.addAndGet(System.nanoTime() - start);
+    compiles.incrementAndGet();
+    return new CachedTemplates(templates, file, lastModified);
+  }
+
+  private static File toFile(String url) {
+    try {
+      File f = FsHelper.toFile(url);
+      return f.isFile() ? f : null;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static class CachedTemplates {
+    private final Templates templates;
+    private final File file;
+    private final long lastModified;
+    private final ThreadLocal<Transformer> transformers = new ThreadLocal<>();
+
+    CachedTemplates(Templates t, File file, long lastModified) {
+      this.templates = t;
+      this.file = file;
+      this.lastModified = lastModified;
+    }
+
+    boolean isModified() {
+      return file != null && file.lastModified() != lastModified;
+    }
+
+    Transformer transformer() throws Exception {
+      Transformer t = transformers.get();
+      if (t == null) {
+        t = templates.newTransformer();
+        transformers.set(t);
+      }
+      return t;
+    }
+  }
+}
@@ -20,7 +20,6 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
 import java.util.Map;
 
 import javax.validation.Valid;
@@ -41,6 +40,7 @@ import com.adaptris.core.CoreConstants;
 import com.adaptris.core.CoreException;
 import com.adaptris.core.ServiceException;
 import com.adaptris.core.ServiceImp;
+import com.adaptris.util.NumberUtils;
 import com.adaptris.util.text.xml.XmlTransformer;
 import com.adaptris.util.text.xml.XmlTransformerFactory;
 import com.adaptris.util.text.xml.XsltTransformerFactory;
@@ -64,8 +64,8 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 @XStreamAlias("xml-transform-service")
 @AdapterComponent
 @ComponentProfile(summary = "Execute an XSLT transform", tag = "service,transform,xml")
-@DisplayOrder(order = {"url", "outputMessageEncoding", "cacheTransforms", "allowOverride", "metadataKey", "transformParameter",
-    "xmlTransformerFactory"})
+@DisplayOrder(order = {"url", "outputMessageEncoding", "cacheTransforms", "maxCachedTransforms", "checkModifiedTransforms",
+    "allowOverride", "metadataKey", "transformParameter", "xmlTransformerFactory"})
 public class XmlTransformService extends ServiceImp {
 
   // marshalled
@@ -77,6 +77,12 @@ public class XmlTransformService extends ServiceImp {
   @InputFieldDefault(value = "true")
   private Boolean cacheTransforms;
   @AdvancedConfig
+  @InputFieldDefault(value = "64")
+  private Integer maxCachedTransforms;
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean checkModifiedTransforms;
+  @AdvancedConfig
   @InputFieldDefault(value = "false")
   private Boolean allowOverride;
 
@@ -89,7 +95,9 @@ public class XmlTransformService extends ServiceImp {
   @Valid
   private XmlTransformParameter transformParameter;
 
-  private transient HashMap<String, Transformer> transforms = null;
+  private static final int DEFAULT_MAX_CACHED_TRANSFORMS = 64;
+
+  private transient TemplatesCache transforms = null;
   // This is the override value which is set to true if url is null
   private transient Boolean overrideAllowOverride;
 
@@ -102,7 +110,6 @@ public class XmlTransformService extends ServiceImp {
   public XmlTransformService() {
     setMetadataKey(CoreConstants.TRANSFORM_OVERRIDE);
     xmlTransformerFactory = new XsltTransformerFactory();
-    this.setTransforms(new HashMap<String, Transformer>());
   }
 
   @Override
@@ -113,10 +120,15 @@ public class XmlTransformService extends ServiceImp {
     if (isEmpty(getUrl()) && isEmpty(getMetadataKey())) {
       throw new CoreException("metadata-key & url are both empty, cannot initialise");
     }
+    transforms = new TemplatesCache(maxCachedTransforms(), checkModifiedTransforms());
   }
 
   @Override
   protected void closeService() {
+    if (transforms != null) {
+      log.debug("{}", transforms);
+      transforms.clear();
+    }
   }
 
   /**
@@ -191,13 +203,13 @@ public class XmlTransformService extends ServiceImp {
     }
   }
 
+  /**
+   * Get a {@link Transformer} for the current thread from the cache of compiled transforms.
+   *
+   * @see TemplatesCache
+   */
   protected Transformer cacheAndGetTransformer(String urlToUse, XmlTransformerFactory xmlTransformerFactory) throws Exception {
-    if (this.getTransforms().containsKey(urlToUse)) return this.getTransforms().get(urlToUse);
-    else {
-      Transformer transformer = xmlTransformerFactory.createTransformer(urlToUse);
-      this.getTransforms().put(urlToUse, transformer);
-      return transformer;
-    }
+    return getTransforms().newTransformer(urlToUse, xmlTransformerFactory);
   }
 
   // properties...
@@ -282,6 +294,49 @@ public class XmlTransformService extends ServiceImp {
     return BooleanUtils.toBooleanDefaultIfNull(getCacheTransforms(), true);
   }
 
+  public Integer getMaxCachedTransforms() {
+    return maxCachedTransforms;
+  }
+
+  /**
+   * Set the maximum number of compiled XSLTs to cache.
+   * <p>
+   * Only relevant if {@link #setCacheTransforms(Boolean)} is true; when the cache is full the least recently used XSLT is
+   * discarded. Compiled XSLTs are shared between threads, so this is generally only relevant if you are using
+   * {@link #setAllowOverride(Boolean)} to select from a large number of XSLTs.
+   * </p>
+   *
+   * @param i the max number of XSLTs to cache, defaults to 64 if not specified; &lt; 1 means unbounded.
+   */
+  public void setMaxCachedTransforms(Integer i) {
+    maxCachedTransforms = i;
+  }
+
+  int maxCachedTransforms() {
+    return NumberUtils.toIntDefaultIfNull(getMaxCachedTransforms(), DEFAULT_MAX_CACHED_TRANSFORMS);
+  }
+
+  public Boolean getCheckModifiedTransforms() {
+    return checkModifiedTransforms;
+  }
+
+  /**
+   * Set whether cached XSLTs should be recompiled if they have been modified.
+   * <p>
+   * Only relevant if {@link #setCacheTransforms(Boolean)} is true, and the URL refers to a local file; if the modification time of
+   * the file has changed since it was compiled, then it will be recompiled.
+   * </p>
+   *
+   * @param b true to check the modification time of the XSLT, defaults to false if not specified.
+   */
+  public void setCheckModifiedTransforms(Boolean b) {
+    checkModifiedTransforms = b;
+  }
+
+  boolean checkModifiedTransforms() {
+    return BooleanUtils.toBooleanDefaultIfNull(getCheckModifiedTransforms(), false);
+  }
+
   /**
    * <p>
    * Returns true if a configured XSLT URL may be over-ridden by one stored against a metadata key.
@@ -356,11 +411,7 @@ public class XmlTransformService extends ServiceImp {
     return getTransformParameter() != null ? getTransformParameter() : new IgnoreMetadataParameter();
   }
 
-  HashMap<String, Transformer> getTransforms() {
+  TemplatesCache getTransforms() {
     return transforms;
   }
-
-  void setTransforms(HashMap<String, Transformer> transforms) {
-    this.transforms = transforms;
-  }
 }
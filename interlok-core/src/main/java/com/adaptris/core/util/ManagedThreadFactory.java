@@ -16,6 +16,7 @@
 
 package com.adaptris.core.util;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -38,7 +39,8 @@ import com.adaptris.util.TimeInterval;
  */
 public class ManagedThreadFactory implements ThreadFactory {
 
-  private static final Set<Thread> CREATED_THREADS = Collections.newSetFromMap(new WeakHashMap<Thread, Boolean>());
+  private static final Set<Thread> CREATED_THREADS =
+      Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Thread, Boolean>()));
 
   private final ThreadGroup myThreadGroup;
   private static final AtomicInteger factoryNumber = new AtomicInteger(1);
@@ -85,7 +87,11 @@ public class ManagedThreadFactory implements ThreadFactory {
 
   public static void interruptManagedThreads() {
     logger.trace("Interrupt Request Received");
-    for (Thread t : CREATED_THREADS) {
+    List<Thread> threads;
+    synchronized (CREATED_THREADS) {
+      threads = new ArrayList<>(CREATED_THREADS);
+    }
+    for (Thread t : threads) {
       if (t.isAlive() && !t.isInterrupted()) {
         // logger.trace("Interrupting " + t.getName());
         t.interrupt();
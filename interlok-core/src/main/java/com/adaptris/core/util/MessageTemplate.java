@@ -0,0 +1,299 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.math.NumberUtils;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.UnresolvedMetadataException;
+import com.adaptris.interlok.resolver.ExternalResolver;
+
+/**
+ * A compiled {@code %message{...}} expression.
+ * <p>
+ * The template is parsed once into a list of literal text and tokens; rendering it against a message is then a single pass with no
+ * regular expression matching. Since templates are usually static configuration (destinations, format strings, queries etc) compiled
+ * templates are cached (least recently used first out), which means that {@link AdaptrisMessage#resolve(String, boolean)} does not
+ * parse the same string every time.
+ * </p>
+ * <p>
+ * The syntax is the same as {@link AdaptrisMessage#resolve(String)}; {@code %message{%uniqueId}}, {@code %message{%size}} and
+ * {@code %message{%payload}} are the message unique-id, size and payload respectively, anything else is metadata (which may use
+ * {@code $$} indirection). If any resolved value (metadata, payload or unique-id) itself contains {@code %message{...}} expressions,
+ * then those are resolved as well. If any {@link ExternalResolver} can handle the template, then that is always applied (before the {@code %message{...}}
+ * expressions), since the result may depend on the message.
+ * </p>
+ * <p>
+ * If not in {@code dotAll} mode, then (as with {@link java.util.regex.Pattern}) the expressions in a template that contains line
+ * terminators are not resolved.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+public final class MessageTemplate {
+
+  /**
+   * {@value #SYSPROP_TEMPLATE_CACHE_SIZE} controls the number of compiled templates that are cached (defaults to 1024).
+   * <p>
+   * Once the cache is full, the least recently used template is discarded; set it to 0 to disable caching.
+   * </p>
+   */
+  public static final String SYSPROP_TEMPLATE_CACHE_SIZE = "interlok.message.template.cache.size";
+
+  private static final int DEFAULT_CACHE_SIZE = 1024;
+  private static final int cacheSize = NumberUtils.toInt(System.getProperty(SYSPROP_TEMPLATE_CACHE_SIZE), DEFAULT_CACHE_SIZE);
+
+  private static final TemplateCache NORMAL_CACHE = new TemplateCache(cacheSize);
+  private static final TemplateCache DOTALL_CACHE = new TemplateCache(cacheSize);
+
+  private static final String PREFIX = "%message{";
+  private static final String KEY_CHARS = "!$\"#&%'*+,-.:=";
+  // Stop values that refer to themselves (or each other) looping forever.
+  private static final int MAX_NESTING = 32;
+
+  private enum TokenType {
+    UniqueId("%uniqueId") {
+      @Override
+      String resolve(String key, AdaptrisMessage msg) {
+        return msg.getUniqueId();
+      }
+    },
+    Size("%size") {
+      @Override
+      String resolve(String key, AdaptrisMessage msg) {
+        return String.valueOf(msg.getSize());
+      }
+    },
+    Payload("%payload") {
+      @Override
+      String resolve(String key, AdaptrisMessage msg) {
+        return msg.getContent();
+      }
+    },
+    Metadata(null) {
+      @Override
+      String resolve(String key, AdaptrisMessage msg) {
+        return msg.getMetadataValue(key);
+      }
+    };
+
+    private final String magic;
+
+    TokenType(String s) {
+      magic = s;
+    }
+
+    abstract String resolve(String key, AdaptrisMessage msg);
+
+    static TokenType of(String key) {
+      for (TokenType t : values()) {
+        if (t.magic != null && t.magic.equalsIgnoreCase(key)) {
+          return t;
+        }
+      }
+      return Metadata;
+    }
+  }
+
+  private final String template;
+  private final boolean dotAll;
+  private final boolean external;
+  // literals.length == keys.length + 1
+  private final String[] literals;
+  private final String[] keys;
+  private final TokenType[] types;
+
+  private MessageTemplate(String template, boolean dotAll, boolean external) {
+    this.template = template;
+    this.dotAll = dotAll;
+    this.external = external;
+    List<String> lits = new ArrayList<>();
+    List<String> ks = new ArrayList<>();
+    if (dotAll || !hasLineTerminator(template)) {
+      parse(template, lits, ks);
+    } else {
+      lits.add(template);
+    }
+    literals = lits.toArray(new String[0]);
+    keys = ks.toArray(new String[0]);
+    types = new TokenType[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      types[i] = TokenType.of(keys[i]);
+    }
+  }
+
+  /**
+   * Compile a template, not in {@code dotAll} mode.
+   *
+   * @see #compile(String, boolean)
+   */
+  public static MessageTemplate compile(String template) {
+    return compile(template, false);
+  }
+
+  /**
+   * Compile a template, using a cached copy if available.
+   *
+   * @param template the template.
+   * @param dotAll whether templates containing line terminators can be resolved.
+   * @return the compiled template.
+   */
+  public static MessageTemplate compile(String template, boolean dotAll) {
+    Args.notNull(template, "template");
+    if (cacheSize < 1) {
+      return create(template, dotAll);
+    }
+    TemplateCache cache = dotAll ? DOTALL_CACHE : NORMAL_CACHE;
+    MessageTemplate result;
+    synchronized (cache) {
+      result = cache.get(template);
+    }
+    if (result == null) {
+      // Compile outside the lock; if another thread got there first, then use theirs.
+      MessageTemplate compiled = create(template, dotAll);
+      synchronized (cache) {
+        result = cache.putIfAbsent(template, compiled);
+      }
+      if (result == null) {
+        result = compiled;
+      }
+    }
+    return result;
+  }
+
+  private static MessageTemplate create(String template, boolean dotAll) {
+    return new MessageTemplate(template, dotAll, ExternalResolver.canHandle(template));
+  }
+
+  /**
+   * Render the template against the message.
+   *
+   * @param msg the message.
+   * @return the rendered string.
+   * @throws UnresolvedMetadataException if an expression could not be resolved.
+   */
+  public String render(AdaptrisMessage msg) {
+    if (external) {
+      // The external resolver may use the message, so its output can't be cached.
+      return new MessageTemplate(ExternalResolver.resolve(template, msg), dotAll, false).render(msg, 0);
+    }
+    return render(msg, 0);
+  }
+
+  /**
+   * @return true if there is anything to resolve; if false, then {@link #render(AdaptrisMessage)} will just return the template.
+   */
+  public boolean hasExpressions() {
+    return external || keys.length > 0;
+  }
+
+  public String template() {
+    return template;
+  }
+
+  @Override
+  public String toString() {
+    return template;
+  }
+
+  private String render(AdaptrisMessage msg, int depth) {
+    if (keys.length == 0) {
+      return template;
+    }
+    StringBuilder result = new StringBuilder(template.length() + 32);
+    for (int i = 0; i < keys.length; i++) {
+      result.append(literals[i]).append(resolve(i, msg, depth));
+    }
+    return result.append(literals[keys.length]).toString();
+  }
+
+  private String resolve(int index, AdaptrisMessage msg, int depth) {
+    String value = types[index].resolve(keys[index], msg);
+    if (value == null) {
+      throw new UnresolvedMetadataException("Could not resolve [" + keys[index] + "] as metadata/uniqueId/size/payload");
+    }
+    if (value.contains(PREFIX)) {
+      if (depth >= MAX_NESTING) {
+        throw new UnresolvedMetadataException("Could not resolve [" + keys[index] + "], too many nested expressions");
+      }
+      return new MessageTemplate(value, dotAll, false).render(msg, depth + 1);
+    }
+    return value;
+  }
+
+  private static void parse(String s, List<String> literals, List<String> keys) {
+    int literalStart = 0;
+    int from = 0;
+    int start;
+    while ((start = s.indexOf(PREFIX, from)) >= 0) {
+      int keyStart = start + PREFIX.length();
+      int keyEnd = keyStart;
+      while (keyEnd < s.length() && isKeyChar(s.charAt(keyEnd))) {
+        keyEnd++;
+      }
+      if (keyEnd > keyStart && keyEnd < s.length() && s.charAt(keyEnd) == '}') {
+        literals.add(s.substring(literalStart, start));
+        keys.add(s.substring(keyStart, keyEnd));
+        literalStart = from = keyEnd + 1;
+      } else {
+        from = start + 1;
+      }
+    }
+    literals.add(s.substring(literalStart));
+  }
+
+  private static boolean isKeyChar(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || KEY_CHARS.indexOf(c) >= 0;
+  }
+
+  // Without DOTALL, '.' doesn't match line terminators, and '$' will only match before a final line terminator.
+  private static boolean hasLineTerminator(String s) {
+    int end = s.length();
+    if (s.endsWith("\r\n")) {
+      end -= 2;
+    } else if (end > 0 && isLineTerminator(s.charAt(end - 1))) {
+      end--;
+    }
+    for (int i = 0; i < end; i++) {
+      if (isLineTerminator(s.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static class TemplateCache extends LinkedHashMap<String, MessageTemplate> {
+    private static final long serialVersionUID = 2020101801L;
+    private final int maxEntries;
+
+    TemplateCache(int maxEntries) {
+      super(16, 0.75f, true);
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, MessageTemplate> eldest) {
+      return size() > maxEntries;
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link java.util.concurrent.ExecutorService} that starts a new thread for each task.
+ * <p>
+ * This is intended for use with {@link VirtualThreadFactory}, where threads are cheap to create and should not be pooled.
+ * Concurrency is limited by a {@link Semaphore}; tasks that are submitted when the limit is reached still get their own thread,
+ * but that thread waits for a permit before running the task, so the caller is never blocked.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+public class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+  private final ThreadFactory threadFactory;
+  private final Semaphore permits;
+  private final Map<Thread, Task> running = new ConcurrentHashMap<>();
+  private final Object lock = new Object();
+  private volatile boolean shutdown = false;
+
+  /**
+   * Constructor.
+   *
+   * @param factory the thread factory
+   * @param maxConcurrency the maximum number of tasks that may execute concurrently, &lt; 1 means unlimited.
+   */
+  public ThreadPerTaskExecutor(ThreadFactory factory, int maxConcurrency) {
+    threadFactory = Args.notNull(factory, "threadFactory");
+    permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency, true) : null;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    Args.notNull(command, "command");
+    synchronized (lock) {
+      if (shutdown) {
+        throw new RejectedExecutionException("Executor has been shutdown");
+      }
+      Task task = new Task(command);
+      Thread t = threadFactory.newThread(task);
+      running.put(t, task);
+      t.start();
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    synchronized (lock) {
+      shutdown = true;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+    return new SubmittedRunnable<>(runnable, value);
+  }
+
+  /**
+   * Interrupt all running threads.
+   * <p>
+   * Tasks are returned as they were passed to {@link #execute(Runnable)} or {@link #submit(Runnable)}; tasks that were submitted
+   * as a {@link java.util.concurrent.Callable} are returned as the {@link java.util.concurrent.Future} that wraps them.
+   * </p>
+   *
+   * @return the tasks that had not yet started because they were waiting for a permit.
+   */
+  @Override
+  public List<Runnable> shutdownNow() {
+    List<Runnable> notStarted = new ArrayList<>();
+    shutdown();
+    // Claim all the waiting tasks before interrupting anything, otherwise a released permit might let one of them start.
+    for (Task task : running.values()) {
+      if (task.started.compareAndSet(false, true)) {
+        notStarted.add(task.command instanceof SubmittedRunnable ? ((SubmittedRunnable<?>) task.command).runnable : task.command);
+      }
+    }
+    for (Thread t : running.keySet()) {
+      t.interrupt();
+    }
+    return notStarted;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown && running.isEmpty();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (lock) {
+      while (!isTerminated()) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          return false;
+        }
+        lock.wait(remaining);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Return the number of threads that are currently alive; either running a task or waiting for a permit.
+   *
+   * @return the number of threads.
+   */
+  public int activeCount() {
+    return running.size();
+  }
+
+  // Keeps the original runnable so that it can be returned from shutdownNow().
+  private static class SubmittedRunnable<T> extends FutureTask<T> {
+    private final Runnable runnable;
+
+    SubmittedRunnable(Runnable r, T value) {
+      super(r, value);
+      runnable = r;
+    }
+  }
+
+  private class Task implements Runnable {
+    private final Runnable command;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    Task(Runnable r) {
+      command = r;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (permits != null) {
+          permits.acquire();
+        }
+        try {
+          if (started.compareAndSet(false, true)) {
+            command.run();
+          }
+        } finally {
+          if (permits != null) {
+            permits.release();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        synchronized (lock) {
+          running.remove(Thread.currentThread());
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+}
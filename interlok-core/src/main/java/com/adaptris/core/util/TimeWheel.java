@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hashed timing wheel for scheduling a large number of deadlines with a coarse resolution.
+ * <p>
+ * Scheduling and cancelling are both O(1); each call to {@link #advance(long)} only visits the buckets for the ticks that have
+ * elapsed since the last call. This is much cheaper than keeping a {@link java.util.concurrent.ScheduledFuture} for every item
+ * when there are many thousands of items waiting, at the cost of each deadline being rounded up to the next tick.
+ * </p>
+ * <p>
+ * The wheel does not own a thread; something else (typically a single scheduled task) is expected to call {@link #advance(long)}
+ * periodically with the current time, and then deal with the items that have expired.
+ * </p>
+ *
+ * @param <T> the type of item being scheduled, which should have a sensible {@code equals()} and {@code hashCode()}.
+ * @since 3.10.2
+ */
+public class TimeWheel<T> {
+
+  private final long tickMs;
+  private final long startTime;
+  private final List<Map<T, Long>> buckets;
+  // item -> the tick at which it is due
+  private final Map<T, Long> index = new HashMap<>();
+  // The next tick that has not been processed.
+  private long currentTick;
+
+  /**
+   * Constructor.
+   *
+   * @param tickMs the resolution of the wheel in milliseconds.
+   * @param wheelSize the number of buckets in the wheel.
+   * @param startTime the time (in milliseconds) that tick 0 represents.
+   */
+  public TimeWheel(long tickMs, int wheelSize, long startTime) {
+    if (tickMs <= 0 || wheelSize <= 0) {
+      throw new IllegalArgumentException("tickMs and wheelSize must be positive");
+    }
+    this.tickMs = tickMs;
+    this.startTime = startTime;
+    this.buckets = new ArrayList<>(wheelSize);
+    for (int i = 0; i < wheelSize; i++) {
+      buckets.add(new LinkedHashMap<T, Long>());
+    }
+  }
+
+  /**
+   * Schedule an item; if the item is already scheduled, then it is rescheduled.
+   *
+   * @param item the item.
+   * @param dueTime the time (in milliseconds) that the item is due; if in the past, then it will expire on the next call to
+   *          {@link #advance(long)}.
+   */
+  public synchronized void schedule(T item, long dueTime) {
+    cancel(item);
+    long tick = Math.max(toTick(dueTime), currentTick);
+    bucket(tick).put(item, tick);
+    index.put(item, tick);
+  }
+
+  /**
+   * Cancel a scheduled item.
+   *
+   * @param item the item.
+   * @return true if the item was scheduled.
+   */
+  public synchronized boolean cancel(T item) {
+    Long tick = index.remove(item);
+    if (tick != null) {
+      bucket(tick).remove(item);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Advance the wheel, removing all the items that have expired.
+   *
+   * @param now the current time in milliseconds.
+   * @return the items that have expired, in approximately the order they were due.
+   */
+  public synchronized List<T> advance(long now) {
+    List<T> expired = new ArrayList<>();
+    long target = (now - startTime) / tickMs;
+    if (target < currentTick) {
+      return expired;
+    }
+    // If we have fallen more than a full revolution behind, then every bucket needs to be visited once.
+    long first = Math.max(currentTick, target - buckets.size() + 1);
+    for (long tick = first; tick <= target; tick++) {
+      expire(bucket(tick), target, expired);
+    }
+    currentTick = target + 1;
+    return expired;
+  }
+
+  /**
+   * @return the number of items currently scheduled.
+   */
+  public synchronized int size() {
+    return index.size();
+  }
+
+  /**
+   * @return whether the item is currently scheduled.
+   */
+  public synchronized boolean contains(T item) {
+    return index.containsKey(item);
+  }
+
+  /**
+   * Remove all the scheduled items.
+   */
+  public synchronized void clear() {
+    for (Map<T, Long> bucket : buckets) {
+      bucket.clear();
+    }
+    index.clear();
+  }
+
+  public long tickMs() {
+    return tickMs;
+  }
+
+  private void expire(Map<T, Long> bucket, long target, List<T> expired) {
+    for (Iterator<Map.Entry<T, Long>> i = bucket.entrySet().iterator(); i.hasNext();) {
+      Map.Entry<T, Long> entry = i.next();
+      if (entry.getValue() <= target) {
+        expired.add(entry.getKey());
+        index.remove(entry.getKey());
+        i.remove();
+      }
+    }
+  }
+
+  private long toTick(long time) {
+    long delta = time - startTime;
+    // round up, so that nothing fires early.
+    return delta <= 0 ? 0 : (delta + tickMs - 1) / tickMs;
+  }
+
+  private Map<T, Long> bucket(long tick) {
+    return buckets.get((int) (tick % buckets.size()));
+  }
+}
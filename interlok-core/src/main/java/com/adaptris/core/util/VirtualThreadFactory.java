@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ThreadFactory} implementation that creates virtual threads if the runtime supports them.
+ * <p>
+ * Virtual threads are only available on Java 21+; since we compile against Java 8 they are created reflectively via
+ * {@code Thread.ofVirtual()}. If the runtime does not support virtual threads then this behaves exactly as
+ * {@link ManagedThreadFactory} and creates platform threads. Thread groups and priorities are ignored for virtual threads.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+public class VirtualThreadFactory extends ManagedThreadFactory {
+
+  private static final Logger logger = LoggerFactory.getLogger(VirtualThreadFactory.class);
+
+  private static final Method OF_VIRTUAL;
+  private static final Method BUILDER_NAME;
+  private static final Method BUILDER_UNSTARTED;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method unstarted = null;
+    try {
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name = builder.getMethod("name", String.class);
+      unstarted = builder.getMethod("unstarted", Runnable.class);
+      // On some JVMs (preview features disabled) ofVirtual() exists but throws.
+      unstarted.invoke(ofVirtual.invoke(null), (Runnable) () -> {
+      });
+    } catch (Throwable e) {
+      logger.trace("Virtual threads not supported by this runtime : {}", e.getMessage());
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    BUILDER_NAME = name;
+    BUILDER_UNSTARTED = unstarted;
+  }
+
+  public VirtualThreadFactory() {
+    this(VirtualThreadFactory.class.getSimpleName());
+  }
+
+  public VirtualThreadFactory(String prefix) {
+    super(prefix);
+  }
+
+  /**
+   * Whether or not the current runtime supports virtual threads.
+   *
+   * @return true if virtual threads can be created.
+   */
+  public static boolean isSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Create an {@link ExecutorService} that runs each task in its own (virtual if supported) thread.
+   *
+   * @param prefix the thread name prefix.
+   * @param maxConcurrency the maximum number of tasks that may execute concurrently, &lt; 1 means unlimited.
+   * @return an executor service.
+   * @see ThreadPerTaskExecutor
+   */
+  public static ExecutorService newExecutor(String prefix, int maxConcurrency) {
+    return new ThreadPerTaskExecutor(new VirtualThreadFactory(prefix), maxConcurrency);
+  }
+
+  @Override
+  protected Thread createThread(ThreadGroup group, Runnable r) {
+    if (isSupported()) {
+      try {
+        Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), createName());
+        // Not added to the managed threads; each one only lives for a single task, and the executor interrupts them on shutdown.
+        return (Thread) BUILDER_UNSTARTED.invoke(builder, r);
+      } catch (Exception e) {
+        logger.trace("Failed to create virtual thread, falling back to a platform thread", e);
+      }
+    }
+    return super.createThread(group, r);
+  }
+}
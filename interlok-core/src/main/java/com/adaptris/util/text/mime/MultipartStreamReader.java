@@ -0,0 +1,306 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.util.text.mime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.mail.MessagingException;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.MimeUtility;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reads a mime multipart from a stream one part at a time.
+ * <p>
+ * Unlike {@link BodyPartIterator}, which reads the entire multipart into memory before parsing it, this reads directly from the
+ * underlying stream; each part's content is only available until {@link #next()} is called again. This allows arbitrarily large
+ * parts to be copied elsewhere (e.g. into a file backed message) without ever being held in memory.
+ * </p>
+ * <p>
+ * The stream is expected to start with the multipart's headers (e.g. as written by {@link MultiPartOutput}), which must include a
+ * {@code Content-Type} with a boundary.
+ * </p>
+ *
+ * @since 3.10.2
+ */
+public class MultipartStreamReader implements Closeable, MimeConstants {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream source;
+  private final InternetHeaders headers;
+  private final byte[] delimiter;
+  private byte[] buf = new byte[BUFFER_SIZE];
+  private int pos;
+  private int limit;
+  private boolean eof;
+
+  private boolean started;
+  private boolean finished;
+  private Part current;
+
+  /**
+   * Constructor.
+   *
+   * @param in the input stream; the multipart headers are read immediately.
+   * @throws MessagingException if the headers do not describe a multipart.
+   */
+  public MultipartStreamReader(InputStream in) throws IOException, MessagingException {
+    source = in;
+    headers = new InternetHeaders(new RawInputStream());
+    String boundary = new ContentType(StringUtils.defaultString(headers.getHeader(HEADER_CONTENT_TYPE, null)))
+        .getParameter("boundary");
+    if (StringUtils.isEmpty(boundary)) {
+      throw new MessagingException("No multipart boundary in Content-Type");
+    }
+    delimiter = ("--" + boundary).getBytes(StandardCharsets.US_ASCII);
+    // Must be able to hold a line break + the delimiter as lookahead
+    if (buf.length < delimiter.length * 4) {
+      buf = Arrays.copyOf(buf, delimiter.length * 4);
+    }
+  }
+
+  /**
+   * @return the multipart headers.
+   */
+  public InternetHeaders getHeaders() {
+    return headers;
+  }
+
+  /**
+   * @return the value of the Message-ID header, or the empty string.
+   */
+  public String getMessageID() {
+    return StringUtils.defaultString(headers.getHeader(HEADER_MESSAGE_ID, null));
+  }
+
+  /**
+   * Move to the next part, skipping any content of the current part that has not been read.
+   *
+   * @return the next part, or null if there are no more parts.
+   */
+  public Part next() throws IOException, MessagingException {
+    if (current != null) {
+      current.skip();
+      current = null;
+    }
+    if (finished) {
+      return null;
+    }
+    if (!started) {
+      started = true;
+      skipPreamble();
+    } else {
+      // Whatever follows the delimiter on the same line.
+      String rest = StringUtils.defaultString(readLine());
+      if (rest.startsWith("--")) {
+        finished = true;
+      }
+    }
+    if (finished) {
+      return null;
+    }
+    current = new Part(new InternetHeaders(new RawInputStream()));
+    return current;
+  }
+
+  @Override
+  public void close() throws IOException {
+    source.close();
+  }
+
+  private void skipPreamble() throws IOException {
+    String boundaryLine = new String(delimiter, StandardCharsets.US_ASCII);
+    String line;
+    while ((line = readLine()) != null) {
+      line = StringUtils.stripEnd(line, null);
+      if (line.equals(boundaryLine)) {
+        return;
+      }
+      if (line.equals(boundaryLine + "--")) {
+        break;
+      }
+    }
+    finished = true;
+  }
+
+  // Read a line, without the line terminator; null if at the end of the stream.
+  private String readLine() throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    while (true) {
+      if (fill(1) == 0) {
+        return line.size() > 0 ? line.toString("ISO-8859-1") : null;
+      }
+      byte b = buf[pos++];
+      if (b == '\n') {
+        break;
+      }
+      line.write(b);
+    }
+    String result = line.toString("ISO-8859-1");
+    return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+  }
+
+  // Make sure that there are at least 'required' bytes in the buffer (unless the stream is at an end).
+  private int fill(int required) throws IOException {
+    if (limit - pos >= required || eof) {
+      return limit - pos;
+    }
+    if (pos > 0) {
+      System.arraycopy(buf, pos, buf, 0, limit - pos);
+      limit -= pos;
+      pos = 0;
+    }
+    while (limit < required) {
+      int read = source.read(buf, limit, buf.length - limit);
+      if (read < 0) {
+        eof = true;
+        break;
+      }
+      limit += read;
+    }
+    return limit - pos;
+  }
+
+  // If there's a line break + delimiter at pos, then return its length; -1 otherwise.
+  private int delimiterAt() {
+    int i = pos;
+    if (buf[i] == '\r') {
+      if (i + 1 >= limit || buf[i + 1] != '\n') {
+        return -1;
+      }
+      i++;
+    }
+    i++;
+    if (limit - i < delimiter.length) {
+      return -1;
+    }
+    for (int j = 0; j < delimiter.length; j++) {
+      if (buf[i + j] != delimiter[j]) {
+        return -1;
+      }
+    }
+    return i + delimiter.length - pos;
+  }
+
+  private class RawInputStream extends InputStream {
+    @Override
+    public int read() throws IOException {
+      if (fill(1) == 0) {
+        return -1;
+      }
+      return buf[pos++] & 0xFF;
+    }
+  }
+
+  /**
+   * A single part within the multipart.
+   */
+  public class Part {
+    private final InternetHeaders partHeaders;
+    private final InputStream content = new PartInputStream();
+    private boolean done;
+
+    private Part(InternetHeaders hdrs) {
+      partHeaders = hdrs;
+    }
+
+    /**
+     * @return the part headers.
+     */
+    public InternetHeaders getHeaders() {
+      return partHeaders;
+    }
+
+    /**
+     * @return the Content-Id of the part, or null if there is none.
+     */
+    public String getContentID() {
+      return partHeaders.getHeader(HEADER_CONTENT_ID, null);
+    }
+
+    /**
+     * Get the content of the part, decoded according to the Content-Transfer-Encoding header.
+     * <p>
+     * Closing the stream has no effect, the remainder of the part is skipped when {@link MultipartStreamReader#next()} is
+     * called.
+     * </p>
+     */
+    public InputStream getInputStream() throws MessagingException {
+      String encoding = partHeaders.getHeader(HEADER_CONTENT_ENCODING, null);
+      return StringUtils.isBlank(encoding) ? content : MimeUtility.decode(content, encoding.trim());
+    }
+
+    private void skip() throws IOException {
+      byte[] discard = new byte[8192];
+      while (content.read(discard) >= 0) {
+      }
+    }
+
+    private class PartInputStream extends InputStream {
+
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (done) {
+          return -1;
+        }
+        int count = 0;
+        while (count < len) {
+          if (fill(delimiter.length + 2) == 0) {
+            throw new EOFException("Unexpected end of multipart, no closing boundary");
+          }
+          byte c = buf[pos];
+          if (c == '\r' || c == '\n') {
+            int length = delimiterAt();
+            if (length > 0) {
+              pos += length;
+              done = true;
+              break;
+            }
+            b[off + count++] = c;
+            pos++;
+          } else {
+            int end = pos;
+            int max = Math.min(limit, pos + len - count);
+            while (end < max && buf[end] != '\r' && buf[end] != '\n') {
+              end++;
+            }
+            System.arraycopy(buf, pos, b, off + count, end - pos);
+            count += end - pos;
+            pos = end;
+          }
+        }
+        return count == 0 && done ? -1 : count;
+      }
+
+      @Override
+      public void close() {
+      }
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.adaptris.util.text.xml;
 
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.stream.StreamSource;
 
@@ -48,6 +49,11 @@ public class StxTransformerFactory extends XmlTransformerFactoryImpl {
     return configure( new TransformerFactoryImpl()).newTransformer(xslStream);
   }
 
+  @Override
+  public Templates createTemplates(String xsl) throws Exception {
+    return configure(new TransformerFactoryImpl()).newTemplates(new StreamSource(xsl));
+  }
+
   @Override
   public Transformer createTransformer(String url, EntityResolver entityResolver) throws Exception {
     return this.createTransformer(url);
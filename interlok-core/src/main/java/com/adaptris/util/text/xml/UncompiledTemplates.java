@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.util.text.xml;
+
+import java.util.Properties;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+
+/**
+ * {@link Templates} implementation that creates a brand new {@link Transformer} from the {@link XmlTransformerFactory} every
+ * time.
+ *
+ * @see XmlTransformerFactory#createTemplates(String)
+ */
+class UncompiledTemplates implements Templates {
+
+  private final XmlTransformerFactory factory;
+  private final String url;
+
+  UncompiledTemplates(XmlTransformerFactory factory, String url) {
+    this.factory = factory;
+    this.url = url;
+  }
+
+  @Override
+  public Transformer newTransformer() throws TransformerConfigurationException {
+    try {
+      return factory.createTransformer(url);
+    } catch (TransformerConfigurationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new TransformerConfigurationException(e);
+    }
+  }
+
+  @Override
+  public Properties getOutputProperties() {
+    try {
+      return newTransformer().getOutputProperties();
+    } catch (TransformerConfigurationException e) {
+      return new Properties();
+    }
+  }
+}
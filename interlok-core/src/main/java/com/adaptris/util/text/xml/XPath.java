@@ -19,12 +19,19 @@ package com.adaptris.util.text.xml;
 import static org.apache.commons.lang3.BooleanUtils.toBooleanDefaultIfNull;
 import static org.apache.commons.lang3.BooleanUtils.toBooleanObject;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
+import org.apache.commons.lang3.math.NumberUtils;
+
 import org.apache.commons.lang3.BooleanUtils;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -63,6 +70,28 @@ public class XPath {
   private static final boolean useSaxonXpath = toBooleanDefaultIfNull(
       toBooleanObject(System.getProperty(SYSPROP_USE_SAXON_XPATH, "true")), true);
 
+  /**
+   * {@value #SYSPROP_XPATH_CACHE_SIZE} controls the number of compiled XPath expressions that are cached per thread (defaults
+   * to 256).
+   * <p>
+   * Compiling an XPath expression (especially with Saxon) is often more expensive than evaluating it; so compiled expressions are
+   * cached, keyed against the expression, the {@link NamespaceContext} and the type of {@link XPathFactory}. Since
+   * {@link XPathExpression} is not thread-safe, each thread has its own cache, the least recently used expression being discarded
+   * when it is full. Set it to 0 to disable caching.
+   * </p>
+   */
+  public static final String SYSPROP_XPATH_CACHE_SIZE = "interlok.xpath.cache.size";
+
+  private static final int DEFAULT_XPATH_CACHE_SIZE = 256;
+
+  private static final int xpathCacheSize =
+      NumberUtils.toInt(System.getProperty(SYSPROP_XPATH_CACHE_SIZE), DEFAULT_XPATH_CACHE_SIZE);
+
+  private static final ThreadLocal<Map<ExpressionKey, XPathExpression>> EXPRESSION_CACHE =
+      ThreadLocal.withInitial(() -> new ExpressionCache(xpathCacheSize));
+
+  private static final String DEFAULT_FACTORY_KEY = "default";
+
   private static final String[] SAXON_XPATH_FACTORIES =
   {
       // Narrow down in terms of license... enterpise, then pro, then HE.
@@ -71,10 +100,12 @@ public class XPath {
   };
 
   private transient XPathFactory xpathFactory;
+  private transient String factoryKey;
   private transient javax.xml.xpath.XPath xpathToUse;
   
   public XPath() {
-    xpathFactory = newXPathFactory();
+    // The factory is only created if we need to compile an expression.
+    factoryKey = DEFAULT_FACTORY_KEY;
   }
 
   public XPath(NamespaceContext ctx) {
@@ -86,10 +117,14 @@ public class XPath {
     this();
     context = ctx;
     xpathFactory = Args.notNull(factory, "xpathFactory");
+    factoryKey = factory.getClass().getName();
   }
 
   private javax.xml.xpath.XPath createXpath() {
     if (xpathToUse == null) {
+      if (xpathFactory == null) {
+        xpathFactory = newXPathFactory();
+      }
       xpathToUse = xpathFactory.newXPath();
       if (context != null) {
         xpathToUse.setNamespaceContext(context);
@@ -98,6 +133,20 @@ public class XPath {
     return xpathToUse;
   }
 
+  private XPathExpression compile(String xpath) throws XPathExpressionException {
+    if (xpathCacheSize < 1) {
+      return createXpath().compile(xpath);
+    }
+    Map<ExpressionKey, XPathExpression> cache = EXPRESSION_CACHE.get();
+    ExpressionKey key = new ExpressionKey(factoryKey, context, xpath);
+    XPathExpression result = cache.get(key);
+    if (result == null) {
+      result = createXpath().compile(xpath);
+      cache.put(key, result);
+    }
+    return result;
+  }
+
   /**
    * returns the string value contained in an element returned by an XPath
    *
@@ -108,7 +157,7 @@ public class XPath {
    */
   public String selectSingleTextItem(Node context, String xpath)
       throws XPathExpressionException {
-    return (String) createXpath().evaluate(xpath, context, XPathConstants.STRING);
+    return (String) compile(xpath).evaluate(context, XPathConstants.STRING);
   }
 
   /**
@@ -156,7 +205,7 @@ public class XPath {
    */
   public NodeList selectNodeList(Node context, String xpath)
       throws XPathExpressionException {
-    return (NodeList) createXpath().evaluate(xpath, context, XPathConstants.NODESET);
+    return (NodeList) compile(xpath).evaluate(context, XPathConstants.NODESET);
   }
 
   /**
@@ -169,7 +218,7 @@ public class XPath {
    */
   public Node selectSingleNode(Node context, String xpath)
       throws XPathExpressionException {
-    return (Node) createXpath().evaluate(xpath, context, XPathConstants.NODE);
+    return (Node) compile(xpath).evaluate(context, XPathConstants.NODE);
   }
 
   /**
@@ -296,4 +345,59 @@ public class XPath {
     return XPathFactory.newInstance();
   }
 
+  /**
+   * Discard all the compiled expressions cached by the current thread.
+   */
+  public static void clearExpressionCache() {
+    EXPRESSION_CACHE.remove();
+  }
+
+  static int expressionCacheSize() {
+    return EXPRESSION_CACHE.get().size();
+  }
+
+  private static class ExpressionCache extends LinkedHashMap<ExpressionKey, XPathExpression> {
+    private static final long serialVersionUID = 2020061601L;
+    private final int maxEntries;
+
+    ExpressionCache(int maxEntries) {
+      super(16, 0.75f, true);
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ExpressionKey, XPathExpression> eldest) {
+      return size() > maxEntries;
+    }
+  }
+
+  private static class ExpressionKey {
+    private final String factoryKey;
+    private final NamespaceContext namespaceContext;
+    private final String expression;
+
+    ExpressionKey(String factoryKey, NamespaceContext ctx, String expression) {
+      this.factoryKey = factoryKey;
+      this.namespaceContext = ctx;
+      this.expression = expression;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof ExpressionKey)) {
+        return false;
+      }
+      ExpressionKey other = (ExpressionKey) o;
+      return expression.equals(other.expression) && factoryKey.equals(other.factoryKey)
+          && Objects.equals(namespaceContext, other.namespaceContext);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(factoryKey, namespaceContext, expression);
+    }
+  }
 }
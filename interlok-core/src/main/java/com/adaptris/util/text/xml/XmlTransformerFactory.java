@@ -16,6 +16,7 @@
 
 package com.adaptris.util.text.xml;
 
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 
 import org.xml.sax.EntityResolver;
@@ -25,6 +26,22 @@ public interface XmlTransformerFactory {
   Transformer createTransformer(String transformUrl) throws Exception;
   
   Transformer createTransformer(String transformUrl, EntityResolver entityResolver) throws Exception;
+
+  /**
+   * Create a compiled representation of the transform that can be safely shared between threads.
+   * <p>
+   * The default implementation does not compile anything, each call to {@link Templates#newTransformer()} simply delegates to
+   * {@link #createTransformer(String)}; implementations should override this if their underlying transformer factory supports
+   * {@link javax.xml.transform.TransformerFactory#newTemplates(javax.xml.transform.Source)}.
+   * </p>
+   *
+   * @param transformUrl the url of the transform.
+   * @return a {@link Templates} instance.
+   * @since 3.10.2
+   */
+  default Templates createTemplates(String transformUrl) throws Exception {
+    return new UncompiledTemplates(this, transformUrl);
+  }
   
   XmlTransformer configure(XmlTransformer xmlTransformer) throws Exception;
 }
@@ -18,6 +18,7 @@ package com.adaptris.util.text.xml;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -73,6 +74,13 @@ public class XsltTransformerFactory extends XmlTransformerFactoryImpl {
     return configure(newInstance()).newTransformer(new DOMSource(xmlDoc, url));
   }
 
+  @Override
+  public Templates createTemplates(String url) throws Exception {
+    DocumentBuilder docBuilder = documentFactoryBuilder().newDocumentBuilder(DocumentBuilderFactory.newInstance());
+    Document xmlDoc = docBuilder.parse(new InputSource(url));
+    return configure(newInstance()).newTemplates(new DOMSource(xmlDoc, url));
+  }
+
   /**
    * @return the transformerFactoryImpl
    */
@@ -41,6 +41,7 @@ import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
@@ -387,6 +388,36 @@ public abstract class AdaptrisMessageCase {
     assertEquals(event1.getMleMarkers().size(), event2.getMleMarkers().size());
   }
 
+  @Test
+  public void testCloneAdaptrisMessage_LifecycleIdentity() throws Exception {
+    AdaptrisMessage msg1 = createMessage();
+    msg1.addEvent(null, true);
+    AdaptrisMessage msg2 = (AdaptrisMessage) msg1.clone();
+    msg2.addEvent(new StandaloneProducer(), true);
+    assertEquals(msg1.getMessageLifecycleEvent().getUniqueId(), msg2.getMessageLifecycleEvent().getUniqueId());
+    assertEquals(1, msg1.getMessageLifecycleEvent().getMleMarkers().size());
+    assertEquals(2, msg2.getMessageLifecycleEvent().getMleMarkers().size());
+    assertEquals("Unknown Event", msg2.getMessageLifecycleEvent().getMleMarkers().get(0).getName());
+    assertEquals("2", msg2.getMetadataValue(CoreConstants.MLE_SEQUENCE_KEY));
+    assertEquals("1", msg1.getMetadataValue(CoreConstants.MLE_SEQUENCE_KEY));
+    // The marker recorded before the clone is the same marker in both.
+    assertEquals(msg1.getMessageLifecycleEvent().getMleMarkers().get(0).getUniqueId(),
+        msg2.getMessageLifecycleEvent().getMleMarkers().get(0).getUniqueId());
+    assertNotEquals(msg2.getMessageLifecycleEvent().getMleMarkers().get(0).getUniqueId(),
+        msg2.getMessageLifecycleEvent().getMleMarkers().get(1).getUniqueId());
+  }
+
+  @Test
+  public void testCopyMleMarkers() throws Exception {
+    AdaptrisMessage msg1 = createMessage();
+    msg1.addEvent(new StandaloneProducer(), true);
+    AdaptrisMessage msg2 = createMessage();
+    AdaptrisMessageImp.copyMleMarkers(msg1, msg2);
+    assertEquals(1, msg2.getMessageLifecycleEvent().getMleMarkers().size());
+    assertEquals(msg1.getMessageLifecycleEvent().getMleMarkers().get(0).getUniqueId(),
+        msg2.getMessageLifecycleEvent().getMleMarkers().get(0).getUniqueId());
+  }
+
   @Test
   // This is Interlok-2129
   public void testCloneMessage_CheckMetadata() throws Exception {
@@ -18,6 +18,7 @@ package com.adaptris.core;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -228,6 +229,38 @@ public abstract class AdaptrisMessageFactoryImplCase {
         dest.getMessageLifecycleEvent().getMleMarkers().size());
   }
 
+  @Test
+  public void testNewBranch() throws Exception {
+    AdaptrisMessage parent = getMessageFactory().newMessage(TEST_PAYLOAD, "UTF-8");
+    parent.addMetadata("key1", "val1");
+    parent.addObjectHeader("key1", "val1");
+    parent.addEvent(new NullService(), true);
+    AdaptrisMessage branch1 = getMessageFactory().newBranch(parent);
+    AdaptrisMessage branch2 = getMessageFactory().newBranch(parent);
+    assertNotEquals(parent.getUniqueId(), branch1.getUniqueId());
+    assertEquals(TEST_PAYLOAD, branch1.getContent());
+    assertEquals("UTF-8", branch1.getContentEncoding());
+    assertEquals("val1", branch1.getMetadataValue("key1"));
+    assertEquals(0, branch1.getObjectHeaders().size());
+    assertEquals(0, branch1.getMessageLifecycleEvent().getMleMarkers().size());
+
+    branch1.setContent("branch1", "UTF-8");
+    branch1.addMetadata("key1", "branch1");
+    try (java.io.Writer w = branch2.getWriter()) {
+      w.write("branch2");
+    }
+    branch2.removeMessageHeader("key1");
+    parent.addMetadata("key2", "val2");
+    assertEquals(TEST_PAYLOAD, parent.getContent());
+    assertEquals("val1", parent.getMetadataValue("key1"));
+    assertEquals("branch1", branch1.getContent());
+    assertEquals("branch1", branch1.getMetadataValue("key1"));
+    assertEquals("branch2", branch2.getContent());
+    assertFalse(branch2.headersContainsKey("key1"));
+    assertFalse(branch1.headersContainsKey("key2"));
+    assertFalse(branch2.headersContainsKey("key2"));
+  }
+
   @Test
   public void testCreate() {
     AdaptrisMessage msg = getMessageFactory().newMessage();
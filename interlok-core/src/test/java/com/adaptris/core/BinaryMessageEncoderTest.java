@@ -0,0 +1,263 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import com.adaptris.core.lms.FileBackedMessage;
+import com.adaptris.core.lms.FileBackedMessageFactory;
+
+public class BinaryMessageEncoderTest {
+
+  private static final String METADATA_VALUE = "value";
+  private static final String METADATA_KEY = "key";
+  private static final String STANDARD_PAYLOAD = "Pack My Box with a dozen Liquor jugs";
+
+  private BinaryMessageEncoder encoder;
+
+  @Before
+  public void setUp() throws Exception {
+    encoder = new BinaryMessageEncoder();
+    encoder.registerMessageFactory(new DefaultMessageFactory());
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD, "UTF-8");
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    msg.addMetadata("é中", "é中\r\n=");
+    AdaptrisMessage result = roundTrip(encoder, msg);
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals("é中\r\n=", result.getMetadataValue("é中"));
+    assertEquals(2, result.getMetadata().size());
+    assertEquals("UTF-8", result.getContentEncoding());
+    assertEquals(STANDARD_PAYLOAD, result.getContent());
+  }
+
+  @Test
+  public void testRoundTrip_NoContentEncoding() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    assertNull(roundTrip(encoder, msg).getContentEncoding());
+  }
+
+  @Test
+  public void testRoundTrip_EmptyPayload() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    msg.addMetadata(METADATA_KEY, "");
+    AdaptrisMessage result = roundTrip(encoder, msg);
+    assertEquals("", result.getMetadataValue(METADATA_KEY));
+    assertEquals(0, result.getSize());
+  }
+
+  @Test
+  public void testRoundTrip_BinaryPayload() throws Exception {
+    byte[] bytes = new byte[256 * 1024];
+    new Random().nextBytes(bytes);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(bytes);
+    assertTrue(MessageDigest.isEqual(bytes, roundTrip(encoder, msg).getPayload()));
+  }
+
+  @Test
+  public void testRoundTrip_RepeatedStrings() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    for (int i = 0; i < 200; i++) {
+      msg.addMetadata("key" + i, i % 2 == 0 ? METADATA_VALUE : "key" + i);
+    }
+    AdaptrisMessage result = roundTrip(encoder, msg);
+    assertEquals(msg.getMetadata(), result.getMetadata());
+    MetadataElement first = result.getMetadata().stream().filter(e -> e.getKey().equals("key0")).findFirst().get();
+    MetadataElement second = result.getMetadata().stream().filter(e -> e.getKey().equals("key2")).findFirst().get();
+    assertSame(first.getValue(), second.getValue());
+  }
+
+  @Test
+  public void testRoundTrip_PreserveUniqueId() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    encoder.setRetainUniqueId(true);
+    assertEquals(msg.getUniqueId(), roundTrip(encoder, msg).getUniqueId());
+    encoder.setRetainUniqueId(false);
+    assertFalse(msg.getUniqueId().equals(roundTrip(encoder, msg).getUniqueId()));
+  }
+
+  @Test
+  public void testRoundTrip_MleMarkers() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    msg.addEvent(new NullService(), true);
+    msg.addEvent(new NullService(), false);
+    MleMarker confirmation = new MleMarker("confirmation", true, 99, "id");
+    confirmation.setIsConfirmation(true);
+    confirmation.setIsTrackingEndpoint(true);
+    confirmation.setConfirmationId("confirmationId");
+    msg.getMessageLifecycleEvent().addMleMarker(confirmation);
+
+    assertEquals(0, roundTrip(encoder, msg).getMessageLifecycleEvent().getMleMarkers().size());
+
+    encoder.setIncludeMleMarkers(true);
+    AdaptrisMessage result = roundTrip(encoder, msg);
+    List<MleMarker> expected = msg.getMessageLifecycleEvent().getMleMarkers();
+    List<MleMarker> markers = result.getMessageLifecycleEvent().getMleMarkers();
+    assertEquals(3, markers.size());
+    for (int i = 0; i < markers.size(); i++) {
+      MleMarker e = expected.get(i);
+      MleMarker m = markers.get(i);
+      assertEquals(e, m);
+      assertEquals(e.getName(), m.getName());
+      assertEquals(e.getQualifier(), m.getQualifier());
+      assertEquals(e.getWasSuccessful(), m.getWasSuccessful());
+      assertEquals(e.getIsConfirmation(), m.getIsConfirmation());
+      assertEquals(e.getIsTrackingEndpoint(), m.getIsTrackingEndpoint());
+      assertEquals(e.getConfirmationId(), m.getConfirmationId());
+      assertEquals(e.getCreationTime(), m.getCreationTime());
+    }
+    // The MLE sequence number is just metadata, so it carries on from where it left off.
+    assertEquals(msg.getMetadataValue(CoreConstants.MLE_SEQUENCE_KEY), result.getMetadataValue(CoreConstants.MLE_SEQUENCE_KEY));
+  }
+
+  @Test
+  public void testRoundTrip_FileBackedMessage() throws Exception {
+    FileBackedMessageFactory factory = new FileBackedMessageFactory();
+    encoder.registerMessageFactory(factory);
+    AdaptrisMessage msg = factory.newMessage(STANDARD_PAYLOAD);
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    AdaptrisMessage result = roundTrip(encoder, msg);
+    assertTrue(result instanceof FileBackedMessage);
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD, result.getContent());
+  }
+
+  @Test
+  public void testDecode_MultipleMessages() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < 3; i++) {
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD + i);
+      msg.addMetadata(METADATA_KEY, METADATA_VALUE + i);
+      encoder.writeMessage(msg, out);
+    }
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+    for (int i = 0; i < 3; i++) {
+      AdaptrisMessage result = encoder.readMessage(in);
+      assertEquals(METADATA_VALUE + i, result.getMetadataValue(METADATA_KEY));
+      assertEquals(STANDARD_PAYLOAD + i, result.getContent());
+    }
+    assertEquals(0, in.available());
+  }
+
+  @Test
+  public void testDecode_IgnoresTrailingHeaderFields() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    ByteBuffer encoded = ByteBuffer.wrap(encode(encoder, msg));
+    int headerSize = encoded.getInt(5);
+    byte[] extra = "some future field".getBytes();
+    ByteBuffer modified = ByteBuffer.allocate(encoded.capacity() + extra.length);
+    modified.put(encoded.array(), 0, 5).putInt(headerSize + extra.length);
+    modified.put(encoded.array(), 9, headerSize).put(extra);
+    modified.put(encoded.array(), 9 + headerSize, encoded.capacity() - 9 - headerSize);
+    AdaptrisMessage result = encoder.readMessage(new ByteArrayInputStream(modified.array()));
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD, result.getContent());
+  }
+
+  @Test
+  public void testDecode_BadMagic() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    try {
+      encoder.readMessage(new ByteArrayInputStream(msg.encode(new MimeEncoder())));
+      fail();
+    } catch (CoreException expected) {
+    }
+  }
+
+  @Test
+  public void testDecode_UnsupportedVersion() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    byte[] bytes = encode(encoder, msg);
+    bytes[4] = (byte) (BinaryMessageEncoder.VERSION + 1);
+    try {
+      encoder.readMessage(new ByteArrayInputStream(bytes));
+      fail();
+    } catch (CoreException expected) {
+    }
+  }
+
+  @Test
+  public void testDecode_CorruptHeader() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    byte[] bytes = encode(encoder, msg);
+    // Make the length of the unique-id longer than the header.
+    bytes[9] = (byte) 0xFE;
+    bytes[10] = (byte) 0x7F;
+    try {
+      encoder.readMessage(new ByteArrayInputStream(bytes));
+      fail();
+    } catch (CoreException expected) {
+    }
+  }
+
+  @Test
+  public void testDecode_Truncated() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    byte[] bytes = encode(encoder, msg);
+    try {
+      encoder.readMessage(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+      fail();
+    } catch (CoreException expected) {
+    }
+    try {
+      encoder.readMessage(new ByteArrayInputStream(bytes, 0, 20));
+      fail();
+    } catch (CoreException expected) {
+    }
+  }
+
+  @Test
+  public void testEncodeDecode_WrongType() throws Exception {
+    try {
+      encoder.writeMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(), new StringWriter());
+      fail();
+    } catch (CoreException expected) {
+    }
+    try {
+      encoder.readMessage(new StringWriter());
+      fail();
+    } catch (CoreException expected) {
+    }
+  }
+
+  private static byte[] encode(AdaptrisMessageEncoder writer, AdaptrisMessage msg) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.writeMessage(msg, out);
+    return out.toByteArray();
+  }
+
+  private static AdaptrisMessage roundTrip(AdaptrisMessageEncoder encoder, AdaptrisMessage msg) throws Exception {
+    return encoder.readMessage(new ByteArrayInputStream(encode(encoder, msg)));
+  }
+}
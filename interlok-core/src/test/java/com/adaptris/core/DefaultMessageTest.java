@@ -16,6 +16,17 @@
 
 package com.adaptris.core;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
 public class DefaultMessageTest extends AdaptrisMessageCase {
 
   private DefaultMessageFactory msgFactory = new DefaultMessageFactory();
@@ -28,4 +39,71 @@ public class DefaultMessageTest extends AdaptrisMessageCase {
     return msgFactory;
   }
 
+  @Test
+  public void testGetPayloadBuffer_IsReadOnly() throws Exception {
+    AdaptrisMessage msg = msgFactory.newMessage(PAYLOAD);
+    ByteBuffer buffer = msg.getPayloadBuffer();
+    assertTrue(buffer.isReadOnly());
+    assertEquals(PAYLOAD.length(), buffer.remaining());
+    assertEquals(ByteBuffer.wrap(PAYLOAD.getBytes(StandardCharsets.UTF_8)), buffer);
+    try {
+      buffer.put(0, (byte) 'a');
+      fail();
+    } catch (ReadOnlyBufferException expected) {
+
+    }
+    assertEquals(PAYLOAD, msg.getContent());
+  }
+
+  @Test
+  public void testGetPayloadBuffer_AfterOutputStream() throws Exception {
+    AdaptrisMessage msg = msgFactory.newMessage();
+    try (OutputStream out = msg.getOutputStream()) {
+      out.write(PAYLOAD.getBytes(StandardCharsets.UTF_8));
+    }
+    // Only the bytes that were written should be visible, not the spare capacity of the stream's buffer.
+    assertEquals(PAYLOAD.length(), msg.getPayloadBuffer().remaining());
+    assertEquals(PAYLOAD.length(), msg.getSize());
+    assertEquals(PAYLOAD, msg.getContent());
+  }
+
+  @Test
+  public void testClone_SharedPayloadIsIsolated() throws Exception {
+    AdaptrisMessage msg1 = msgFactory.newMessage(PAYLOAD);
+    AdaptrisMessage msg2 = (AdaptrisMessage) msg1.clone();
+    msg2.setContent(PAYLOAD2, null);
+    assertEquals(PAYLOAD, msg1.getContent());
+    assertEquals(PAYLOAD2, msg2.getContent());
+
+    AdaptrisMessage msg3 = (AdaptrisMessage) msg1.clone();
+    try (OutputStream out = msg3.getOutputStream()) {
+      out.write(PAYLOAD2.getBytes(StandardCharsets.UTF_8));
+    }
+    assertEquals(PAYLOAD, msg1.getContent());
+    assertEquals(PAYLOAD2, msg3.getContent());
+  }
+
+  @Test
+  public void testOutputStream_WriteAfterClose() throws Exception {
+    AdaptrisMessage msg = msgFactory.newMessage();
+    OutputStream out = msg.getOutputStream();
+    out.write(PAYLOAD.getBytes(StandardCharsets.UTF_8));
+    out.close();
+    ByteBuffer before = msg.getPayloadBuffer();
+    out.write(PAYLOAD2.getBytes(StandardCharsets.UTF_8));
+    // Not visible until the stream is closed again, and doesn't disturb buffers already handed out.
+    assertEquals(PAYLOAD, msg.getContent());
+    assertEquals(ByteBuffer.wrap(PAYLOAD.getBytes(StandardCharsets.UTF_8)), before);
+    out.close();
+    assertEquals(PAYLOAD + PAYLOAD2, msg.getContent());
+  }
+
+  @Test
+  public void testEquivalentForTracking_DifferentPayload() throws Exception {
+    AdaptrisMessage msg1 = msgFactory.newMessage(PAYLOAD);
+    AdaptrisMessage msg2 = (AdaptrisMessage) msg1.clone();
+    assertTrue(msg1.equivalentForTracking(msg2));
+    msg2.setContent(PAYLOAD2, null);
+    assertFalse(msg1.equivalentForTracking(msg2));
+  }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.adaptris.util.GuidGenerator;
+
+public class MessageLifecycleRecorderTest {
+
+  @Test
+  public void testRecord() throws Exception {
+    MessageLifecycleRecorder recorder = new MessageLifecycleRecorder(new GuidGenerator());
+    recorder.setMessageUniqueId("msgId");
+    recorder.setLocation("channel", "workflow");
+    NullService service = new NullService();
+    service.setUniqueId("nullService");
+    recorder.record(service, true, 1);
+    recorder.record(null, false, 2);
+    assertEquals(2, recorder.markerCount());
+
+    MessageLifecycleEvent event = recorder.event();
+    assertSame(event, recorder.event());
+    assertEquals("msgId", event.getMessageUniqueId());
+    assertEquals("channel", event.getChannelId());
+    assertEquals("workflow", event.getWorkflowId());
+    assertNotNull(event.getUniqueId());
+    List<MleMarker> markers = event.getMleMarkers();
+    assertEquals(2, markers.size());
+    assertEquals(service.createName(), markers.get(0).getName());
+    assertEquals("nullService", markers.get(0).getQualifier());
+    assertTrue(markers.get(0).getWasSuccessful());
+    assertEquals(1, markers.get(0).getSequenceNumber());
+    assertNotNull(markers.get(0).getUniqueId());
+    assertEquals("Unknown Event", markers.get(1).getName());
+    assertEquals("", markers.get(1).getQualifier());
+    assertFalse(markers.get(1).getWasSuccessful());
+    assertFalse(markers.get(1).getIsTrackingEndpoint());
+    assertEquals(2, markers.get(1).getSequenceNumber());
+  }
+
+  @Test
+  public void testRecord_AfterEventBuilt() throws Exception {
+    MessageLifecycleRecorder recorder = new MessageLifecycleRecorder(new GuidGenerator());
+    recorder.record(new NullService(), true, 1);
+    MessageLifecycleEvent event = recorder.event();
+    recorder.record(new NullService(), true, 2);
+    recorder.setMessageUniqueId("msgId");
+    recorder.setLocation("channel", "workflow");
+    assertEquals(2, recorder.markerCount());
+    assertEquals(2, event.getMleMarkers().size());
+    assertEquals(2, event.getMleMarkers().get(1).getSequenceNumber());
+    assertEquals("msgId", event.getMessageUniqueId());
+    assertEquals("channel", event.getChannelId());
+    assertEquals("workflow", event.getWorkflowId());
+  }
+
+  @Test
+  public void testCopy() throws Exception {
+    MessageLifecycleRecorder recorder = new MessageLifecycleRecorder(new GuidGenerator());
+    recorder.record(new NullService(), true, 1);
+    MessageLifecycleRecorder copy = recorder.copy();
+    copy.record(new NullService(), true, 2);
+    assertEquals(1, recorder.markerCount());
+    assertEquals(2, copy.markerCount());
+    MessageLifecycleEvent original = recorder.event();
+    MessageLifecycleEvent copied = copy.event();
+    assertNotSame(original, copied);
+    assertEquals(original.getUniqueId(), copied.getUniqueId());
+    assertEquals(original.getCreationTime(), copied.getCreationTime());
+
+    MessageLifecycleRecorder copyOfBuilt = recorder.copy();
+    assertNotSame(original, copyOfBuilt.event());
+    assertEquals(original.getUniqueId(), copyOfBuilt.event().getUniqueId());
+    assertEquals(1, copyOfBuilt.markerCount());
+  }
+
+  @Test
+  public void testAppendAll() throws Exception {
+    MessageLifecycleRecorder source = new MessageLifecycleRecorder(new GuidGenerator());
+    for (int i = 0; i < 20; i++) {
+      source.record(new NullService(), true, i);
+    }
+    MessageLifecycleRecorder dest = new MessageLifecycleRecorder(new GuidGenerator());
+    dest.appendAll(new MessageLifecycleRecorder(new GuidGenerator()));
+    assertEquals(0, dest.markerCount());
+    dest.appendAll(source);
+    assertEquals(20, dest.markerCount());
+    // Now with one side built.
+    source.event();
+    dest.appendAll(source);
+    assertEquals(40, dest.markerCount());
+    dest.appendAll(new MessageLifecycleRecorder(new GuidGenerator()));
+    assertEquals(40, dest.markerCount());
+    List<MleMarker> markers = dest.event().getMleMarkers();
+    for (int i = 0; i < 40; i++) {
+      assertEquals(i % 20, markers.get(i).getSequenceNumber());
+    }
+    assertNotSame(source.event().getMleMarkers().get(0), markers.get(20));
+    assertEquals(source.event().getMleMarkers().get(0), markers.get(20));
+  }
+}
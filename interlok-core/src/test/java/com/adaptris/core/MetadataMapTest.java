@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class MetadataMapTest {
+
+  @Test
+  public void testPutGetRemove() {
+    MetadataMap map = new MetadataMap();
+    assertTrue(map.isEmpty());
+    assertNull(map.put("key", "value"));
+    assertEquals("value", map.get("key"));
+    assertTrue(map.containsKey("key"));
+    assertEquals("value", map.put("key", "value2"));
+    assertEquals(1, map.size());
+    assertEquals("value2", map.remove("key"));
+    assertNull(map.remove("key"));
+    assertNull(map.get("key"));
+    assertNull(map.get(null));
+    assertFalse(map.containsKey(null));
+    assertEquals(0, map.size());
+  }
+
+  @Test
+  public void testPut_Null() {
+    MetadataMap map = new MetadataMap();
+    try {
+      map.put(null, "value");
+      fail();
+    } catch (IllegalArgumentException expected) {
+
+    }
+    try {
+      map.put("key", null);
+      fail();
+    } catch (IllegalArgumentException expected) {
+
+    }
+  }
+
+  @Test
+  public void testRandomOperations() {
+    // Compare against a HashMap, with enough keys to cause resizing and collisions.
+    MetadataMap map = new MetadataMap(4);
+    Map<String, String> expected = new HashMap<>();
+    Random r = new Random(1234);
+    for (int i = 0; i < 20000; i++) {
+      String key = "key" + r.nextInt(500);
+      if (r.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        String value = "value" + i;
+        assertEquals(expected.put(key, value), map.put(key, value));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    for (int i = 0; i < 500; i++) {
+      assertEquals(expected.get("key" + i), map.get("key" + i));
+    }
+    assertEquals(expected, map.asMap());
+  }
+
+  @Test
+  public void testCopy_CopyOnWrite() {
+    MetadataMap map = new MetadataMap();
+    map.put("a", "1");
+    map.put("b", "2");
+    MetadataMap copy = map.copy();
+    copy.put("a", "changed");
+    copy.remove("b");
+    copy.put("c", "3");
+    assertEquals("1", map.get("a"));
+    assertEquals("2", map.get("b"));
+    assertFalse(map.containsKey("c"));
+    map.put("d", "4");
+    assertFalse(copy.containsKey("d"));
+    assertEquals(3, map.size());
+    assertEquals(2, copy.size());
+  }
+
+  @Test
+  public void testAsMap_Snapshot() {
+    MetadataMap map = new MetadataMap();
+    map.put("a", "1");
+    Map<String, String> view = map.asMap();
+    map.put("b", "2");
+    assertEquals(1, view.size());
+    assertFalse(view.containsKey("b"));
+    assertEquals("1", view.get("a"));
+    // Modifying the view doesn't modify the map.
+    view.put("c", "3");
+    view.remove("a");
+    assertEquals(1, view.size());
+    assertEquals("3", view.get("c"));
+    assertEquals(2, map.size());
+    assertEquals("1", map.get("a"));
+    assertFalse(map.containsKey("c"));
+    for (Iterator<Map.Entry<String, String>> i = view.entrySet().iterator(); i.hasNext();) {
+      Map.Entry<String, String> e = i.next();
+      e.setValue("changed");
+      assertEquals("changed", view.get(e.getKey()));
+      i.remove();
+    }
+    assertTrue(view.isEmpty());
+    view.put("d", "4");
+    view.clear();
+    assertTrue(view.isEmpty());
+    assertEquals(2, map.size());
+    // Modifying the map while iterating a view is safe.
+    for (Map.Entry<String, String> e : map.asMap().entrySet()) {
+      map.put(e.getKey() + "-copy", e.getValue());
+    }
+    assertEquals(4, map.size());
+  }
+
+  @Test
+  public void testAsSet() {
+    MetadataMap map = new MetadataMap();
+    map.put("a", "1");
+    map.put("b", "2");
+    Set<MetadataElement> set = map.asSet();
+    Set<MetadataElement> expected = new HashSet<>();
+    expected.add(new MetadataElement("a", "1"));
+    expected.add(new MetadataElement("b", "2"));
+    assertEquals(expected, set);
+    assertEquals(set, expected);
+    assertEquals(expected.hashCode(), set.hashCode());
+    assertTrue(set.contains(new MetadataElement("a", "anything")));
+    // HashSet semantics, existing elements aren't replaced.
+    assertFalse(set.add(new MetadataElement("a", "changed")));
+    assertTrue(set.add(new MetadataElement("c", "3")));
+    assertTrue(set.remove(new MetadataElement("b", "")));
+    assertEquals(2, set.size());
+    // but the original isn't changed.
+    assertEquals(2, map.size());
+    assertTrue(map.containsKey("b"));
+    assertFalse(map.containsKey("c"));
+    set.clear();
+    assertTrue(set.isEmpty());
+    assertEquals(2, map.size());
+  }
+
+  @Test
+  public void testAsSet_IteratorRemove() {
+    MetadataMap map = new MetadataMap();
+    for (int i = 0; i < 100; i++) {
+      map.put("key" + i, "value" + i);
+    }
+    Set<MetadataElement> set = map.asSet();
+    for (Iterator<MetadataElement> i = set.iterator(); i.hasNext();) {
+      MetadataElement e = i.next();
+      if (Integer.parseInt(e.getKey().substring(3)) % 2 == 0) {
+        i.remove();
+      }
+    }
+    assertEquals(50, set.size());
+    assertEquals(100, map.size());
+    for (MetadataElement e : set) {
+      assertEquals(1, Integer.parseInt(e.getKey().substring(3)) % 2);
+    }
+  }
+
+  @Test
+  public void testToString() {
+    MetadataMap map = new MetadataMap();
+    map.put("a", "1");
+    assertEquals("[key [a] value [1]]", map.toString());
+  }
+}
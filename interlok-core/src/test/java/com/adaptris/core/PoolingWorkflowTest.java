@@ -24,7 +24,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -46,6 +48,7 @@ import com.adaptris.core.stubs.MockMessageProducer;
 import com.adaptris.core.stubs.MockSkipProducerService;
 import com.adaptris.core.stubs.MockWorkflowInterceptor;
 import com.adaptris.core.stubs.StaticMockMessageProducer;
+import com.adaptris.core.stubs.TempFileUtils;
 import com.adaptris.core.stubs.XmlRoundTripService;
 import com.adaptris.core.util.Args;
 import com.adaptris.core.util.LifecycleHelper;
@@ -120,6 +123,249 @@ public class PoolingWorkflowTest extends ExampleWorkflowCase {
     }
   }
 
+  @Test
+  public void testSetProduceMode() throws Exception {
+    PoolingWorkflow workflow = new PoolingWorkflow();
+    assertNull(workflow.getProduceMode());
+    assertEquals(PoolingWorkflow.ProduceMode.SERIALISED, workflow.produceMode());
+    workflow.setProduceMode(PoolingWorkflow.ProduceMode.PER_WORKER);
+    assertEquals(PoolingWorkflow.ProduceMode.PER_WORKER, workflow.getProduceMode());
+    assertEquals(PoolingWorkflow.ProduceMode.PER_WORKER, workflow.produceMode());
+    workflow.setProduceMode(null);
+    assertEquals(PoolingWorkflow.ProduceMode.SERIALISED, workflow.produceMode());
+  }
+
+  @Test
+  public void testProduceMode_Shared() throws Exception {
+    StaticMockMessageProducer prod = new StaticMockMessageProducer();
+    prod.getMessages().clear();
+    MockChannel channel = createChannel();
+    PoolingWorkflow wf = (PoolingWorkflow) channel.getWorkflowList().get(0);
+    wf.setProducer(prod);
+    wf.setProduceMode(PoolingWorkflow.ProduceMode.SHARED);
+    int count = wf.poolSize() * 2;
+    try {
+      start(channel);
+      submitMessages(wf, count);
+      waitForMessages(prod, count);
+      assertMessages(prod, count);
+    }
+    finally {
+      stop(channel);
+      prod.getMessages().clear();
+    }
+  }
+
+  @Test
+  public void testProduceMode_PerWorker() throws Exception {
+    StaticMockMessageProducer prod = new StaticMockMessageProducer();
+    prod.getMessages().clear();
+    MockChannel channel = createChannel();
+    PoolingWorkflow wf = (PoolingWorkflow) channel.getWorkflowList().get(0);
+    wf.setProducer(prod);
+    wf.setProduceMode(PoolingWorkflow.ProduceMode.PER_WORKER);
+    int count = wf.poolSize() * 2;
+    try {
+      start(channel);
+      submitMessages(wf, count);
+      waitForMessages(prod, count);
+      assertMessages(prod, count);
+    }
+    finally {
+      stop(channel);
+      prod.getMessages().clear();
+    }
+  }
+
+  @Test
+  public void testSetVirtualThreads() throws Exception {
+    PoolingWorkflow workflow = new PoolingWorkflow();
+    assertNull(workflow.getVirtualThreads());
+    assertFalse(workflow.virtualThreads());
+    workflow.setVirtualThreads(Boolean.TRUE);
+    assertEquals(Boolean.TRUE, workflow.getVirtualThreads());
+    assertTrue(workflow.virtualThreads());
+    workflow.setVirtualThreads(null);
+    assertFalse(workflow.virtualThreads());
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    MockChannel channel = createChannel();
+    PoolingWorkflow wf = (PoolingWorkflow) channel.getWorkflowList().get(0);
+    wf.setPoolSize(2);
+    wf.setVirtualThreads(true);
+    MockMessageProducer prod = (MockMessageProducer) wf.getProducer();
+    int count = 10;
+    try {
+      start(channel);
+      submitMessages(wf, count);
+      waitForMessages(prod, count);
+      assertMessages(prod, count);
+      assertTrue(wf.currentThreadPoolCount() <= count);
+    }
+    finally {
+      stop(channel);
+    }
+  }
+
+  @Test
+  public void testBoundedWorkQueue_Block() throws Exception {
+    MockChannel channel = createChannel();
+    PoolingWorkflow wf = (PoolingWorkflow) channel.getWorkflowList().get(0);
+    wf.setPoolSize(2);
+    wf.setBoundedWorkQueue(new BoundedWorkQueue(2, BoundedWorkQueue.OverflowPolicy.BLOCK));
+    MockMessageProducer prod = (MockMessageProducer) wf.getProducer();
+    int count = 10;
+    try {
+      start(channel);
+      submitMessages(wf, count);
+      waitForMessages(prod, count);
+      assertMessages(prod, count);
+      assertEquals(0, wf.currentQueueDepth());
+      assertEquals(0, wf.getBoundedWorkQueue().totalRejectedCount());
+      assertTrue(wf.getBoundedWorkQueue().maxWaitTimeMs() >= wf.getBoundedWorkQueue().averageWaitTimeMs());
+    }
+    finally {
+      stop(channel);
+    }
+  }
+
+  @Test
+  public void testBoundedWorkQueue_Block_MaxWait() throws Exception {
+    MockMessageProducer meh = new MockMessageProducer();
+    MockChannel channel = createChannel(new StandardProcessingExceptionHandler(new StandaloneProducer(meh)),
+        Arrays.asList(new Service[] {new WaitService(new TimeInterval(500L, TimeUnit.MILLISECONDS))}));
+    PoolingWorkflow wf = (PoolingWorkflow) channel.getWorkflowList().get(0);
+    wf.setPoolSize(1);
+    BoundedWorkQueue queue = new BoundedWorkQueue(0, BoundedWorkQueue.OverflowPolicy.BLOCK);
+    queue.setMaxWaitTime(new TimeInterval(10L, TimeUnit.MILLISECONDS));
+    wf.setBoundedWorkQueue(queue);
+    MockMessageProducer prod = (MockMessageProducer) wf.getProducer();
+    try {
+      start(channel);
+      submitMessages(wf, 2);
+      waitForMessages(prod, 1);
+      waitForMessages(meh, 1);
+      assertEquals(1, prod.messageCount());
+      assertEquals(1, meh.messageCount());
+      assertEquals(1, queue.totalRejectedCount());
+    }
+    finally {
+      stop(channel);
+    }
+  }
+
+  @Test
+  public void testBoundedWorkQueue_ShutdownWithFullQueue() throws Exception {
+    MockMessageProducer meh = new MockMessageProducer();
+    MockChannel channel = createChannel(new StandardProcessingExceptionHandler(new StandaloneProducer(meh)),
+        Arrays.asList(new Service[] {new WaitService(new TimeInterval(500L, TimeUnit.MILLISECONDS))}));
+    PoolingWorkflow wf = (PoolingWorkflow) channel.getWorkflowList().get(0);
+    wf.setPoolSize(1);
+    wf.setShutdownWaitTime(new TimeInterval(50L, TimeUnit.MILLISECONDS));
+    wf.setBoundedWorkQueue(new BoundedWorkQueue(3, BoundedWorkQueue.OverflowPolicy.BLOCK));
+    MockMessageProducer prod = (MockMessageProducer) wf.getProducer();
+    try {
+      start(channel);
+      submitMessages(wf, 4);
+      assertEquals(3, wf.currentQueueDepth());
+    }
+    finally {
+      stop(channel);
+    }
+    // The queued messages never ran, so they must have been failed rather than lost.
+    assertTrue(meh.messageCount() >= 3);
+    assertEquals(4, prod.messageCount() + meh.messageCount());
+  }
+
+  @Test
+  public void testBoundedWorkQueue_Reject() throws Exception {
+    MockMessageProducer meh = new MockMessageProducer();
+    MockChannel channel = createChannel(new StandardProcessingExceptionHandler(new StandaloneProducer(meh)),
+        Arrays.asList(new Service[] {new WaitService(new TimeInterval(500L, TimeUnit.MILLISECONDS))}));
+    PoolingWorkflow wf = (PoolingWorkflow) channel.getWorkflowList().get(0);
+    wf.setPoolSize(1);
+    wf.setBoundedWorkQueue(new BoundedWorkQueue(0, BoundedWorkQueue.OverflowPolicy.REJECT));
+    MockMessageProducer prod = (MockMessageProducer) wf.getProducer();
+    try {
+      start(channel);
+      submitMessages(wf, 3);
+      waitForMessages(prod, 1);
+      waitForMessages(meh, 2);
+      assertEquals(1, prod.messageCount());
+      assertEquals(2, meh.messageCount());
+      assertEquals(2, wf.getBoundedWorkQueue().totalRejectedCount());
+      for (AdaptrisMessage m : meh.getMessages()) {
+        assertNotNull(m.getObjectHeaders().get(CoreConstants.OBJ_METADATA_EXCEPTION));
+      }
+    }
+    finally {
+      stop(channel);
+    }
+  }
+
+  @Test
+  public void testBoundedWorkQueue_Spill() throws Exception {
+    MockChannel channel = createAndPrepareChannel(
+        Arrays.asList(new Service[] {new WaitService(new TimeInterval(100L, TimeUnit.MILLISECONDS))}));
+    PoolingWorkflow wf = (PoolingWorkflow) channel.getWorkflowList().get(0);
+    wf.setPoolSize(1);
+    BoundedWorkQueue queue = new BoundedWorkQueue(1, BoundedWorkQueue.OverflowPolicy.SPILL);
+    File spillDir = TempFileUtils.createTrackedDir(queue);
+    queue.setSpillDirectory(spillDir.getCanonicalPath());
+    wf.setBoundedWorkQueue(queue);
+    MockMessageProducer prod = (MockMessageProducer) wf.getProducer();
+    int count = 5;
+    try {
+      start(channel);
+      submitMessages(wf, count);
+      assertTrue(queue.totalSpilledCount() > 0);
+      waitForMessages(prod, count);
+      assertMessages(prod, count);
+      assertEquals(0, queue.currentSpilledCount());
+      assertEquals(0, spillDir.listFiles().length);
+    }
+    finally {
+      stop(channel);
+    }
+  }
+
+  @Test
+  public void testBoundedWorkQueue_Spill_RestoreFails() throws Exception {
+    BoundedWorkQueue queue = new BoundedWorkQueue(0, BoundedWorkQueue.OverflowPolicy.SPILL);
+    File spillDir = TempFileUtils.createTrackedDir(queue);
+    queue.setSpillDirectory(spillDir.getCanonicalPath());
+    queue.init(0);
+    AdaptrisMessageFactory factory = new DefaultMessageFactory();
+    assertFalse(queue.admit(AdaptrisMessageFactory.getDefaultInstance().newMessage("hello")));
+    assertFalse(queue.admit(factory.newMessage("world")));
+    assertEquals(2, spillDir.listFiles().length);
+    assertEquals("hello", queue.drain().getContent());
+    File remaining = spillDir.listFiles()[0];
+    java.nio.file.Files.write(remaining.toPath(), "not a message".getBytes());
+    assertNull(queue.drain());
+    assertEquals(0, queue.currentSpilledCount());
+    File[] failed = spillDir.listFiles();
+    assertEquals(1, failed.length);
+    assertEquals(remaining.getName() + ".failed", failed[0].getName());
+  }
+
+  @Test
+  public void testBoundedWorkQueue_Spill_RestoresWithOwnFactory() throws Exception {
+    BoundedWorkQueue queue = new BoundedWorkQueue(0, BoundedWorkQueue.OverflowPolicy.SPILL);
+    File spillDir = TempFileUtils.createTrackedDir(queue);
+    queue.setSpillDirectory(spillDir.getCanonicalPath());
+    queue.setSpillEncoder(new MimeEncoder(true, null, null));
+    queue.init(0);
+    AdaptrisMessageFactory f1 = new DefaultMessageFactory();
+    AdaptrisMessageFactory f2 = new DefaultMessageFactory();
+    queue.admit(f1.newMessage("hello"));
+    queue.admit(f2.newMessage("world"));
+    assertSame(f1, queue.drain().getFactory());
+    assertSame(f2, queue.drain().getFactory());
+  }
+
   @Test
   public void testSetPoolSize() throws Exception {
     PoolingWorkflow workflow = new PoolingWorkflow();
@@ -18,6 +18,7 @@ package com.adaptris.core;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -25,6 +26,8 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import com.adaptris.core.fs.FsProducer;
+import com.adaptris.core.retry.FilesystemRetryStore;
+import com.adaptris.core.retry.InMemoryRetryStore;
 import com.adaptris.core.services.exception.ConfiguredException;
 import com.adaptris.core.services.exception.ThrowExceptionService;
 import com.adaptris.core.stubs.ChannelRestartConnectionErrorHandler;
@@ -34,6 +37,7 @@ import com.adaptris.core.stubs.MockChannel;
 import com.adaptris.core.stubs.MockConnection;
 import com.adaptris.core.stubs.MockMessageConsumer;
 import com.adaptris.core.stubs.MockMessageProducer;
+import com.adaptris.core.stubs.TempFileUtils;
 import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.core.util.ManagedThreadFactory;
 import com.adaptris.util.SimpleIdGenerator;
@@ -421,6 +425,53 @@ public class RetryMessageErrorHandlerTest extends ExampleErrorHandlerCase {
     }
   }
 
+  @Test
+  public void testRetryStore() throws Exception {
+    RetryMessageErrorHandler meh = new RetryMessageErrorHandler();
+    assertNull(meh.getRetryStore());
+    assertEquals(InMemoryRetryStore.class, meh.retryStore().getClass());
+    FilesystemRetryStore store = new FilesystemRetryStore();
+    meh.setRetryStore(store);
+    assertEquals(store, meh.getRetryStore());
+    assertEquals(store, meh.retryStore());
+  }
+
+  @Test
+  public void testRetry_PersistentStore_SurvivesRestart() throws Exception {
+    String name = renameThread(getName());
+    Channel channel = null;
+    try {
+      File dir = TempFileUtils.createTrackedDir(this);
+      MockMessageProducer failProducer = new MockMessageProducer();
+      RetryMessageErrorHandler meh = createMessageErrorHandler(failProducer);
+      meh.setRetryInterval(new TimeInterval(1L, TimeUnit.SECONDS));
+      meh.setRetryLimit(0);
+      meh.setRetryStore(new FilesystemRetryStore(dir.getCanonicalPath()));
+      FailFirstMockMessageProducer workflowProducer = new FailFirstMockMessageProducer(1);
+      StandardWorkflow workflow = createWorkflow(workflowProducer);
+      workflow.setServiceCollection(new ServiceList());
+      channel = createChannel(workflow, meh);
+      channel.prepare();
+      channel.requestStart();
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("XXXX");
+      workflow.onAdaptrisMessage(msg);
+      assertEquals(1, meh.waitingForRetry().size());
+      channel.requestClose();
+      // Not failed, since the store is persistent.
+      assertEquals(0, failProducer.getMessages().size());
+      channel.requestStart();
+      assertTrue(meh.waitingForRetry().contains(msg.getUniqueId()));
+      waitForMessages(workflowProducer, 1);
+      assertEquals(msg.getUniqueId(), workflowProducer.getMessages().get(0).getUniqueId());
+      assertEquals("0", workflowProducer.getMessages().get(0).getObjectHeaders().get(RetryMessageErrorHandlerImp.RETRY_COUNT_KEY));
+      assertEquals(0, meh.waitingForRetry().size());
+      assertEquals(0, failProducer.getMessages().size());
+    } finally {
+      BaseCase.stop(channel);
+      renameThread(name);
+    }
+  }
+
   @Test
   public void testFailMessage() throws Exception {
     MockMessageProducer failProducer = new MockMessageProducer();
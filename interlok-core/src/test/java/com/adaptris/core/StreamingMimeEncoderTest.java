@@ -0,0 +1,230 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.util.Properties;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import com.adaptris.core.lms.FileBackedMessage;
+import com.adaptris.core.lms.FileBackedMessageFactory;
+import com.adaptris.util.GuidGenerator;
+import com.adaptris.util.text.mime.MultiPartOutput;
+
+public class StreamingMimeEncoderTest {
+
+  private static final String METADATA_VALUE = "value";
+  private static final String METADATA_KEY = "key";
+  private static final String STANDARD_PAYLOAD_NON_JUST_ALPHA = "The quick brown fox jumps over the lazy dog\t\r\n";
+  private static final String STANDARD_PAYLOAD = "Pack My Box with a dozen Liquor jugs";
+
+  private StreamingMimeEncoder encoder;
+
+  @Rule
+  public TestName testName = new TestName();
+
+  @Before
+  public void setUp() throws Exception {
+    encoder = new StreamingMimeEncoder();
+    encoder.registerMessageFactory(new DefaultMessageFactory());
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    AdaptrisMessage result = roundTrip(encoder, encoder, msg);
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD, result.getContent());
+  }
+
+  @Test
+  public void testRoundTrip_WithOddChars() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD_NON_JUST_ALPHA);
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    AdaptrisMessage result = roundTrip(encoder, encoder, msg);
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD_NON_JUST_ALPHA, result.getContent());
+  }
+
+  @Test
+  public void testRoundTrip_EmptyPayload() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    AdaptrisMessage result = roundTrip(encoder, encoder, msg);
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(0, result.getSize());
+  }
+
+  @Test
+  public void testRoundTrip_BinaryPayload() throws Exception {
+    // Lots of line breaks and things that look like the start of a boundary.
+    byte[] bytes = new byte[256 * 1024];
+    new Random().nextBytes(bytes);
+    for (int i = 0; i < bytes.length; i += 97) {
+      bytes[i] = '\r';
+      bytes[i + 1] = '\n';
+      bytes[i + 2] = '-';
+      bytes[i + 3] = '-';
+    }
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(bytes);
+    assertTrue(MessageDigest.isEqual(bytes, roundTrip(encoder, encoder, msg).getPayload()));
+    encoder.setPayloadEncoding("base64");
+    assertTrue(MessageDigest.isEqual(bytes, roundTrip(encoder, encoder, msg).getPayload()));
+  }
+
+  @Test
+  public void testRoundTrip_WithException() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    msg.addObjectHeader(CoreConstants.OBJ_METADATA_EXCEPTION, new Exception(testName.getMethodName()));
+    AdaptrisMessage result = roundTrip(encoder, encoder, msg);
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD, result.getContent());
+    assertFalse(result.getObjectHeaders().containsKey(CoreConstants.OBJ_METADATA_EXCEPTION));
+  }
+
+  @Test
+  public void testRoundTrip_Encoded() throws Exception {
+    StreamingMimeEncoder encoded = new StreamingMimeEncoder(false, "quoted-printable", "base64");
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD_NON_JUST_ALPHA);
+    msg.addMetadata(METADATA_KEY, "blah\\blah");
+    AdaptrisMessage result = roundTrip(encoded, encoder, msg);
+    assertEquals("blah\\blah", result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD_NON_JUST_ALPHA, result.getContent());
+  }
+
+  @Test
+  public void testRoundTrip_PreserveUniqueId() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    encoder.setRetainUniqueId(true);
+    assertEquals(msg.getUniqueId(), roundTrip(encoder, encoder, msg).getUniqueId());
+    encoder.setRetainUniqueId(false);
+    assertFalse(msg.getUniqueId().equals(roundTrip(encoder, encoder, msg).getUniqueId()));
+  }
+
+  @Test
+  public void testMimeEncoderCompatibility() throws Exception {
+    MimeEncoder mimeEncoder = new MimeEncoder(true, "base64", "base64");
+    StreamingMimeEncoder streaming = new StreamingMimeEncoder(true, "base64", "base64");
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD_NON_JUST_ALPHA);
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+
+    AdaptrisMessage result = roundTrip(mimeEncoder, streaming, msg);
+    assertEquals(msg.getUniqueId(), result.getUniqueId());
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD_NON_JUST_ALPHA, result.getContent());
+
+    result = roundTrip(streaming, mimeEncoder, msg);
+    assertEquals(msg.getUniqueId(), result.getUniqueId());
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD_NON_JUST_ALPHA, result.getContent());
+  }
+
+  @Test
+  public void testRoundTrip_FileBackedMessage() throws Exception {
+    FileBackedMessageFactory factory = new FileBackedMessageFactory();
+    encoder.registerMessageFactory(factory);
+    AdaptrisMessage msg = factory.newMessage(STANDARD_PAYLOAD);
+    msg.addMetadata(METADATA_KEY, METADATA_VALUE);
+    AdaptrisMessage result = roundTrip(encoder, encoder, msg);
+    assertTrue(result instanceof FileBackedMessage);
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD, result.getContent());
+  }
+
+  @Test
+  public void testDecode_IgnoreExtraParts() throws Exception {
+    AdaptrisMessage result = encoder.readMessage(new ByteArrayInputStream(createMimeOutput(true, true)));
+    assertEquals(METADATA_VALUE, result.getMetadataValue(METADATA_KEY));
+    assertEquals(STANDARD_PAYLOAD, result.getContent());
+  }
+
+  @Test
+  public void testDecode_MissingParts() throws Exception {
+    try {
+      encoder.readMessage(new ByteArrayInputStream(createMimeOutput(false, true)));
+      fail();
+    } catch (CoreException expected) {
+    }
+    try {
+      encoder.readMessage(new ByteArrayInputStream(createMimeOutput(true, false)));
+      fail();
+    } catch (CoreException expected) {
+    }
+  }
+
+  @Test
+  public void testDecode_Truncated() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(STANDARD_PAYLOAD);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    encoder.writeMessage(msg, out);
+    byte[] bytes = out.toByteArray();
+    try {
+      encoder.readMessage(new ByteArrayInputStream(bytes, 0, bytes.length - 20));
+      fail();
+    } catch (CoreException expected) {
+    }
+  }
+
+  @Test
+  public void testEncodeDecode_WrongType() throws Exception {
+    try {
+      encoder.writeMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage(), new StringWriter());
+      fail();
+    } catch (CoreException expected) {
+    }
+    try {
+      encoder.readMessage(new StringWriter());
+      fail();
+    } catch (CoreException expected) {
+    }
+  }
+
+  private static AdaptrisMessage roundTrip(AdaptrisMessageEncoder writer, AdaptrisMessageEncoder reader, AdaptrisMessage msg)
+      throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.writeMessage(msg, out);
+    return reader.readMessage(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static byte[] createMimeOutput(boolean includePayloadPart, boolean includeMetadataPart) throws Exception {
+    MultiPartOutput output = new MultiPartOutput(new GuidGenerator().getUUID());
+    if (includePayloadPart) {
+      output.addPart(STANDARD_PAYLOAD.getBytes(), "base64", "AdaptrisMessage/payload");
+    }
+    if (includeMetadataPart) {
+      Properties p = new Properties();
+      p.setProperty(METADATA_KEY, METADATA_VALUE);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      p.store(bytes, "");
+      bytes.close();
+      output.addPart(bytes.toByteArray(), "base64", "AdaptrisMessage/metadata");
+    }
+    output.addPart(STANDARD_PAYLOAD.getBytes(), "base64", "AnotherPart");
+    return output.getBytes();
+  }
+}
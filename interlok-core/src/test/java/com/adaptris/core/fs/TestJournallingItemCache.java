@@ -0,0 +1,254 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.adaptris.core.CoreException;
+import com.adaptris.util.TimeInterval;
+
+public class TestJournallingItemCache extends ItemCacheCase {
+
+  private File persistentStore;
+
+  @Override
+  public boolean isAnnotatedForJunit4() {
+    return true;
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    persistentStore = File.createTempFile(this.getClass().getSimpleName(), "");
+    persistentStore.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteQuietly(persistentStore);
+  }
+
+  @Override
+  protected JournallingItemCache createCache() throws Exception {
+    return new JournallingItemCache(persistentStore.getCanonicalPath());
+  }
+
+  @Test
+  public void testDefaults() throws Exception {
+    JournallingItemCache cache = createCache();
+    assertNull(cache.getAgeBeforeEviction());
+    assertEquals(TimeUnit.HOURS.toMillis(12), cache.ageBeforeEvictionMs());
+    assertEquals(TimeUnit.HOURS.toMillis(12) / 10, cache.touchResolutionMs());
+    assertNull(cache.getSnapshotThreshold());
+    assertEquals(10000, cache.snapshotThreshold());
+    cache.setAgeBeforeEviction(new TimeInterval(1L, TimeUnit.HOURS));
+    cache.setSnapshotThreshold(10);
+    assertEquals(TimeUnit.HOURS.toMillis(1), cache.ageBeforeEvictionMs());
+    assertEquals(10, cache.snapshotThreshold());
+  }
+
+  @Test
+  public void testPersistence() throws Exception {
+    JournallingItemCache cache = createCache();
+    try {
+      start(cache);
+      cache.update(createCacheEntries(100));
+      stop(cache);
+      start(cache);
+      assertEquals(100, cache.size());
+      assertCache(cache, 100);
+    }
+    finally {
+      stop(cache);
+    }
+  }
+
+  @Test
+  public void testPersistence_Changes() throws Exception {
+    JournallingItemCache cache = createCache();
+    try {
+      start(cache);
+      ProcessedItemList items = createCacheEntries(10);
+      cache.update(items);
+      cache.save();
+      long length = persistentStore.length();
+      // Nothing has changed, so nothing should be written.
+      cache.update(copy(items));
+      cache.save();
+      assertEquals(length, persistentStore.length());
+
+      ProcessedItem changed = new ProcessedItem(CACHE_PREFIX + 1, 1, 2);
+      cache.update(changed);
+      cache.save();
+      assertTrue(persistentStore.length() > length);
+
+      stop(cache);
+      start(cache);
+      assertEquals(10, cache.size());
+      assertEquals(1, cache.get(CACHE_PREFIX + 1).getLastModified());
+      assertEquals(2, cache.get(CACHE_PREFIX + 1).getFilesize());
+    }
+    finally {
+      stop(cache);
+    }
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    JournallingItemCache cache = createCache();
+    cache.setSnapshotThreshold(10);
+    try {
+      start(cache);
+      ProcessedItemList items = createCacheEntries(10);
+      cache.update(items);
+      cache.save();
+      long length = persistentStore.length();
+      for (int i = 0; i < 5; i++) {
+        cache.update(createCacheEntries(10));
+        cache.save();
+      }
+      // Journal has been replaced by a snapshot, so will only ever be at most ~3x the size of the cache
+      assertTrue(persistentStore.length() <= length * 3);
+      stop(cache);
+      start(cache);
+      assertCache(cache, 10);
+    }
+    finally {
+      stop(cache);
+    }
+  }
+
+  @Test
+  public void testCacheExpiry() throws Exception {
+    JournallingItemCache cache = createCache();
+    cache.setAgeBeforeEviction(new TimeInterval(1L, TimeUnit.HOURS));
+    try {
+      start(cache);
+      long now = System.currentTimeMillis();
+      ProcessedItem expired = new ProcessedItem("expired", 0, 0);
+      expired.setLastProcessed(now - TimeUnit.HOURS.toMillis(2));
+      ProcessedItem current = new ProcessedItem("current", 0, 0);
+      ProcessedItem refreshed = new ProcessedItem("refreshed", 0, 0);
+      refreshed.setLastProcessed(now - TimeUnit.HOURS.toMillis(2));
+      cache.update(expired);
+      cache.update(refreshed);
+      cache.update(current);
+      // Seeing it again moves it to the back of the queue.
+      cache.update(new ProcessedItem("refreshed", 0, 0));
+      cache.evict();
+      assertEquals(2, cache.size());
+      assertFalse(cache.contains("expired"));
+      assertTrue(cache.contains("current"));
+      assertTrue(cache.contains("refreshed"));
+    }
+    finally {
+      stop(cache);
+    }
+  }
+
+  @Test
+  public void testCacheClear_Persisted() throws Exception {
+    JournallingItemCache cache = createCache();
+    try {
+      start(cache);
+      cache.update(createCacheEntries(10));
+      cache.clear();
+      stop(cache);
+      start(cache);
+      assertEquals(0, cache.size());
+    }
+    finally {
+      stop(cache);
+    }
+  }
+
+  @Test
+  public void testIncompleteRecord() throws Exception {
+    JournallingItemCache cache = createCache();
+    try {
+      start(cache);
+      cache.update(createCacheEntries(10));
+      stop(cache);
+      try (RandomAccessFile raf = new RandomAccessFile(persistentStore, "rw")) {
+        raf.setLength(raf.length() - 1);
+      }
+      start(cache);
+      assertEquals(9, cache.size());
+      assertCache(cache, 9);
+    }
+    finally {
+      stop(cache);
+    }
+  }
+
+  @Test
+  public void testZeroLengthPersistentStore() throws Exception {
+    persistentStore.createNewFile();
+    JournallingItemCache cache = createCache();
+    try {
+      start(cache);
+      assertEquals(0, cache.size());
+    }
+    finally {
+      stop(cache);
+    }
+  }
+
+  @Test
+  public void testBadPersistentStore() throws Exception {
+    persistentStore.mkdirs();
+    JournallingItemCache cache = createCache();
+    try {
+      cache.init();
+      fail();
+    }
+    catch (CoreException expected) {
+
+    }
+    finally {
+      cache.close();
+      FileUtils.deleteQuietly(persistentStore);
+    }
+    FileUtils.write(persistentStore, "hello world", "UTF-8");
+    try {
+      cache.init();
+      fail();
+    }
+    catch (CoreException expected) {
+
+    }
+    finally {
+      cache.close();
+    }
+  }
+
+  private static ProcessedItemList copy(ProcessedItemList list) {
+    ProcessedItemList result = new ProcessedItemList();
+    for (ProcessedItem item : list.getProcessedItems()) {
+      result.addProcessedItem(new ProcessedItem(item.getAbsolutePath(), item.getLastModified(), item.getFilesize()));
+    }
+    return result;
+  }
+}
@@ -19,8 +19,17 @@ package com.adaptris.core.interceptor;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
@@ -38,6 +47,9 @@ import com.adaptris.util.TimeInterval;
 
 public class MessageMetricsInterceptorTest {
 
+  // Timeslices are produced by a background thread.
+  private static final long PRODUCE_WAIT_MS = 5000L;
+
   private MessageMetricsInterceptor metricsInterceptor;
   
   @Mock private StandaloneProducer mockStandaloneProducer;
@@ -156,8 +168,8 @@ public class MessageMetricsInterceptorTest {
     assertEquals(1, metricsInterceptor.getStats().size());
     submitMessage(message);
 
-    verify(mockMarshaller).marshal(any());
-    verify(mockStandaloneProducer).produce(any());
+    verify(mockMarshaller, timeout(PRODUCE_WAIT_MS)).marshal(any());
+    verify(mockStandaloneProducer, timeout(PRODUCE_WAIT_MS)).produce(any());
   }
 
   @Test
@@ -184,11 +196,11 @@ public class MessageMetricsInterceptorTest {
     assertEquals(1, metricsInterceptor.getStats().size());
     submitMessage(message);
 
-    verify(mockMarshaller).marshal(any());
-    verify(mockStandaloneProducer).produce(any());
+    verify(mockMarshaller, timeout(PRODUCE_WAIT_MS)).marshal(any());
+    verify(mockStandaloneProducer, timeout(PRODUCE_WAIT_MS)).produce(any());
     
     //test the restart.
-    verify(mockStandaloneProducer).requestStop();
+    verify(mockStandaloneProducer, timeout(PRODUCE_WAIT_MS)).requestStop();
   }
 
   @Test
@@ -240,6 +252,131 @@ public class MessageMetricsInterceptorTest {
     assertEquals(130, ((MessageStatistic) metricsInterceptor.getStats().get(0)).getTotalMessageCount());
   }
 
+  @Test
+  public void testProduceOnStop() throws Exception {
+    ProducingStatisticManager producingStatisticManager = new ProducingStatisticManager();
+    producingStatisticManager.setMarshaller(mockMarshaller);
+    producingStatisticManager.setProducer(mockStandaloneProducer);
+    metricsInterceptor.setStatisticManager(producingStatisticManager);
+    LifecycleHelper.init(metricsInterceptor);
+    LifecycleHelper.start(metricsInterceptor);
+
+    AdaptrisMessage message = DefaultMessageFactory.getDefaultInstance().newMessage();
+    metricsInterceptor.setTimesliceDuration(new TimeInterval(-1L, TimeUnit.SECONDS));
+    submitMessage(message);
+    // Doesn't produce on the message path.
+    submitMessage(message);
+    verify(mockStandaloneProducer, never()).produce(any());
+    // but anything that has expired is produced when stopped
+    LifecycleHelper.stop(metricsInterceptor);
+    verify(mockStandaloneProducer, times(1)).produce(any());
+  }
+
+  @Test
+  public void testMultiThreaded_Concurrent() throws Exception {
+    LifecycleHelper.init(metricsInterceptor);
+    LifecycleHelper.start(metricsInterceptor);
+    metricsInterceptor.setTimesliceDuration(new TimeInterval(1L, TimeUnit.MINUTES));
+    final int threads = 8;
+    final int messagesPerThread = 500;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Object>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            new MetricsInserterThread(messagesPerThread).run();
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> f : results) {
+        f.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, metricsInterceptor.getStats().size());
+    assertEquals(threads * messagesPerThread,
+        ((MessageStatistic) metricsInterceptor.getStats().get(0)).getTotalMessageCount());
+  }
+
+  @Test
+  public void testMultiThreaded_Rollover() throws Exception {
+    final List<InterceptorStatistic> produced = Collections.synchronizedList(new ArrayList<>());
+    metricsInterceptor.setStatisticManager(new StandardStatisticManager() {
+      @Override
+      public void produce(InterceptorStatistic stat) {
+        produced.add(stat);
+      }
+    });
+    metricsInterceptor.setTimesliceDuration(new TimeInterval(5L, TimeUnit.MILLISECONDS));
+    LifecycleHelper.init(metricsInterceptor);
+    LifecycleHelper.start(metricsInterceptor);
+    final int threads = 8;
+    final long end = System.currentTimeMillis() + 2500L;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    int total = 0;
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> {
+          int count = 0;
+          while (System.currentTimeMillis() < end) {
+            submitMessage(DefaultMessageFactory.getDefaultInstance().newMessage());
+            count++;
+          }
+          return count;
+        }));
+      }
+      for (Future<Integer> f : results) {
+        total += f.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    List<InterceptorStatistic> stats = metricsInterceptor.getStats();
+    LifecycleHelper.stop(metricsInterceptor);
+    // Everything is either in a produced timeslice or the current one.
+    int recorded = ((MessageStatistic) stats.get(stats.size() - 1)).getTotalMessageCount();
+    synchronized (produced) {
+      for (InterceptorStatistic stat : produced) {
+        recorded += ((MessageStatistic) stat).getTotalMessageCount();
+      }
+    }
+    assertEquals(total, recorded);
+  }
+
+  @Test
+  public void testClearStatistics() throws Exception {
+    LifecycleHelper.init(metricsInterceptor);
+    LifecycleHelper.start(metricsInterceptor);
+    submitMessage(DefaultMessageFactory.getDefaultInstance().newMessage());
+    assertEquals(1, metricsInterceptor.getStats().size());
+    metricsInterceptor.clearStatistics();
+    assertEquals(0, metricsInterceptor.getStats().size());
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testUpdate_Delta() throws Exception {
+    LifecycleHelper.init(metricsInterceptor);
+    LifecycleHelper.start(metricsInterceptor);
+    metricsInterceptor.update(new MetricsInterceptorImpl.StatisticsDelta<MessageStatistic>() {
+      @Override
+      public MessageStatistic apply(MessageStatistic currentStat) {
+        currentStat.setTotalMessageCount(currentStat.getTotalMessageCount() + 2);
+        currentStat.setTotalMessageSize(currentStat.getTotalMessageSize() + 10);
+        return currentStat;
+      }
+    });
+    MessageStatistic stat = (MessageStatistic) metricsInterceptor.getStats().get(0);
+    assertEquals(2, stat.getTotalMessageCount());
+    assertEquals(10, stat.getTotalMessageSize());
+    assertEquals(0, stat.getTotalMessageErrorCount());
+  }
+
   private void waitFor(int seconds) throws Exception {
     Thread.sleep(seconds * 1000);
   }
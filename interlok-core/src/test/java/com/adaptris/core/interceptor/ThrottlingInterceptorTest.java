@@ -18,13 +18,22 @@ package com.adaptris.core.interceptor;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import java.util.Calendar;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
 import com.adaptris.core.DefaultMessageFactory;
 import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.util.TimeInterval;
@@ -118,6 +127,123 @@ public class ThrottlingInterceptorTest {
     assertEquals(10, totalMessageCount);
   }
   
+  @Test
+  public void testThrottleMode() throws Exception {
+    ThrottlingInterceptor interceptor = new ThrottlingInterceptor();
+    assertNull(interceptor.getThrottleMode());
+    assertEquals(ThrottlingInterceptor.ThrottleMode.TIME_SLICE, interceptor.throttleMode());
+    interceptor.setThrottleMode(ThrottlingInterceptor.ThrottleMode.TOKEN_BUCKET);
+    assertEquals(ThrottlingInterceptor.ThrottleMode.TOKEN_BUCKET, interceptor.getThrottleMode());
+    assertEquals(ThrottlingInterceptor.ThrottleMode.TOKEN_BUCKET, interceptor.throttleMode());
+  }
+
+  @Test
+  public void testTokenBucket_NoDelay() throws Exception {
+    ThrottlingInterceptor interceptor = createTokenBucket(getClass().getSimpleName() + "_NoDelay", 6);
+    try {
+      long start = System.currentTimeMillis();
+      AdaptrisMessage msg = DefaultMessageFactory.getDefaultInstance().newMessage();
+      for (int i = 0; i < 6; i++) {
+        interceptor.workflowStart(msg);
+      }
+      assertTrue(System.currentTimeMillis() - start < 250);
+    } finally {
+      LifecycleHelper.stopAndClose(interceptor);
+    }
+  }
+
+  @Test
+  public void testTokenBucket_Delay() throws Exception {
+    ThrottlingInterceptor interceptor = createTokenBucket(getClass().getSimpleName() + "_Delay", 2);
+    try {
+      long start = System.currentTimeMillis();
+      AdaptrisMessage msg = DefaultMessageFactory.getDefaultInstance().newMessage();
+      // 2 in the burst, then 1 every 250ms
+      for (int i = 0; i < 4; i++) {
+        interceptor.workflowStart(msg);
+      }
+      assertTrue(System.currentTimeMillis() - start >= 450);
+    } finally {
+      LifecycleHelper.stopAndClose(interceptor);
+    }
+  }
+
+  @Test
+  public void testTokenBucket_SharedCacheName() throws Exception {
+    String name = getClass().getSimpleName() + "_Shared";
+    final ThrottlingInterceptor i1 = createTokenBucket(name, 2);
+    final ThrottlingInterceptor i2 = createTokenBucket(name, 2);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      long start = System.currentTimeMillis();
+      final AdaptrisMessage msg = DefaultMessageFactory.getDefaultInstance().newMessage();
+      Future<?> f1 = executor.submit(() -> {
+        i1.workflowStart(msg);
+        i1.workflowStart(msg);
+      });
+      Future<?> f2 = executor.submit(() -> {
+        i2.workflowStart(msg);
+        i2.workflowStart(msg);
+      });
+      f1.get(5, TimeUnit.SECONDS);
+      f2.get(5, TimeUnit.SECONDS);
+      // 4 messages against a single bucket of 2 means that at least 2 have to wait.
+      assertTrue(System.currentTimeMillis() - start >= 450);
+    } finally {
+      executor.shutdownNow();
+      LifecycleHelper.stopAndClose(i1);
+      LifecycleHelper.stopAndClose(i2);
+    }
+  }
+
+  @Test
+  public void testTokenBucket_Lifecycle() throws Exception {
+    String name = getClass().getSimpleName() + "_Lifecycle";
+    TimeSliceCacheProvider cache = mock(TimeSliceCacheProvider.class);
+    ThrottlingInterceptor interceptor = new ThrottlingInterceptor();
+    interceptor.setCacheName(name);
+    interceptor.setMaximumMessages(2);
+    interceptor.setTimeSliceInterval(new TimeInterval(500L, TimeUnit.MILLISECONDS));
+    interceptor.setThrottleMode(ThrottlingInterceptor.ThrottleMode.TOKEN_BUCKET);
+    interceptor.setCacheProvider(cache);
+    ThrottlingInterceptor other = null;
+    try {
+      LifecycleHelper.initAndStart(interceptor);
+      assertTrue(TokenBucket.exists(name));
+      // Can't share the bucket with a different configuration while it's in use.
+      try {
+        other = createTokenBucket(name, 4);
+        fail();
+      } catch (CoreException expected) {
+
+      }
+      LifecycleHelper.stopAndClose(interceptor);
+      assertFalse(TokenBucket.exists(name));
+      // Restarted with a new configuration.
+      interceptor.setMaximumMessages(4);
+      LifecycleHelper.initAndStart(interceptor);
+      other = createTokenBucket(name, 4);
+      LifecycleHelper.stopAndClose(interceptor);
+      assertTrue(TokenBucket.exists(name));
+    } finally {
+      LifecycleHelper.stopAndClose(interceptor);
+      LifecycleHelper.stopAndClose(other);
+    }
+    assertFalse(TokenBucket.exists(name));
+    verify(cache, never()).init();
+    verify(cache, never()).start();
+    verify(cache, never()).stop();
+  }
+
+  private ThrottlingInterceptor createTokenBucket(String cacheName, int max) throws Exception {
+    ThrottlingInterceptor interceptor = new ThrottlingInterceptor();
+    interceptor.setCacheName(cacheName);
+    interceptor.setMaximumMessages(max);
+    interceptor.setTimeSliceInterval(new TimeInterval(500L, TimeUnit.MILLISECONDS));
+    interceptor.setThrottleMode(ThrottlingInterceptor.ThrottleMode.TOKEN_BUCKET);
+    return LifecycleHelper.initAndStart(interceptor);
+  }
+
   /**
    * Test class that simply whacks messages into the interceptor
    * @author Aaron
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+  @Test
+  public void testReserve_Burst() throws Exception {
+    TokenBucket bucket = new TokenBucket(5, 1, TimeUnit.MINUTES);
+    assertEquals(5, bucket.availablePermits());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, bucket.reserve());
+    }
+    assertEquals(0, bucket.availablePermits());
+    // The 6th has to wait for the next permit, which is 12 seconds away; the 7th is 12 seconds after that.
+    long wait = bucket.reserve();
+    assertTrue(wait > TimeUnit.SECONDS.toNanos(11) && wait <= TimeUnit.SECONDS.toNanos(12));
+    assertTrue(bucket.reserve() > TimeUnit.SECONDS.toNanos(23));
+  }
+
+  @Test
+  public void testAcquire_Refills() throws Exception {
+    TokenBucket bucket = new TokenBucket(2, 100, TimeUnit.MILLISECONDS);
+    assertEquals(0, bucket.acquire());
+    assertEquals(0, bucket.acquire());
+    long start = System.nanoTime();
+    assertTrue(bucket.acquire() > 0);
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    Thread.sleep(150);
+    assertEquals(2, bucket.availablePermits());
+  }
+
+  @Test
+  public void testAcquire_Interrupted() throws Exception {
+    TokenBucket bucket = new TokenBucket(1, 1, TimeUnit.HOURS);
+    bucket.acquire();
+    Thread.currentThread().interrupt();
+    try {
+      long start = System.nanoTime();
+      bucket.acquire();
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    } finally {
+      Thread.interrupted();
+    }
+    // The interrupted acquire gave its permit back, so the next one is only an hour away, not two.
+    assertTrue(bucket.reserve() <= TimeUnit.HOURS.toNanos(1));
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    String name = getClass().getSimpleName();
+    Object o1 = new Object();
+    Object o2 = new Object();
+    TokenBucket b1 = TokenBucket.register(name, o1, 10, 1, TimeUnit.SECONDS);
+    assertSame(b1, TokenBucket.register(name, o2, 10, 1, TimeUnit.SECONDS));
+    try {
+      TokenBucket.register(name, new Object(), 20, 1, TimeUnit.SECONDS);
+      fail();
+    } catch (IllegalStateException expected) {
+
+    }
+    TokenBucket.release(name, o1);
+    assertTrue(TokenBucket.exists(name));
+    TokenBucket.release(name, o2);
+    assertFalse(TokenBucket.exists(name));
+    // Nothing is using the old bucket, so the configuration can change.
+    TokenBucket b2 = TokenBucket.register(name, o1, 20, 1, TimeUnit.SECONDS);
+    assertNotSame(b1, b2);
+    assertEquals(20, b2.permits());
+    TokenBucket.release(name, o1);
+    assertFalse(TokenBucket.exists(name));
+  }
+}
@@ -24,7 +24,12 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import javax.jms.Destination;
 import javax.jms.Message;
@@ -562,6 +567,156 @@ public abstract class BasicJmsProducerCase extends JmsProducerCase {
     }
   }
 
+  @Test
+  public void testPooledSession() throws Exception {
+    // This would be best, but we can't mix Junit3 with Junit4 assumptions.
+    // Assume.assumeTrue(JmsConfig.jmsTestsEnabled());
+    if (!JmsConfig.jmsTestsEnabled()) {
+      return;
+    }
+    EmbeddedActiveMq activeMqBroker = new EmbeddedActiveMq();
+    JmsConsumerImpl consumer = createConsumer(new ConfiguredConsumeDestination(getName()));
+    consumer.setAcknowledgeMode("AUTO_ACKNOWLEDGE");
+    StandaloneConsumer standaloneConsumer = new StandaloneConsumer(activeMqBroker.getJmsConnection(), consumer);
+    MockMessageListener jms = new MockMessageListener();
+    DefinedJmsProducer producer = createProducer(new ConfiguredProduceDestination(getName()));
+    PooledProducerSessionFactory psf = new PooledProducerSessionFactory();
+    producer.setSessionFactory(psf);
+    standaloneConsumer.registerAdaptrisMessageListener(jms);
+    StandaloneProducer standaloneProducer = new StandaloneProducer(activeMqBroker.getJmsConnection(), producer);
+    try {
+      activeMqBroker.start();
+      start(standaloneConsumer, standaloneProducer);
+      standaloneProducer.doService(createMessage());
+      standaloneProducer.doService(createMessage());
+      standaloneProducer.doService(createMessage());
+      // Every produce should have handed the same session back.
+      assertEquals(0, psf.numActive());
+      assertEquals(1, psf.numIdle());
+      assertNull(producer.currentProducerSession());
+      waitForMessages(jms, 3);
+      assertMessages(jms, 3);
+    }
+    finally {
+      stop(standaloneProducer, standaloneConsumer);
+      activeMqBroker.destroy();
+    }
+  }
+
+  @Test
+  public void testPooledSession_ConcurrentProduce() throws Exception {
+    // This would be best, but we can't mix Junit3 with Junit4 assumptions.
+    // Assume.assumeTrue(JmsConfig.jmsTestsEnabled());
+    if (!JmsConfig.jmsTestsEnabled()) {
+      return;
+    }
+    int threads = 4;
+    int msgsPerThread = 10;
+    EmbeddedActiveMq activeMqBroker = new EmbeddedActiveMq();
+    JmsConsumerImpl consumer = createConsumer(new ConfiguredConsumeDestination(getName()));
+    consumer.setAcknowledgeMode("AUTO_ACKNOWLEDGE");
+    StandaloneConsumer standaloneConsumer = new StandaloneConsumer(activeMqBroker.getJmsConnection(), consumer);
+    MockMessageListener jms = new MockMessageListener();
+    final DefinedJmsProducer producer = createProducer(new ConfiguredProduceDestination(getName()));
+    PooledProducerSessionFactory psf = new PooledProducerSessionFactory(2);
+    producer.setSessionFactory(psf);
+    standaloneConsumer.registerAdaptrisMessageListener(jms);
+    StandaloneProducer standaloneProducer = new StandaloneProducer(activeMqBroker.getJmsConnection(), producer);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      activeMqBroker.start();
+      start(standaloneConsumer, standaloneProducer);
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> {
+          for (int j = 0; j < msgsPerThread; j++) {
+            producer.produce(createMessage());
+          }
+          return null;
+        }));
+      }
+      for (Future<?> f : results) {
+        f.get(30, TimeUnit.SECONDS);
+      }
+      assertEquals(0, psf.numActive());
+      assertTrue(psf.numIdle() <= 2);
+      waitForMessages(jms, threads * msgsPerThread);
+      assertMessages(jms, threads * msgsPerThread);
+    }
+    finally {
+      executor.shutdownNow();
+      stop(standaloneProducer, standaloneConsumer);
+      activeMqBroker.destroy();
+    }
+  }
+
+  @Test
+  public void testPooledSession_ConnectionRestarted() throws Exception {
+    // This would be best, but we can't mix Junit3 with Junit4 assumptions.
+    // Assume.assumeTrue(JmsConfig.jmsTestsEnabled());
+    if (!JmsConfig.jmsTestsEnabled()) {
+      return;
+    }
+    EmbeddedActiveMq activeMqBroker = new EmbeddedActiveMq();
+    JmsConsumerImpl consumer = createConsumer(new ConfiguredConsumeDestination(getName()));
+    consumer.setAcknowledgeMode("AUTO_ACKNOWLEDGE");
+    StandaloneConsumer standaloneConsumer = new StandaloneConsumer(activeMqBroker.getJmsConnection(), consumer);
+    MockMessageListener jms = new MockMessageListener();
+    DefinedJmsProducer producer = createProducer(new ConfiguredProduceDestination(getName()));
+    PooledProducerSessionFactory psf = new PooledProducerSessionFactory();
+    producer.setSessionFactory(psf);
+    standaloneConsumer.registerAdaptrisMessageListener(jms);
+    JmsConnection produceConnection = activeMqBroker.getJmsConnection();
+    StandaloneProducer standaloneProducer = new StandaloneProducer(produceConnection, producer);
+    try {
+      activeMqBroker.start();
+      start(standaloneConsumer, standaloneProducer);
+      standaloneProducer.doService(createMessage());
+      assertEquals(1, psf.numIdle());
+      // The idle session belongs to the old connection, so it should be discarded when borrowed.
+      stop(produceConnection);
+      start(produceConnection);
+      standaloneProducer.doService(createMessage());
+      assertEquals(1, psf.numIdle());
+      waitForMessages(jms, 2);
+      assertMessages(jms, 2);
+    }
+    finally {
+      stop(standaloneProducer, standaloneConsumer);
+      activeMqBroker.destroy();
+    }
+  }
+
+  @Test
+  public void testPooledSession_Request() throws Exception {
+    // This would be best, but we can't mix Junit3 with Junit4 assumptions.
+    // Assume.assumeTrue(JmsConfig.jmsTestsEnabled());
+    if (!JmsConfig.jmsTestsEnabled()) {
+      return;
+    }
+    EmbeddedActiveMq activeMqBroker = new EmbeddedActiveMq();
+    DefinedJmsProducer producer = createProducer(new ConfiguredProduceDestination(getName()));
+    PooledProducerSessionFactory psf = new PooledProducerSessionFactory();
+    producer.setSessionFactory(psf);
+    StandaloneRequestor requestor = new StandaloneRequestor(activeMqBroker.getJmsConnection(), producer,
+        new TimeInterval(1L, TimeUnit.SECONDS));
+    Loopback echo = createLoopback(activeMqBroker, getName());
+    try {
+      activeMqBroker.start();
+      echo.start();
+      start(requestor);
+      AdaptrisMessage msg = createMessage();
+      requestor.doService(msg);
+      assertEquals(DEFAULT_PAYLOAD.toUpperCase(), msg.getContent());
+      assertEquals(0, psf.numActive());
+    }
+    finally {
+      stop(requestor);
+      echo.stop();
+      activeMqBroker.destroy();
+    }
+  }
+
   protected static abstract class Loopback implements MessageListener {
     protected String listenQueueOrTopic;
     protected EmbeddedActiveMq broker;
@@ -1,12 +1,19 @@
 package com.adaptris.core.jms;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import java.util.concurrent.TimeUnit;
 import javax.jms.CompletionListener;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -15,6 +22,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.slf4j.LoggerFactory;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.ConfiguredProduceDestination;
 import com.adaptris.core.CoreException;
@@ -27,6 +35,7 @@ import com.adaptris.core.jms.activemq.EmbeddedArtemis;
 import com.adaptris.core.jms.jndi.StandardJndiImplementation;
 import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.TimeInterval;
 
 public class JmsAsyncProducerTest extends JmsProducerExample {
   
@@ -41,6 +50,8 @@ public class JmsAsyncProducerTest extends JmsProducerExample {
   @Mock private MessageProducer mockMessageProducer;
   @Mock private JmsDestination mockJmsDestination;
   @Mock private StandardProcessingExceptionHandler mockExceptionHandler;
+  @Mock private AcknowledgementHandler mockAcknowledgementHandler;
+  @Mock private JmsActorConfig mockActor;
   
   
   @Before
@@ -59,6 +70,9 @@ public class JmsAsyncProducerTest extends JmsProducerExample {
       .thenReturn(mockSession);
     when(mockSession.getProducer())
       .thenReturn(mockMessageProducer);
+    doCallRealMethod().when(mockSession).send(any(), any(), any(CompletionListener.class));
+    doCallRealMethod().when(mockSession).send(any(), any(), any(int.class), any(int.class), any(long.class),
+        any(CompletionListener.class));
     when(mockTranslator.translate(any(AdaptrisMessage.class)))
       .thenReturn(mockMessage);
     
@@ -68,7 +82,8 @@ public class JmsAsyncProducerTest extends JmsProducerExample {
     .thenReturn(1);
     when(mockJmsDestination.timeToLive())
     .thenReturn(1l);
-  
+    when(mockActor.currentLogger())
+      .thenReturn(LoggerFactory.getLogger(JmsAsyncProducerTest.class));
   }
 
   @Override
@@ -104,6 +119,17 @@ public class JmsAsyncProducerTest extends JmsProducerExample {
     verify(mockMessageProducer).send(any(), eq(mockMessage), any(JmsAsyncProducer.class));
   }
 
+  @Test
+  public void testSendViaProducerSession() throws Exception {
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    producer.setPerMessageProperties(false);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    // So that a session can use a producer for the destination, rather than the anonymous producer.
+    verify(mockSession).send(any(), eq(mockMessage), any(int.class), any(int.class), any(long.class),
+        any(CompletionListener.class));
+    verify(mockSession).send(any(), eq(mockMessage), any(CompletionListener.class));
+  }
+
   @Test
   public void testCaptureOutgoingMessageProperties() throws Exception {
     producer.setCaptureOutgoingMessageDetails(true);
@@ -161,6 +187,246 @@ public class JmsAsyncProducerTest extends JmsProducerExample {
     verify(mockExceptionHandler, times(0)).handleProcessingException(any(AdaptrisMessage.class));
   }
 
+  @Test
+  public void testSetMaxInFlight() throws Exception {
+    assertNull(producer.getMaxInFlight());
+    assertEquals(100, producer.maxInFlight());
+    producer.setMaxInFlight(10);
+    assertEquals(Integer.valueOf(10), producer.getMaxInFlight());
+    assertEquals(10, producer.maxInFlight());
+    producer.setMaxInFlight(0);
+    assertEquals(1, producer.maxInFlight());
+  }
+
+  @Test
+  public void testSetCompletionTimeout() throws Exception {
+    assertNull(producer.getCompletionTimeout());
+    assertEquals(TimeUnit.MINUTES.toMillis(1), producer.completionTimeoutMs());
+    producer.setCompletionTimeout(new TimeInterval(10L, TimeUnit.SECONDS));
+    assertEquals(TimeUnit.SECONDS.toMillis(10), producer.completionTimeoutMs());
+  }
+
+  @Test
+  public void testMaxInFlight() throws Exception {
+    producer.setMaxInFlight(1);
+    producer.setCompletionTimeout(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    LifecycleHelper.init(producer);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    assertEquals(1, producer.inFlight());
+    try {
+      producer.produce(adaptrisMessage, mockJmsDestination);
+      fail("In-flight window should be full");
+    } catch (CoreException expected) {
+
+    }
+    producer.onCompletion(mockMessage);
+    assertEquals(0, producer.inFlight());
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    assertEquals(1, producer.inFlight());
+    verify(mockMessageProducer, times(2)).send(any(), eq(mockMessage), any(int.class), any(int.class), any(long.class),
+        any(CompletionListener.class));
+  }
+
+  @Test
+  public void testMaxInFlight_CompletionNeverInvoked() throws Exception {
+    producer.setMaxInFlight(1);
+    producer.setCompletionTimeout(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    LifecycleHelper.init(producer);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    assertEquals(1, producer.inFlight());
+    Thread.sleep(150L);
+    // The first send has expired, so it has failed, and there is room for this one.
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    assertEquals(1, producer.inFlight());
+    verify(mockExceptionHandler).handleProcessingException(any());
+  }
+
+  @Test
+  public void testDeferredAcknowledgement_CompletionNeverInvoked() throws Exception {
+    producer.setMaxInFlight(1);
+    producer.setCompletionTimeout(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    LifecycleHelper.init(producer);
+    Message m1 = mock(Message.class);
+    Message m2 = mock(Message.class);
+    when(mockTranslator.translate(any(AdaptrisMessage.class))).thenReturn(m1, m2);
+    AsyncAcknowledgementHandler a1 = produceWithAcknowledgement();
+    Thread.sleep(150L);
+    AsyncAcknowledgementHandler a2 = produceWithAcknowledgement();
+    assertEquals(0, a1.outstanding());
+    assertNotNull(a1.awaitCompletion());
+    assertEquals(1, a2.outstanding());
+    assertEquals(1, producer.inFlight());
+    // A late completion for the expired send is ignored.
+    producer.onCompletion(m1);
+    assertEquals(1, producer.inFlight());
+    producer.onCompletion(m2);
+    assertNull(a2.awaitCompletion());
+    assertEquals(0, producer.inFlight());
+    verify(mockExceptionHandler, never()).handleProcessingException(any(AdaptrisMessage.class));
+  }
+
+  @Test
+  public void testDeferredAcknowledgement_FailureAfterExpiry() throws Exception {
+    producer.setMaxInFlight(1);
+    producer.setCompletionTimeout(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    LifecycleHelper.init(producer);
+    Message m1 = mock(Message.class);
+    Message m2 = mock(Message.class);
+    when(mockTranslator.translate(any(AdaptrisMessage.class))).thenReturn(m1, m2);
+    AsyncAcknowledgementHandler a1 = produceWithAcknowledgement();
+    Thread.sleep(150L);
+    AsyncAcknowledgementHandler a2 = produceWithAcknowledgement();
+    assertNotNull(a1.awaitCompletion());
+    // A late failure for the expired send is ignored; it has already been failed.
+    producer.onException(m1, new Exception());
+    assertEquals(1, producer.inFlight());
+    assertEquals(1, a2.outstanding());
+    verify(mockExceptionHandler, never()).handleProcessingException(any());
+  }
+
+  @Test
+  public void testMaxInFlight_FailureAfterExpiry() throws Exception {
+    producer.setMaxInFlight(1);
+    producer.setCompletionTimeout(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    LifecycleHelper.init(producer);
+    Message m1 = mock(Message.class);
+    Message m2 = mock(Message.class);
+    when(mockTranslator.translate(any(AdaptrisMessage.class))).thenReturn(m1, m2);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    Thread.sleep(150L);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    producer.onException(m1, new Exception());
+    assertEquals(1, producer.inFlight());
+    // Only the expiry runs the error handler.
+    verify(mockExceptionHandler, times(1)).handleProcessingException(any());
+  }
+
+  @Test
+  public void testDeferredAcknowledgement() throws Exception {
+    AsyncAcknowledgementHandler ack = new AsyncAcknowledgementHandler(mockAcknowledgementHandler);
+    adaptrisMessage.addObjectHeader(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER, ack);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    assertEquals(1, ack.outstanding());
+    producer.onCompletion(mockMessage);
+    assertEquals(0, ack.outstanding());
+    ack.acknowledgeMessage(mockActor, mockMessage);
+    verify(mockAcknowledgementHandler).acknowledgeMessage(mockActor, mockMessage);
+    verify(mockAcknowledgementHandler, never()).rollbackMessage(any(), any());
+  }
+
+  @Test
+  public void testDeferredAcknowledgement_SendFails() throws Exception {
+    AsyncAcknowledgementHandler ack = new AsyncAcknowledgementHandler(mockAcknowledgementHandler);
+    adaptrisMessage.addObjectHeader(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER, ack);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    producer.onException(mockMessage, new Exception());
+    ack.acknowledgeMessage(mockActor, mockMessage);
+    verify(mockAcknowledgementHandler).rollbackMessage(mockActor, mockMessage);
+    verify(mockAcknowledgementHandler, never()).acknowledgeMessage(any(), any());
+    // The source message is redelivered, so no need to use the error handler.
+    verify(mockExceptionHandler, never()).handleProcessingException(any(AdaptrisMessage.class));
+  }
+
+  @Test
+  public void testDeferredAcknowledgement_ProduceFails() throws Exception {
+    doThrow(new JMSException("expected")).when(mockMessageProducer).send(any(), eq(mockMessage), any(int.class), any(int.class),
+        any(long.class), any(CompletionListener.class));
+    AsyncAcknowledgementHandler ack = new AsyncAcknowledgementHandler(mockAcknowledgementHandler);
+    adaptrisMessage.addObjectHeader(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER, ack);
+    try {
+      producer.produce(adaptrisMessage, mockJmsDestination);
+      fail();
+    } catch (CoreException expected) {
+
+    }
+    assertEquals(0, ack.outstanding());
+    assertEquals(0, producer.inFlight());
+    assertNotNull(ack.awaitCompletion());
+  }
+
+  @Test
+  public void testDeferredAcknowledgement_Timeout() throws Exception {
+    producer.setCompletionTimeout(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    AsyncAcknowledgementHandler ack = new AsyncAcknowledgementHandler(mockAcknowledgementHandler);
+    adaptrisMessage.addObjectHeader(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER, ack);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    ack.acknowledgeMessage(mockActor, mockMessage);
+    verify(mockAcknowledgementHandler).rollbackMessage(mockActor, mockMessage);
+    verify(mockAcknowledgementHandler, never()).acknowledgeMessage(any(), any());
+  }
+
+  @Test
+  public void testAlreadyAcknowledged() throws Exception {
+    AsyncAcknowledgementHandler ack = new AsyncAcknowledgementHandler(mockAcknowledgementHandler);
+    ack.acknowledgeMessage(mockActor, mockMessage);
+    adaptrisMessage.addObjectHeader(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER, ack);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    assertEquals(0, ack.outstanding());
+    producer.onException(mockMessage, new Exception());
+    verify(mockExceptionHandler).handleProcessingException(any());
+  }
+
+  @Test
+  public void testCompletionsRetiredInOrder() throws Exception {
+    Message m1 = mock(Message.class);
+    Message m2 = mock(Message.class);
+    Message m3 = mock(Message.class);
+    when(mockTranslator.translate(any(AdaptrisMessage.class))).thenReturn(m1, m2, m3);
+    AsyncAcknowledgementHandler a1 = produceWithAcknowledgement();
+    AsyncAcknowledgementHandler a2 = produceWithAcknowledgement();
+    AsyncAcknowledgementHandler a3 = produceWithAcknowledgement();
+
+    producer.onCompletion(m2);
+    // m1 hasn't completed yet.
+    assertEquals(1, a2.outstanding());
+    producer.onException(m1, new Exception());
+    // Both fail, since m2 was sent after m1.
+    assertEquals(0, a1.outstanding());
+    assertEquals(0, a2.outstanding());
+    assertEquals(1, a3.outstanding());
+    assertNotNull(a1.awaitCompletion());
+    assertNotNull(a2.awaitCompletion());
+    producer.onCompletion(m3);
+    assertNotNull(a3.awaitCompletion());
+    assertEquals(0, producer.inFlight());
+    verify(mockExceptionHandler, never()).handleProcessingException(any(AdaptrisMessage.class));
+  }
+
+  @Test
+  public void testCompletionsRetiredInOrder_Success() throws Exception {
+    Message m1 = mock(Message.class);
+    Message m2 = mock(Message.class);
+    when(mockTranslator.translate(any(AdaptrisMessage.class))).thenReturn(m1, m2);
+    AsyncAcknowledgementHandler a1 = produceWithAcknowledgement();
+    AsyncAcknowledgementHandler a2 = produceWithAcknowledgement();
+    producer.onCompletion(m2);
+    assertEquals(1, a2.outstanding());
+    producer.onCompletion(m1);
+    assertEquals(0, a1.outstanding());
+    assertEquals(0, a2.outstanding());
+    assertNull(a1.awaitCompletion());
+    assertNull(a2.awaitCompletion());
+  }
+
+  @Test
+  public void testStop_WaitsForCompletion() throws Exception {
+    producer.setCompletionTimeout(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    LifecycleHelper.init(producer);
+    producer.produce(adaptrisMessage, mockJmsDestination);
+    LifecycleHelper.stop(producer);
+    assertEquals(1, producer.inFlight());
+    producer.onCompletion(mockMessage);
+    assertEquals(0, producer.inFlight());
+  }
+
+  private AsyncAcknowledgementHandler produceWithAcknowledgement() throws Exception {
+    AsyncAcknowledgementHandler ack = new AsyncAcknowledgementHandler(mockAcknowledgementHandler);
+    AdaptrisMessage msg = DefaultMessageFactory.getDefaultInstance().newMessage();
+    msg.addObjectHeader(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER, ack);
+    producer.produce(msg, mockJmsDestination);
+    return ack;
+  }
+
   @Test
   public void testEmbeddedSuccessHandler() throws Exception {
     // This would be best, but we can't mix Junit3 with Junit4 assumptions.
@@ -194,6 +460,42 @@ public class JmsAsyncProducerTest extends JmsProducerExample {
     verify(mockExceptionHandler, times(0)).handleProcessingException(any(AdaptrisMessage.class));
   }
 
+  @Test
+  public void testEmbeddedPooledSession() throws Exception {
+    // This would be best, but we can't mix Junit3 with Junit4 assumptions.
+    // Assume.assumeTrue(JmsConfig.jmsTestsEnabled());
+    if (!JmsConfig.jmsTestsEnabled()) {
+      return;
+    }
+    EmbeddedArtemis broker = new EmbeddedArtemis();
+    JmsAsyncProducer producer = new JmsAsyncProducer();
+    producer.setAsyncMessageErrorHandler(mockExceptionHandler);
+    PooledProducerSessionFactory psf = new PooledProducerSessionFactory();
+    producer.setSessionFactory(psf);
+    producer.setDestination(new ConfiguredProduceDestination("jms:topic:myTopicName?priority=4"));
+    StandaloneProducer standaloneProducer = new StandaloneProducer();
+
+    try {
+      broker.start();
+
+      standaloneProducer.setConnection(broker.getJmsConnection());
+      standaloneProducer.setProducer(producer);
+
+      LifecycleHelper.initAndStart(standaloneProducer);
+
+      for (int i = 0; i < 3; i++) {
+        standaloneProducer.doService(DefaultMessageFactory.getDefaultInstance().newMessage("Some message content"));
+      }
+      assertEquals(0, psf.numActive());
+      assertEquals(1, psf.numIdle());
+    } finally {
+      LifecycleHelper.stopAndClose(standaloneProducer);
+      broker.destroy();
+    }
+    assertEquals(0, producer.inFlight());
+    verify(mockExceptionHandler, times(0)).handleProcessingException(any(AdaptrisMessage.class));
+  }
+
   @Test
   public void testEmbeddedJmsException() throws Exception {
     // This would be best, but we can't mix Junit3 with Junit4 assumptions.
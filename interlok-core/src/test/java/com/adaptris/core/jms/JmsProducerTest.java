@@ -851,6 +851,46 @@ public class JmsProducerTest extends JmsProducerCase {
     }
   }
 
+  @Test
+  public void testPooledSession() throws Exception {
+    String rfc6167 = "jms:queue:" + getName() + "";
+    // This would be best, but we can't mix Junit3 with Junit4 assumptions.
+    // Assume.assumeTrue(JmsConfig.jmsTestsEnabled());
+    if (!JmsConfig.jmsTestsEnabled()) {
+      return;
+    }
+    EmbeddedActiveMq activeMqBroker = new EmbeddedActiveMq();
+    JmsConsumerImpl consumer = createConsumer(new ConfiguredConsumeDestination(getName()));
+    consumer.setAcknowledgeMode("AUTO_ACKNOWLEDGE");
+    StandaloneConsumer standaloneConsumer =
+        new StandaloneConsumer(activeMqBroker.getJmsConnection(), consumer);
+    MockMessageListener jms = new MockMessageListener();
+    JmsProducer producer = createProducer(new ConfiguredProduceDestination(rfc6167));
+    PooledProducerSessionFactory psf = new PooledProducerSessionFactory();
+    producer.setSessionFactory(psf);
+
+    standaloneConsumer.registerAdaptrisMessageListener(jms);
+
+    StandaloneProducer standaloneProducer =
+        new StandaloneProducer(activeMqBroker.getJmsConnection(), producer);
+    try {
+      activeMqBroker.start();
+      start(standaloneConsumer, standaloneProducer);
+
+      standaloneProducer.doService(createMessage());
+      standaloneProducer.doService(createMessage());
+      standaloneProducer.doService(createMessage());
+      assertEquals(0, psf.numActive());
+      assertEquals(1, psf.numIdle());
+      waitForMessages(jms, 3);
+      assertMessages(jms, 3);
+    } finally {
+      stop(standaloneProducer, standaloneConsumer);
+
+      activeMqBroker.destroy();
+    }
+  }
+
   @Test
   public void testMultipleRequestorWithSession() throws Exception {
     // This would be best, but we can't mix Junit3 with Junit4 assumptions.
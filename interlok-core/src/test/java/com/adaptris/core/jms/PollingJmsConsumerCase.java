@@ -47,4 +47,31 @@ public abstract class PollingJmsConsumerCase extends JmsConsumerCase {
     assertEquals(2000, consumer.receiveTimeout());
 
   }
+
+  @Test
+  public void testSetMaxBatchSize() throws Exception {
+    JmsPollingConsumerImpl consumer = createConsumer();
+    assertNull(consumer.getMaxBatchSize());
+    assertEquals(1, consumer.maxBatchSize());
+    consumer.setMaxBatchSize(10);
+    assertEquals(Integer.valueOf(10), consumer.getMaxBatchSize());
+    assertEquals(10, consumer.maxBatchSize());
+    consumer.setMaxBatchSize(-1);
+    assertEquals(1, consumer.maxBatchSize());
+    consumer.setMaxBatchSize(null);
+    assertEquals(1, consumer.maxBatchSize());
+  }
+
+  @Test
+  public void testSetBatchWindow() throws Exception {
+    JmsPollingConsumerImpl consumer = createConsumer();
+    assertNull(consumer.getBatchWindow());
+    assertEquals(100, consumer.batchWindow());
+    TimeInterval interval = new TimeInterval(1L, TimeUnit.SECONDS);
+    consumer.setBatchWindow(interval);
+    assertEquals(interval, consumer.getBatchWindow());
+    assertEquals(1000, consumer.batchWindow());
+    consumer.setBatchWindow(null);
+    assertEquals(100, consumer.batchWindow());
+  }
 }
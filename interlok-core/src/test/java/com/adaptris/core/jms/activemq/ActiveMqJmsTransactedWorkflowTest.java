@@ -22,6 +22,7 @@ import static com.adaptris.core.BaseCase.waitForMessages;
 import static com.adaptris.core.jms.JmsConfig.DEFAULT_PAYLOAD;
 import static com.adaptris.core.jms.activemq.EmbeddedActiveMq.createSafeUniqueId;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -49,7 +50,9 @@ import com.adaptris.core.ServiceList;
 import com.adaptris.core.StandaloneProducer;
 import com.adaptris.core.StandardProcessingExceptionHandler;
 import com.adaptris.core.Workflow;
+import com.adaptris.core.jms.AsyncAcknowledgementHandler;
 import com.adaptris.core.jms.JmsConnection;
+import com.adaptris.core.jms.JmsConstants;
 import com.adaptris.core.jms.JmsConsumerImpl;
 import com.adaptris.core.jms.JmsPollingConsumerImpl;
 import com.adaptris.core.jms.JmsTransactedWorkflow;
@@ -566,6 +569,89 @@ public class ActiveMqJmsTransactedWorkflowTest {
     activeMqBroker.destroy();
   }
 
+  @Test
+  public void testBatchRolledBackUsingQueuePollingConsumer() throws Exception {
+
+    int msgCount = 10;
+    EmbeddedActiveMq activeMqBroker = new EmbeddedActiveMq();
+    String destination = createSafeUniqueId(new Object());
+
+    JmsTransactedWorkflow workflow = createPollingWorkflow(activeMqBroker, "testBatchRolledBackUsingQueuePollingConsumer",
+        destination);
+    JmsPollingConsumerImpl consumer = (JmsPollingConsumerImpl) workflow.getConsumer();
+    consumer.setMaxBatchSize(5);
+    consumer.setBatchWindow(new TimeInterval(1L, TimeUnit.SECONDS));
+    Channel channel = createStartableChannel(workflow);
+    workflow.getServiceCollection().addService(new FailOnce("2"));
+    try {
+      activeMqBroker.start();
+      StandaloneProducer sender = new StandaloneProducer(activeMqBroker.getJmsConnection(new BasicActiveMqImplementation(), true),
+          new PtpProducer(new ConfiguredProduceDestination(destination)));
+      start(sender);
+      for (int i = 0; i < msgCount; i++) {
+        sender.doService(AdaptrisMessageFactory.getDefaultInstance().newMessage("" + i));
+      }
+      stop(sender);
+      channel.requestStart();
+      // The first batch is 0-4; 2 fails, so the whole batch is rolled back, and 0 + 1 are processed again.
+      waitForMessages((MockMessageProducer) workflow.getProducer(), msgCount + 2);
+      List<AdaptrisMessage> receivedList = ((MockMessageProducer) workflow.getProducer()).getMessages();
+      assertEquals(msgCount + 2, receivedList.size());
+      assertEquals("0", receivedList.get(0).getContent());
+      assertEquals("1", receivedList.get(1).getContent());
+      for (int i = 0; i < msgCount; i++) {
+        assertEquals(String.valueOf(i), receivedList.get(i + 2).getContent());
+      }
+    }
+    finally {
+      channel.requestClose();
+    }
+    assertEquals(0, activeMqBroker.messagesOnQueue(destination));
+    activeMqBroker.destroy();
+  }
+
+  @Test
+  public void testBatchRolledBackWhenAsyncSendFails() throws Exception {
+
+    int msgCount = 10;
+    EmbeddedActiveMq activeMqBroker = new EmbeddedActiveMq();
+    String destination = createSafeUniqueId(new Object());
+
+    JmsTransactedWorkflow workflow = createPollingWorkflow(activeMqBroker, "testBatchRolledBackWhenAsyncSendFails",
+        destination);
+    JmsPollingConsumerImpl consumer = (JmsPollingConsumerImpl) workflow.getConsumer();
+    consumer.setMaxBatchSize(5);
+    consumer.setBatchWindow(new TimeInterval(1L, TimeUnit.SECONDS));
+    Channel channel = createStartableChannel(workflow);
+    workflow.getServiceCollection().addService(new AsyncSendFailsOnce("2"));
+    try {
+      activeMqBroker.start();
+      StandaloneProducer sender = new StandaloneProducer(activeMqBroker.getJmsConnection(new BasicActiveMqImplementation(), true),
+          new PtpProducer(new ConfiguredProduceDestination(destination)));
+      start(sender);
+      for (int i = 0; i < msgCount; i++) {
+        sender.doService(AdaptrisMessageFactory.getDefaultInstance().newMessage("" + i));
+      }
+      stop(sender);
+      channel.requestStart();
+      // The first batch is 0-4; the workflow succeeds for all of them, but the async send for 2 fails, so the batch is rolled back.
+      waitForMessages((MockMessageProducer) workflow.getProducer(), msgCount + 5);
+      List<AdaptrisMessage> receivedList = ((MockMessageProducer) workflow.getProducer()).getMessages();
+      assertEquals(msgCount + 5, receivedList.size());
+      for (int i = 0; i < 5; i++) {
+        assertEquals(String.valueOf(i), receivedList.get(i).getContent());
+      }
+      for (int i = 0; i < msgCount; i++) {
+        assertEquals(String.valueOf(i), receivedList.get(i + 5).getContent());
+      }
+    }
+    finally {
+      channel.requestClose();
+    }
+    assertEquals(0, activeMqBroker.messagesOnQueue(destination));
+    activeMqBroker.destroy();
+  }
+
   private Channel createStartableChannel(Workflow w) throws Exception {
     Channel channel = new MockChannel();
     channel.getWorkflowList().add(w);
@@ -625,6 +711,78 @@ public class ActiveMqJmsTransactedWorkflowTest {
     stop(sender);
   }
 
+  // Behaves like an asynchronous producer, completing each send on another thread.
+  private class AsyncSendFailsOnce extends ServiceImp {
+    private final String payload;
+    private boolean failed = false;
+
+    AsyncSendFailsOnce(String payload) {
+      this.payload = payload;
+    }
+
+    @Override
+    public void doService(AdaptrisMessage msg) throws ServiceException {
+      AsyncAcknowledgementHandler ack = (AsyncAcknowledgementHandler) msg.getObjectHeaders()
+          .get(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER);
+      assertTrue(ack.register(TimeUnit.SECONDS.toMillis(10)));
+      boolean fail = !failed && payload.equals(msg.getContent());
+      failed |= fail;
+      new Thread(() -> {
+        if (fail) {
+          ack.onException(null, new Exception(this.getClass().getSimpleName() + " failure on " + payload));
+        }
+        else {
+          ack.onCompletion(null);
+        }
+      }).start();
+    }
+
+    @Override
+    protected void initService() throws CoreException {
+
+    }
+
+    @Override
+    protected void closeService() {
+
+    }
+
+    @Override
+    public void prepare() throws CoreException {}
+
+  }
+
+  private class FailOnce extends ServiceImp {
+    private final String payload;
+    private boolean failed = false;
+
+    FailOnce(String payload) {
+      this.payload = payload;
+    }
+
+    @Override
+    public void doService(AdaptrisMessage msg) throws ServiceException {
+      if (!failed && payload.equals(msg.getContent())) {
+        failed = true;
+        throw new ServiceException(this.getClass().getSimpleName() + " failure on " + payload);
+      }
+    }
+
+    @Override
+    protected void initService() throws CoreException {
+
+    }
+
+    @Override
+    protected void closeService() {
+
+    }
+
+    @Override
+    public void prepare() throws CoreException {}
+
+  }
+
   private class RandomlyFail extends ServiceImp {
     @Override
     public void doService(AdaptrisMessage msg) throws ServiceException {
@@ -21,16 +21,27 @@ import static com.adaptris.core.BaseCase.waitForMessages;
 import static com.adaptris.core.jms.JmsProducerCase.assertMessages;
 import static com.adaptris.core.jms.JmsProducerCase.createMessage;
 import static com.adaptris.core.jms.activemq.ActiveMqPasPollingConsumerTest.shutdownQuietly;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
 import com.adaptris.core.ConfiguredConsumeDestination;
 import com.adaptris.core.ConfiguredProduceDestination;
 import com.adaptris.core.FixedIntervalPoller;
 import com.adaptris.core.StandaloneConsumer;
 import com.adaptris.core.StandaloneProducer;
+import com.adaptris.core.jms.AsyncAcknowledgementHandler;
 import com.adaptris.core.jms.JmsConnection;
+import com.adaptris.core.jms.JmsConstants;
 import com.adaptris.core.jms.PtpPollingConsumer;
 import com.adaptris.core.jms.PtpProducer;
 import com.adaptris.core.stubs.MockMessageListener;
@@ -63,6 +74,112 @@ public class ActiveMqPtpPollingConsumerTest {
       }
       waitForMessages(jms, msgCount);
       assertMessages(jms, msgCount);
+      for (AdaptrisMessage m : jms.getMessages()) {
+        assertTrue(m.getObjectHeaders().get(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER) instanceof AsyncAcknowledgementHandler);
+      }
+    }
+    finally {
+      shutdownQuietly(sender, receiver, broker);
+    }
+  }
+
+  @Test
+  public void testProduceConsume_AutoAcknowledge() throws Exception {
+
+    int msgCount = 5;
+    final EmbeddedActiveMq broker = new EmbeddedActiveMq();
+    final StandaloneProducer sender = new StandaloneProducer(broker.getJmsConnection(), new PtpProducer(
+            new ConfiguredProduceDestination(testName.getMethodName())));
+    final StandaloneConsumer receiver =
+        createConsumer(broker, "testProduceConsume_AutoAcknowledge", testName.getMethodName());
+    ((PtpPollingConsumer) receiver.getConsumer()).setAcknowledgeMode("AUTO_ACKNOWLEDGE");
+    try {
+      broker.start();
+      MockMessageListener jms = new MockMessageListener();
+      receiver.registerAdaptrisMessageListener(jms);
+      start(receiver);
+      start(sender);
+      for (int i = 0; i < msgCount; i++) {
+        sender.doService(createMessage());
+      }
+      waitForMessages(jms, msgCount);
+      assertMessages(jms, msgCount);
+      // The messages can't be rolled back, so asynchronous send failures must go to the async-message-error-handler.
+      for (AdaptrisMessage m : jms.getMessages()) {
+        assertFalse(m.getObjectHeaders().containsKey(JmsConstants.OBJ_JMS_ACKNOWLEDGEMENT_HANDLER));
+      }
+    }
+    finally {
+      shutdownQuietly(sender, receiver, broker);
+    }
+  }
+
+  @Test
+  public void testProduceConsume_Batch() throws Exception {
+
+    int msgCount = 5;
+    final EmbeddedActiveMq broker = new EmbeddedActiveMq();
+    final StandaloneProducer sender = new StandaloneProducer(broker.getJmsConnection(), new PtpProducer(
+            new ConfiguredProduceDestination(testName.getMethodName())));
+    final StandaloneConsumer receiver =
+        createConsumer(broker, "testProduceConsume_Batch", testName.getMethodName());
+    // 5 messages in batches of 3, so the 2nd batch is only completed by the batch window expiring.
+    ((PtpPollingConsumer) receiver.getConsumer()).setMaxBatchSize(3);
+    ((PtpPollingConsumer) receiver.getConsumer()).setBatchWindow(new TimeInterval(200L, TimeUnit.MILLISECONDS));
+    try {
+      broker.start();
+      MockMessageListener jms = new MockMessageListener();
+      receiver.registerAdaptrisMessageListener(jms);
+      start(receiver);
+      start(sender);
+      for (int i = 0; i < msgCount; i++) {
+        sender.doService(createMessage());
+      }
+      waitForMessages(jms, msgCount);
+      assertMessages(jms, msgCount);
+    }
+    finally {
+      shutdownQuietly(sender, receiver, broker);
+    }
+  }
+
+  @Test
+  public void testProduceConsume_Batch_FailsMidBatch() throws Exception {
+
+    int msgCount = 10;
+    final EmbeddedActiveMq broker = new EmbeddedActiveMq();
+    final StandaloneProducer sender = new StandaloneProducer(broker.getJmsConnection(), new PtpProducer(
+            new ConfiguredProduceDestination(testName.getMethodName())));
+    final StandaloneConsumer receiver =
+        createConsumer(broker, "testProduceConsume_Batch_FailsMidBatch", testName.getMethodName());
+    ((PtpPollingConsumer) receiver.getConsumer()).setMaxBatchSize(5);
+    ((PtpPollingConsumer) receiver.getConsumer()).setBatchWindow(new TimeInterval(200L, TimeUnit.MILLISECONDS));
+    try {
+      broker.start();
+      final AtomicBoolean failed = new AtomicBoolean(false);
+      MockMessageListener jms = new MockMessageListener() {
+        @Override
+        public void onAdaptrisMessage(AdaptrisMessage msg, Consumer<AdaptrisMessage> success) {
+          if (msg.getContent().equals("2") && failed.compareAndSet(false, true)) {
+            throw new RuntimeException("failing " + msg.getContent());
+          }
+          super.onAdaptrisMessage(msg, success);
+        }
+      };
+      receiver.registerAdaptrisMessageListener(jms);
+      start(sender);
+      for (int i = 0; i < msgCount; i++) {
+        sender.doService(AdaptrisMessageFactory.getDefaultInstance().newMessage(String.valueOf(i)));
+      }
+      start(receiver);
+      // 0,1 then the failure at 2; the first batch is recovered, so 0-4 are redelivered, followed by 5-9.
+      waitForMessages(jms, msgCount + 2);
+      assertEquals(msgCount + 2, jms.messageCount());
+      Set<String> payloads = new TreeSet<>();
+      for (AdaptrisMessage m : jms.getMessages()) {
+        payloads.add(m.getContent());
+      }
+      assertEquals(msgCount, payloads.size());
     }
     finally {
       shutdownQuietly(sender, receiver, broker);
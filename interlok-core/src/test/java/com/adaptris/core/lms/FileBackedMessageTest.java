@@ -17,6 +17,7 @@
 package com.adaptris.core.lms;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -25,6 +26,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -96,6 +99,30 @@ public class FileBackedMessageTest extends AdaptrisMessageCase {
     }
   }
 
+  @Test
+  public void testCloneWithHardLinks() throws Exception {
+    getMessageFactory().setUseHardLinks(true);
+    FileBackedMessage orig = (FileBackedMessage) getMessageFactory().newMessage(PAYLOAD);
+    FileBackedMessage clone = (FileBackedMessage) orig.clone();
+    assertNotEquals(orig.currentSource(), clone.currentSource());
+    assertEquals(PAYLOAD, clone.getContent());
+    clone.setContent("hello", null);
+    assertEquals(PAYLOAD, orig.getContent());
+    assertEquals("hello", clone.getContent());
+  }
+
+  @Test
+  public void testGetPayloadBuffer_Mapped() throws Exception {
+    // Not restricted by max-memory-size since it's not on the heap.
+    getMessageFactory().setMaxMemorySizeBytes(10L);
+    AdaptrisMessage msg = getMessageFactory().newMessage(PAYLOAD);
+    ByteBuffer buffer = msg.getPayloadBuffer();
+    assertTrue(buffer.isReadOnly());
+    assertEquals(PAYLOAD.length(), buffer.remaining());
+    assertEquals(PAYLOAD, StandardCharsets.UTF_8.decode(buffer).toString());
+    assertEquals(0, getMessageFactory().newMessage().getPayloadBuffer().remaining());
+  }
+
   @Test
   public void testInitFromFileNotExists() throws Exception {
     FileBackedMessage orig = (FileBackedMessage) getMessageFactory().newMessage();
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.lms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileTransferTest {
+
+  private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+
+  private File src;
+  private File dest;
+
+  @Before
+  public void setUp() throws Exception {
+    src = File.createTempFile(getClass().getSimpleName(), ".src");
+    dest = File.createTempFile(getClass().getSimpleName(), ".dest");
+    Files.write(src.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(src.toPath());
+    Files.deleteIfExists(dest.toPath());
+  }
+
+  @Test
+  public void testCopy() throws Exception {
+    Files.write(dest.toPath(), (CONTENT + CONTENT).getBytes(StandardCharsets.UTF_8));
+    assertEquals(CONTENT.length(), FileTransfer.copy(src, dest));
+    assertEquals(CONTENT, read(dest));
+  }
+
+  @Test
+  public void testCopy_Empty() throws Exception {
+    Files.write(src.toPath(), new byte[0]);
+    assertEquals(0, FileTransfer.copy(src, dest));
+    assertEquals(0, dest.length());
+  }
+
+  @Test
+  public void testLink() throws Exception {
+    Files.delete(dest.toPath());
+    assumeTrue(FileTransfer.link(src, dest));
+    assertEquals(CONTENT, read(dest));
+    assertEquals(attributes(src).fileKey(), attributes(dest).fileKey());
+    Files.delete(src.toPath());
+    assertEquals(CONTENT, read(dest));
+  }
+
+  @Test
+  public void testLink_DestinationExists() throws Exception {
+    assertFalse(FileTransfer.link(src, dest));
+  }
+
+  @Test
+  public void testLinkOrCopy() throws Exception {
+    FileTransfer.linkOrCopy(src, dest);
+    assertEquals(CONTENT, read(dest));
+  }
+
+  @Test
+  public void testMap() throws Exception {
+    ByteBuffer buffer = FileTransfer.map(src);
+    assertTrue(buffer.isReadOnly());
+    assertEquals(CONTENT, StandardCharsets.UTF_8.decode(buffer).toString());
+  }
+
+  private static String read(File f) throws Exception {
+    return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+  }
+
+  private static BasicFileAttributes attributes(File f) throws Exception {
+    return Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+  }
+}
@@ -24,6 +24,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -88,6 +90,22 @@ public class LargeFsMessageProducerTest extends FsProducerExample {
     stop(producer);
   }
 
+  @Test
+  public void testProduceWithHardLinks() throws Exception {
+    LargeFsProducer producer = create();
+    producer.setUseHardLinks(true);
+    try {
+      start(producer);
+      AdaptrisMessage msg = new FileBackedMessageFactory().newMessage("dummy");
+      producer.produce(msg);
+      File writtenFile = new File(destDir, msg.getUniqueId());
+      assertEquals("dummy", new String(Files.readAllBytes(writtenFile.toPath()), StandardCharsets.UTF_8));
+      assertEquals("dummy", msg.getContent());
+    } finally {
+      stop(producer);
+    }
+  }
+
   @Test
   public void testProduce_WithEncoder() throws Exception {
     LargeFsProducer producer = create();
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.lms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.adaptris.core.CoreConstants;
+import com.adaptris.core.DefaultMessageFactory;
+import com.adaptris.core.util.LifecycleHelper;
+
+public class ReleaseTempFileInterceptorTest {
+
+  private static final String PAYLOAD = "The quick brown fox jumps over the lazy dog";
+
+  private ReleaseTempFileInterceptor interceptor;
+  private SpillingMessageFactory factory;
+
+  @Before
+  public void setUp() throws Exception {
+    interceptor = new ReleaseTempFileInterceptor(getClass().getSimpleName());
+    factory = new SpillingMessageFactory(8);
+    LifecycleHelper.initAndStart(interceptor);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    LifecycleHelper.stopAndClose(interceptor);
+  }
+
+  @Test
+  public void testWorkflowEnd() throws Exception {
+    SpillingMessageImpl input = (SpillingMessageImpl) factory.newMessage(PAYLOAD);
+    SpillingMessageImpl output = (SpillingMessageImpl) input.clone();
+    File file = input.currentSource();
+    interceptor.workflowStart(input);
+    interceptor.workflowEnd(input, output);
+    assertFalse(file.exists());
+    assertEquals(0, input.getSize());
+    assertEquals(0, output.getSize());
+  }
+
+  @Test
+  public void testWorkflowEnd_Failed() throws Exception {
+    SpillingMessageImpl msg = (SpillingMessageImpl) factory.newMessage(PAYLOAD);
+    msg.addObjectHeader(CoreConstants.OBJ_METADATA_EXCEPTION, new Exception());
+    File file = msg.currentSource();
+    interceptor.workflowStart(msg);
+    interceptor.workflowEnd(msg, msg);
+    assertTrue(file.exists());
+    assertEquals(PAYLOAD, msg.getContent());
+
+    interceptor.setReleaseFailedMessages(true);
+    interceptor.workflowEnd(msg, msg);
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void testWorkflowEnd_NotCloseable() throws Exception {
+    interceptor.workflowEnd(new DefaultMessageFactory().newMessage(PAYLOAD), new DefaultMessageFactory().newMessage(PAYLOAD));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.lms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessageFactoryImplCase;
+import com.adaptris.core.DefaultMessageFactory;
+
+public class SpillingMessageFactoryTest extends AdaptrisMessageFactoryImplCase {
+
+  @Override
+  protected SpillingMessageFactory getMessageFactory() {
+    return new SpillingMessageFactory();
+  }
+
+  @Test
+  public void testSpillThresholdBytes() throws Exception {
+    SpillingMessageFactory factory = getMessageFactory();
+    assertNull(factory.getSpillThresholdBytes());
+    assertEquals(64 * 1024, factory.spillThresholdBytes());
+    factory.setSpillThresholdBytes(10);
+    assertEquals(Integer.valueOf(10), factory.getSpillThresholdBytes());
+    assertEquals(10, factory.spillThresholdBytes());
+  }
+
+  @Test
+  public void testPooledBuffers() throws Exception {
+    SpillingMessageFactory factory = getMessageFactory();
+    assertNull(factory.getPooledBuffers());
+    assertEquals(32, factory.pooledBuffers());
+    factory.setPooledBuffers(1);
+    assertEquals(Integer.valueOf(1), factory.getPooledBuffers());
+    assertEquals(1, factory.pooledBuffers());
+  }
+
+  @Test
+  public void testNewMessage_Large() throws Exception {
+    SpillingMessageFactory factory = new SpillingMessageFactory(1024);
+    String payload = new String(new char[8192]).replace('\0', 'x');
+    SpillingMessageImpl msg = (SpillingMessageImpl) factory.newMessage(payload);
+    assertTrue(msg.isSpilled());
+    File file = msg.currentSource();
+    assertEquals(payload.length(), file.length());
+    SpillingMessageImpl copy = (SpillingMessageImpl) factory.newBranch(msg);
+    assertTrue(copy.isSpilled());
+    assertEquals(payload.length(), copy.getSize());
+    msg.close();
+    assertFalse(file.exists());
+    assertTrue(payload.equals(copy.getContent()));
+  }
+
+  @Test
+  public void testNewMessage_UsesDefaultEncoding() throws Exception {
+    SpillingMessageFactory factory = getMessageFactory();
+    factory.setDefaultCharEncoding("UTF-8");
+    assertEquals("UTF-8", factory.newMessage().getContentEncoding());
+    assertNull(new DefaultMessageFactory().newMessage().getContentEncoding());
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.lms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageCase;
+
+public class SpillingMessageTest extends AdaptrisMessageCase {
+
+  private static final int THRESHOLD = 16;
+  private SpillingMessageFactory mf;
+
+  @Before
+  public void setup() {
+    mf = new SpillingMessageFactory(THRESHOLD);
+  }
+
+  @Override
+  protected SpillingMessageFactory getMessageFactory() {
+    return mf;
+  }
+
+  @Test
+  public void testSpillThreshold() throws Exception {
+    SpillingMessageImpl small = (SpillingMessageImpl) mf.newMessage("0123456789abcdef");
+    assertFalse(small.isSpilled());
+    assertEquals("0123456789abcdef", small.getContent());
+    SpillingMessageImpl large = (SpillingMessageImpl) mf.newMessage(PAYLOAD);
+    assertTrue(large.isSpilled());
+    assertEquals(PAYLOAD, large.getContent());
+    assertEquals(PAYLOAD.length(), large.getSize());
+  }
+
+  @Test
+  public void testSpillWhileWriting() throws Exception {
+    SpillingMessageImpl msg = (SpillingMessageImpl) mf.newMessage();
+    byte[] bytes = PAYLOAD.getBytes(StandardCharsets.UTF_8);
+    try (OutputStream out = msg.getOutputStream()) {
+      out.write(bytes, 0, 10);
+      assertFalse(msg.isSpilled());
+      for (int i = 10; i < bytes.length; i++) {
+        out.write(bytes[i]);
+      }
+    }
+    assertTrue(msg.isSpilled());
+    assertEquals(PAYLOAD, new String(msg.getPayload(), StandardCharsets.UTF_8));
+    assertEquals(PAYLOAD, new String(Files.readAllBytes(msg.currentSource().toPath()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testReplacePayload_DeletesFile() throws Exception {
+    SpillingMessageImpl msg = (SpillingMessageImpl) mf.newMessage(PAYLOAD);
+    File file = msg.currentSource();
+    assertTrue(file.exists());
+    msg.setContent("hello", null);
+    assertFalse(msg.isSpilled());
+    assertFalse(file.exists());
+    assertEquals("hello", msg.getContent());
+  }
+
+  @Test
+  public void testClose_DeletesFile() throws Exception {
+    SpillingMessageImpl msg = (SpillingMessageImpl) mf.newMessage(PAYLOAD);
+    File file = msg.currentSource();
+    msg.close();
+    assertFalse(file.exists());
+    assertEquals(0, msg.getSize());
+    // Closing twice is harmless.
+    msg.close();
+  }
+
+  @Test
+  public void testClone_SharesFile() throws Exception {
+    SpillingMessageImpl msg = (SpillingMessageImpl) mf.newMessage(PAYLOAD);
+    SpillingMessageImpl clone = (SpillingMessageImpl) msg.clone();
+    assertEquals(PAYLOAD, clone.getContent());
+    assertEquals(msg.getPayloadForLogging(), clone.getPayloadForLogging());
+    File file = new File(msg.getPayloadForLogging().substring("file-location:".length()));
+    msg.close();
+    assertTrue(file.exists());
+    assertEquals(PAYLOAD, clone.getContent());
+    clone.close();
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void testCurrentSource_CopiesSharedFile() throws Exception {
+    SpillingMessageImpl msg = (SpillingMessageImpl) mf.newMessage(PAYLOAD);
+    SpillingMessageImpl clone = (SpillingMessageImpl) msg.clone();
+    File cloneSource = clone.currentSource();
+    File msgSource = msg.currentSource();
+    assertNotEquals(msgSource, cloneSource);
+    assertSame(msgSource, msg.currentSource());
+    assertEquals(PAYLOAD, new String(Files.readAllBytes(cloneSource.toPath()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testCurrentSource_InMemory() throws Exception {
+    SpillingMessageImpl msg = (SpillingMessageImpl) mf.newMessage("hello");
+    assertFalse(msg.isSpilled());
+    File file = msg.currentSource();
+    assertTrue(msg.isSpilled());
+    assertEquals("hello", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    msg.close();
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void testInitialiseFrom_NotDeleted() throws Exception {
+    File file = mf.createTempFile(this);
+    Files.write(file.toPath(), PAYLOAD.getBytes(StandardCharsets.UTF_8));
+    SpillingMessageImpl msg = (SpillingMessageImpl) mf.newMessage();
+    msg.initialiseFrom(file);
+    assertEquals(PAYLOAD, msg.getContent());
+    msg.close();
+    assertTrue(file.exists());
+  }
+
+  @Test
+  public void testMaxSize() {
+    mf.setMaxMemorySizeBytes(10L);
+    AdaptrisMessage msg = mf.newMessage(PAYLOAD);
+    try {
+      msg.getContent();
+      fail();
+    }
+    catch (RuntimeException expected) {
+    }
+  }
+
+  @Test
+  public void testBufferPool() throws Exception {
+    byte[] buf = mf.acquireBuffer();
+    assertEquals(THRESHOLD, buf.length);
+    mf.releaseBuffer(buf);
+    assertSame(buf, mf.acquireBuffer());
+    mf.setPooledBuffers(0);
+    mf.releaseBuffer(buf);
+    assertNotSame(buf, mf.acquireBuffer());
+  }
+}
@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -35,6 +36,7 @@ import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.BaseCase;
 import com.adaptris.core.lms.ZipFileBackedMessageFactory.CompressionMode;
 
@@ -152,6 +154,16 @@ public class ZipFileBackedMessageTest extends FileBackedMessageTest {
   /**
    * This tests creates a compressed file
    */
+  @Test
+  @Override
+  public void testGetPayloadBuffer_Mapped() throws Exception {
+    // The file is compressed, so the payload buffer is read onto the heap.
+    ZipFileBackedMessageFactory factory = getMessageFactory();
+    factory.setCompressionMode(CompressionMode.Both);
+    AdaptrisMessage msg = factory.newMessage(PAYLOAD);
+    assertEquals(PAYLOAD, StandardCharsets.UTF_8.decode(msg.getPayloadBuffer()).toString());
+  }
+
   @Test
   public void testCreateCompressedFile() throws Exception {
     ZipFileBackedMessageFactory factory = getMessageFactory();
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.stubs.TempFileUtils;
+import com.adaptris.core.util.LifecycleHelper;
+
+public class FilesystemRetryStoreTest {
+
+  private static final String PAYLOAD = "Hello World";
+
+  @Test
+  public void testSetters() throws Exception {
+    FilesystemRetryStore store = new FilesystemRetryStore();
+    assertNull(store.getBaseDirectoryUrl());
+    store.setBaseDirectoryUrl("file:///tmp");
+    assertEquals("file:///tmp", store.getBaseDirectoryUrl());
+    assertNull(store.getEncoder());
+    assertNotNull(store.encoder());
+    assertNull(store.getSyncOnWrite());
+    assertTrue(store.syncOnWrite());
+    store.setSyncOnWrite(false);
+    assertFalse(store.syncOnWrite());
+    assertTrue(store.isPersistent());
+    assertFalse(new InMemoryRetryStore().isPersistent());
+  }
+
+  @Test
+  public void testInit_NoDirectory() throws Exception {
+    try {
+      LifecycleHelper.initAndStart(new FilesystemRetryStore());
+      fail();
+    } catch (CoreException expected) {
+
+    }
+  }
+
+  @Test
+  public void testStoreAndRemove() throws Exception {
+    FilesystemRetryStore store = createStore();
+    try {
+      LifecycleHelper.initAndStart(store);
+      AdaptrisMessage msg = createMessage();
+      store.store(msg, 1000L);
+      Map<String, Long> pending = store.pending();
+      assertEquals(1, pending.size());
+      assertEquals(Long.valueOf(1000L), pending.get(msg.getUniqueId()));
+      AdaptrisMessage restored = store.remove(msg.getUniqueId());
+      assertMessage(msg, restored);
+      // Always read back from the file.
+      assertNotSame(msg, restored);
+      // Non string object metadata is retained until a restart.
+      assertSame(msg.getObjectHeaders().get("not-a-string"), restored.getObjectHeaders().get("not-a-string"));
+      assertNull(store.remove(msg.getUniqueId()));
+      assertEquals(0, store.pending().size());
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+  }
+
+  @Test
+  public void testStoreAndRemove_LargeObjectMetadata() throws Exception {
+    FilesystemRetryStore store = createStore();
+    String large = StringUtils.repeat("\u00e9", 0x10000);
+    AdaptrisMessage msg = createMessage();
+    msg.addObjectHeader("large", large);
+    try {
+      LifecycleHelper.initAndStart(store);
+      store.store(msg, 1000L);
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+    try {
+      LifecycleHelper.initAndStart(store);
+      AdaptrisMessage restored = store.remove(msg.getUniqueId());
+      assertRestoredMessage(msg, restored);
+      assertEquals(large, restored.getObjectHeaders().get("large"));
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+  }
+
+  @Test
+  public void testRestart() throws Exception {
+    FilesystemRetryStore store = createStore();
+    AdaptrisMessage msg1 = createMessage();
+    AdaptrisMessage msg2 = createMessage();
+    AdaptrisMessage msg3 = createMessage();
+    try {
+      LifecycleHelper.initAndStart(store);
+      store.store(msg1, 1000L);
+      store.store(msg2, 2000L);
+      store.store(msg3, 3000L);
+      store.remove(msg2.getUniqueId());
+      // replaces the original.
+      store.store(msg3, 4000L);
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+    try {
+      LifecycleHelper.initAndStart(store);
+      Map<String, Long> pending = store.pending();
+      assertEquals(2, pending.size());
+      assertEquals(Long.valueOf(1000L), pending.get(msg1.getUniqueId()));
+      assertEquals(Long.valueOf(4000L), pending.get(msg3.getUniqueId()));
+      assertRestoredMessage(msg1, store.remove(msg1.getUniqueId()));
+      assertRestoredMessage(msg3, store.remove(msg3.getUniqueId()));
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+  }
+
+  @Test
+  public void testRestart_Compacts() throws Exception {
+    FilesystemRetryStore store = createStore();
+    AdaptrisMessage msg = createMessage();
+    long size;
+    try {
+      LifecycleHelper.initAndStart(store);
+      store.store(msg, 1000L);
+      size = store.fileSize();
+      for (int i = 0; i < 10; i++) {
+        AdaptrisMessage m = createMessage();
+        store.store(m, 1000L);
+        store.remove(m.getUniqueId());
+      }
+      assertTrue(store.fileSize() > size);
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+    try {
+      LifecycleHelper.initAndStart(store);
+      assertEquals(size, store.fileSize());
+      assertRestoredMessage(msg, store.remove(msg.getUniqueId()));
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+  }
+
+  @Test
+  public void testRestart_IncompleteRecord() throws Exception {
+    FilesystemRetryStore store = createStore();
+    AdaptrisMessage msg1 = createMessage();
+    AdaptrisMessage msg2 = createMessage();
+    long size;
+    try {
+      LifecycleHelper.initAndStart(store);
+      store.store(msg1, 1000L);
+      size = store.fileSize();
+      store.store(msg2, 2000L);
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+    // Simulate a crash half way through writing msg2
+    File data = new File(store.getBaseDirectoryUrl(), FilesystemRetryStore.DATA_FILE);
+    try (RandomAccessFile raf = new RandomAccessFile(data, "rw")) {
+      raf.setLength(raf.length() - 10);
+    }
+    try {
+      LifecycleHelper.initAndStart(store);
+      assertEquals(1, store.pending().size());
+      assertEquals(size, store.fileSize());
+      assertRestoredMessage(msg1, store.remove(msg1.getUniqueId()));
+    } finally {
+      LifecycleHelper.stopAndClose(store);
+    }
+  }
+
+  @Test
+  public void testLocked() throws Exception {
+    FilesystemRetryStore store = createStore();
+    FilesystemRetryStore other = new FilesystemRetryStore(store.getBaseDirectoryUrl());
+    try {
+      LifecycleHelper.initAndStart(store);
+      LifecycleHelper.initAndStart(other);
+      fail();
+    } catch (Exception expected) {
+
+    } finally {
+      LifecycleHelper.stopAndClose(other);
+      LifecycleHelper.stopAndClose(store);
+    }
+  }
+
+  private FilesystemRetryStore createStore() throws Exception {
+    File dir = TempFileUtils.createTrackedDir(this);
+    FilesystemRetryStore store = new FilesystemRetryStore(dir.getCanonicalPath());
+    store.setSyncOnWrite(false);
+    return store;
+  }
+
+  private static AdaptrisMessage createMessage() {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(PAYLOAD);
+    msg.addMetadata("hello", "world");
+    msg.addObjectHeader("autoRetryCount", "2");
+    msg.addObjectHeader("not-a-string", new Object());
+    return msg;
+  }
+
+  private static void assertMessage(AdaptrisMessage expected, AdaptrisMessage msg) {
+    assertNotNull(msg);
+    assertEquals(expected.getUniqueId(), msg.getUniqueId());
+    assertEquals(PAYLOAD, msg.getContent());
+    assertEquals("world", msg.getMetadataValue("hello"));
+    assertEquals("2", msg.getObjectHeaders().get("autoRetryCount"));
+  }
+
+  private static void assertRestoredMessage(AdaptrisMessage expected, AdaptrisMessage msg) {
+    assertMessage(expected, msg);
+    assertFalse(msg.getObjectHeaders().containsKey("not-a-string"));
+  }
+}
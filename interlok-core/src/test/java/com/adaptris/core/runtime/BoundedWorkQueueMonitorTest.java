@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.runtime;
+
+import static com.adaptris.core.runtime.AdapterComponentMBean.ID_PREFIX;
+import static com.adaptris.core.runtime.AdapterComponentMBean.JMX_WORK_QUEUE_MONITOR_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMX;
+import javax.management.ObjectName;
+import org.junit.Test;
+import com.adaptris.core.Adapter;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.BoundedWorkQueue;
+import com.adaptris.core.BoundedWorkQueueMonitorMBean;
+import com.adaptris.core.Channel;
+import com.adaptris.core.PoolingWorkflow;
+import com.adaptris.core.services.WaitService;
+import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.util.TimeInterval;
+
+public class BoundedWorkQueueMonitorTest extends ComponentManagerCase {
+
+  public BoundedWorkQueueMonitorTest() {
+  }
+
+  @Override
+  public boolean isAnnotatedForJunit4() {
+    return true;
+  }
+
+  @Test
+  public void testMBean_NoQueue() throws Exception {
+    PoolingWorkflow workflow = new PoolingWorkflow(getName());
+    Adapter adapter = buildAdapter(workflow);
+    AdapterManager adapterManager = new AdapterManager(adapter);
+    for (BaseComponentMBean bean : adapterManager.getAllDescendants()) {
+      assertFalse(bean instanceof BoundedWorkQueueMonitorMBean);
+    }
+  }
+
+  @Test
+  public void testMBean_Rejected() throws Exception {
+    PoolingWorkflow workflow = new PoolingWorkflow(getName());
+    workflow.setBoundedWorkQueue(new BoundedWorkQueue(1, BoundedWorkQueue.OverflowPolicy.REJECT));
+    Adapter adapter = buildAdapter(workflow);
+    AdapterManager adapterManager = new AdapterManager(adapter);
+    try {
+      adapterManager.registerMBean();
+      WorkflowManager workflowManager = findWorkflowManager(adapterManager);
+      ObjectName objName = ObjectName
+          .getInstance(JMX_WORK_QUEUE_MONITOR_TYPE + workflowManager.createObjectHierarchyString() + ID_PREFIX + getName());
+      BoundedWorkQueueMonitorMBean mbean = JMX.newMBeanProxy(mBeanServer, objName, BoundedWorkQueueMonitorMBean.class);
+      adapterManager.requestStart();
+      assertEquals(1, mbean.getCapacity());
+      assertEquals(0, mbean.getQueueDepth());
+      for (int i = 0; i < 3; i++) {
+        workflow.onAdaptrisMessage(AdaptrisMessageFactory.getDefaultInstance().newMessage());
+      }
+      LifecycleHelper.waitQuietly(100L);
+      assertEquals(1, mbean.getQueueDepth());
+      assertEquals(1, mbean.getTotalRejectedCount());
+      assertEquals(0, mbean.getSpilledCount());
+      assertEquals(0, mbean.getTotalSpilledCount());
+      assertEquals(0, mbean.getAverageWaitTimeMs());
+      assertEquals(0, mbean.getMaxWaitTimeMs());
+    }
+    finally {
+      adapterManager.requestClose();
+      adapterManager.unregisterMBean();
+    }
+  }
+
+  private WorkflowManager findWorkflowManager(AdapterManager parent) {
+    for (BaseComponentMBean bean : parent.getAllDescendants()) {
+      if (bean instanceof WorkflowManager) {
+        return (WorkflowManager) bean;
+      }
+    }
+    throw new RuntimeException();
+  }
+
+  private Adapter buildAdapter(PoolingWorkflow workflow) throws Exception {
+    Adapter adapter = createAdapter(getName());
+    Channel channel = new Channel(getName());
+    workflow.setPoolSize(1);
+    workflow.setShutdownWaitTime(new TimeInterval(1L, TimeUnit.SECONDS));
+    workflow.getServiceCollection().add(new WaitService(new TimeInterval(5L, TimeUnit.SECONDS)));
+    channel.getWorkflowList().add(workflow);
+    adapter.getChannelList().add(channel);
+    return adapter;
+  }
+}
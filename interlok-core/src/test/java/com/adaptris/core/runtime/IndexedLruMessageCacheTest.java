@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.util.LifecycleHelper;
+
+public class IndexedLruMessageCacheTest {
+
+  @Test
+  public void testDefaults() throws Exception {
+    IndexedLruMessageCache cache = new IndexedLruMessageCache();
+    assertNull(cache.getMaxMessages());
+    assertEquals(100, cache.maxMessages());
+    assertNull(cache.getMaxSizeBytes());
+    assertEquals(Long.MAX_VALUE, cache.maxSizeBytes());
+    cache.setMaxMessages(10);
+    cache.setMaxSizeBytes(1024L);
+    assertEquals(10, cache.maxMessages());
+    assertEquals(1024L, cache.maxSizeBytes());
+  }
+
+  @Test
+  public void testPutContainsRemove() throws Exception {
+    IndexedLruMessageCache cache = LifecycleHelper.initAndStart(new IndexedLruMessageCache());
+    try {
+      CacheableAdaptrisMessageWrapper w = wrap("hello");
+      cache.put(w);
+      assertTrue(cache.contains(w.getMessageId()));
+      assertFalse(cache.contains("blah"));
+      assertNull(cache.remove("blah"));
+      CacheableAdaptrisMessageWrapper removed = cache.remove(w.getMessageId());
+      assertNotNull(removed);
+      assertEquals(w.getMessage(), removed.getMessage());
+      assertFalse(cache.contains(w.getMessageId()));
+      assertEquals(0, cache.size());
+      assertEquals(0, cache.currentSizeBytes());
+    } finally {
+      LifecycleHelper.stopAndClose(cache);
+    }
+  }
+
+  @Test
+  public void testMaxMessages() throws Exception {
+    IndexedLruMessageCache cache = new IndexedLruMessageCache();
+    cache.setMaxMessages(5);
+    LifecycleHelper.initAndStart(cache);
+    try {
+      CacheableAdaptrisMessageWrapper first = wrap("hello");
+      cache.put(first);
+      for (int i = 0; i < 5; i++) {
+        cache.put(wrap("hello"));
+      }
+      assertEquals(5, cache.size());
+      assertFalse(cache.contains(first.getMessageId()));
+      assertEquals(25, cache.currentSizeBytes());
+    } finally {
+      LifecycleHelper.stopAndClose(cache);
+    }
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testMaxSizeBytes() throws Exception {
+    IndexedLruMessageCache cache = new IndexedLruMessageCache();
+    cache.setMaxSizeBytes(10L);
+    LifecycleHelper.initAndStart(cache);
+    try {
+      CacheableAdaptrisMessageWrapper first = wrap("12345");
+      CacheableAdaptrisMessageWrapper second = wrap("12345");
+      cache.put(first);
+      cache.put(second);
+      assertEquals(2, cache.size());
+      CacheableAdaptrisMessageWrapper third = wrap("123");
+      cache.put(third);
+      assertEquals(2, cache.size());
+      assertFalse(cache.contains(first.getMessageId()));
+      assertEquals(8, cache.currentSizeBytes());
+      // Too big on its own; still cached, but everything else is removed.
+      CacheableAdaptrisMessageWrapper huge = wrap("12345678901");
+      cache.put(huge);
+      assertTrue(cache.contains(huge.getMessageId()));
+      assertFalse(cache.contains(second.getMessageId()));
+      assertFalse(cache.contains(third.getMessageId()));
+      assertEquals(1, cache.size());
+      assertEquals(11, cache.currentSizeBytes());
+      // and removed by the next message.
+      cache.put(wrap("123"));
+      assertFalse(cache.contains(huge.getMessageId()));
+      assertEquals(1, cache.size());
+      assertEquals(3, cache.currentSizeBytes());
+    } finally {
+      LifecycleHelper.stopAndClose(cache);
+    }
+  }
+
+  @Test
+  public void testPut_SameMessageId() throws Exception {
+    IndexedLruMessageCache cache = LifecycleHelper.initAndStart(new IndexedLruMessageCache());
+    try {
+      CacheableAdaptrisMessageWrapper w = wrap("hello");
+      cache.put(w);
+      AdaptrisMessage replacement = AdaptrisMessageFactory.getDefaultInstance().newMessage("hello world");
+      cache.put(new CacheableAdaptrisMessageWrapper(w.getMessageId(), replacement));
+      assertEquals(1, cache.size());
+      assertEquals(11, cache.currentSizeBytes());
+      assertEquals(replacement, cache.remove(w.getMessageId()).getMessage());
+    } finally {
+      LifecycleHelper.stopAndClose(cache);
+    }
+  }
+
+  private static CacheableAdaptrisMessageWrapper wrap(String payload) {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload);
+    return new CacheableAdaptrisMessageWrapper(msg.getUniqueId(), msg);
+  }
+}
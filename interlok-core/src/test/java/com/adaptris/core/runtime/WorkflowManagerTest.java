@@ -24,6 +24,7 @@ import static com.adaptris.core.runtime.AdapterComponentMBean.NOTIF_MSG_STOPPED;
 import static com.adaptris.core.runtime.AdapterComponentMBean.NOTIF_TYPE_WORKFLOW_LIFECYCLE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -1279,6 +1280,47 @@ public class WorkflowManagerTest extends ComponentManagerCase {
     }
   }
 
+  @Test
+  public void testProcess_LargerThanMessageCache() throws Exception {
+    String adapterName = this.getClass().getSimpleName() + "." + getName();
+
+    Adapter adapter = createAdapter(adapterName);
+    AdapterManager adapterManager = new AdapterManager(adapter);
+    Channel channel = createChannel("c1");
+    ChannelManager channelManager = new ChannelManager(channel, adapterManager);
+    StandardWorkflow workflow = createWorkflow("w1");
+    IndexedLruMessageCache cache = new IndexedLruMessageCache();
+    cache.setMaxSizeBytes(1L);
+    JmxSubmitMessageInterceptor interceptor = new JmxSubmitMessageInterceptor();
+    interceptor.setMessageCache(cache);
+    workflow.getInterceptors().add(interceptor);
+
+    WorkflowManager realWorkflowManager = new WorkflowManager(workflow, channelManager);
+    adapterManager.createObjectName();
+    ObjectName workflowObj = realWorkflowManager.createObjectName();
+    channelManager.createObjectName();
+
+    List<BaseComponentMBean> mBeans = new ArrayList<BaseComponentMBean>();
+    mBeans.add(adapterManager);
+    mBeans.addAll(adapterManager.getAllDescendants());
+
+    String msgUniqueId = new GuidGenerator().getUUID();
+    SerializableMessage msg = createSM(msgUniqueId);
+
+    try {
+      register(mBeans);
+      MessageProcessor workflowManagerProxy = JMX.newMBeanProxy(mBeanServer, workflowObj, MessageProcessor.class);
+      adapterManager.requestStart();
+      SerializableMessage reply = workflowManagerProxy.process(msg);
+      assertNotNull(reply);
+      assertEquals(msgUniqueId, reply.getUniqueId());
+      assertEquals(PAYLOAD, reply.getContent());
+      assertEquals(0, cache.size());
+    } finally {
+      adapter.requestClose();
+    }
+  }
+
   @Test
   public void testMBean_NotificationOnInit() throws Exception {
     String adapterName = this.getClass().getSimpleName() + "." + getName();
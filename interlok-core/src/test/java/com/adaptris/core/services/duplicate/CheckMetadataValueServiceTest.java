@@ -153,6 +153,26 @@ public class CheckMetadataValueServiceTest extends BranchingServiceExample {
     }
   }
 
+  @Test
+  public void testService_StoredAfterInit() throws Exception {
+    seedStore("123");
+    CheckMetadataValueService service = createChecker();
+    try {
+      LifecycleHelper.initAndStart(service);
+      assertEquals(1, service.storeSize());
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+      msg.addMetadata(DEFAULT_METADATA_KEY, "456");
+      service.doService(msg);
+      assertEquals(DEFAULT_SERVICE_ID_UNIQUE, msg.getNextServiceId());
+      seedStore("456");
+      service.doService(msg);
+      assertEquals(DEFAULT_SERVICE_ID_DUPLICATE, msg.getNextServiceId());
+      assertEquals(2, service.storeSize());
+    } finally {
+      LifecycleHelper.stopAndClose(service);
+    }
+  }
+
   @Override
   protected Object retrieveObjectForSampleConfig() {
     CheckMetadataValueService s = createChecker();
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.services.duplicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import com.adaptris.core.stubs.TempFileUtils;
+
+public class MetadataValueStoreTest {
+
+  @Test
+  public void testAdd_Contains() throws Exception {
+    File file = TempFileUtils.createTrackedFile(this);
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.open(3);
+      assertTrue(file.exists());
+      assertEquals(0, store.size());
+      store.add("1");
+      store.add("1");
+      store.add("2");
+      assertEquals(3, store.size());
+      assertTrue(store.contains("1"));
+      assertTrue(store.contains("2"));
+      store.add("3");
+      // only 1 of the "1" values has been evicted.
+      assertEquals(3, store.size());
+      assertTrue(store.contains("1"));
+      store.add("4");
+      assertFalse(store.contains("1"));
+      assertTrue(store.contains("4"));
+    }
+  }
+
+  @Test
+  public void testAdd_NotOpen() throws Exception {
+    File file = TempFileUtils.createTrackedFile(this);
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.add("1");
+      fail();
+    } catch (IOException expected) {
+
+    }
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.open(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+
+    }
+  }
+
+  @Test
+  public void testOpen_ExistingValues() throws Exception {
+    File file = TempFileUtils.createTrackedFile(this);
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.open(10);
+      store.add("1");
+      store.add("2");
+    }
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.open(10);
+      assertEquals(2, store.size());
+      assertTrue(store.contains("1"));
+      store.add("3");
+    }
+    // Smaller capacity, so the store is rewritten.
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.open(2);
+      assertEquals(2, store.size());
+      assertFalse(store.contains("1"));
+    }
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.refresh();
+      assertEquals(2, store.size());
+      assertTrue(store.contains("2"));
+      assertTrue(store.contains("3"));
+    }
+  }
+
+  @Test
+  public void testOpen_TruncatedRecord() throws Exception {
+    File file = TempFileUtils.createTrackedFile(this);
+    long length;
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.open(10);
+      store.add("1");
+      length = file.length();
+      store.add("222222222");
+    }
+    // Simulate a crash halfway through writing the last record.
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(file.length() - 1);
+    }
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.open(10);
+      assertEquals(1, store.size());
+      assertEquals(length, file.length());
+      store.add("3");
+    }
+    try (MetadataValueStore store = new MetadataValueStore(file)) {
+      store.open(10);
+      assertEquals(2, store.size());
+      assertTrue(store.contains("1"));
+      assertTrue(store.contains("3"));
+      assertFalse(store.contains("222222222"));
+    }
+  }
+
+  @Test
+  public void testRefresh() throws Exception {
+    File file = TempFileUtils.createTrackedFile(this);
+    try (MetadataValueStore writer = new MetadataValueStore(file); MetadataValueStore reader = new MetadataValueStore(file)) {
+      reader.refresh();
+      assertEquals(0, reader.size());
+      writer.open(5);
+      writer.add("1");
+      reader.refresh();
+      assertEquals(1, reader.size());
+      assertTrue(reader.contains("1"));
+      for (int i = 2; i <= 6; i++) {
+        writer.add(String.valueOf(i));
+      }
+      reader.refresh();
+      assertEquals(5, reader.size());
+      assertFalse(reader.contains("1"));
+      assertTrue(reader.contains("6"));
+      // Enough to trigger a compaction, the reader should notice and read the whole store again
+      for (int i = 0; i < 2048; i++) {
+        writer.add("x" + i);
+      }
+      assertTrue(file.length() < 2048 * 8);
+      reader.refresh();
+      assertEquals(5, reader.size());
+      assertTrue(reader.contains("x2047"));
+      assertFalse(reader.contains("6"));
+    }
+    file.delete();
+    try (MetadataValueStore reader = new MetadataValueStore(file)) {
+      reader.refresh();
+      assertEquals(0, reader.size());
+    }
+  }
+
+  @Test
+  public void testRefresh_PartialRecord() throws Exception {
+    File file = TempFileUtils.createTrackedFile(this);
+    try (MetadataValueStore writer = new MetadataValueStore(file); MetadataValueStore reader = new MetadataValueStore(file)) {
+      writer.open(10);
+      writer.add("1");
+      writer.add("22");
+      long length = file.length();
+      // Simulate a reader catching the writer halfway through a record.
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(length - 1);
+        reader.refresh();
+        assertEquals(1, reader.size());
+        raf.setLength(length);
+        raf.seek(length - 1);
+        raf.write('2');
+      }
+      reader.refresh();
+      assertEquals(2, reader.size());
+      assertTrue(reader.contains("22"));
+    }
+  }
+
+  @Test
+  public void testLegacyStore() throws Exception {
+    File file = TempFileUtils.createTrackedFile(this);
+    try (FileOutputStream out = new FileOutputStream(file); ObjectOutputStream o = new ObjectOutputStream(out)) {
+      o.writeObject(new ArrayList<>(Arrays.asList("1", "2", "3")));
+    }
+    try (MetadataValueStore reader = new MetadataValueStore(file)) {
+      reader.refresh();
+      assertEquals(3, reader.size());
+      assertTrue(reader.contains("1"));
+    }
+    try (MetadataValueStore writer = new MetadataValueStore(file)) {
+      writer.open(2);
+      assertEquals(2, writer.size());
+      writer.add("4");
+    }
+    try (MetadataValueStore reader = new MetadataValueStore(file)) {
+      reader.refresh();
+      assertEquals(2, reader.size());
+      assertTrue(reader.contains("3"));
+      assertTrue(reader.contains("4"));
+    }
+  }
+
+  @Test
+  public void testUnknownFormat() throws Exception {
+    File file = TempFileUtils.createTrackedFile(this);
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write("hello world".getBytes());
+    }
+    try (MetadataValueStore reader = new MetadataValueStore(file)) {
+      reader.refresh();
+      fail();
+    } catch (IOException expected) {
+
+    }
+  }
+}
@@ -21,12 +21,14 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.junit.Test;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreConstants;
 import com.adaptris.core.stubs.DefectiveMessageFactory;
 import com.adaptris.core.stubs.MockMessageProducer;
 import com.adaptris.interlok.util.CloseableIterable;
@@ -185,6 +187,60 @@ public class MetadataDocumentCopierTest extends SplitterCase {
     }
   }
 
+  @Test
+  public void testSplit_ShareContent() throws Exception {
+    assertSplitCopiesAreIndependent(new MetadataDocumentCopier(METADATA_KEY, METADATA_KEY_INDEX));
+  }
+
+  @Test
+  public void testSplit_NoShareContent() throws Exception {
+    MetadataDocumentCopier splitter = new MetadataDocumentCopier(METADATA_KEY, METADATA_KEY_INDEX);
+    splitter.setShareContent(false);
+    assertSplitCopiesAreIndependent(splitter);
+  }
+
+  @Test
+  public void testSplit_ShareContent_NoCopyMetadata() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(LINE);
+    msg.addMetadata(METADATA_KEY, "2");
+    msg.addMetadata("other", "value");
+    MetadataDocumentCopier splitter = new MetadataDocumentCopier(METADATA_KEY, METADATA_KEY_INDEX);
+    splitter.setCopyMetadata(false);
+    try (CloseableIterable<AdaptrisMessage> result = splitter.splitMessage(msg)) {
+      for (AdaptrisMessage m : result) {
+        assertEquals(LINE, m.getContent());
+        assertFalse(m.headersContainsKey("other"));
+        assertEquals(msg.getUniqueId(), m.getMetadataValue(CoreConstants.PARENT_UNIQUE_ID_KEY));
+        assertEquals(2, m.getMetadata().size());
+      }
+    }
+  }
+
+  private void assertSplitCopiesAreIndependent(MetadataDocumentCopier splitter) throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(LINE);
+    msg.addMetadata(METADATA_KEY, "3");
+    List<AdaptrisMessage> copies = new ArrayList<>();
+    try (CloseableIterable<AdaptrisMessage> result = splitter.splitMessage(msg)) {
+      for (AdaptrisMessage m : result) {
+        copies.add(m);
+      }
+    }
+    assertEquals(3, copies.size());
+    copies.get(0).setContent("changed", null);
+    copies.get(0).addMetadata(METADATA_KEY, "changed");
+    for (int i = 1; i < copies.size(); i++) {
+      AdaptrisMessage m = copies.get(i);
+      assertEquals(LINE, m.getContent());
+      assertEquals("3", m.getMetadataValue(METADATA_KEY));
+      assertEquals(String.valueOf(i), m.getMetadataValue(METADATA_KEY_INDEX));
+      assertEquals(msg.getUniqueId(), m.getMetadataValue(CoreConstants.PARENT_UNIQUE_ID_KEY));
+    }
+    assertEquals("changed", copies.get(0).getContent());
+    assertEquals(LINE, msg.getContent());
+    assertEquals("3", msg.getMetadataValue(METADATA_KEY));
+    assertFalse(msg.headersContainsKey(METADATA_KEY_INDEX));
+  }
+
   @Test
   public void testService() throws Exception {
     final int expectedSplitCount = 3;
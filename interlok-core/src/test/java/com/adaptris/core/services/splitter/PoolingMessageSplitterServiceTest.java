@@ -19,6 +19,7 @@ import static com.adaptris.core.ServiceCase.execute;
 import static com.adaptris.core.services.splitter.SplitterCase.XML_MESSAGE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.junit.Test;
@@ -69,6 +70,18 @@ public class PoolingMessageSplitterServiceTest {
     assertEquals("Number of messages", 3, producer.getMessages().size());
   }
 
+  @Test
+  public void testServiceWithXmlSplitter_VirtualThreads() throws Exception {
+    MockMessageProducer producer = createMockProducer();
+    PoolingMessageSplitterService service = SplitterCase.createPooling(new XpathMessageSplitter("/envelope/document", "UTF-8"),
+        new StandaloneProducer(producer)).withVirtualThreads(true);
+    assertTrue(service.virtualThreads());
+    service.setMaxThreads(2);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(XML_MESSAGE);
+    execute(service, msg);
+    assertEquals("Number of messages", 3, producer.getMessages().size());
+  }
+
   @Test
   public void testServiceWithFailures() throws Exception {
 
@@ -89,6 +89,21 @@ public class PoolingSplitJoinServiceTest extends SplitJoinServiceTest {
   }
 
 
+  @Test
+  public void testService_WithVirtualThreads() throws Exception {
+    // This is a 100 line message, so we expect to get 11 parts.
+    AdaptrisMessage msg = SplitterCase.createLineCountMessageInput();
+    PoolingSplitJoinService service = createServiceForTests().withVirtualThreads(true);
+    service.setMaxThreads(8);
+    service.setService(asCollection(new NullService()));
+    service.setTimeout(new TimeInterval(10L, TimeUnit.SECONDS));
+    service.setSplitter(new LineCountSplitter());
+    service.setAggregator(new MimeAggregator());
+    execute(service, msg);
+    BodyPartIterator input = MimeHelper.createBodyPartIterator(msg);
+    assertEquals(11, input.size());
+  }
+
   @Override
   protected PoolingSplitJoinService createServiceForTests() {
     return new PoolingSplitJoinService();
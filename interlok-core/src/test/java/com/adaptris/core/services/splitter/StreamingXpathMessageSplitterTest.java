@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.services.splitter;
+
+import static com.adaptris.core.services.splitter.XpathSplitterTest.ENVELOPE_DOCUMENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.BufferedWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreConstants;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.lms.FileBackedMessage;
+import com.adaptris.core.lms.FileBackedMessageFactory;
+import com.adaptris.core.stubs.MockMessageProducer;
+import com.adaptris.core.stubs.StubMessageFactory;
+import com.adaptris.core.util.XmlHelper;
+import com.adaptris.interlok.util.CloseableIterable;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+import com.adaptris.util.text.xml.SimpleNamespaceContext;
+import com.adaptris.util.text.xml.XPath;
+
+public class StreamingXpathMessageSplitterTest extends SplitterCase {
+
+  private static final String NS_MESSAGE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+      + "<e:envelope xmlns:e=\"http://envelope\" xmlns:d=\"http://document\">"
+      + "<e:header><d:document>header</d:document></e:header>"
+      + "<e:body><d:document id=\"1\">one</d:document><d:document id=\"2\"><d:child>two</d:child></d:document></e:body>"
+      + "</e:envelope>";
+
+  @Override
+  public boolean isAnnotatedForJunit4() {
+    return true;
+  }
+
+  @Override
+  protected StreamingXpathMessageSplitter createSplitterForTests() {
+    return new StreamingXpathMessageSplitter();
+  }
+
+  @Test
+  public void testSetters() throws Exception {
+    StreamingXpathMessageSplitter splitter = new StreamingXpathMessageSplitter(ENVELOPE_DOCUMENT);
+    assertEquals(ENVELOPE_DOCUMENT, splitter.getXpath());
+    assertNull(splitter.getEncoding());
+    splitter.setEncoding("UTF-8");
+    assertEquals("UTF-8", splitter.getEncoding());
+    assertNull(splitter.getBufferSize());
+    assertEquals(8192, splitter.bufferSize());
+    splitter.setBufferSize(1024);
+    assertEquals(1024, splitter.bufferSize());
+    assertNull(splitter.getNamespaceContext());
+    KeyValuePairSet kvps = new KeyValuePairSet();
+    kvps.add(new KeyValuePair("hello", "world"));
+    splitter.setNamespaceContext(kvps);
+    assertEquals(kvps, splitter.getNamespaceContext());
+  }
+
+  @Test
+  public void testSplit() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(XML_MESSAGE);
+    msg.addMetadata("hello", "world");
+    String obj = "ABCDEFG";
+    msg.addObjectHeader(obj, obj);
+    StreamingXpathMessageSplitter splitter = new StreamingXpathMessageSplitter(ENVELOPE_DOCUMENT);
+    List<AdaptrisMessage> result = splitToList(splitter, msg);
+    assertEquals(3, result.size());
+    String[] expected = {"one", "two", "three"};
+    for (int i = 0; i < result.size(); i++) {
+      AdaptrisMessage m = result.get(i);
+      assertFalse(m.getObjectHeaders().containsKey(obj));
+      assertEquals("world", m.getMetadataValue("hello"));
+      assertEquals(msg.getUniqueId(), m.getMetadataValue(CoreConstants.PARENT_UNIQUE_ID_KEY));
+      Document d = XmlHelper.createDocument(m, true);
+      assertEquals(expected[i], new XPath().selectSingleTextItem(d, "/document"));
+    }
+  }
+
+  @Test
+  public void testSplit_Wildcard() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(XML_MESSAGE);
+    StreamingXpathMessageSplitter splitter = new StreamingXpathMessageSplitter("/*/document");
+    assertEquals(3, splitToList(splitter, msg).size());
+    splitter.setXpath("/envelope/nomatch");
+    assertEquals(0, splitToList(splitter, msg).size());
+  }
+
+  @Test
+  public void testSplit_WithNamespaces() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(NS_MESSAGE);
+    StreamingXpathMessageSplitter splitter = new StreamingXpathMessageSplitter("/envelope/body/document");
+    List<AdaptrisMessage> result = splitToList(splitter, msg);
+    assertEquals(2, result.size());
+    KeyValuePairSet ctx = new KeyValuePairSet();
+    ctx.add(new KeyValuePair("d", "http://document"));
+    XPath xpath = new XPath(SimpleNamespaceContext.create(ctx));
+    Document d = XmlHelper.createDocument(result.get(1), true);
+    assertEquals("2", xpath.selectSingleTextItem(d, "/d:document/@id"));
+    assertEquals("two", xpath.selectSingleTextItem(d, "/d:document/d:child"));
+  }
+
+  @Test
+  public void testSplit_WithNamespaceContext() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(NS_MESSAGE);
+    KeyValuePairSet ctx = new KeyValuePairSet();
+    ctx.add(new KeyValuePair("env", "http://envelope"));
+    ctx.add(new KeyValuePair("doc", "http://document"));
+    StreamingXpathMessageSplitter splitter = new StreamingXpathMessageSplitter("/env:envelope/*/doc:document");
+    splitter.setNamespaceContext(ctx);
+    assertEquals(3, splitToList(splitter, msg).size());
+    splitter.setXpath("/env:envelope/env:body/env:document");
+    assertEquals(0, splitToList(splitter, msg).size());
+  }
+
+  @Test
+  public void testSplit_AlternativeMessageFactory() throws Exception {
+    AdaptrisMessage msg = new StubMessageFactory().newMessage(XML_MESSAGE);
+    StreamingXpathMessageSplitter splitter = new StreamingXpathMessageSplitter(ENVELOPE_DOCUMENT);
+    try (CloseableIterable<AdaptrisMessage> closeable = splitter.splitMessage(msg)) {
+      for (AdaptrisMessage m : closeable) {
+        assertEquals(StubMessageFactory.class, m.getFactory().getClass());
+      }
+    }
+  }
+
+  @Test
+  public void testSplit_FileBacked() throws Exception {
+    FileBackedMessageFactory factory = new FileBackedMessageFactory();
+    AdaptrisMessage msg = factory.newMessage();
+    int count = 1000;
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(msg.getWriter()))) {
+      out.print("<envelope>");
+      for (int i = 0; i < count; i++) {
+        out.print("<document>" + i + "</document>");
+      }
+      out.print("</envelope>");
+    }
+    StreamingXpathMessageSplitter splitter = new StreamingXpathMessageSplitter(ENVELOPE_DOCUMENT);
+    int i = 0;
+    try (CloseableIterable<AdaptrisMessage> closeable = splitter.splitMessage(msg)) {
+      for (AdaptrisMessage m : closeable) {
+        assertTrue(m instanceof FileBackedMessage);
+        assertEquals(String.valueOf(i), new XPath().selectSingleTextItem(XmlHelper.createDocument(m, true), "/document"));
+        i++;
+      }
+    }
+    assertEquals(count, i);
+  }
+
+  @Test
+  public void testSplit_InvalidXpath() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(XML_MESSAGE);
+    String[] invalid = {"envelope/document", "//document", "/envelope/document[1]", "/undeclared:envelope", ""};
+    for (String xpath : invalid) {
+      try {
+        new StreamingXpathMessageSplitter(xpath).splitMessage(msg);
+        fail("[" + xpath + "] should have failed");
+      } catch (CoreException expected) {
+
+      }
+    }
+  }
+
+  @Test
+  public void testSplit_InvalidXml() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("<envelope><document>one</document>");
+    StreamingXpathMessageSplitter splitter = new StreamingXpathMessageSplitter(ENVELOPE_DOCUMENT);
+    try (CloseableIterable<AdaptrisMessage> closeable = splitter.splitMessage(msg)) {
+      int count = 0;
+      for (AdaptrisMessage m : closeable) {
+        count++;
+      }
+      fail();
+    } catch (RuntimeException expected) {
+
+    }
+  }
+
+  @Test
+  public void testService() throws Exception {
+    MockMessageProducer producer = new MockMessageProducer();
+    BasicMessageSplitterService service = createBasic(new StreamingXpathMessageSplitter(ENVELOPE_DOCUMENT));
+    service.setProducer(producer);
+    execute(service, AdaptrisMessageFactory.getDefaultInstance().newMessage(XML_MESSAGE));
+    assertEquals(3, producer.getMessages().size());
+  }
+
+  @Override
+  protected String createBaseFileName(Object object) {
+    return super.createBaseFileName(object) + "-StreamingXpathMessageSplitter";
+  }
+
+  @Override
+  protected Object retrieveObjectForSampleConfig() {
+    return null; // over-rides retrieveServices below instead
+  }
+
+  @Override
+  protected List retrieveObjectsForSampleConfig() {
+    return createExamples(new StreamingXpathMessageSplitter(ENVELOPE_DOCUMENT));
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.transform;
+
+import static com.adaptris.core.BaseCase.PROPERTIES;
+import static com.adaptris.core.transform.XmlTransformServiceTest.KEY_XML_TEST_TRANSFORM_URL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.xml.transform.Transformer;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import com.adaptris.core.fs.FsHelper;
+import com.adaptris.core.stubs.TempFileUtils;
+import com.adaptris.util.text.xml.XsltTransformerFactory;
+
+public class TemplatesCacheTest {
+
+  @Test
+  public void testNewTransformer() throws Exception {
+    TemplatesCache cache = new TemplatesCache(10, false);
+    String url = PROPERTIES.getProperty(KEY_XML_TEST_TRANSFORM_URL);
+    assertNull(cache.get(url));
+    Transformer t1 = cache.newTransformer(url, new XsltTransformerFactory());
+    Transformer t2 = cache.newTransformer(url, new XsltTransformerFactory());
+    assertSame(t1, t2);
+    assertSame(t1, cache.get(url));
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+    assertEquals(1, cache.compileCount());
+    assertEquals(0, cache.evictionCount());
+    assertNotNull(cache.toString());
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get(url));
+  }
+
+  @Test
+  public void testNewTransformer_DifferentThreads() throws Exception {
+    final TemplatesCache cache = new TemplatesCache(10, false);
+    final String url = PROPERTIES.getProperty(KEY_XML_TEST_TRANSFORM_URL);
+    Transformer t1 = cache.newTransformer(url, new XsltTransformerFactory());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Transformer t2 = executor.submit(() -> cache.newTransformer(url, new XsltTransformerFactory())).get(5, TimeUnit.SECONDS);
+      assertNotSame(t1, t2);
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, cache.compileCount());
+    assertEquals(1, cache.hitCount());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    File dir = TempFileUtils.createTrackedDir(this);
+    File xsl1 = copyTransform(dir, "1.xsl");
+    File xsl2 = copyTransform(dir, "2.xsl");
+    TemplatesCache cache = new TemplatesCache(1, false);
+    cache.newTransformer(xsl1.toURI().toString(), new XsltTransformerFactory());
+    cache.newTransformer(xsl2.toURI().toString(), new XsltTransformerFactory());
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.evictionCount());
+    assertNull(cache.get(xsl1.toURI().toString()));
+    cache.newTransformer(xsl1.toURI().toString(), new XsltTransformerFactory());
+    assertEquals(3, cache.missCount());
+  }
+
+  @Test
+  public void testCheckModified() throws Exception {
+    File dir = TempFileUtils.createTrackedDir(this);
+    File xsl = copyTransform(dir, "transform.xsl");
+    TemplatesCache cache = new TemplatesCache(0, true);
+    Transformer t1 = cache.newTransformer(xsl.toURI().toString(), new XsltTransformerFactory());
+    assertSame(t1, cache.newTransformer(xsl.toURI().toString(), new XsltTransformerFactory()));
+    xsl.setLastModified(xsl.lastModified() - TimeUnit.MINUTES.toMillis(1));
+    Transformer t2 = cache.newTransformer(xsl.toURI().toString(), new XsltTransformerFactory());
+    assertNotSame(t1, t2);
+    assertEquals(2, cache.compileCount());
+  }
+
+  private File copyTransform(File dir, String name) throws Exception {
+    File dest = new File(dir, name);
+    FileUtils.copyFile(FsHelper.toFile(PROPERTIES.getProperty(KEY_XML_TEST_TRANSFORM_URL)), dest);
+    return dest;
+  }
+}
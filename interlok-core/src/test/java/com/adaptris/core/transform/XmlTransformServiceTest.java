@@ -17,6 +17,7 @@
 package com.adaptris.core.transform;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -25,6 +26,10 @@ import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -415,6 +420,48 @@ public class XmlTransformServiceTest extends TransformServiceExample {
     }
   }
   
+  @Test
+  public void testOutputWithCache_MultipleThreads() throws Exception {
+    final XmlTransformService service = new XmlTransformService();
+    service.setUrl(PROPERTIES.getProperty(KEY_XML_TEST_TRANSFORM_URL));
+    service.setMaxCachedTransforms(1);
+    service.setCheckModifiedTransforms(true);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      start(service);
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        results.add(executor.submit(() -> {
+          AdaptrisMessage msg = MessageHelper.createMessage(PROPERTIES.getProperty(KEY_XML_TEST_INPUT));
+          service.doService(msg);
+          return msg.getContent();
+        }));
+      }
+      for (Future<String> f : results) {
+        assertEquals(PROPERTIES.getProperty(KEY_XML_TEST_OUTPUT), f.get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(20, service.getTransforms().hitCount() + service.getTransforms().missCount());
+      assertEquals(1, service.getTransforms().size());
+    }
+    finally {
+      executor.shutdownNow();
+      stop(service);
+    }
+  }
+
+  @Test
+  public void testMaxCachedTransforms() throws Exception {
+    XmlTransformService service = new XmlTransformService();
+    assertNull(service.getMaxCachedTransforms());
+    assertEquals(64, service.maxCachedTransforms());
+    service.setMaxCachedTransforms(10);
+    assertEquals(10, service.maxCachedTransforms());
+    assertNull(service.getCheckModifiedTransforms());
+    assertFalse(service.checkModifiedTransforms());
+    service.setCheckModifiedTransforms(true);
+    assertTrue(service.checkModifiedTransforms());
+  }
+
   // INTERLOK-3113
 
   @Test
@@ -17,8 +17,11 @@ package com.adaptris.core.util;
 
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -62,6 +65,31 @@ public class ManagedThreadFactoryTest {
     t.join();
   }
 
+  @Test
+  public void testInterruptManagedThreads_WhileCreating() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 2000; j++) {
+            ManagedThreadFactory.createThread(() -> {
+            });
+          }
+        }));
+      }
+      for (int i = 0; i < 200; i++) {
+        ManagedThreadFactory.interruptManagedThreads();
+      }
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Test(expected = RejectedExecutionException.class)
   public void testShutdownQuietlyExecutors_Quick() throws Exception {
     ManagedThreadFactory.shutdownQuietly(null, new TimeInterval(1L, TimeUnit.SECONDS));
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.UnresolvedMetadataException;
+
+public class MessageTemplateTest {
+
+  @Test
+  public void testCompile_LeastRecentlyUsedEvicted() {
+    MessageTemplate used = MessageTemplate.compile("%message{lru-used}");
+    MessageTemplate unused = MessageTemplate.compile("%message{lru-unused}");
+    // More than the default cache size.
+    for (int i = 0; i < 2048; i++) {
+      MessageTemplate.compile("%message{lru-" + i + "}");
+      assertSame(used, MessageTemplate.compile("%message{lru-used}"));
+    }
+    assertNotSame(unused, MessageTemplate.compile("%message{lru-unused}"));
+  }
+
+  @Test
+  public void testCompile_Cached() {
+    MessageTemplate t = MessageTemplate.compile("%message{key1}");
+    assertSame(t, MessageTemplate.compile("%message{key1}"));
+    assertSame(t, MessageTemplate.compile("%message{key1}", false));
+    assertEquals("%message{key1}", t.template());
+    assertEquals("%message{key1}", t.toString());
+    try {
+      MessageTemplate.compile(null);
+      fail();
+    } catch (IllegalArgumentException expected) {
+
+    }
+  }
+
+  @Test
+  public void testRender_NoExpressions() {
+    AdaptrisMessage msg = createMessage();
+    String s = "Hello World";
+    MessageTemplate t = MessageTemplate.compile(s);
+    assertFalse(t.hasExpressions());
+    assertSame(s, t.render(msg));
+    assertEquals("", MessageTemplate.compile("").render(msg));
+    // Not valid expressions
+    assertEquals("%message{}", MessageTemplate.compile("%message{}").render(msg));
+    assertEquals("%message{key1", MessageTemplate.compile("%message{key1").render(msg));
+    assertEquals("%message{key 1}", MessageTemplate.compile("%message{key 1}").render(msg));
+  }
+
+  @Test
+  public void testRender() {
+    AdaptrisMessage msg = createMessage();
+    assertTrue(MessageTemplate.compile("%message{key1}").hasExpressions());
+    assertEquals("val1", MessageTemplate.compile("%message{key1}").render(msg));
+    assertEquals("val1_val2_val1", MessageTemplate.compile("%message{key1}_%message{key2}_%message{key1}").render(msg));
+    assertEquals("SELECT * FROM TABLE where key1=val1 and key2=val2",
+        MessageTemplate.compile("SELECT * FROM TABLE where key1=%message{key1} and key2=%message{key2}").render(msg));
+    assertEquals("%message{val1", MessageTemplate.compile("%message{%message{key1}").render(msg));
+    assertEquals(msg.getUniqueId(), MessageTemplate.compile("%message{%UNIQUEID}").render(msg));
+    assertEquals(String.valueOf(msg.getSize()), MessageTemplate.compile("%message{%size}").render(msg));
+    assertEquals(msg.getContent(), MessageTemplate.compile("%message{%payload}").render(msg));
+  }
+
+  @Test
+  public void testRender_Indirection() {
+    AdaptrisMessage msg = createMessage();
+    msg.addMessageHeader("key3", "key1");
+    assertEquals("val1", MessageTemplate.compile("%message{$$key3}").render(msg));
+  }
+
+  @Test
+  public void testRender_Nested() {
+    AdaptrisMessage msg = createMessage();
+    msg.addMessageHeader("nested", "[%message{key1}]");
+    msg.addMessageHeader("nested2", "%message{nested}%message{key2}");
+    assertEquals("[val1]val2", MessageTemplate.compile("%message{nested2}").render(msg));
+    msg.addMessageHeader("loop", "%message{loop}");
+    try {
+      MessageTemplate.compile("%message{loop}").render(msg);
+      fail();
+    } catch (UnresolvedMetadataException expected) {
+
+    }
+  }
+
+  @Test
+  public void testRender_NestedInPayloadAndUniqueId() {
+    AdaptrisMessage msg = createMessage();
+    msg.setContent("Hello %message{key1}", msg.getContentEncoding());
+    msg.setUniqueId("%message{key2}-id");
+    assertEquals("Hello val1", MessageTemplate.compile("%message{%payload}").render(msg));
+    assertEquals("val2-id", MessageTemplate.compile("%message{%uniqueId}").render(msg));
+    assertEquals("Hello val1/val2-id", msg.resolve("%message{%payload}/%message{%uniqueId}"));
+    msg.setContent("%message{%payload}", msg.getContentEncoding());
+    try {
+      MessageTemplate.compile("%message{%payload}").render(msg);
+      fail();
+    } catch (UnresolvedMetadataException expected) {
+
+    }
+  }
+
+  @Test
+  public void testRender_Unresolved() {
+    AdaptrisMessage msg = createMessage();
+    try {
+      MessageTemplate.compile("%message{key1}%message{does_not_exist}").render(msg);
+      fail();
+    } catch (UnresolvedMetadataException expected) {
+      assertTrue(expected.getMessage().contains("does_not_exist"));
+    }
+  }
+
+  @Test
+  public void testRender_LineTerminators() {
+    AdaptrisMessage msg = createMessage();
+    String multiline = "%message{key1}\n%message{key2}";
+    assertEquals(multiline, MessageTemplate.compile(multiline).render(msg));
+    assertEquals(multiline, MessageTemplate.compile(multiline, false).render(msg));
+    assertEquals("val1\nval2", MessageTemplate.compile(multiline, true).render(msg));
+    // a final line terminator is allowed.
+    assertEquals("val1\r\n", MessageTemplate.compile("%message{key1}\r\n").render(msg));
+    assertEquals("val1\n", MessageTemplate.compile("%message{key1}\n").render(msg));
+    assertEquals("val1\n\n", MessageTemplate.compile("%message{key1}\n\n", true).render(msg));
+  }
+
+  @Test
+  public void testRender_ExternalResolver() {
+    AdaptrisMessage msg = createMessage();
+    MessageTemplate t = MessageTemplate.compile("%sysprop{java.version}_%message{key1}");
+    assertTrue(t.hasExpressions());
+    assertEquals(System.getProperty("java.version") + "_val1", t.render(msg));
+    assertTrue(MessageTemplate.compile("%sysprop{java.version}").hasExpressions());
+  }
+
+  @Test
+  public void testRender_SameAsResolve() {
+    AdaptrisMessage msg = createMessage();
+    String s = "%message{key1}/%message{%uniqueId}/%sysprop{java.version}";
+    assertEquals(msg.resolve(s), MessageTemplate.compile(s).render(msg));
+  }
+
+  private static AdaptrisMessage createMessage() {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("hello world");
+    msg.addMessageHeader("key1", "val1");
+    msg.addMessageHeader("key2", "val2");
+    return msg;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ThreadPerTaskExecutorTest {
+
+  @Test
+  public void testSubmit() throws Exception {
+    ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(new ManagedThreadFactory(getClass().getSimpleName()), 0);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        final int value = i;
+        results.add(executor.submit(() -> value));
+      }
+      for (int i = 0; i < 10; i++) {
+        assertEquals(Integer.valueOf(i), results.get(i).get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(executor.isTerminated());
+  }
+
+  @Test
+  public void testMaxConcurrency() throws Exception {
+    final AtomicInteger current = new AtomicInteger();
+    final AtomicInteger max = new AtomicInteger();
+    ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(new ManagedThreadFactory(getClass().getSimpleName()), 2);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        results.add(executor.submit(() -> {
+          int now = current.incrementAndGet();
+          max.accumulateAndGet(now, Math::max);
+          LifecycleHelper.waitQuietly(20L);
+          current.decrementAndGet();
+        }));
+      }
+      for (Future<?> f : results) {
+        f.get(5, TimeUnit.SECONDS);
+      }
+      assertTrue(max.get() <= 2);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testShutdown() throws Exception {
+    ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(new ManagedThreadFactory(getClass().getSimpleName()), 1);
+    assertFalse(executor.isShutdown());
+    executor.shutdown();
+    assertTrue(executor.isShutdown());
+    assertTrue(executor.isTerminated());
+    try {
+      executor.execute(() -> {
+      });
+      fail();
+    } catch (RejectedExecutionException expected) {
+
+    }
+  }
+
+  @Test
+  public void testShutdownNow() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(new ManagedThreadFactory(getClass().getSimpleName()), 1);
+    executor.execute(() -> {
+      started.countDown();
+      try {
+        Thread.sleep(10000L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    executor.execute(() -> {
+    });
+    // Give the 2nd thread time to start waiting for a permit.
+    LifecycleHelper.waitQuietly(50L);
+    assertEquals(2, executor.activeCount());
+    List<Runnable> notStarted = executor.shutdownNow();
+    assertEquals(1, notStarted.size());
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(0, executor.activeCount());
+  }
+
+  @Test
+  public void testShutdownNow_ReturnsSubmittedTasks() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(new ManagedThreadFactory(getClass().getSimpleName()), 1);
+    executor.execute(() -> {
+      started.countDown();
+      LifecycleHelper.waitQuietly(10000L);
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    Runnable submitted = () -> {
+    };
+    FutureTask<String> executed = new FutureTask<>(() -> "hello");
+    Future<?> f = executor.submit(submitted);
+    executor.execute(executed);
+    // Give the threads time to start waiting for a permit.
+    LifecycleHelper.waitQuietly(50L);
+    List<Runnable> notStarted = executor.shutdownNow();
+    assertEquals(2, notStarted.size());
+    assertTrue(notStarted.contains(submitted));
+    assertTrue(notStarted.contains(executed));
+    assertFalse(f.isDone());
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testAwaitTermination_Timeout() throws Exception {
+    ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(new ManagedThreadFactory(getClass().getSimpleName()), 0);
+    executor.execute(() -> LifecycleHelper.waitQuietly(500L));
+    executor.shutdown();
+    assertFalse(executor.awaitTermination(10, TimeUnit.MILLISECONDS));
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class TimeWheelTest {
+
+  @Test
+  public void testConstructor() throws Exception {
+    try {
+      new TimeWheel<String>(0, 8, 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+
+    }
+    try {
+      new TimeWheel<String>(10, 0, 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+
+    }
+    assertEquals(10, new TimeWheel<String>(10, 8, 0).tickMs());
+  }
+
+  @Test
+  public void testAdvance() throws Exception {
+    TimeWheel<String> wheel = new TimeWheel<>(10, 8, 1000);
+    wheel.schedule("a", 1025);
+    wheel.schedule("b", 1010);
+    wheel.schedule("c", 1500);
+    assertEquals(3, wheel.size());
+    assertTrue(wheel.advance(1009).isEmpty());
+    assertEquals(Arrays.asList("b"), wheel.advance(1010));
+    // rounded up to the next tick, so nothing fires early.
+    assertTrue(wheel.advance(1029).isEmpty());
+    assertEquals(Arrays.asList("a"), wheel.advance(1030));
+    assertTrue(wheel.contains("c"));
+    assertTrue(wheel.advance(1499).isEmpty());
+    assertEquals(Arrays.asList("c"), wheel.advance(1500));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void testAdvance_MoreThanOneRevolution() throws Exception {
+    TimeWheel<String> wheel = new TimeWheel<>(10, 4, 0);
+    wheel.schedule("a", 15);
+    wheel.schedule("b", 95);
+    wheel.schedule("c", 1000);
+    List<String> expired = wheel.advance(500);
+    assertEquals(2, expired.size());
+    assertTrue(expired.containsAll(Arrays.asList("a", "b")));
+    assertEquals(Arrays.asList("c"), wheel.advance(1000));
+  }
+
+  @Test
+  public void testSchedule_InThePast() throws Exception {
+    TimeWheel<String> wheel = new TimeWheel<>(10, 8, 1000);
+    wheel.advance(1100);
+    wheel.schedule("a", 0);
+    assertEquals(Arrays.asList("a"), wheel.advance(1110));
+  }
+
+  @Test
+  public void testReschedule() throws Exception {
+    TimeWheel<String> wheel = new TimeWheel<>(10, 8, 0);
+    wheel.schedule("a", 10);
+    wheel.schedule("a", 100);
+    assertEquals(1, wheel.size());
+    assertTrue(wheel.advance(50).isEmpty());
+    assertEquals(Arrays.asList("a"), wheel.advance(100));
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    TimeWheel<String> wheel = new TimeWheel<>(10, 8, 0);
+    wheel.schedule("a", 10);
+    wheel.schedule("b", 10);
+    assertTrue(wheel.cancel("a"));
+    assertFalse(wheel.cancel("a"));
+    assertFalse(wheel.contains("a"));
+    assertEquals(Arrays.asList("b"), wheel.advance(10));
+    wheel.schedule("c", 20);
+    wheel.clear();
+    assertEquals(0, wheel.size());
+    assertTrue(wheel.advance(100).isEmpty());
+  }
+}
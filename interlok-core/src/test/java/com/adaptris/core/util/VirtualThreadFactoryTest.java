@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class VirtualThreadFactoryTest {
+
+  @Test
+  public void testNewThread() throws Exception {
+    VirtualThreadFactory factory = new VirtualThreadFactory(getClass().getSimpleName());
+    Thread t = factory.newThread(() -> {
+    });
+    assertNotNull(t);
+    assertTrue(t.getName().startsWith(getClass().getSimpleName()));
+    t.start();
+    t.join(5000L);
+  }
+
+  @Test
+  public void testNewExecutor() throws Exception {
+    ExecutorService executor = VirtualThreadFactory.newExecutor(getClass().getSimpleName(), 2);
+    try {
+      assertEquals("hello", executor.submit(() -> "hello").get(5, TimeUnit.SECONDS));
+      String name = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+      assertTrue(name.startsWith(getClass().getSimpleName()));
+    } finally {
+      ManagedThreadFactory.shutdownQuietly(executor, 1000L);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Adaptris Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.adaptris.util.text.mime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import javax.mail.MessagingException;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class MultipartStreamReaderTest extends PartIteratorCase {
+
+  @Test
+  public void testNext() throws Exception {
+    try (MultipartStreamReader reader = new MultipartStreamReader(
+        new ByteArrayInputStream(generateByteArrayInput("testNext", false)))) {
+      assertEquals("testNext", reader.getMessageID());
+      assertEquals("1.0", reader.getHeaders().getHeader(HEADER_MIME_VERSION, null));
+      MultipartStreamReader.Part part = reader.next();
+      assertEquals("payload1", part.getContentID());
+      assertEquals(PAYLOAD_1, toString(part));
+      part = reader.next();
+      assertEquals("payload2", part.getContentID());
+      assertEquals(PAYLOAD_2, toString(part));
+      part = reader.next();
+      assertEquals("payload3", part.getContentID());
+      assertEquals(PAYLOAD_3, toString(part));
+      assertNull(reader.next());
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testNext_SkipsUnreadContent() throws Exception {
+    try (MultipartStreamReader reader = new MultipartStreamReader(
+        new ByteArrayInputStream(generateByteArrayInput(false)))) {
+      assertEquals("payload1", reader.next().getContentID());
+      // read a part of it.
+      reader.next().getInputStream().read();
+      MultipartStreamReader.Part part = reader.next();
+      assertEquals("payload3", part.getContentID());
+      assertEquals(PAYLOAD_3, toString(part));
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testNext_Preamble_LineFeedsOnly() throws Exception {
+    String mime = "Content-Type: multipart/mixed; boundary=\"xyz\"\n\n" + "This is the preamble\n" + "--xyz\n"
+        + "Content-Id: part1\n\n" + PAYLOAD_1 + "\n--xyz  \n" + "Content-Id: part2\n\n" + PAYLOAD_2 + "\n--xyz--\n"
+        + "This is the epilogue";
+    try (MultipartStreamReader reader = new MultipartStreamReader(
+        new ByteArrayInputStream(mime.getBytes(StandardCharsets.US_ASCII)))) {
+      assertEquals("", reader.getMessageID());
+      assertEquals(PAYLOAD_1, toString(reader.next()));
+      assertEquals(PAYLOAD_2, toString(reader.next()));
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testNoBoundary() throws Exception {
+    String mime = "Content-Type: text/plain\r\n\r\nHello World";
+    try (MultipartStreamReader reader = new MultipartStreamReader(
+        new ByteArrayInputStream(mime.getBytes(StandardCharsets.US_ASCII)))) {
+      fail();
+    } catch (MessagingException expected) {
+
+    }
+  }
+
+  private static String toString(MultipartStreamReader.Part part) throws Exception {
+    try (InputStream in = part.getInputStream()) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -16,10 +16,13 @@
 package com.adaptris.util.text.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 
+import java.util.Arrays;
+
 import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
 
@@ -50,6 +53,17 @@ public class SimpleNamespaceContextTest extends SimpleNamespaceContext {
     assertNotNull(SimpleNamespaceContext.create(createWithDefaultEntries()));
   }
 
+  @Test
+  public void testEquals() {
+    NamespaceContext ctx = SimpleNamespaceContext.create(createNamespaceEntries());
+    assertEquals(ctx, ctx);
+    assertEquals(ctx, SimpleNamespaceContext.create(createNamespaceEntries()));
+    assertEquals(ctx.hashCode(), SimpleNamespaceContext.create(createNamespaceEntries()).hashCode());
+    assertEquals(ctx, SimpleNamespaceContext.create(createWithDefaultEntries()));
+    assertNotEquals(ctx, SimpleNamespaceContext.create(new KeyValuePairSet(Arrays.asList(new KeyValuePair("a", "http://a")))));
+    assertNotEquals(ctx, new Object());
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testInvalidNamespace() throws Exception {
     SimpleNamespaceContext.create(createBrokenEntries());
@@ -162,6 +162,31 @@ public class XPathTest {
     assertNotNull(xpath.selectSingleNode(d, "/root/test"));
   }
 
+  @Test
+  public void testExpressionCache() throws Exception {
+    XPath.clearExpressionCache();
+    Document d = XmlHelper.createDocument(XML, DocumentBuilderFactoryBuilder.newInstance());
+    for (int i = 0; i < 3; i++) {
+      XPath xpath = new XPath(SimpleNamespaceContext.create(createNamespaceEntries()));
+      assertEquals("one", xpath.selectSingleTextItem(d, "/root/test"));
+      assertEquals(2, xpath.selectNodeList(d, "/root/test").getLength());
+    }
+    assertEquals(1, XPath.expressionCacheSize());
+    new XPath().selectSingleTextItem(d, "/root/test");
+    assertEquals(2, XPath.expressionCacheSize());
+    XPath.clearExpressionCache();
+    assertEquals(0, XPath.expressionCacheSize());
+  }
+
+  @Test(expected = javax.xml.xpath.XPathExpressionException.class)
+  public void testExpressionCache_DifferentFactory() throws Exception {
+    XPath.clearExpressionCache();
+    Document d = XmlHelper.createDocument(XML, DocumentBuilderFactoryBuilder.newInstance());
+    assertEquals("test", new XPath().selectSingleTextItem(d, "//*[@att='2'][1]/local-name()"));
+    // Shouldn't use the expression compiled by Saxon; and local-name() isn't XPath 1
+    new XPath(null, XPathFactory.newInstance()).selectSingleTextItem(d, "//*[@att='2'][1]/local-name()");
+  }
+
   @Test
   public void testBuild() {
     assertEquals(XPathFactoryImpl.class, XPath.build(true).getClass());